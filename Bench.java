@@ -0,0 +1,638 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** Microbenchmarks for the gitlet primitives and commands, run the way
+ *  JMH runs them: every (benchmark, parameters) pair gets a freshly
+ *  forked JVM whose working directory is a scratch directory holding a
+ *  synthetic repository, and is warmed up before being measured. The
+ *  results are printed on the standard output as a JSON array in JMH's
+ *  result format.  Usage:
+ *
+ *      java gitlet.Bench [-wi N] [-i N] [-t MILLIS] [REGEX]
+ *      java gitlet.Bench -compare OLD.json NEW.json [PERCENT]
+ *
+ *  The first form runs the benchmarks whose names match REGEX; the
+ *  second reports every benchmark whose score in NEW is more than
+ *  PERCENT (default 10) percent worse than in OLD.
+ *  @author Kaito Garcia
+ */
+public class Bench {
+
+    /** Runs the benchmarks selected by ARGS. */
+    public static void main(String... args) throws IOException {
+        if (args.length > 0 && args[0].equals("--fork")) {
+            runFork(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("-compare")) {
+            int percent = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+            System.exit(compare(new File(args[1]), new File(args[2]),
+                    percent, System.out));
+        }
+        int warmups = 3, iterations = 5, millis = 500;
+        String filter = ".*";
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+            case "-wi":
+                warmups = Integer.parseInt(args[++i]);
+                break;
+            case "-i":
+                iterations = Integer.parseInt(args[++i]);
+                break;
+            case "-t":
+                millis = Integer.parseInt(args[++i]);
+                break;
+            default:
+                filter = args[i];
+            }
+        }
+
+        ArrayList<String> results = new ArrayList<>();
+        for (Case bench : CASES) {
+            if (!bench.name().matches(filter)) {
+                continue;
+            }
+            for (int[] values : bench.grid()) {
+                System.err.printf("# %s %s%n", bench.name(),
+                        bench.describe(values));
+                List<String> raw = fork(Bench.class, bench.name(),
+                        join(values), Integer.toString(warmups),
+                        Integer.toString(iterations),
+                        Integer.toString(millis));
+                results.add(toJson(bench, values, warmups, raw));
+            }
+        }
+        System.out.println("[");
+        System.out.println(String.join(",\n", results));
+        System.out.println("]");
+    }
+
+    /** Benchmark entry point of a forked JVM. ARGS are "--fork", the
+     *  benchmark name, its comma-separated parameter values, and the
+     *  warmup count, iteration count and iteration time. Prints one
+     *  score per measured iteration, in microseconds per operation. */
+    private static void runFork(String... args) {
+        Case bench = null;
+        for (Case c : CASES) {
+            if (c.name().equals(args[1])) {
+                bench = c;
+            }
+        }
+        if (bench == null) {
+            throw Utils.error("No benchmark named %s.", args[1]);
+        }
+        int[] values = split(args[2]);
+        int warmups = Integer.parseInt(args[3]);
+        int iterations = Integer.parseInt(args[4]);
+        long budget = Long.parseLong(args[5]) * 1_000_000L;
+
+        PrintStream results = System.out;
+        System.setOut(new PrintStream(NULL_OUTPUT));
+        Repo repo = newRepo();
+        bench.setup(repo, values);
+        repo.syncObjects();
+        for (int i = 0; i < warmups + iterations; i++) {
+            double score = iteration(bench, repo, budget);
+            if (i >= warmups) {
+                results.println(score);
+            }
+        }
+        results.flush();
+    }
+
+    /** Runs BENCH against REPO repeatedly for about BUDGET nanoseconds,
+     *  excluding the time spent in its per-operation preparation.
+     *  @return average time per operation in microseconds */
+    private static double iteration(Case bench, Repo repo, long budget) {
+        long spent = 0;
+        long ops = 0;
+        long deadline = System.nanoTime() + budget;
+        do {
+            bench.prepare(repo);
+            long start = System.nanoTime();
+            bench.run(repo);
+            repo.syncObjects();
+            spent += System.nanoTime() - start;
+            ops++;
+        } while (System.nanoTime() < deadline);
+        return spent / 1000.0 / ops;
+    }
+
+    /** Runs MAIN's main method with ARGS, preceded by "--fork", in a new
+     *  JVM whose working directory is a new scratch directory, deleting
+     *  the directory afterwards.
+     *  @return the lines the fork printed on its standard output */
+    static List<String> fork(Class<?> main, String... args)
+        throws IOException {
+        File scratch = Files.createTempDirectory("gitlet-bench").toFile();
+        ArrayList<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator
+                + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(absoluteClassPath());
+        command.add(main.getName());
+        command.add("--fork");
+        for (String arg : args) {
+            command.add(arg);
+        }
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.directory(scratch);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        ArrayList<String> lines = new ArrayList<>();
+        try {
+            Process process = builder.start();
+            BufferedReader out = new BufferedReader(new InputStreamReader(
+                    process.getInputStream(), StandardCharsets.UTF_8));
+            for (String line = out.readLine(); line != null;
+                 line = out.readLine()) {
+                lines.add(line);
+            }
+            if (process.waitFor() != 0) {
+                throw Utils.error("Fork %s failed.", String.join(" ", args));
+            }
+        } catch (InterruptedException excp) {
+            throw Utils.error("Interrupted while waiting for fork.");
+        } finally {
+            deleteTree(scratch);
+        }
+        return lines;
+    }
+
+    /** Returns this JVM's class path with every entry made absolute, so
+     *  that a fork running in another directory can use it. */
+    private static String absoluteClassPath() {
+        ArrayList<String> entries = new ArrayList<>();
+        for (String entry
+                 : System.getProperty("java.class.path")
+                 .split(File.pathSeparator)) {
+            if (!entry.isEmpty()) {
+                entries.add(new File(entry).getAbsolutePath());
+            }
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+
+    /** Deletes FILE and, if it is a directory, everything beneath it. */
+    static void deleteTree(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteTree(child);
+            }
+        }
+        file.delete();
+    }
+
+    /** Creates and initializes a repository in the working directory. */
+    static Repo newRepo() {
+        Repo repo = new Repo(new File(System.getProperty("user.dir")),
+                System.out);
+        repo.init();
+        return repo;
+    }
+
+    /** Builds a linear history of DEPTH commits over FILES files of
+     *  SIZE bytes each in REPO. The first commit adds every file; each
+     *  later one rewrites a single file. */
+    static void buildHistory(Repo repo, int depth, int files, int size) {
+        Random random = new Random(files * 31L + depth);
+        for (int f = 0; f < files; f++) {
+            RepoGenerator.writeText(fileName(f), size, random);
+            repo.add(fileName(f));
+        }
+        repo.commit("commit 0");
+        for (int d = 1; d < depth; d++) {
+            String name = fileName(d % files);
+            RepoGenerator.writeText(name, size, random);
+            repo.add(name);
+            repo.commit("commit " + d);
+        }
+    }
+
+    /** Returns the name of the Ith synthetic file. */
+    static String fileName(int i) {
+        return String.format("f%06d.txt", i);
+    }
+
+    /** Returns the JSON result of BENCH with parameters VALUES, after
+     *  WARMUPS warmup iterations, whose measured scores are RAW. */
+    static String toJson(Case bench, int[] values, int warmups,
+                         List<String> raw) {
+        double[] scores = new double[raw.size()];
+        double mean = 0;
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = Double.parseDouble(raw.get(i));
+            mean += scores[i] / scores.length;
+        }
+        double variance = 0;
+        for (double score : scores) {
+            variance += (score - mean) * (score - mean);
+        }
+        double error = scores.length < 2 ? Double.NaN
+            : Z_999 * Math.sqrt(variance / (scores.length - 1)
+                                / scores.length);
+
+        StringBuilder params = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            params.append(i == 0 ? "" : ", ").append(String.format(
+                    "\"%s\" : \"%d\"", bench.params()[i], values[i]));
+        }
+        StringBuilder data = new StringBuilder();
+        for (int i = 0; i < scores.length; i++) {
+            data.append(i == 0 ? "" : ", ").append(number(scores[i]));
+        }
+        return String.format(Locale.ROOT, "    {%n"
+                + "        \"benchmark\" : \"gitlet.Bench.%s\",%n"
+                + "        \"mode\" : \"avgt\",%n"
+                + "        \"threads\" : 1,%n"
+                + "        \"forks\" : 1,%n"
+                + "        \"warmupIterations\" : %d,%n"
+                + "        \"measurementIterations\" : %d,%n"
+                + "        \"params\" : {%s},%n"
+                + "        \"primaryMetric\" : {%n"
+                + "            \"score\" : %s,%n"
+                + "            \"scoreError\" : %s,%n"
+                + "            \"scoreUnit\" : \"us/op\",%n"
+                + "            \"rawData\" : [[%s]]%n"
+                + "        }%n"
+                + "    }", bench.name(), warmups, scores.length, params,
+                number(mean), number(error), data);
+    }
+
+    /** Returns X as a JSON number, or "NaN" as JMH writes it. */
+    private static String number(double x) {
+        if (Double.isNaN(x)) {
+            return "\"NaN\"";
+        }
+        return String.format(Locale.ROOT, "%.3f", x);
+    }
+
+    /** Prints on OUT a line for every result in both OLDER and NEWER,
+     *  flagging each whose score in NEWER is more than PERCENT percent
+     *  higher.
+     *  @return 1 if any regression was found, 0 otherwise */
+    static int compare(File older, File newer, int percent,
+                       PrintStream out) {
+        Map<String, Double> before = readScores(older);
+        Map<String, Double> after = readScores(newer);
+        int status = 0;
+        for (Map.Entry<String, Double> entry : after.entrySet()) {
+            Double old = before.get(entry.getKey());
+            if (old == null) {
+                continue;
+            }
+            double change = (entry.getValue() - old) / old * 100;
+            String flag = "";
+            if (change > percent) {
+                flag = "  REGRESSION";
+                status = 1;
+            }
+            out.printf(Locale.ROOT, "%-60s %12.3f %12.3f %+7.1f%%%s%n",
+                    entry.getKey(), old, entry.getValue(), change, flag);
+        }
+        return status;
+    }
+
+    /** Returns the scores in the JSON results file FILE, keyed by the
+     *  benchmark name followed by its parameters. */
+    static Map<String, Double> readScores(File file) {
+        Map<String, Double> scores = new LinkedHashMap<>();
+        Matcher m = RESULT.matcher(Utils.readContentsAsString(file));
+        while (m.find()) {
+            scores.put(m.group(1) + " {" + m.group(2) + "}",
+                    Double.parseDouble(m.group(3)));
+        }
+        return scores;
+    }
+
+    /** Returns VALUES as a comma-separated list. */
+    private static String join(int[] values) {
+        StringBuilder result = new StringBuilder();
+        for (int value : values) {
+            result.append(result.length() == 0 ? "" : ",").append(value);
+        }
+        return result.toString();
+    }
+
+    /** Returns the integers in the comma-separated list LIST. */
+    private static int[] split(String list) {
+        if (list.isEmpty()) {
+            return new int[0];
+        }
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i]);
+        }
+        return values;
+    }
+
+    /** A benchmark: a named operation on a synthetic repository. */
+    abstract static class Case {
+
+        /** A benchmark called NAME whose parameters PARAMS take each
+         *  combination of the values in LEVELS. */
+        Case(String name, String[] params, int[]... levels) {
+            _name = name;
+            _params = params;
+            _levels = levels;
+        }
+
+        /** Returns the name of this benchmark. */
+        String name() {
+            return _name;
+        }
+
+        /** Returns the names of this benchmark's parameters. */
+        String[] params() {
+            return _params;
+        }
+
+        /** Returns every combination of parameter values. */
+        List<int[]> grid() {
+            List<int[]> result = new ArrayList<>();
+            result.add(new int[0]);
+            for (int[] level : _levels) {
+                List<int[]> next = new ArrayList<>();
+                for (int[] prefix : result) {
+                    for (int value : level) {
+                        int[] values = new int[prefix.length + 1];
+                        System.arraycopy(prefix, 0, values, 0, prefix.length);
+                        values[prefix.length] = value;
+                        next.add(values);
+                    }
+                }
+                result = next;
+            }
+            return result;
+        }
+
+        /** Returns VALUES labelled with the parameter names. */
+        String describe(int[] values) {
+            Map<String, Integer> labelled = new LinkedHashMap<>();
+            for (int i = 0; i < values.length; i++) {
+                labelled.put(_params[i], values[i]);
+            }
+            return labelled.toString();
+        }
+
+        /** Builds the synthetic state in REPO for parameters VALUES. */
+        abstract void setup(Repo repo, int[] values);
+
+        /** Untimed preparation before each operation on REPO. */
+        void prepare(Repo repo) {
+        }
+
+        /** The timed operation on REPO. */
+        abstract void run(Repo repo);
+
+        /** Name of this benchmark. */
+        private final String _name;
+        /** Names of this benchmark's parameters. */
+        private final String[] _params;
+        /** Values taken by each parameter. */
+        private final int[][] _levels;
+    }
+
+    /** History depths. */
+    private static final int[] DEPTHS = {10, 100, 1000};
+
+    /** Tree sizes, in files. */
+    private static final int[] TREES = {10, 100, 1000};
+
+    /** Input sizes for hashing, in bytes. */
+    private static final int[] SIZES = {64, 4096, 1 << 20};
+
+    /** Size of each synthetic text file, in bytes. */
+    private static final int FILE_SIZE = 1024;
+
+    /** All benchmarks. */
+    private static final Case[] CASES = {
+        new Case("sha1", new String[] {"bytes"}, SIZES) {
+            private byte[] _data;
+
+            @Override
+            void setup(Repo repo, int[] values) {
+                _data = new byte[values[0]];
+                new Random(1).nextBytes(_data);
+            }
+
+            @Override
+            void run(Repo repo) {
+                Utils.sha1(_data);
+            }
+        },
+        new Case("serialize", new String[] {"files"}, TREES) {
+            private Commit _commit;
+
+            @Override
+            void setup(Repo repo, int[] values) {
+                _commit = syntheticCommit(values[0]);
+            }
+
+            @Override
+            void run(Repo repo) {
+                Utils.serialize(_commit);
+            }
+        },
+        new Case("readObject", new String[] {"files"}, TREES) {
+            private File _file = new File("commit.ser");
+
+            @Override
+            void setup(Repo repo, int[] values) {
+                Utils.writeObject(_file, syntheticCommit(values[0]));
+            }
+
+            @Override
+            void run(Repo repo) {
+                Utils.readObject(_file, Commit.class);
+            }
+        },
+        new Case("getCommitFromID", new String[] {"depth"}, DEPTHS) {
+            @Override
+            void setup(Repo repo, int[] values) {
+                buildHistory(repo, values[0], 10, FILE_SIZE);
+            }
+
+            @Override
+            void run(Repo repo) {
+                repo.getCommitFromID(repo.getBranches().get("master"));
+            }
+        },
+        new Case("add", new String[] {"depth", "files"}, DEPTHS, TREES) {
+            private Random _random = new Random(2);
+
+            @Override
+            void setup(Repo repo, int[] values) {
+                buildHistory(repo, values[0], values[1], FILE_SIZE);
+            }
+
+            @Override
+            void prepare(Repo repo) {
+                RepoGenerator.writeText(fileName(0), FILE_SIZE, _random);
+            }
+
+            @Override
+            void run(Repo repo) {
+                repo.add(fileName(0));
+            }
+        },
+        new Case("commit", new String[] {"depth", "files"}, DEPTHS, TREES) {
+            private Random _random = new Random(3);
+
+            @Override
+            void setup(Repo repo, int[] values) {
+                buildHistory(repo, values[0], values[1], FILE_SIZE);
+            }
+
+            @Override
+            void prepare(Repo repo) {
+                RepoGenerator.writeText(fileName(0), FILE_SIZE, _random);
+                repo.add(fileName(0));
+            }
+
+            @Override
+            void run(Repo repo) {
+                repo.commit("benchmark");
+            }
+        },
+        new Case("log", new String[] {"depth"}, DEPTHS) {
+            @Override
+            void setup(Repo repo, int[] values) {
+                buildHistory(repo, values[0], 10, FILE_SIZE);
+            }
+
+            @Override
+            void run(Repo repo) {
+                repo.log();
+            }
+        },
+        new Case("status", new String[] {"files"}, TREES) {
+            @Override
+            void setup(Repo repo, int[] values) {
+                buildHistory(repo, 1, values[0], FILE_SIZE);
+            }
+
+            @Override
+            void run(Repo repo) {
+                repo.status().toString();
+            }
+        },
+        new Case("checkoutBranch", new String[] {"files"}, TREES) {
+            private boolean _onOther;
+
+            @Override
+            void setup(Repo repo, int[] values) {
+                buildHistory(repo, 1, values[0], FILE_SIZE);
+                repo.branch("other");
+                repo.checkoutBranch("other");
+                Random random = new Random(4);
+                for (int f = 0; f < values[0]; f++) {
+                    RepoGenerator.writeText(fileName(f), FILE_SIZE, random);
+                    repo.add(fileName(f));
+                }
+                repo.commit("other");
+                _onOther = true;
+            }
+
+            @Override
+            void run(Repo repo) {
+                repo.checkoutBranch(_onOther ? "master" : "other");
+                _onOther = !_onOther;
+            }
+        },
+        new Case("findSplit", new String[] {"depth"}, DEPTHS) {
+            @Override
+            void setup(Repo repo, int[] values) {
+                buildDivergence(repo, values[0], 10);
+            }
+
+            @Override
+            void run(Repo repo) {
+                repo.findSplit("other");
+            }
+        },
+        new Case("merge", new String[] {"depth", "files"}, DEPTHS, TREES) {
+            private ObjectId _head;
+
+            @Override
+            void setup(Repo repo, int[] values) {
+                buildDivergence(repo, values[0], values[1]);
+                _head = repo.getBranches().get("master");
+            }
+
+            @Override
+            void prepare(Repo repo) {
+                repo.reset(_head.name());
+            }
+
+            @Override
+            void run(Repo repo) {
+                repo.merge("other");
+            }
+        },
+    };
+
+    /** Builds DEPTH commits over FILES files in REPO, then a branch
+     *  "other" that rewrites the last file while master rewrites the
+     *  first, leaving master checked out. */
+    private static void buildDivergence(Repo repo, int depth, int files) {
+        buildHistory(repo, depth, files, FILE_SIZE);
+        Random random = new Random(5);
+        repo.branch("other");
+        RepoGenerator.writeText(fileName(0), FILE_SIZE, random);
+        repo.add(fileName(0));
+        repo.commit("master side");
+        repo.checkoutBranch("other");
+        RepoGenerator.writeText(fileName(files - 1), FILE_SIZE, random);
+        repo.add(fileName(files - 1));
+        repo.commit("other side");
+        repo.checkoutBranch("master");
+    }
+
+    /** Returns a commit tracking FILES synthetic blobs. */
+    private static Commit syntheticCommit(int files) {
+        HashMap<String, ObjectId> blobs = new HashMap<>();
+        for (int f = 0; f < files; f++) {
+            blobs.put(fileName(f), Utils.sha1Id(fileName(f)));
+        }
+        return new Commit("synthetic", Utils.sha1Id("parent"), blobs);
+    }
+
+    /** Two-sided z value for a 99.9% confidence interval. */
+    private static final double Z_999 = 3.291;
+
+    /** Matches one result in a JSON results file: benchmark name,
+     *  parameters and score. */
+    private static final Pattern RESULT = Pattern.compile(
+            "\"benchmark\" : \"([^\"]*)\"[^{]*\"params\" : \\{([^}]*)\\}"
+            + "[^{]*\\{\\s*\"score\" : ([-0-9.eE]+)");
+
+    /** A stream that discards everything written to it. */
+    static final OutputStream NULL_OUTPUT = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+}
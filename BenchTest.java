@@ -0,0 +1,110 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the benchmark harness.
+ *  @author Kaito Garcia
+ */
+public class BenchTest extends ScratchTestCase {
+
+    /** A benchmark runs once for every combination of its parameters,
+     *  the last parameter varying fastest. */
+    @Test
+    public void gridCoversEveryCombination() {
+        List<int[]> grid = bench().grid();
+        assertEquals(6, grid.size());
+        assertArrayEquals(new Integer[] {1, 3}, boxed(grid.get(0)));
+        assertArrayEquals(new Integer[] {1, 4}, boxed(grid.get(1)));
+        assertArrayEquals(new Integer[] {2, 5}, boxed(grid.get(5)));
+    }
+
+    /** Results written as JSON read back as the mean of their scores,
+     *  keyed by benchmark and parameters. */
+    @Test
+    public void resultsRoundTrip() {
+        File file = new File(_dir, "r.json");
+        Utils.writeContents(file, "[\n"
+                + Bench.toJson(bench(), new int[] {1, 3}, 2,
+                        Arrays.asList("1.0", "2.0", "3.0")) + ",\n"
+                + Bench.toJson(bench(), new int[] {2, 3}, 2,
+                        Arrays.asList("10.0")) + "\n]\n");
+        Map<String, Double> scores = Bench.readScores(file);
+        assertEquals(2, scores.size());
+        assertEquals(2.0, scores.get(
+                "gitlet.Bench.fake {\"a\" : \"1\", \"b\" : \"3\"}"), 1e-9);
+        assertEquals(10.0, scores.get(
+                "gitlet.Bench.fake {\"a\" : \"2\", \"b\" : \"3\"}"), 1e-9);
+    }
+
+    /** Only a score worse by more than the allowed percentage counts as
+     *  a regression, and only it is flagged in the report. */
+    @Test
+    public void compareFlagsRegressions() throws IOException {
+        File older = results("old.json", "10.0");
+        File report = new File(_dir, "report.txt");
+        try (PrintStream out = new PrintStream(report)) {
+            assertEquals(0, Bench.compare(older,
+                    results("same.json", "10.9"), 10, out));
+            assertEquals(0, Bench.compare(older,
+                    results("fast.json", "2.0"), 10, out));
+            assertEquals(1, Bench.compare(older,
+                    results("slow.json", "11.5"), 10, out));
+            assertEquals(0, Bench.compare(older,
+                    results("slow2.json", "11.5"), 20, out));
+        }
+        String[] lines = Utils.readContentsAsString(report).split("\n");
+        assertEquals(4, lines.length);
+        assertFalse(lines[1].endsWith("REGRESSION"));
+        assertTrue(lines[2].endsWith("REGRESSION"));
+        assertFalse(lines[3].endsWith("REGRESSION"));
+    }
+
+    /** A forked benchmark prints one positive score per measured
+     *  iteration. */
+    @Test
+    public void forkMeasures() throws IOException {
+        List<String> scores = Bench.fork(Bench.class, "sha1", "64", "1",
+                "2", "20");
+        assertEquals(2, scores.size());
+        for (String score : scores) {
+            assertTrue(Double.parseDouble(score) > 0);
+        }
+    }
+
+    /** Returns a benchmark "fake" with parameters a (1 or 2) and b (3, 4
+     *  or 5) that does nothing. */
+    private static Bench.Case bench() {
+        return new Bench.Case("fake", new String[] {"a", "b"},
+                new int[] {1, 2}, new int[] {3, 4, 5}) {
+            @Override
+            void setup(Repo repo, int[] values) {
+            }
+
+            @Override
+            void run(Repo repo) {
+            }
+        };
+    }
+
+    /** Returns the file NAME holding one result of the fake benchmark,
+     *  with the single score SCORE. */
+    private File results(String name, String score) {
+        File file = new File(_dir, name);
+        Utils.writeContents(file, "[\n" + Bench.toJson(bench(),
+                new int[] {1, 3}, 0, Arrays.asList(score)) + "\n]\n");
+        return file;
+    }
+
+    /** Returns VALUES boxed. */
+    private static Integer[] boxed(int[] values) {
+        return Arrays.stream(values).boxed().toArray(Integer[]::new);
+    }
+}
@@ -0,0 +1,89 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/** Results of blame, kept in .gitlet/blame with one file per commit and
+ *  path: the commit that introduced each line of that path as of that
+ *  commit. Since the history of a commit never changes, entries never
+ *  go stale. Each file holds the distinct origin IDs followed by one
+ *  index into them per line.
+ *  @author Kaito Garcia
+ */
+class BlameCache {
+
+    /** A cache kept in directory DIR, which need not exist yet. */
+    BlameCache(File dir) {
+        _dir = dir;
+    }
+
+    /** Returns the origin of each line of PATH as of COMMIT, or null if
+     *  that blame has not been cached. */
+    ObjectId[] read(ObjectId commit, String path) {
+        File file = file(commit, path);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                 new ByteArrayInputStream(Utils.readContents(file)))) {
+            ObjectId[] ids = new ObjectId[in.readInt()];
+            byte[] raw = new byte[ObjectId.RAW_LENGTH];
+            for (int i = 0; i < ids.length; i++) {
+                in.readFully(raw);
+                ids[i] = ObjectId.fromRaw(raw, 0);
+            }
+            ObjectId[] origins = new ObjectId[in.readInt()];
+            for (int i = 0; i < origins.length; i++) {
+                origins[i] = ids[in.readInt()];
+            }
+            return origins;
+        } catch (IOException | IllegalArgumentException
+                 | ArrayIndexOutOfBoundsException excp) {
+            return null;
+        }
+    }
+
+    /** Records ORIGINS as the origin of each line of PATH as of
+     *  COMMIT. */
+    void write(ObjectId commit, String path, ObjectId[] origins) {
+        HashMap<ObjectId, Integer> index = new HashMap<>();
+        ArrayList<ObjectId> ids = new ArrayList<>();
+        for (ObjectId origin : origins) {
+            if (!index.containsKey(origin)) {
+                index.put(origin, ids.size());
+                ids.add(origin);
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(ids.size());
+            byte[] raw = new byte[ObjectId.RAW_LENGTH];
+            for (ObjectId id : ids) {
+                id.copyRawTo(raw, 0);
+                out.write(raw);
+            }
+            out.writeInt(origins.length);
+            for (ObjectId origin : origins) {
+                out.writeInt(index.get(origin));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _dir.mkdirs();
+        Utils.writeContents(file(commit, path), bytes.toByteArray());
+    }
+
+    /** Returns the file caching the blame of PATH as of COMMIT. */
+    private File file(ObjectId commit, String path) {
+        return new File(_dir, Utils.sha1(commit.name(), path));
+    }
+
+    /** Directory holding the cache. */
+    private final File _dir;
+}
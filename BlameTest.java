@@ -0,0 +1,133 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of blame and the line matching it rests on.
+ *  @author Kaito Garcia
+ */
+public class BlameTest extends ScratchTestCase {
+
+    /** Makes a repository in the scratch directory. */
+    @Before
+    public void setUp() {
+        _repo = init(_dir);
+    }
+
+    /** Lines are split without their terminators. */
+    @Test
+    public void splitsLines() {
+        assertEquals(0, Diff.lines("").length);
+        assertArrayEquals(new String[] {"a", "b"}, Diff.lines("a\nb\n"));
+        assertArrayEquals(new String[] {"a", "", "b"}, Diff.lines("a\n\nb"));
+    }
+
+    /** Matching pairs the lines of a longest common subsequence, in
+     *  order. */
+    @Test
+    public void matchesLines() {
+        String[] a = {"a", "b", "c", "a", "b", "b", "a"};
+        String[] b = {"c", "b", "a", "b", "a", "c"};
+        int[] match = Diff.match(a, b);
+        int matched = 0;
+        int last = -1;
+        for (int j = 0; j < b.length; j += 1) {
+            if (match[j] >= 0) {
+                assertEquals(a[match[j]], b[j]);
+                assertTrue(match[j] > last);
+                last = match[j];
+                matched += 1;
+            }
+        }
+        assertEquals(4, matched);
+        assertArrayEquals(new int[] {-1, -1}, Diff.match(new String[0],
+                new String[] {"x", "y"}));
+    }
+
+    /** Each line is blamed on the commit that last introduced it, as of
+     *  the head commit or a given one. */
+    @Test
+    public void blamesLines() {
+        ObjectId one = commit("a\nb\nc\n", "one");
+        ObjectId two = commit("a\nB\nc\nd\n", "two");
+        Utils.writeContents(new File(_dir, "g.txt"), "other");
+        _repo.add("g.txt");
+        ObjectId three = _repo.commit("three");
+        assertEquals(Arrays.asList(one, two, one, two), origins("f.txt"));
+        assertEquals(Arrays.asList(one, one, one),
+                origins(one.name(), "--", "f.txt"));
+        assertTrue(_repo.run("blame", "f.txt").startsWith(
+                one.name().substring(0, 8) + " 1) a\n"));
+        assertEquals(Arrays.asList(three), origins("g.txt"));
+        assertEquals("File does not exist in that commit.\n",
+                _repo.run("blame", "h.txt"));
+        assertEquals("No commit with that id exists.\n",
+                _repo.run("blame", "0000", "--", "f.txt"));
+    }
+
+    /** A file deleted and added again is blamed on its return. */
+    @Test
+    public void restartsAtAddition() {
+        commit("a\n", "one");
+        _repo.rm("f.txt");
+        _repo.commit("gone");
+        ObjectId back = commit("a\n", "back");
+        assertEquals(Arrays.asList(back), origins("f.txt"));
+    }
+
+    /** A blame reuses the cached blame of an ancestor, without reading
+     *  the versions of the file older than that ancestor. */
+    @Test
+    public void reusesCache() {
+        ObjectId one = commit("a\nb\nc\n", "one");
+        ObjectId two = commit("a\nb\nc\nd\n", "two");
+        assertEquals(Arrays.asList(one, one, one, two), origins("f.txt"));
+        ObjectId old = _repo.readCommit(one.name()).getBlobs().get("f.txt");
+        _repo.close();
+        File blob = new File(_dir, ".gitlet/stagingArea/" + old.name());
+        assertTrue(blob.delete());
+        _repo = open(_dir);
+        ObjectId three = commit("A\nb\nc\nd\n", "three");
+        assertEquals(Arrays.asList(three, one, one, two), origins("f.txt"));
+        assertEquals(Arrays.asList(one, one, one, two),
+                origins(two.name(), "--", "f.txt"));
+    }
+
+    /** Writes TEXT to f.txt and commits it with MESSAGE, returning the
+     *  new commit. */
+    private ObjectId commit(String text, String message) {
+        Utils.writeContents(new File(_dir, "f.txt"), text);
+        _repo.add("f.txt");
+        return _repo.commit(message);
+    }
+
+    /** Returns the commits to which "blame ARGS" attributes each line,
+     *  matched by the abbreviated IDs it prints. */
+    private List<ObjectId> origins(String... args) {
+        String[] command = new String[args.length + 1];
+        command[0] = "blame";
+        System.arraycopy(args, 0, command, 1, args.length);
+        List<ObjectId> result = new ArrayList<>();
+        for (String line : Diff.lines(_repo.run(command))) {
+            String prefix = line.substring(0, line.indexOf(' '));
+            List<ObjectId> matches = new ArrayList<>();
+            _repo.log().forEachRemaining(c -> {
+                if (c.getHashID().startsWith(prefix)) {
+                    matches.add(c.getHashID());
+                }
+            });
+            assertEquals(line, 1, matches.size());
+            result.add(matches.get(0));
+        }
+        return result;
+    }
+
+    /** The repository in it. */
+    private Repository _repo;
+}
@@ -0,0 +1,75 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of moving blobs between the object store and the working
+ *  tree.
+ *  @author Kaito Garcia
+ */
+public class BlobTransferTest extends ScratchTestCase {
+
+    /** Makes a repository in the scratch directory. */
+    @Before
+    public void setUp() {
+        _repo = init(_dir);
+    }
+
+    /** Hashing a file streams it to the same ID as hashing its bytes. */
+    @Test
+    public void hashesFiles() {
+        byte[] data = random(3 << 20, 1);
+        File file = new File(_dir, "big.bin");
+        Utils.writeContents(file, data);
+        assertEquals(Utils.sha1Id(data), Utils.sha1File(file));
+    }
+
+    /** Large binary, small and empty files come back byte for byte
+     *  when checked out. */
+    @Test
+    public void checkoutRestoresContents() {
+        byte[][] versions = {random(3 << 20, 2), "x".getBytes(), {}};
+        String[] names = {"big.bin", "small.txt", "empty.txt"};
+        for (int i = 0; i < names.length; i += 1) {
+            Utils.writeContents(new File(_dir, names[i]), versions[i]);
+            _repo.add(names[i]);
+        }
+        ObjectId first = _repo.commit("first");
+        for (String name : names) {
+            Utils.writeContents(new File(_dir, name), "changed");
+            _repo.add(name);
+        }
+        _repo.commit("second");
+        for (int i = 0; i < names.length; i += 1) {
+            _repo.checkoutFile(first.name(), names[i]);
+            assertArrayEquals(names[i], versions[i],
+                    Utils.readContents(new File(_dir, names[i])));
+        }
+    }
+
+    /** Copying replaces the target with exactly the source. */
+    @Test
+    public void copyFileReplaces() {
+        File from = new File(_dir, "from");
+        File to = new File(_dir, "to");
+        byte[] data = random(100000, 3);
+        Utils.writeContents(from, data);
+        Utils.writeContents(to, random(300000, 4));
+        assertEquals(data.length, Utils.copyFile(from, to));
+        assertArrayEquals(data, Utils.readContents(to));
+    }
+
+    /** Returns N random bytes from a generator seeded with SEED. */
+    private static byte[] random(int n, long seed) {
+        byte[] data = new byte[n];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    /** The repository in it. */
+    private Repository _repo;
+}
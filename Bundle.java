@@ -0,0 +1,374 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/** A bundle: objects of a repository, and the branches that reach them,
+ *  in a single file for moving between hosts. The file is written in one
+ *  sequential pass, each object compressed as it streams through:
+ *
+ *      header   MAGIC, VERSION (ints)
+ *      objects  for each: type (byte), ID (20 bytes), then the contents
+ *               as a deflate stream
+ *      trailer  the heads: a count, then for each its name (modified
+ *               UTF-8) and tip; the prerequisites, commits the bundle
+ *               leaves out and a receiver must already have: a count,
+ *               then their IDs; the index: a count, then for each
+ *               object its type, ID, and the offset and length of its
+ *               compressed contents (longs)
+ *      end      offset of the trailer (long), MAGIC (int)
+ *
+ *  A reader finds the trailer from the end, and can then decompress any
+ *  object on its own, so several threads may read one bundle at once.
+ *  @author Kaito Garcia
+ */
+class Bundle {
+
+    /** Writes a new bundle file. Objects are added one at a time, then
+     *  close writes the trailer. */
+    static class Writer implements AutoCloseable {
+
+        /** A writer of the bundle FILE whose heads are HEADS, as
+         *  <name, tip>, and whose prerequisites are PREREQUISITES. */
+        Writer(File file, Map<String, ObjectId> heads,
+               Collection<ObjectId> prerequisites) {
+            try {
+                _count = new Counter(new BufferedOutputStream(
+                        new FileOutputStream(file), BUFFER));
+            } catch (IOException excp) {
+                throw Utils.error("Cannot write %s.", file);
+            }
+            _out = new DataOutputStream(_count);
+            _heads = new TreeMap<>(heads);
+            _prerequisites = new ArrayList<>(prerequisites);
+            _deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                _out.writeInt(MAGIC);
+                _out.writeInt(VERSION);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Adds the object of type TYPE, COMMIT or BLOB, with ID ID,
+         *  whose contents IN supplies, compressing them as they are
+         *  copied. Closes IN. */
+        void add(byte type, ObjectId id, InputStream in) {
+            try (InputStream source = in) {
+                _out.writeByte(type);
+                writeId(_out, id);
+                long offset = _count.count();
+                _deflater.reset();
+                DeflaterOutputStream zip =
+                    new DeflaterOutputStream(_out, _deflater, BUFFER);
+                source.transferTo(zip);
+                zip.finish();
+                _entries.add(new Entry(type, id, offset,
+                        _count.count() - offset));
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Writes the trailer and closes the file. */
+        @Override
+        public void close() {
+            try (DataOutputStream out = _out) {
+                long trailer = _count.count();
+                out.writeInt(_heads.size());
+                for (Map.Entry<String, ObjectId> head : _heads.entrySet()) {
+                    out.writeUTF(head.getKey());
+                    writeId(out, head.getValue());
+                }
+                out.writeInt(_prerequisites.size());
+                for (ObjectId id : _prerequisites) {
+                    writeId(out, id);
+                }
+                out.writeInt(_entries.size());
+                for (Entry entry : _entries) {
+                    out.writeByte(entry.type());
+                    writeId(out, entry.id());
+                    out.writeLong(entry._offset);
+                    out.writeLong(entry._length);
+                }
+                out.writeLong(trailer);
+                out.writeInt(MAGIC);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            } finally {
+                _deflater.end();
+            }
+        }
+
+        /** Counts the bytes written to the file. */
+        private final Counter _count;
+        /** Writes the file. */
+        private final DataOutputStream _out;
+        /** Compresses each object in turn. */
+        private final Deflater _deflater;
+        /** Heads, as <name, tip>. */
+        private final TreeMap<String, ObjectId> _heads;
+        /** Prerequisite commits. */
+        private final ArrayList<ObjectId> _prerequisites;
+        /** Index of the objects written so far. */
+        private final ArrayList<Entry> _entries = new ArrayList<>();
+    }
+
+    /** One object of a bundle. */
+    static class Entry {
+
+        /** The object of type TYPE with ID ID, whose compressed contents
+         *  are LENGTH bytes at OFFSET. */
+        Entry(byte type, ObjectId id, long offset, long length) {
+            _type = type;
+            _id = id;
+            _offset = offset;
+            _length = length;
+        }
+
+        /** Returns the type of the object, COMMIT or BLOB. */
+        byte type() {
+            return _type;
+        }
+
+        /** Returns the ID of the object. */
+        ObjectId id() {
+            return _id;
+        }
+
+        /** Type of object. */
+        private final byte _type;
+        /** Object ID. */
+        private final ObjectId _id;
+        /** Position of the compressed contents. */
+        private final long _offset;
+        /** Length of the compressed contents. */
+        private final long _length;
+    }
+
+    /** The bundle in FILE, whose trailer is read at once. A file that
+     *  does not start with MAGIC and this VERSION is not a bundle. */
+    Bundle(File file) {
+        _file = file;
+        try {
+            _channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.READ);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read %s.", file);
+        }
+        try {
+            long size = _channel.size();
+            ByteBuffer end = read(size - END, END);
+            long trailer = end.getLong();
+            if (size < HEADER + END || end.getInt() != MAGIC
+                    || read(0, HEADER).getLong()
+                       != ((long) MAGIC << 32 | VERSION)
+                    || trailer < HEADER || trailer > size - END) {
+                throw notBundle();
+            }
+            ByteBuffer bytes = read(trailer, (int) (size - END - trailer));
+            DataInputStream in = new DataInputStream(
+                    new ByteArrayInputStream(bytes.array()));
+            TreeMap<String, ObjectId> heads = new TreeMap<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                heads.put(in.readUTF(), readId(in));
+            }
+            ArrayList<ObjectId> prerequisites = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                prerequisites.add(readId(in));
+            }
+            ArrayList<Entry> entries = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                entries.add(new Entry(in.readByte(), readId(in),
+                        in.readLong(), in.readLong()));
+            }
+            _heads = Collections.unmodifiableMap(heads);
+            _prerequisites = Collections.unmodifiableList(prerequisites);
+            _entries = Collections.unmodifiableList(entries);
+        } catch (IOException | RuntimeException excp) {
+            close();
+            throw notBundle();
+        }
+    }
+
+    /** Returns the heads, as <name, tip>, in order of name. */
+    Map<String, ObjectId> heads() {
+        return _heads;
+    }
+
+    /** Returns the commits the receiver must already have. */
+    List<ObjectId> prerequisites() {
+        return _prerequisites;
+    }
+
+    /** Returns the objects, in the order they were written. */
+    List<Entry> entries() {
+        return _entries;
+    }
+
+    /** Returns the contents of the object ENTRY. May be called from
+     *  several threads at once. */
+    byte[] read(Entry entry) {
+        if (entry._length > Integer.MAX_VALUE) {
+            throw Utils.error("Object %s is too large.", entry._id.name());
+        } else if (entry._offset < HEADER || entry._length < 0) {
+            throw Utils.error("Object %s is corrupt.", entry._id.name());
+        }
+        ByteBuffer zipped;
+        try {
+            zipped = read(entry._offset, (int) entry._length);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read %s.", _file);
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(zipped.array());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BUFFER];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput()
+                        || inflater.needsDictionary())) {
+                    throw Utils.error("Object %s is truncated.",
+                            entry._id.name());
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException excp) {
+            throw Utils.error("Object %s is corrupt.", entry._id.name());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** Closes the file. */
+    void close() {
+        try {
+            _channel.close();
+        } catch (IOException excp) {
+            /* Ignore: nothing was written. */
+        }
+    }
+
+    /** Returns LENGTH bytes of the file at POSITION, in a heap buffer
+     *  positioned at its start. */
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int n = _channel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                throw new IOException("unexpected end of file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /** Returns the error reporting that the file is not a bundle. */
+    private GitletException notBundle() {
+        return Utils.error("%s is not a bundle.", _file);
+    }
+
+    /** Returns an object ID read from IN. */
+    private static ObjectId readId(DataInputStream in) throws IOException {
+        byte[] raw = new byte[ObjectId.RAW_LENGTH];
+        in.readFully(raw);
+        return ObjectId.fromRaw(raw, 0);
+    }
+
+    /** Writes ID to OUT. */
+    private static void writeId(DataOutputStream out, ObjectId id)
+        throws IOException {
+        byte[] raw = new byte[ObjectId.RAW_LENGTH];
+        id.copyRawTo(raw, 0);
+        out.write(raw);
+    }
+
+    /** Passes bytes on to another stream, counting them. */
+    private static class Counter extends FilterOutputStream {
+
+        /** A counter of the bytes written to OUT. */
+        Counter(OutputStream out) {
+            super(out);
+        }
+
+        /** Returns the number of bytes written so far. */
+        long count() {
+            return _written;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            _written += 1;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            _written += len;
+        }
+
+        /** Bytes written. */
+        private long _written;
+    }
+
+    /** Type of a commit. */
+    static final byte COMMIT = 1;
+
+    /** Type of a blob. */
+    static final byte BLOB = 2;
+
+    /** Marks the start and end of a bundle: "GLBN". */
+    private static final int MAGIC = 0x474c424e;
+
+    /** Version of the format. */
+    private static final int VERSION = 1;
+
+    /** Length of the header. */
+    private static final int HEADER = 2 * Integer.BYTES;
+
+    /** Length of the end. */
+    private static final int END = Long.BYTES + Integer.BYTES;
+
+    /** Size of the buffers objects stream through. */
+    private static final int BUFFER = 1 << 16;
+
+    /** The bundle file. */
+    private final File _file;
+
+    /** Reads the file, from any thread. */
+    private final FileChannel _channel;
+
+    /** Heads, as <name, tip>. */
+    private final Map<String, ObjectId> _heads;
+
+    /** Prerequisite commits. */
+    private final List<ObjectId> _prerequisites;
+
+    /** Index of the objects. */
+    private final List<Entry> _entries;
+}
@@ -0,0 +1,122 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of bundle create and unbundle.
+ *  @author Kaito Garcia
+ */
+public class BundleTest extends ScratchTestCase {
+
+    /** Makes a source and a destination repository in the scratch
+     *  directory. */
+    @Before
+    public void setUp() {
+        _from = new File(_dir, "from");
+        _to = new File(_dir, "to");
+        _from.mkdir();
+        _to.mkdir();
+        _source = init(_from);
+        _dest = init(_to);
+        _bundle = new File(_dir, "b.bundle");
+    }
+
+    /** Every object reachable from the heads arrives intact, including a
+     *  commit whose files were mostly removed, and each head becomes a
+     *  bundle/ branch that can be checked out. */
+    @Test
+    public void roundTrips() {
+        for (int i = 1; i <= 200; i += 1) {
+            write("f" + i, "" + i);
+        }
+        _source.commit("many");
+        for (int i = 30; i <= 200; i += 1) {
+            _source.rm("f" + i);
+        }
+        ObjectId tip = _source.commit("few");
+        assertEquals("", _source.run("bundle", "create", _bundle.getPath(),
+                "master"));
+        assertEquals("", _dest.run("bundle", "unbundle",
+                _bundle.getPath()));
+        assertEquals("", _dest.run("fsck"));
+        assertTrue(_dest.run("status").contains("bundle/master\n"));
+        _dest.reset(tip.name());
+        assertEquals("29", Utils.readContentsAsString(new File(_to, "f29")));
+        assertFalse(new File(_to, "f30").exists());
+        assertEquals("", _dest.run("bundle", "unbundle",
+                _bundle.getPath()));
+    }
+
+    /** A bundle made since a commit needs the receiver to have it. */
+    @Test
+    public void needsPrerequisites() {
+        write("a.txt", "a");
+        ObjectId one = _source.commit("one");
+        write("b.txt", "b");
+        _source.commit("two");
+        _source.run("bundle", "create", _bundle.getPath(), "master",
+                "--since", one.name());
+        assertEquals("Repository lacks these prerequisite commits:\n"
+                + one.name() + "\n",
+                _dest.run("bundle", "unbundle", _bundle.getPath()));
+        assertFalse(_dest.run("status").contains("bundle/"));
+    }
+
+    /** A damaged bundle, or one of another format version, is rejected
+     *  in one line, and sets no branch. */
+    @Test
+    public void rejectsDamage() throws IOException {
+        write("a.txt", "some contents long enough to compress at all");
+        _source.commit("one");
+        _source.run("bundle", "create", _bundle.getPath(), "master");
+        try (RandomAccessFile file = new RandomAccessFile(_bundle, "rw")) {
+            file.seek(HEADER + 1 + ObjectId.RAW_LENGTH + 4);
+            int b = file.read();
+            file.seek(file.getFilePointer() - 1);
+            file.write(b ^ 0xff);
+        }
+        String output = _dest.run("bundle", "unbundle", _bundle.getPath());
+        assertTrue(output, output.matches(_bundle.getPath().replace(".",
+                "\\.") + " rejected: Object [0-9a-f]{40} is"
+                + " (corrupt|truncated)\\.\n"));
+        assertFalse(_dest.run("status").contains("bundle/"));
+
+        _source.run("bundle", "create", _bundle.getPath(), "master");
+        try (RandomAccessFile file = new RandomAccessFile(_bundle, "rw")) {
+            file.seek(HEADER - 1);
+            file.write(2);
+        }
+        assertEquals(_bundle.getPath() + " is not a bundle.\n",
+                _dest.run("bundle", "unbundle", _bundle.getPath()));
+
+        Utils.writeContents(_bundle, "not a bundle at all");
+        assertEquals(_bundle.getPath() + " is not a bundle.\n",
+                _dest.run("bundle", "unbundle", _bundle.getPath()));
+    }
+
+    /** Writes TEXT to the source's working file NAME and adds it. */
+    private void write(String name, String text) {
+        Utils.writeContents(new File(_from, name), text);
+        _source.add(name);
+    }
+
+    /** Length of a bundle's header. */
+    private static final int HEADER = 8;
+
+    /** Working directories of the two repositories. */
+    private File _from, _to;
+
+    /** Repository bundled from. */
+    private Repository _source;
+
+    /** Repository unbundled into. */
+    private Repository _dest;
+
+    /** The bundle file. */
+    private File _bundle;
+}
@@ -0,0 +1,107 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the checkout.mode setting.
+ *  @author Kaito Garcia
+ */
+public class CheckoutModeTest extends ScratchTestCase {
+
+    /** Makes a repository in the scratch directory. */
+    @Before
+    public void setUp() {
+        _repo = init(_dir);
+    }
+
+    /** Under reflink, branches check out with the right contents, as
+     *  writable files of their own, whether or not the file system can
+     *  clone them. */
+    @Test
+    public void reflinkChecksOut() throws IOException {
+        _repo.run("config", Config.CHECKOUT_MODE, "reflink");
+        checkoutsAreIndependent();
+    }
+
+    /** The setting link, no longer supported, copies. */
+    @Test
+    public void linkCopies() throws IOException {
+        _repo.run("config", Config.CHECKOUT_MODE, "link");
+        checkoutsAreIndependent();
+    }
+
+    /** Cloning either makes clones under the same names, or reports that
+     *  it cannot. */
+    @Test
+    public void reflinkFilesClonesOrFails() {
+        File from = new File(_dir, "from");
+        File dir = new File(_dir, "clones");
+        from.mkdir();
+        dir.mkdir();
+        Utils.writeContents(new File(from, "a"), "one");
+        Utils.writeContents(new File(from, "b"), "two");
+        if (Utils.reflinkFiles(Arrays.asList(new File(from, "a"),
+                                             new File(from, "b")), dir)) {
+            assertEquals("one",
+                    Utils.readContentsAsString(new File(dir, "a")));
+            assertEquals("two",
+                    Utils.readContentsAsString(new File(dir, "b")));
+        }
+        assertFalse(Utils.reflinkFiles(Arrays.asList(new File(from, "c")),
+                dir));
+    }
+
+    /** Checks that checking out branches, with files sharing a blob,
+     *  writes the right contents into writable files that share nothing
+     *  with the object store, and that editing them in place leaves the
+     *  stored blobs as they were. */
+    private void checkoutsAreIndependent() throws IOException {
+        write("a.txt", "same\n");
+        write("b.txt", "same\n");
+        write("c.txt", "c on master\n");
+        _repo.commit("master");
+        _repo.branch("other");
+        _repo.checkout("other");
+        write("c.txt", "c on other\n");
+        _repo.commit("other");
+        _repo.checkout("master");
+
+        assertEquals("c on master\n", read("c.txt"));
+        for (String name : new String[] {"a.txt", "b.txt", "c.txt"}) {
+            File file = new File(_dir, name);
+            assertTrue(name, file.canWrite());
+            assertEquals(name, 1,
+                    Files.getAttribute(file.toPath(), "unix:nlink"));
+            try (FileOutputStream out = new FileOutputStream(file, true)) {
+                out.write("edited\n".getBytes());
+            }
+        }
+        _repo.checkoutFile(null, "a.txt");
+        _repo.checkoutFile(null, "b.txt");
+        _repo.checkout("other");
+        assertEquals("same\n", read("a.txt"));
+        assertEquals("same\n", read("b.txt"));
+        assertEquals("c on other\n", read("c.txt"));
+    }
+
+    /** Writes TEXT to the working file NAME and adds it. */
+    private void write(String name, String text) {
+        Utils.writeContents(new File(_dir, name), text);
+        _repo.add(name);
+    }
+
+    /** Returns the contents of the working file NAME. */
+    private String read(String name) {
+        return Utils.readContentsAsString(new File(_dir, name));
+    }
+
+    /** The repository in it. */
+    private Repository _repo;
+}
@@ -0,0 +1,418 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/** Blobs stored as content-defined chunks. A blob kept here has, in
+ *  place of a BLOB object, a MANIFEST object of the same ID listing the
+ *  IDs and lengths of its chunks, each stored once as a CHUNK object
+ *  under its own SHA-1 (see ObjectStore); the blob's ID remains the
+ *  SHA-1 of its whole
+ *  contents. Since boundaries are chosen by content, with a FastCDC
+ *  gear hash, an edit moves only the boundaries near it, and the chunks
+ *  shared by versions of a file, or by different files, are stored
+ *  once.
+ *
+ *  Chunking runs in parallel: the contents are cut into segments, each
+ *  chunked as if a chunk began at its start, and the segments are then
+ *  stitched together by rechunking from the last true boundary until
+ *  the boundaries agree again, so the result is the same as chunking
+ *  the whole in one pass. The chunks are then hashed in parallel. A
+ *  blob is reassembled by copying its chunks one after another, never
+ *  holding more than one in memory.
+ *  @author Kaito Garcia
+ */
+class ChunkStore {
+
+    /** The chunked blobs among OBJECTS, recording spans in TRACE. */
+    ChunkStore(ObjectStore objects, Trace trace) {
+        _objects = objects;
+        _trace = trace;
+    }
+
+    /** Returns true iff the blob with ID BLOB is stored here. */
+    boolean contains(ObjectId blob) {
+        return _objects.has(MANIFEST, blob);
+    }
+
+    /** Stores the contents of SOURCE, whose ID is BLOB, as chunks. */
+    void write(ObjectId blob, File source) {
+        long start = _trace.start();
+        MappedByteBuffer data = map(source);
+        int[] cuts = cuts(data);
+        ObjectId[] ids = new ObjectId[cuts.length];
+        IntStream.range(0, cuts.length).parallel().forEach(i -> {
+            ids[i] = hash(slice(data, i == 0 ? 0 : cuts[i - 1], cuts[i]));
+        });
+        for (int i = 0; i < cuts.length; i++) {
+            if (!_objects.has(CHUNK, ids[i])) {
+                ByteBuffer chunk = slice(data, i == 0 ? 0 : cuts[i - 1],
+                        cuts[i]);
+                byte[] bytes = new byte[chunk.remaining()];
+                chunk.get(bytes);
+                _objects.write(CHUNK, ids[i], bytes);
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(cuts.length);
+            byte[] raw = new byte[ObjectId.RAW_LENGTH];
+            for (int i = 0; i < cuts.length; i++) {
+                ids[i].copyRawTo(raw, 0);
+                out.write(raw);
+                out.writeInt(cuts[i] - (i == 0 ? 0 : cuts[i - 1]));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _objects.write(MANIFEST, blob, bytes.toByteArray());
+        _trace.end("chunk.write", start, cuts.length, data.limit(),
+                blob.name());
+    }
+
+    /** Returns the length of the blob with ID BLOB. */
+    long size(ObjectId blob) {
+        long size = 0;
+        for (Chunk chunk : chunks(blob)) {
+            size += chunk._length;
+        }
+        return size;
+    }
+
+    /** Returns the contents of the blob with ID BLOB. */
+    ByteBuffer read(ObjectId blob) {
+        long size = size(blob);
+        if (size > Integer.MAX_VALUE) {
+            throw Utils.error("Blob %s is too large to read.", blob.name());
+        }
+        ByteBuffer result = ByteBuffer.allocate((int) size);
+        for (Chunk chunk : chunks(blob)) {
+            result.put(_objects.read(CHUNK, chunk._id));
+        }
+        result.flip();
+        return result;
+    }
+
+    /** Writes the contents of the blob with ID BLOB to TARGET, streaming
+     *  its chunks one after another into a temporary file that then
+     *  replaces TARGET, so that TARGET is never seen half written.
+     *  @return the number of bytes written */
+    long copyTo(ObjectId blob, File target) {
+        long start = _trace.start();
+        Iterator<Chunk> chunks = chunks(blob).iterator();
+        InputStream in = new SequenceInputStream(
+            new Enumeration<InputStream>() {
+                @Override
+                public boolean hasMoreElements() {
+                    return chunks.hasNext();
+                }
+
+                @Override
+                public InputStream nextElement() {
+                    return _objects.stream(CHUNK, chunks.next()._id);
+                }
+            });
+        long size = Durable.replaceByCopy(in, target);
+        _trace.end("chunk.reassemble", start, 1, size, blob.name());
+        return size;
+    }
+
+    /** Returns the IDs of the blobs stored here. */
+    List<ObjectId> blobs() {
+        return _objects.iterate(MANIFEST);
+    }
+
+    /** Returns true iff the blob with ID BLOB is intact: its manifest
+     *  is readable, each of its chunks is present, as long as the
+     *  manifest says and hashes to its ID, and the chunks together hash
+     *  to BLOB. Reads one chunk at a time. */
+    boolean verify(ObjectId blob) {
+        MessageDigest whole = digest();
+        try {
+            for (Chunk chunk : chunks(blob)) {
+                if (!_objects.has(CHUNK, chunk._id)
+                        || _objects.size(CHUNK, chunk._id) != chunk._length) {
+                    return false;
+                }
+                ByteBuffer data =
+                    ByteBuffer.wrap(_objects.read(CHUNK, chunk._id));
+                if (!hash(data).equals(chunk._id)) {
+                    return false;
+                }
+                whole.update(data);
+            }
+        } catch (GitletException | IllegalArgumentException excp) {
+            return false;
+        }
+        return ObjectId.fromRaw(whole.digest(), 0).equals(blob);
+    }
+
+    /** Deletes the manifest of each blob not in LIVE that was last
+     *  modified before BEFORE, then each chunk, also older than BEFORE,
+     *  that no remaining manifest lists. Chunks are left alone if any
+     *  manifest cannot be read, and deletion stops once the time is
+     *  past DEADLINE.
+     *  @return the number of objects deleted */
+    int prune(Set<ObjectId> live, long before, long deadline) {
+        int deleted = 0;
+        HashSet<ObjectId> used = new HashSet<>();
+        for (ObjectId blob : blobs()) {
+            if (!live.contains(blob)
+                    && _objects.modified(MANIFEST, blob) < before
+                    && _objects.delete(MANIFEST, blob)) {
+                deleted += 1;
+                continue;
+            }
+            try {
+                for (Chunk chunk : chunks(blob)) {
+                    used.add(chunk._id);
+                }
+            } catch (GitletException | IllegalArgumentException excp) {
+                return deleted;
+            }
+        }
+        for (ObjectId chunk : _objects.iterate(CHUNK)) {
+            if (System.currentTimeMillis() > deadline) {
+                break;
+            }
+            if (!used.contains(chunk)
+                    && _objects.modified(CHUNK, chunk) < before
+                    && _objects.delete(CHUNK, chunk)) {
+                deleted += 1;
+            }
+        }
+        return deleted;
+    }
+
+    /** Copies the blob with ID BLOB from OTHER, with whichever of its
+     *  chunks are not already here. */
+    void copyFrom(ChunkStore other, ObjectId blob) {
+        if (contains(blob)) {
+            return;
+        }
+        for (Chunk chunk : other.chunks(blob)) {
+            if (!_objects.has(CHUNK, chunk._id)) {
+                _objects.write(CHUNK, chunk._id,
+                        other._objects.stream(CHUNK, chunk._id));
+            }
+        }
+        _objects.write(MANIFEST, blob, other._objects.stream(MANIFEST, blob));
+    }
+
+    /** Returns the chunks of the blob with ID BLOB, in order. */
+    private List<Chunk> chunks(ObjectId blob) {
+        ArrayList<Chunk> chunks = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(
+                 new ByteArrayInputStream(_objects.read(MANIFEST, blob)))) {
+            int count = in.readInt();
+            byte[] raw = new byte[ObjectId.RAW_LENGTH];
+            for (int i = 0; i < count; i++) {
+                in.readFully(raw);
+                chunks.add(new Chunk(ObjectId.fromRaw(raw, 0), in.readInt()));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt manifest %s.", blob.name());
+        }
+        return chunks;
+    }
+
+    /** Returns the SHA-1 of DATA, the ID of the chunk holding it. */
+    private static ObjectId hash(ByteBuffer data) {
+        MessageDigest md = digest();
+        md.update(data.duplicate());
+        return ObjectId.fromRaw(md.digest(), 0);
+    }
+
+    /** Returns a new SHA-1 digester. */
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support "
+                    + "SHA-1");
+        }
+    }
+
+    /** Returns the end of each chunk of DATA, in order. */
+    static int[] cuts(ByteBuffer data) {
+        int length = data.limit();
+        int segments = Math.max(1, Math.min(length / SEGMENT,
+                Runtime.getRuntime().availableProcessors() * 4));
+        int[][] found = new int[segments][];
+        IntStream.range(0, segments).parallel().forEach(s -> {
+            found[s] = cutsFrom(data, (int) ((long) length * s / segments),
+                    (int) ((long) length * (s + 1) / segments));
+        });
+
+        ArrayList<Integer> cuts = new ArrayList<>();
+        for (int cut : found[0]) {
+            cuts.add(cut);
+        }
+        for (int s = 1; s < segments; s++) {
+            int segmentEnd = (int) ((long) length * (s + 1) / segments);
+            int pos = cuts.isEmpty() ? 0 : cuts.get(cuts.size() - 1);
+            int k = 0;
+            boolean synced = false;
+            while (pos < segmentEnd && !synced) {
+                pos = cut(data, pos, length);
+                cuts.add(pos);
+                while (k < found[s].length && found[s][k] < pos) {
+                    k += 1;
+                }
+                synced = k < found[s].length && found[s][k] == pos;
+            }
+            for (k += synced ? 1 : 0; synced && k < found[s].length; k++) {
+                cuts.add(found[s][k]);
+            }
+        }
+        int last = cuts.isEmpty() ? 0 : cuts.get(cuts.size() - 1);
+        while (last < length) {
+            last = cut(data, last, length);
+            cuts.add(last);
+        }
+        int[] result = new int[cuts.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = cuts.get(i);
+        }
+        return result;
+    }
+
+    /** Returns the ends of the chunks of DATA that begin at START, up to
+     *  and including the first that reaches END. The last may lie past
+     *  END, since a chunk may extend beyond it. */
+    private static int[] cutsFrom(ByteBuffer data, int start, int end) {
+        ArrayList<Integer> cuts = new ArrayList<>();
+        for (int pos = start; pos < end;) {
+            pos = cut(data, pos, data.limit());
+            cuts.add(pos);
+        }
+        int[] result = new int[cuts.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = cuts.get(i);
+        }
+        return result;
+    }
+
+    /** Returns the end of the chunk of DATA beginning at START, where
+     *  DATA ends at END. As in FastCDC, the first MIN_SIZE bytes are
+     *  skipped, a stricter mask is used below AVERAGE_SIZE and a looser
+     *  one above it, so that sizes cluster about the average, and no
+     *  chunk exceeds MAX_SIZE. */
+    static int cut(ByteBuffer data, int start, int end) {
+        if (end - start <= MIN_SIZE) {
+            return end;
+        }
+        int normal = Math.min(start + AVERAGE_SIZE, end);
+        int limit = Math.min(start + MAX_SIZE, end);
+        long hash = 0;
+        int i = start + MIN_SIZE;
+        for (; i < normal; i++) {
+            hash = (hash << 1) + GEAR[data.get(i) & 0xff];
+            if ((hash & MASK_SMALL) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < limit; i++) {
+            hash = (hash << 1) + GEAR[data.get(i) & 0xff];
+            if ((hash & MASK_LARGE) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+
+    /** Returns the bytes of DATA in [FROM, TO). */
+    private static ByteBuffer slice(ByteBuffer data, int from, int to) {
+        ByteBuffer slice = data.duplicate();
+        slice.limit(to);
+        slice.position(from);
+        return slice;
+    }
+
+    /** Returns the contents of FILE mapped read-only. */
+    private static MappedByteBuffer map(File file) {
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                 StandardOpenOption.READ)) {
+            return in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read %s.", file);
+        }
+    }
+
+    /** One entry of a manifest. */
+    private static class Chunk {
+
+        /** The chunk with ID ID and length LENGTH. */
+        Chunk(ObjectId id, int length) {
+            _id = id;
+            _length = length;
+        }
+
+        /** ID of the chunk. */
+        private final ObjectId _id;
+        /** Length of the chunk in bytes. */
+        private final int _length;
+    }
+
+    /** Size below which nothing is cut. */
+    static final int MIN_SIZE = 16 << 10;
+
+    /** Size about which chunk sizes cluster. */
+    static final int AVERAGE_SIZE = 64 << 10;
+
+    /** Largest chunk. */
+    static final int MAX_SIZE = 256 << 10;
+
+    /** Least length of a segment chunked on its own. */
+    private static final int SEGMENT = 4 << 20;
+
+    /** Mask of 18 high bits, for chunks still below the average. */
+    private static final long MASK_SMALL = 0xffffc00000000000L;
+
+    /** Mask of 14 high bits, for chunks above the average. */
+    private static final long MASK_LARGE = 0xfffc000000000000L;
+
+    /** Random values added to the hash for each byte. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x6ea2);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /** Type of the objects holding chunks. */
+    private static final ObjectStore.Type CHUNK = ObjectStore.Type.CHUNK;
+
+    /** Type of the objects holding manifests. */
+    private static final ObjectStore.Type MANIFEST =
+        ObjectStore.Type.MANIFEST;
+
+    /** Where the chunks and manifests are stored. */
+    private final ObjectStore _objects;
+
+    /** Where spans are recorded. */
+    private final Trace _trace;
+}
@@ -0,0 +1,165 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of content-defined chunking and of chunked blobs.
+ *  @author Kaito Garcia
+ */
+public class ChunkStoreTest extends ScratchTestCase {
+
+    /** Makes an object store in the scratch directory. */
+    @Before
+    public void setUp() {
+        File gitlet = new File(_dir, ".gitlet");
+        gitlet.mkdir();
+        Durable durable = new Durable();
+        durable.setPolicy("none");
+        _objects = new FileObjectStore(gitlet, durable);
+        _chunks = new ChunkStore(_objects, new Trace());
+    }
+
+    /** Closes the store. */
+    @After
+    public void tearDown() {
+        _objects.close();
+    }
+
+    /** Chunking segments in parallel and stitching them gives the same
+     *  boundaries as chunking in one pass, for random and for uniform
+     *  contents, long enough to be cut into several segments. */
+    @Test
+    public void stitchingMatchesOnePass() {
+        byte[] uniform = new byte[9 << 20];
+        for (byte[] data : new byte[][] {
+                random(20 << 20, 1), uniform, random(100, 2), {},
+                random(ChunkStore.MIN_SIZE + 1, 3)}) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            int[] cuts = ChunkStore.cuts(buffer);
+            assertArrayEquals(onePass(buffer), cuts);
+            int last = 0;
+            for (int cut : cuts) {
+                assertTrue(cut > last);
+                assertTrue(cut - last <= ChunkStore.MAX_SIZE);
+                last = cut;
+            }
+            assertEquals(data.length, last);
+        }
+    }
+
+    /** An insertion moves only the boundaries near it. */
+    @Test
+    public void editsAreLocal() {
+        byte[] data = random(8 << 20, 4);
+        byte[] edited = new byte[data.length + 10];
+        System.arraycopy(data, 0, edited, 0, 4 << 20);
+        System.arraycopy(data, 4 << 20, edited, (4 << 20) + 10,
+                data.length - (4 << 20));
+        Set<Integer> before = new HashSet<>();
+        for (int cut : ChunkStore.cuts(ByteBuffer.wrap(data))) {
+            before.add(cut < 4 << 20 ? cut : cut + 10);
+        }
+        int[] after = ChunkStore.cuts(ByteBuffer.wrap(edited));
+        int moved = 0;
+        for (int cut : after) {
+            moved += before.contains(cut) ? 0 : 1;
+        }
+        assertTrue(after.length > 50);
+        assertTrue("moved " + moved, moved <= 2);
+    }
+
+    /** A chunked blob reads and copies back byte for byte, replacing the
+     *  target and leaving no temporary file; versions share chunks. */
+    @Test
+    public void roundTrips() {
+        byte[] data = random(3 << 20, 5);
+        ObjectId blob = store("one", data);
+        assertTrue(_chunks.contains(blob));
+        assertEquals(data.length, _chunks.size(blob));
+        ByteBuffer read = _chunks.read(blob);
+        byte[] bytes = new byte[read.remaining()];
+        read.get(bytes);
+        assertArrayEquals(data, bytes);
+
+        File target = new File(_dir, "target");
+        Utils.writeContents(target, "old contents");
+        assertEquals(data.length, _chunks.copyTo(blob, target));
+        assertArrayEquals(data, Utils.readContents(target));
+        assertEquals(Arrays.asList("one", "target"),
+                Utils.plainFilenamesIn(_dir));
+        assertTrue(_chunks.verify(blob));
+
+        int chunks = _objects.iterate(ObjectStore.Type.CHUNK).size();
+        data[data.length / 2] ^= 1;
+        store("two", data);
+        int added = _objects.iterate(ObjectStore.Type.CHUNK).size() - chunks;
+        assertTrue("added " + added, added >= 1 && added <= 2);
+    }
+
+    /** A copy that fails leaves the target as it was. */
+    @Test
+    public void failedCopyKeepsTarget() {
+        ObjectId blob = store("one", random(1 << 20, 6));
+        List<ObjectId> chunks = _objects.iterate(ObjectStore.Type.CHUNK);
+        assertTrue(chunks.size() > 2);
+        File last = new File(_dir, ".gitlet/chunks/"
+                + chunks.get(chunks.size() - 1).name());
+        assertTrue(last.delete());
+        File target = new File(_dir, "target");
+        Utils.writeContents(target, "old contents");
+        try {
+            _chunks.copyTo(blob, target);
+            fail("copied a blob with a missing chunk");
+        } catch (RuntimeException excp) {
+            /* Expected. */
+        }
+        assertEquals("old contents", Utils.readContentsAsString(target));
+        assertEquals(Arrays.asList("one", "target"),
+                Utils.plainFilenamesIn(_dir));
+    }
+
+    /** Returns the ends of the chunks of DATA, found one after another
+     *  from its start. */
+    private static int[] onePass(ByteBuffer data) {
+        List<Integer> cuts = new ArrayList<>();
+        for (int pos = 0; pos < data.limit();) {
+            pos = ChunkStore.cut(data, pos, data.limit());
+            cuts.add(pos);
+        }
+        return cuts.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /** Writes DATA to the scratch file NAME, stores it as a chunked blob
+     *  and returns its ID. */
+    private ObjectId store(String name, byte[] data) {
+        File file = new File(_dir, name);
+        Utils.writeContents(file, data);
+        ObjectId id = Utils.sha1Id(data);
+        _chunks.write(id, file);
+        return id;
+    }
+
+    /** Returns N random bytes from a generator seeded with SEED. */
+    private static byte[] random(int n, long seed) {
+        byte[] data = new byte[n];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    /** Object store in it. */
+    private ObjectStore _objects;
+
+    /** Chunked blobs among its objects. */
+    private ChunkStore _chunks;
+}
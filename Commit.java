@@ -2,9 +2,11 @@ package gitlet;
 
 /* Data Structures */
 import java.io.Serializable;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.TreeMap;
 
 /**
  * Commit object.
@@ -19,45 +21,44 @@ public class Commit implements Serializable {
      * @param commitParent -- commit parent's SHA1-ID
      * @param textFiles -- HashMap with <filename.txt, SHA1-ID>
      */
-    public Commit(String msg, String commitParent,
-                  HashMap<String, String> textFiles) {
+    public Commit(String msg, ObjectId commitParent,
+                  HashMap<String, ObjectId> textFiles) {
         _message = msg;
         _parentHashID = commitParent;
         _blobs = textFiles;
 
         if (commitParent == null) {
-            _timestamp = "Wed Dec 31 16:00:00 1969 -0800";
+            _timestamp = timestamp(0);
         } else {
-
-            SimpleDateFormat date =
-                    new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy");
-            _timestamp = date.format(new Date()) + " -0800";
+            _timestamp = timestamp(System.currentTimeMillis());
         }
 
         _hashID = hasherCommit();
     }
 
     /**
-     * Takes in all data in commit object to convert to SHA1-ID.
+     * Takes in all data in commit object to convert to SHA1-ID. The
+     * blobs are hashed in order of file name, so that a commit read
+     * back, whose HashMap may iterate in another order, hashes the same.
      * @return Hashed commit object
      */
-    public String hasherCommit() {
+    public ObjectId hasherCommit() {
 
         String filesAsString;
         if (_blobs == null) {
             filesAsString = "";
         } else {
-            filesAsString = _blobs.toString();
+            filesAsString = new TreeMap<>(_blobs).toString();
         }
 
         String tempHash;
         if (_parentHashID == null) {
             tempHash = "";
         } else {
-            tempHash = _parentHashID;
+            tempHash = _parentHashID.name();
         }
 
-        return Utils.sha1(_message, tempHash,
+        return Utils.sha1Id(_message, tempHash,
                 _timestamp, filesAsString);
     }
 
@@ -80,11 +81,43 @@ public class Commit implements Serializable {
         return _timestamp;
     }
 
+    /**
+     * Returns the timestamp shown for a commit made at TIME, in
+     * milliseconds since the epoch; time 0 is that of the initial
+     * commit.
+     * @param time -- commit time
+     * @return timestamp
+     */
+    public static String timestamp(long time) {
+        if (time == 0) {
+            return "Wed Dec 31 16:00:00 1969 -0800";
+        }
+        return new SimpleDateFormat(DATE_FORMAT).format(new Date(time))
+            + " -0800";
+    }
+
+    /**
+     * Returns the time of this commit in milliseconds since the epoch,
+     * parsed from its timestamp, which is in local time.
+     * @return commit time
+     */
+    public long getTime() {
+        if (_parentHashID == null) {
+            return 0;
+        }
+        try {
+            return new SimpleDateFormat(DATE_FORMAT).parse(_timestamp)
+                .getTime();
+        } catch (ParseException excp) {
+            throw new GitletException("Bad commit timestamp: " + _timestamp);
+        }
+    }
+
     /**
      * Getter method for hash ID.
      * @return Hash ID
      */
-    public String getHashID() {
+    public ObjectId getHashID() {
         return _hashID;
     }
 
@@ -92,7 +125,7 @@ public class Commit implements Serializable {
      * Getter method for parent ID.
      * @return parent ID
      */
-    public String getParentHashID() {
+    public ObjectId getParentHashID() {
         return _parentHashID;
     }
 
@@ -100,11 +133,20 @@ public class Commit implements Serializable {
      * Getter method for blobs in commit.
      * @return blobs
      */
-    public HashMap<String, String> getBlobs() {
+    public HashMap<String, ObjectId> getBlobs() {
         return _blobs;
     }
 
 
+    /** Version of the serialized form, fixed so that stored commits
+     *  stay readable as this class changes. Commits of the original
+     *  gitlet, with string IDs, have another form and are not readable;
+     *  see Repo.FORMAT_VERSION. */
+    private static final long serialVersionUID = -3639079220084918116L;
+
+    /** Format of timestamps, before the zone. */
+    private static final String DATE_FORMAT = "EEE MMM d HH:mm:ss yyyy";
+
     /* Instance Variables */
     /** Commit message. */
     private String _message;
@@ -112,13 +154,13 @@ public class Commit implements Serializable {
     /** Timestamp of creation. */
     private String _timestamp;
 
-    /** String of commit's SHA1-ID. */
-    private String _hashID;
+    /** Commit's SHA1-ID. */
+    private ObjectId _hashID;
 
-    /** String of commit's PARENT'S SHA1-ID. */
-    private String _parentHashID;
+    /** Commit's PARENT'S SHA1-ID. */
+    private ObjectId _parentHashID;
 
     /** HashMap with filename as key and SHA1 as contents (<fileName, SHA1>). */
-    private HashMap<String, String> _blobs;
+    private HashMap<String, ObjectId> _blobs;
 
 }
@@ -0,0 +1,155 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/** Repository settings, kept as a properties file in .gitlet/config and
+ *  changed with "gitlet config KEY VALUE". Recognized keys:
+ *
+ *      checkout.mode   how blobs are materialized in the working tree:
+ *                      copy (the default) or reflink (copy-on-write
+ *                      clones, where the file system supports them,
+ *                      else copies). Other values mean copy.
+ *      core.fsync      how much is forced to disk: none, batch (the
+ *                      default; a command's objects are forced together
+ *                      before refs and state refer to them) or strict
+ *                      (every file as it is written). See Durable.
+ *      remote.NAME.path
+ *                      path to the .gitlet directory of remote NAME,
+ *                      set by add-remote.
+ *      fetch.promisor  remote from which the blobs left behind by a
+ *                      blobless fetch are copied when first read.
+ *      core.chunkThreshold
+ *                      size in bytes from which added files are stored
+ *                      as content-defined chunks, so that versions
+ *                      differing in small regions share storage. Unset
+ *                      (the default), every blob is stored whole. See
+ *                      ChunkStore.
+ *      diff.renameThreshold
+ *                      least similarity, as a percentage from 0 to 100
+ *                      (default 50), at which merge and log take an
+ *                      added file for a rename or copy of another. 100
+ *                      finds only files moved unchanged.
+ *      core.formatVersion
+ *                      version of the layout of .gitlet, set by init;
+ *                      a repository of another version is refused
+ *                      rather than misread. See Repo.FORMAT_VERSION.
+ *      core.objectStore
+ *                      where objects are kept: files (the default; one
+ *                      file per object) or kv (the single file
+ *                      .gitlet/objects.kv). Set by "init --object-store
+ *                      NAME"; changing it later loses the objects. See
+ *                      ObjectStore.
+ *      maintenance.auto, maintenance.budget, gc.auto, gc.pruneExpire,
+ *      maintenance.indexThreshold
+ *                      when background upkeep runs, and what it may
+ *                      delete. See Maintenance.
+ *
+ *  @author Kaito Garcia
+ */
+class Config {
+
+    /** Settings stored in FILE, which need not exist yet, and written
+     *  through DURABLE. */
+    Config(File file, Durable durable) {
+        _file = file;
+        _durable = durable;
+        _values = new Properties();
+        load();
+    }
+
+    /** Replaces the current settings by those in the file. */
+    private void load() {
+        _values.clear();
+        if (_file.isFile()) {
+            try (InputStream in = new FileInputStream(_file)) {
+                _values.load(in);
+            } catch (IOException excp) {
+                throw Utils.error("Cannot read %s.", _file);
+            }
+        }
+    }
+
+    /** Returns the value of KEY, or DEFAULTVALUE if it is unset. */
+    String get(String key, String defaultValue) {
+        return _values.getProperty(key, defaultValue);
+    }
+
+    /** Sets KEY to VALUE, or unsets it if VALUE is null, and saves the
+     *  settings. The file is locked and reread first, so that settings
+     *  changed meanwhile by other processes are kept. */
+    void set(String key, String value) {
+        LockFile lock = LockFile.acquire(_file, _durable.trace());
+        try {
+            load();
+            if (value == null) {
+                _values.remove(key);
+            } else {
+                _values.setProperty(key, value);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                _values.store(out, null);
+            } catch (IOException excp) {
+                throw Utils.error("Cannot write %s.", _file);
+            }
+            lock.commit(out.toByteArray(), _durable);
+        } finally {
+            lock.release();
+        }
+    }
+
+    /** Returns the key holding the path of remote NAME. */
+    static String remoteKey(String name) {
+        return "remote." + name + ".path";
+    }
+
+    /** Key selecting the checkout mode. */
+    static final String CHECKOUT_MODE = "checkout.mode";
+
+    /** Key selecting the fsync policy. */
+    static final String FSYNC = "core.fsync";
+
+    /** Key naming the remote that supplies missing blobs. */
+    static final String PROMISOR = "fetch.promisor";
+
+    /** Key setting the size from which blobs are chunked. */
+    static final String CHUNK_THRESHOLD = "core.chunkThreshold";
+
+    /** Key setting the similarity of renamed and copied files. */
+    static final String RENAME_THRESHOLD = "diff.renameThreshold";
+
+    /** Key enabling maintenance runs started by commands. */
+    static final String MAINTENANCE_AUTO = "maintenance.auto";
+
+    /** Key setting the time allowed a maintenance run. */
+    static final String MAINTENANCE_BUDGET = "maintenance.budget";
+
+    /** Key setting the objects written before gc is due. */
+    static final String GC_AUTO = "gc.auto";
+
+    /** Key setting the age in days of the unreachable objects deleted. */
+    static final String PRUNE_EXPIRE = "gc.pruneExpire";
+
+    /** Key setting the commits written before index is due. */
+    static final String INDEX_THRESHOLD = "maintenance.indexThreshold";
+
+    /** Key recording the format of the repository. */
+    static final String FORMAT_VERSION = "core.formatVersion";
+
+    /** Key naming the backend that stores objects. */
+    static final String OBJECT_STORE = "core.objectStore";
+
+    /** File holding the settings. */
+    private final File _file;
+
+    /** Writer of the settings file. */
+    private final Durable _durable;
+
+    /** Current settings. */
+    private final Properties _values;
+}
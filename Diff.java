@@ -0,0 +1,269 @@
+package gitlet;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** Line-by-line comparison of two texts, using Myers' O(ND) algorithm
+ *  in its linear-space form: common prefixes and suffixes are matched
+ *  directly, and the rest is split recursively at the middle snake of a
+ *  shortest edit script. Lines are compared as small integers, so each
+ *  distinct line is hashed only once.
+ *  @author Kaito Garcia
+ */
+final class Diff {
+
+    /** Not instantiable. */
+    private Diff() {
+    }
+
+    /** Returns the lines of TEXT, without their terminators. A final
+     *  line terminator does not begin another, empty line. */
+    static String[] lines(String text) {
+        if (text.isEmpty()) {
+            return new String[0];
+        }
+        String[] lines = text.split("\n", -1);
+        if (text.endsWith("\n")) {
+            lines = Arrays.copyOf(lines, lines.length - 1);
+        }
+        return lines;
+    }
+
+    /** Returns, for each line of B, the index of the line of A that it
+     *  is matched with in a shortest edit script turning A into B, or -1
+     *  if it is inserted. Matched indices increase with the line of B. */
+    static int[] match(String[] a, String[] b) {
+        HashMap<String, Integer> codes = new HashMap<>();
+        int[] x = encode(a, codes);
+        int[] y = encode(b, codes);
+        int[] result = new int[b.length];
+        Arrays.fill(result, -1);
+        new Diff.Run(x, y, result).compare(0, x.length, 0, y.length);
+        return result;
+    }
+
+    /** Appends to OUT the hunks of a unified diff turning lines A into
+     *  lines B, each change shown with CONTEXT unchanged lines around it,
+     *  as "@@ -START,COUNT +START,COUNT @@" followed by the lines, each
+     *  prefixed by ' ', '-' or '+'. Appends nothing if A and B are
+     *  equal. */
+    static void unified(String[] a, String[] b, int context,
+                        StringBuilder out) {
+        int[] match = match(a, b);
+        char[] ops = new char[a.length + b.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            int next = j;
+            while (next < b.length && match[next] < 0) {
+                next += 1;
+            }
+            int anchor = next < b.length ? match[next] : a.length;
+            for (; i < anchor; i++) {
+                ops[n++] = '-';
+            }
+            for (; j < next; j++) {
+                ops[n++] = '+';
+            }
+            if (j < b.length) {
+                ops[n++] = ' ';
+                i += 1;
+                j += 1;
+            }
+        }
+
+        int k = 0;
+        int aLine = 0;
+        int bLine = 0;
+        while (true) {
+            int change = k;
+            int skipA = 0;
+            while (change < n && ops[change] == ' ') {
+                change += 1;
+                skipA += 1;
+            }
+            if (change == n) {
+                return;
+            }
+            int lead = Math.min(context, skipA);
+            aLine += skipA - lead;
+            bLine += skipA - lead;
+            int start = change - lead;
+            int end = change;
+            while (end < n) {
+                int run = end;
+                while (run < n && ops[run] == ' ') {
+                    run += 1;
+                }
+                if (run == n || run - end > 2 * context) {
+                    end = Math.min(run, end + context);
+                    break;
+                }
+                end = run;
+                while (end < n && ops[end] != ' ') {
+                    end += 1;
+                }
+            }
+            int aCount = 0;
+            int bCount = 0;
+            for (int p = start; p < end; p++) {
+                aCount += ops[p] == '+' ? 0 : 1;
+                bCount += ops[p] == '-' ? 0 : 1;
+            }
+            out.append("@@ -").append(range(aLine, aCount)).append(" +")
+                .append(range(bLine, bCount)).append(" @@\n");
+            for (int p = start; p < end; p++) {
+                String line = ops[p] == '+' ? b[bLine] : a[aLine];
+                out.append(ops[p]).append(line).append('\n');
+                aLine += ops[p] == '+' ? 0 : 1;
+                bLine += ops[p] == '-' ? 0 : 1;
+            }
+            k = end;
+        }
+    }
+
+    /** Returns the range of COUNT lines following the first LINE as
+     *  shown in a hunk header: the number of the first line and the
+     *  count, omitted if 1, or the number of the preceding line if
+     *  COUNT is 0. */
+    static String range(int line, int count) {
+        if (count == 1) {
+            return Integer.toString(line + 1);
+        }
+        return (count == 0 ? line : line + 1) + "," + count;
+    }
+
+    /** Returns the codes of LINES, giving each line not yet in CODES the
+     *  next code. */
+    private static int[] encode(String[] lines,
+                                HashMap<String, Integer> codes) {
+        int[] result = new int[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            Integer code = codes.get(lines[i]);
+            if (code == null) {
+                code = codes.size();
+                codes.put(lines[i], code);
+            }
+            result[i] = code;
+        }
+        return result;
+    }
+
+    /** One comparison in progress. */
+    private static class Run {
+
+        /** A comparison of coded lines X with Y, recording in RESULT
+         *  the index in X matched by each line of Y. */
+        Run(int[] x, int[] y, int[] result) {
+            _x = x;
+            _y = y;
+            _result = result;
+            int size = x.length + y.length + 2;
+            _forward = new int[2 * size + 1];
+            _backward = new int[2 * size + 1];
+        }
+
+        /** Matches X[A0 .. A1) against Y[B0 .. B1). */
+        void compare(int a0, int a1, int b0, int b1) {
+            while (a0 < a1 && b0 < b1 && _x[a0] == _y[b0]) {
+                _result[b0++] = a0++;
+            }
+            while (a0 < a1 && b0 < b1 && _x[a1 - 1] == _y[b1 - 1]) {
+                _result[--b1] = --a1;
+            }
+            if (a0 == a1 || b0 == b1) {
+                return;
+            }
+            int[] snake = middleSnake(a0, a1, b0, b1);
+            int x = snake[0];
+            int y = snake[1];
+            int u = snake[2];
+            int v = snake[3];
+            if ((x == a0 && y == b0 && u == a1 && v == b1)
+                || (u - a0) + (v - b0) == 0 || (a1 - x) + (b1 - y) == 0) {
+                return;
+            }
+            compare(a0, x, b0, y);
+            for (int i = 0; i < u - x; i++) {
+                _result[y + i] = x + i;
+            }
+            compare(u, a1, v, b1);
+        }
+
+        /** Returns {x, y, u, v}: the diagonal run from (x, y) to (u, v)
+         *  lying in the middle of a shortest edit script from
+         *  X[A0 .. A1) to Y[B0 .. B1), whose first and last lines
+         *  differ. */
+        private int[] middleSnake(int a0, int a1, int b0, int b1) {
+            int n = a1 - a0;
+            int m = b1 - b0;
+            int delta = n - m;
+            boolean odd = (delta & 1) != 0;
+            int off = (_forward.length - 1) / 2;
+            int max = (n + m + 1) / 2;
+            _forward[off + 1] = 0;
+            _backward[off + 1] = 0;
+            for (int d = 0; d <= max; d++) {
+                for (int k = -d; k <= d; k += 2) {
+                    int x;
+                    if (k == -d || (k != d
+                            && _forward[off + k - 1] < _forward[off + k + 1])) {
+                        x = _forward[off + k + 1];
+                    } else {
+                        x = _forward[off + k - 1] + 1;
+                    }
+                    int y = x - k;
+                    int x0 = x;
+                    int y0 = y;
+                    while (x < n && y < m && _x[a0 + x] == _y[b0 + y]) {
+                        x += 1;
+                        y += 1;
+                    }
+                    _forward[off + k] = x;
+                    int kr = delta - k;
+                    if (odd && kr >= -(d - 1) && kr <= d - 1
+                            && x + _backward[off + kr] >= n) {
+                        return new int[] {a0 + x0, b0 + y0, a0 + x, b0 + y};
+                    }
+                }
+                for (int kr = -d; kr <= d; kr += 2) {
+                    int x;
+                    if (kr == -d || (kr != d
+                            && _backward[off + kr - 1]
+                               < _backward[off + kr + 1])) {
+                        x = _backward[off + kr + 1];
+                    } else {
+                        x = _backward[off + kr - 1] + 1;
+                    }
+                    int y = x - kr;
+                    int x0 = x;
+                    int y0 = y;
+                    while (x < n && y < m
+                           && _x[a1 - 1 - x] == _y[b1 - 1 - y]) {
+                        x += 1;
+                        y += 1;
+                    }
+                    _backward[off + kr] = x;
+                    int k = delta - kr;
+                    if (!odd && k >= -d && k <= d
+                            && x + _forward[off + k] >= n) {
+                        return new int[] {a1 - x, b1 - y, a1 - x0, b1 - y0};
+                    }
+                }
+            }
+            return new int[] {a0, b0, a1, b1};
+        }
+
+        /** Coded lines of the old text. */
+        private final int[] _x;
+        /** Coded lines of the new text. */
+        private final int[] _y;
+        /** Index in _x matched by each line of _y, or -1. */
+        private final int[] _result;
+        /** Furthest reach of forward paths, by diagonal. */
+        private final int[] _forward;
+        /** Furthest reach of backward paths, by diagonal. */
+        private final int[] _backward;
+    }
+}
@@ -0,0 +1,138 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of unified diffs and the diff command.
+ *  @author Kaito Garcia
+ */
+public class DiffTest extends ScratchTestCase {
+
+    /** Makes a repository in the scratch directory. */
+    @Before
+    public void setUp() {
+        _repo = init(_dir);
+    }
+
+    /** Hunks show each change with three lines of context, and changes
+     *  close together share a hunk. */
+    @Test
+    public void unifiedHunks() {
+        assertEquals("@@ -2,7 +2,7 @@\n 2\n 3\n 4\n-5\n+five\n 6\n 7\n 8\n",
+                unified("1 2 3 4 5 6 7 8 9 10", "1 2 3 4 five 6 7 8 9 10"));
+        assertEquals("@@ -1,4 +1,3 @@\n-1\n 2\n 3\n 4\n"
+                + "@@ -8,3 +7,4 @@\n 8\n 9\n 10\n+11\n",
+                unified("1 2 3 4 5 6 7 8 9 10", "2 3 4 5 6 7 8 9 10 11"));
+        assertEquals("@@ -1,5 +1,5 @@\n-1\n+one\n 2\n 3\n 4\n-5\n+five\n",
+                unified("1 2 3 4 5", "one 2 3 4 five"));
+        assertEquals("@@ -0,0 +1,2 @@\n+x\n+y\n", unified("", "x y"));
+        assertEquals("@@ -1 +0,0 @@\n-x\n", unified("x", ""));
+        assertEquals("", unified("a b", "a b"));
+    }
+
+    /** Plain diff shows working files that differ from the staging area,
+     *  and --cached the staged changes. */
+    @Test
+    public void workingAndStaged() {
+        write("a.txt", "a\nb\nc\n");
+        write("b.txt", "same\n");
+        write("gone.txt", "x\n");
+        _repo.commit("one");
+        assertEquals("", _repo.run("diff"));
+        Utils.writeContents(file("a.txt"), "a\nB\nc\n");
+        file("gone.txt").delete();
+        String expected = "diff --gitlet a/a.txt b/a.txt\n"
+            + "--- a/a.txt\n+++ b/a.txt\n@@ -1,3 +1,3 @@\n a\n-b\n+B\n c\n"
+            + "diff --gitlet a/gone.txt b/gone.txt\ndeleted file\n"
+            + "--- a/gone.txt\n+++ /dev/null\n@@ -1 +0,0 @@\n-x\n";
+        assertEquals(expected, _repo.run("diff"));
+        assertEquals("", _repo.run("diff", "--cached"));
+        _repo.add("a.txt");
+        assertTrue(_repo.run("diff", "--cached").startsWith(
+                "diff --gitlet a/a.txt b/a.txt\n"));
+        assertFalse(_repo.run("diff").contains("a.txt"));
+        assertEquals("Incorrect operands.\n",
+                _repo.run("diff", "--cached", "x"));
+    }
+
+    /** Two commits are compared by blob, with new files and renames
+     *  shown as such, and binary files only reported. */
+    @Test
+    public void betweenCommits() {
+        write("old.txt", "1\n2\n3\n");
+        Utils.writeContents(file("bin"), new byte[] {1, 0, 2});
+        _repo.add("bin");
+        ObjectId one = _repo.commit("one");
+        write("new.txt", "1\n2\n3\n");
+        _repo.rm("old.txt");
+        write("added.txt", "hello\n");
+        Utils.writeContents(file("bin"), new byte[] {1, 0, 3});
+        _repo.add("bin");
+        ObjectId two = _repo.commit("two");
+        assertEquals("diff --gitlet a/added.txt b/added.txt\nnew file\n"
+                + "--- /dev/null\n+++ b/added.txt\n@@ -0,0 +1 @@\n+hello\n"
+                + "diff --gitlet a/bin b/bin\n"
+                + "Binary files a/bin and b/bin differ\n"
+                + "diff --gitlet a/old.txt b/new.txt\n"
+                + "similarity index 100%\nrename from old.txt\n"
+                + "rename to new.txt\n",
+                _repo.run("diff", one.name(), two.name()));
+        assertTrue(_repo.run("diff", one.name()).contains(
+                "Binary files a/bin and b/bin differ\n"));
+        assertEquals("No commit with that id exists.\n",
+                _repo.run("diff", one.name(), "0000"));
+    }
+
+    /** Many files diffed at once are shown in order of path. */
+    @Test
+    public void ordersByPath() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 60; i += 1) {
+            String name = String.format("f%02d.txt", i);
+            names.add(name);
+            write(name, "v1 " + name + "\n");
+        }
+        _repo.commit("one");
+        for (String name : names) {
+            Utils.writeContents(file(name), "v2 " + name + "\n");
+        }
+        List<String> shown = new ArrayList<>();
+        for (String line : Diff.lines(_repo.run("diff"))) {
+            if (line.startsWith("diff --gitlet ")) {
+                shown.add(line.substring(line.lastIndexOf("b/") + 2));
+            }
+        }
+        assertEquals(names, shown);
+    }
+
+    /** Returns the hunks turning the space-separated lines A into B. */
+    private static String unified(String a, String b) {
+        StringBuilder out = new StringBuilder();
+        Diff.unified(words(a), words(b), 3, out);
+        return out.toString();
+    }
+
+    /** Returns the space-separated words of TEXT. */
+    private static String[] words(String text) {
+        return text.isEmpty() ? new String[0] : text.split(" ");
+    }
+
+    /** Writes TEXT to the working file NAME and adds it. */
+    private void write(String name, String text) {
+        Utils.writeContents(file(name), text);
+        _repo.add(name);
+    }
+
+    /** Returns the working file NAME. */
+    private File file(String name) {
+        return new File(_dir, name);
+    }
+
+    /** The repository in it. */
+    private Repository _repo;
+}
@@ -0,0 +1,360 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Crash-safe writes of repository files. Every file is written to a
+ *  temporary file beside it and then renamed over it, so a crash never
+ *  leaves a file half written. How much is also forced to disk is set
+ *  by the core.fsync setting:
+ *
+ *      none    nothing is forced; a crash may lose recent commands.
+ *      batch   (the default) the objects written by a command are kept
+ *              in their temporary files, readable through current,
+ *              until groupCommit forces them all at once, renames them
+ *              into place and forces their directories. Only then are
+ *              refs and state published, forced one by one.
+ *      strict  every object and state file is forced, renamed and has
+ *              its directory forced as soon as it is written.
+ *
+ *  Each repository writes through a Durable of its own, so that
+ *  repositories open at once in one process keep their own policies and
+ *  pending objects. Several threads may write objects through one
+ *  Durable at once.
+ *  @author Kaito Garcia
+ */
+final class Durable {
+
+    /** Writes under the batch policy until setPolicy says otherwise,
+     *  tracing nothing. */
+    Durable() {
+        this(new Trace());
+    }
+
+    /** Writes under the batch policy until setPolicy says otherwise,
+     *  recording spans in TRACE, which is also that of the repository
+     *  this Durable writes. */
+    Durable(Trace trace) {
+        _trace = trace;
+    }
+
+    /** Returns the trace of the repository this Durable writes. */
+    Trace trace() {
+        return _trace;
+    }
+
+    /** Sets the policy to the one named NAME: none, batch or strict. */
+    void setPolicy(String name) {
+        switch (name) {
+        case "none":
+            _policy = NONE;
+            break;
+        case "batch":
+            _policy = BATCH;
+            break;
+        case "strict":
+            _policy = STRICT;
+            break;
+        default:
+            throw Utils.error("Unknown %s: %s", Config.FSYNC, name);
+        }
+    }
+
+    /** Writes DATA as the object file TARGET, which is made read-only.
+     *  Objects never change once written. */
+    void writeObject(File target, byte[] data) {
+        File temp = tempFor(target);
+        write(temp, data);
+        placeObject(temp, target);
+    }
+
+    /** Copies the contents IN supplies to the object file TARGET, which
+     *  is made read-only, and closes IN.
+     *  @return the number of bytes copied */
+    long copyObject(InputStream in, File target) {
+        File temp = tempFor(target);
+        long size = transfer(in, temp);
+        placeObject(temp, target);
+        return size;
+    }
+
+    /** Returns the file currently holding the object whose final name is
+     *  TARGET: its temporary file while it awaits groupCommit, and
+     *  TARGET itself otherwise. */
+    File current(File target) {
+        File temp = _pending.get(target);
+        return temp == null ? target : temp;
+    }
+
+    /** Forces every pending object to disk, moves each into place and
+     *  forces the directories that received them. Afterwards, state
+     *  that refers to those objects may safely be published. */
+    void groupCommit() {
+        forceAppended();
+        if (_pending.isEmpty()) {
+            return;
+        }
+        long start = _trace.start();
+        synchronized (_pending) {
+            ArrayList<File> temps = new ArrayList<>(_pending.values());
+            temps.parallelStream().forEach(Durable::force);
+            LinkedHashSet<File> dirs = new LinkedHashSet<>();
+            for (Map.Entry<File, File> entry : _pending.entrySet()) {
+                rename(entry.getValue(), entry.getKey());
+                dirs.add(parentOf(entry.getKey()));
+            }
+            for (File dir : dirs) {
+                force(dir);
+            }
+            _trace.end("fsync.group", start, temps.size(), 0, null);
+            _pending.clear();
+        }
+    }
+
+    /** Notes that objects were appended in place to the file open as
+     *  CHANNEL, which is forced at once under the strict policy and by
+     *  the next groupCommit under batch. */
+    void appended(FileChannel channel) {
+        if (_policy == STRICT) {
+            forceChannel(channel);
+        } else if (_policy == BATCH) {
+            _appended.add(channel);
+        }
+        _objects.incrementAndGet();
+    }
+
+    /** Forces every channel noted by appended since the last call. */
+    private void forceAppended() {
+        synchronized (_appended) {
+            for (FileChannel channel : _appended) {
+                forceChannel(channel);
+            }
+            _appended.clear();
+        }
+    }
+
+    /** Forces the contents of the open file CHANNEL to disk. */
+    private static void forceChannel(FileChannel channel) {
+        try {
+            channel.force(false);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes DATA as the state or ref file TARGET, forcing it and its
+     *  directory unless the policy is none. Any pending objects are
+     *  committed first, so TARGET never refers to a lost object. */
+    void publish(File target, byte[] data) {
+        File temp = tempFor(target);
+        write(temp, data);
+        install(temp, target);
+    }
+
+    /** Publishes the finished file TEMP, such as a lock file holding new
+     *  contents, by renaming it over TARGET, as publish does. */
+    void install(File temp, File target) {
+        groupCommit();
+        if (_policy != NONE) {
+            force(temp);
+        }
+        rename(temp, target);
+        if (_policy != NONE) {
+            force(parentOf(target));
+        }
+    }
+
+    /** Writes DATA to TARGET through a temporary file and a rename,
+     *  without forcing anything. */
+    static void replace(File target, byte[] data) {
+        File temp = tempFor(target);
+        write(temp, data);
+        rename(temp, target);
+    }
+
+    /** Copies FROM to TARGET through a temporary file and a rename,
+     *  without forcing anything.
+     *  @return the number of bytes copied */
+    static long replaceByCopy(File from, File target) {
+        try {
+            return replaceByCopy(new FileInputStream(from), target);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Copies what IN supplies to TARGET through a temporary file and a
+     *  rename, without forcing anything, and closes IN.
+     *  @return the number of bytes copied */
+    static long replaceByCopy(InputStream in, File target) {
+        File temp = tempFor(target);
+        long size = transfer(in, temp);
+        rename(temp, target);
+        return size;
+    }
+
+    /** Moves FROM over TARGET with a rename, so that TARGET is replaced
+     *  rather than written through, without forcing anything. */
+    static void replaceByMove(File from, File target) {
+        rename(from, target);
+    }
+
+    /** Returns the number of objects written through this Durable. */
+    long objectsWritten() {
+        return _objects.get();
+    }
+
+    /** Finishes writing the object TARGET, now in TEMP, as the policy
+     *  requires. Under batch, a second write of TARGET before groupCommit
+     *  supersedes the first, whose temporary file is deleted. */
+    private void placeObject(File temp, File target) {
+        temp.setReadOnly();
+        _objects.incrementAndGet();
+        if (_policy == BATCH) {
+            File superseded = _pending.put(target, temp);
+            if (superseded != null) {
+                superseded.delete();
+            }
+            return;
+        }
+        if (_policy == STRICT) {
+            force(temp);
+        }
+        rename(temp, target);
+        if (_policy == STRICT) {
+            force(parentOf(target));
+        }
+    }
+
+    /** Returns a new temporary file name in the directory of TARGET. */
+    private static File tempFor(File target) {
+        return new File(parentOf(target), "." + target.getName() + "."
+                + PID + "-" + COUNTER.incrementAndGet() + ".tmp");
+    }
+
+    /** Returns the directory containing FILE. */
+    private static File parentOf(File file) {
+        File parent = file.getAbsoluteFile().getParentFile();
+        return parent == null ? new File(".") : parent;
+    }
+
+    /** Writes DATA to the new file TEMP. */
+    private static void write(File temp, byte[] data) {
+        try (FileChannel out = FileChannel.open(temp.toPath(),
+                 StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Copies what SOURCE supplies to the new file TEMP, channel to
+     *  channel if SOURCE reads a file, and closes SOURCE. TEMP is
+     *  deleted if the copy fails.
+     *  @return the number of bytes copied */
+    private static long transfer(InputStream source, File temp) {
+        try (InputStream in = source;
+             FileChannel out = FileChannel.open(temp.toPath(),
+                 StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+            if (!(in instanceof FileInputStream)) {
+                return in.transferTo(Channels.newOutputStream(out));
+            }
+            FileChannel from = ((FileInputStream) in).getChannel();
+            long size = from.size() - from.position();
+            long done = 0;
+            while (done < size) {
+                done += from.transferTo(from.position() + done,
+                        size - done, out);
+            }
+            return size;
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (RuntimeException excp) {
+            temp.delete();
+            throw excp;
+        }
+    }
+
+    /** Atomically renames FROM to TO, replacing TO. */
+    private static void rename(File from, File to) {
+        try {
+            try {
+                Files.move(from.toPath(), to.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException excp) {
+                Files.move(from.toPath(), to.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException excp) {
+            from.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Forces the contents of FILE, which may be a directory, to disk.
+     *  Directories that cannot be opened, as on some systems, are
+     *  skipped. */
+    private static void force(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                 StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            if (!file.isDirectory()) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Policy forcing nothing. */
+    private static final int NONE = 0;
+    /** Policy forcing objects as a group before state is published. */
+    private static final int BATCH = 1;
+    /** Policy forcing every file as it is written. */
+    private static final int STRICT = 2;
+
+    /** The current policy. */
+    private int _policy = BATCH;
+
+    /** Objects awaiting groupCommit, as <final name, temporary file>. */
+    private final Map<File, File> _pending =
+        Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /** This process's ID, making temporary names unique across
+     *  processes. */
+    private static final long PID = ProcessHandle.current().pid();
+
+    /** Source of temporary names unique within this process. */
+    private static final AtomicLong COUNTER = new AtomicLong();
+
+    /** Files appended to since the last groupCommit. */
+    private final Set<FileChannel> _appended =
+        Collections.synchronizedSet(new LinkedHashSet<>());
+
+    /** Number of objects written through this Durable. */
+    private final AtomicLong _objects = new AtomicLong();
+
+    /** Where spans are recorded. */
+    private final Trace _trace;
+}
@@ -0,0 +1,151 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of crash-safe writes.
+ *  @author Kaito Garcia
+ */
+public class DurableTest extends ScratchTestCase {
+
+    /** Under batch, objects wait in temporary files, readable through
+     *  current, until groupCommit moves them into place. */
+    @Test
+    public void batchDefersObjects() throws IOException {
+        Durable durable = new Durable();
+        File a = new File(_dir, "a");
+        File b = new File(_dir, "b");
+        durable.writeObject(a, "one".getBytes());
+        durable.copyObject(new ByteArrayInputStream("two".getBytes()), b);
+        assertFalse(a.exists());
+        assertNotEquals(a, durable.current(a));
+        assertEquals("one", Utils.readContentsAsString(durable.current(a)));
+        assertFalse(writable(durable.current(a)));
+        assertEquals(2, durable.objectsWritten());
+
+        durable.groupCommit();
+        assertEquals(a, durable.current(a));
+        assertEquals("one", Utils.readContentsAsString(a));
+        assertEquals("two", Utils.readContentsAsString(b));
+        assertFalse(writable(a));
+        assertEquals(Arrays.asList("a", "b"), names());
+    }
+
+    /** Writing an object again before groupCommit replaces its pending
+     *  temporary file rather than leaving the first one behind. */
+    @Test
+    public void rewriteDropsPendingTemp() {
+        Durable durable = new Durable();
+        File a = new File(_dir, "a");
+        durable.writeObject(a, "one".getBytes());
+        File first = durable.current(a);
+        durable.writeObject(a, "two".getBytes());
+        assertFalse(first.exists());
+        assertEquals(1, _dir.list().length);
+        durable.groupCommit();
+        assertEquals("two", Utils.readContentsAsString(a));
+        assertEquals(Arrays.asList("a"), names());
+    }
+
+    /** Publishing state first commits the objects it may refer to. */
+    @Test
+    public void publishCommitsObjects() {
+        Durable durable = new Durable();
+        File object = new File(_dir, "object");
+        File state = new File(_dir, "state");
+        durable.writeObject(object, "data".getBytes());
+        durable.publish(state, "refers to object".getBytes());
+        assertEquals("data", Utils.readContentsAsString(object));
+        assertEquals("refers to object", Utils.readContentsAsString(state));
+        durable.publish(state, "again".getBytes());
+        assertEquals("again", Utils.readContentsAsString(state));
+        assertEquals(Arrays.asList("object", "state"), names());
+    }
+
+    /** Under none and strict, objects are in place as soon as they are
+     *  written. */
+    @Test
+    public void otherPoliciesPlaceAtOnce() {
+        for (String policy : new String[] {"none", "strict"}) {
+            Durable durable = new Durable();
+            durable.setPolicy(policy);
+            File object = new File(_dir, policy);
+            durable.writeObject(object, policy.getBytes());
+            assertEquals(object, durable.current(object));
+            assertEquals(policy, Utils.readContentsAsString(object));
+        }
+        assertEquals(Arrays.asList("none", "strict"), names());
+    }
+
+    /** An unknown policy is refused. */
+    @Test(expected = GitletException.class)
+    public void unknownPolicy() {
+        new Durable().setPolicy("sometimes");
+    }
+
+    /** Replacing a file, from bytes or another file, leaves exactly the
+     *  new contents and no temporary files. */
+    @Test
+    public void replaces() {
+        File target = new File(_dir, "target");
+        File source = new File(_dir, "source");
+        Durable.replace(target, "a much longer first version".getBytes());
+        Durable.replace(target, "second".getBytes());
+        assertEquals("second", Utils.readContentsAsString(target));
+        Durable.replace(source, "third".getBytes());
+        assertEquals(5, Durable.replaceByCopy(source, target));
+        assertEquals("third", Utils.readContentsAsString(target));
+        assertEquals(Arrays.asList("source", "target"), names());
+        Durable.replaceByMove(source, target);
+        assertEquals(Arrays.asList("target"), names());
+    }
+
+    /** A command leaves no temporary files in the repository, and its
+     *  objects are in place once it returns. */
+    @Test
+    public void commandsLeaveNoTemps() {
+        try (Repository repository = Repository.init(_dir)) {
+            Utils.writeContents(new File(_dir, "f.txt"), "text");
+            repository.add("f.txt");
+            repository.commit("one");
+        }
+        assertEquals(0, temps(new File(_dir, ".gitlet")));
+        try (Repository repository = Repository.open(_dir)) {
+            assertEquals("one", repository.log().next().getMessage());
+        }
+    }
+
+    /** Returns the names of the files in the scratch directory, in
+     *  order. */
+    private List<String> names() {
+        return Utils.plainFilenamesIn(_dir);
+    }
+
+    /** Returns true iff the owner of FILE may write it, which unlike
+     *  File.canWrite does not depend on who runs the test. */
+    private static boolean writable(File file) throws IOException {
+        return Files.getPosixFilePermissions(file.toPath())
+            .contains(PosixFilePermission.OWNER_WRITE);
+    }
+
+    /** Returns the number of temporary files under DIR. */
+    private static int temps(File dir) {
+        int count = 0;
+        for (File file : dir.listFiles()) {
+            if (file.isDirectory()) {
+                count += temps(file);
+            } else if (file.getName().endsWith(".tmp")) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,138 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of shallow and blobless fetch from a local remote.
+ *  @author Kaito Garcia
+ */
+public class FetchTest extends ScratchTestCase {
+
+    /** Makes an origin with four commits and an empty repository that
+     *  has it as remote R1. */
+    @Before
+    public void setUp() {
+        _origin = init(new File(_dir, "origin"));
+        for (int i = 1; i <= 4; i += 1) {
+            Utils.writeContents(new File(_origin.root(), "f" + i + ".txt"),
+                    "v" + i);
+            _origin.add("f" + i + ".txt");
+            _origin.commit("c" + i);
+        }
+        _local = init(new File(_dir, "local"));
+        _local.run("add-remote", "R1",
+                new File(_origin.root(), ".gitlet").getPath());
+    }
+
+    /** A fetch with --depth copies only that many commits, and deepens
+     *  the history when repeated with a larger depth but not with
+     *  none. */
+    @Test
+    public void depthLimitsHistory() {
+        assertEquals("", _local.run("fetch", "R1", "master", "--depth",
+                "2"));
+        _local.checkout("R1/master");
+        assertEquals(2, count(_local.log()));
+        assertEquals("", _local.run("fetch", "R1", "master", "--depth",
+                "3"));
+        assertEquals(3, count(_local.log()));
+        assertEquals("", _local.run("fetch", "R1", "master"));
+        assertEquals(3, count(_local.log()));
+        assertEquals("", _local.run("fetch", "R1", "master", "--depth",
+                "5"));
+        assertEquals(5, count(_local.log()));
+        assertFalse(new File(_local.root(), ".gitlet/shallow").length()
+                > 0);
+    }
+
+    /** A fetch after a shallow fetch copies only the new commits and
+     *  keeps the boundary, even when the remote no longer has the
+     *  commits below it. */
+    @Test
+    public void fetchAfterShallowStaysShallow() {
+        assertEquals("", _local.run("fetch", "R1", "master", "--depth",
+                "1"));
+        File shallow = new File(_local.root(), ".gitlet/shallow");
+        String boundary = Utils.readContentsAsString(shallow);
+        ArrayList<Commit> history = new ArrayList<>();
+        _origin.log().forEachRemaining(history::add);
+        for (Commit commit : history.subList(1, history.size())) {
+            assertTrue(new File(_origin.root(), ".gitlet/commits/"
+                    + commit.getHashID().name()).delete());
+        }
+        for (int i = 5; i <= 6; i += 1) {
+            Utils.writeContents(new File(_origin.root(), "f" + i + ".txt"),
+                    "v" + i);
+            _origin.add("f" + i + ".txt");
+            _origin.commit("c" + i);
+        }
+        File commits = new File(_local.root(), ".gitlet/commits");
+        int before = files(commits);
+        assertEquals("", _local.run("fetch", "R1", "master"));
+        assertEquals(before + 2, files(commits));
+        assertEquals(boundary, Utils.readContentsAsString(shallow));
+        _local.checkout("R1/master");
+        assertEquals(3, count(_local.log()));
+    }
+
+    /** A blobless fetch copies no blobs, and checkout then reads them
+     *  from the remote. */
+    @Test
+    public void bloblessFetchesBlobsOnCheckout() {
+        assertEquals("", _local.run("fetch", "R1", "master", "--depth",
+                "1", "--blobless"));
+        File blobs = new File(_local.root(), ".gitlet/stagingArea");
+        assertEquals(0, files(blobs));
+        _local.checkout("R1/master");
+        for (int i = 1; i <= 4; i += 1) {
+            assertEquals("v" + i, Utils.readContentsAsString(
+                    new File(_local.root(), "f" + i + ".txt")));
+        }
+        assertEquals(4, files(blobs));
+    }
+
+    /** Malformed and unknown options are refused before anything is
+     *  fetched. */
+    @Test
+    public void badOptions() {
+        String[][] cases = {
+            {"--depth", "x"}, {"--depth", "-1"}, {"--depth", "0"},
+            {"--depth"}, {"--shallow"},
+        };
+        for (String[] options : cases) {
+            String[] args = new String[3 + options.length];
+            args[0] = "fetch";
+            args[1] = "R1";
+            args[2] = "master";
+            System.arraycopy(options, 0, args, 3, options.length);
+            assertEquals("Incorrect operands.\n", _local.run(args));
+        }
+        assertFalse(_local.status().branches().containsKey("R1/master"));
+    }
+
+    /** Returns the number of commits ITERATOR yields. */
+    private static int count(Iterator<Commit> iterator) {
+        int n = 0;
+        for (; iterator.hasNext(); iterator.next()) {
+            n += 1;
+        }
+        return n;
+    }
+
+    /** Returns the number of files in DIR, which need not exist. */
+    private static int files(File dir) {
+        String[] names = dir.list();
+        return names == null ? 0 : names.length;
+    }
+
+    /** The remote. */
+    private Repository _origin;
+
+    /** The repository fetching from it. */
+    private Repository _local;
+}
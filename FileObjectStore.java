@@ -0,0 +1,125 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Objects kept one to a file under a .gitlet directory, in a directory
+ *  for each type (see ObjectStore.Type), each file named by its ID.
+ *  Files are written through Durable and made read-only, so that no
+ *  write can alter an object in place; checkout copies or reflinks
+ *  them and never shares the file itself. An object this process wrote
+ *  may still be in its temporary file, where Durable.current finds
+ *  it.
+ *  @author Kaito Garcia
+ */
+class FileObjectStore implements ObjectStore {
+
+    /** The objects under the .gitlet directory GITLET, written through
+     *  DURABLE. */
+    FileObjectStore(File gitlet, Durable durable) {
+        _gitlet = gitlet;
+        _durable = durable;
+    }
+
+    @Override
+    public boolean has(Type type, ObjectId id) {
+        return file(type, id).isFile();
+    }
+
+    @Override
+    public byte[] read(Type type, ObjectId id) {
+        return Utils.readContents(file(type, id));
+    }
+
+    @Override
+    public InputStream stream(Type type, ObjectId id) {
+        File file = file(type, id);
+        try {
+            return new FileInputStream(file);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read %s.", file.getName());
+        }
+    }
+
+    @Override
+    public long size(Type type, ObjectId id) {
+        return file(type, id).length();
+    }
+
+    @Override
+    public void write(Type type, ObjectId id, byte[] data) {
+        if (!has(type, id)) {
+            dir(type).mkdirs();
+            _durable.writeObject(target(type, id), data);
+        }
+    }
+
+    @Override
+    public long write(Type type, ObjectId id, InputStream in) {
+        if (has(type, id)) {
+            try {
+                in.close();
+            } catch (IOException excp) {
+                /* Ignore: nothing was read. */
+            }
+            return 0;
+        }
+        dir(type).mkdirs();
+        return _durable.copyObject(in, target(type, id));
+    }
+
+    @Override
+    public List<ObjectId> iterate(Type type) {
+        ArrayList<ObjectId> ids = new ArrayList<>();
+        String[] names = dir(type).list();
+        if (names != null) {
+            for (String name : names) {
+                if (ObjectId.isHex(name)) {
+                    ids.add(ObjectId.fromHex(name));
+                }
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public boolean delete(Type type, ObjectId id) {
+        return file(type, id).delete();
+    }
+
+    @Override
+    public long modified(Type type, ObjectId id) {
+        return file(type, id).lastModified();
+    }
+
+    @Override
+    public File file(Type type, ObjectId id) {
+        return _durable.current(target(type, id));
+    }
+
+    @Override
+    public void sync() {
+        _durable.groupCommit();
+    }
+
+    /** Returns the final name of the file of the object of type TYPE
+     *  with ID ID. */
+    private File target(Type type, ObjectId id) {
+        return new File(dir(type), id.name());
+    }
+
+    /** Returns the directory of objects of type TYPE. */
+    private File dir(Type type) {
+        return new File(_gitlet, type.dir());
+    }
+
+    /** The .gitlet directory. */
+    private final File _gitlet;
+
+    /** Writer of the object files. */
+    private final Durable _durable;
+}
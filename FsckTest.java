@@ -0,0 +1,83 @@
+package gitlet;
+
+import java.io.File;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of fsck.
+ *  @author Kaito Garcia
+ */
+public class FsckTest extends ScratchTestCase {
+
+    /** Makes a repository in the scratch directory. */
+    @Before
+    public void setUp() {
+        _repo = init(_dir);
+    }
+
+    /** A commit whose files were mostly removed is intact, though its
+     *  blobs read back in another order than they were hashed in. */
+    @Test
+    public void hashesBlobsInOrder() {
+        for (int i = 1; i <= 200; i += 1) {
+            write("f" + i, "" + i);
+        }
+        _repo.commit("many");
+        for (int i = 30; i <= 200; i += 1) {
+            _repo.rm("f" + i);
+        }
+        ObjectId few = _repo.commit("few");
+        assertEquals("", _repo.run("fsck"));
+        _repo.close();
+        _repo = open(_dir);
+        Commit commit = _repo.readCommit(few.name());
+        assertEquals(few, commit.hasherCommit());
+        assertEquals("", _repo.run("fsck"));
+    }
+
+    /** Damaged, missing and unreachable objects are each reported. */
+    @Test
+    public void reportsProblems() {
+        write("a.txt", "a");
+        write("b.txt", "b");
+        _repo.commit("one");
+        _repo.branch("other");
+        _repo.checkout("other");
+        write("c.txt", "c");
+        ObjectId two = _repo.commit("two");
+        _repo.checkout("master");
+        _repo.removeBranch("other");
+        assertEquals("dangling commit " + two.name() + "\n",
+                _repo.run("fsck"));
+
+        ObjectId a = Utils.sha1Id("a");
+        ObjectId b = Utils.sha1Id("b");
+        Utils.writeContents(object("stagingArea", a), "changed");
+        assertTrue(object("stagingArea", b).delete());
+        Utils.writeContents(object("commits", two), "garbage");
+        Utils.writeContents(object("stagingArea", Utils.sha1Id("loose")),
+                "loose");
+        assertEquals("corrupt blob " + a.name() + "\n"
+                + "corrupt commit " + two.name() + "\n"
+                + "missing blob " + b.name() + "\n"
+                + "dangling blob " + Utils.sha1Id("loose").name() + "\n"
+                + "dangling blob " + Utils.sha1Id("c").name() + "\n",
+                _repo.run("fsck"));
+    }
+
+    /** Writes TEXT to the working file NAME and adds it. */
+    private void write(String name, String text) {
+        Utils.writeContents(new File(_dir, name), text);
+        _repo.add(name);
+    }
+
+    /** Returns the file of the object ID stored in directory KIND. */
+    private File object(String kind, ObjectId id) {
+        return new File(_dir, ".gitlet/" + kind + "/" + id.name());
+    }
+
+    /** The repository in it. */
+    private Repository _repo;
+}
@@ -0,0 +1,545 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** The staging area as kept in .gitlet/index: for each path of
+ *  interest, whether it is staged for addition, and as which blob,
+ *  staged for removal, or no longer tracked. The file holds a header,
+ *  the entries as fixed-size records sorted by path, and then the
+ *  paths themselves:
+ *
+ *      header      "GLIX", the format version and the number of entries,
+ *                  as 4-byte integers.
+ *      record      offset and length of the path in the path area,
+ *                  flags, mode, 20-byte blob ID, and the size and
+ *                  modification time, in milliseconds, of the working
+ *                  file when it was staged; RECORD bytes in all.
+ *      paths       the UTF-8 paths, back to back.
+ *
+ *  The file is memory-mapped and looked up by binary search, so reading
+ *  it costs nothing in proportion to its size. Changes are kept beside
+ *  it, sorted, and an unchanged index is not written at all.
+ *
+ *  A large index is split, so that a command staging a few paths does
+ *  not rewrite all of them. Its entries are then kept in a shared base,
+ *  .gitlet/sharedindex.<ID>, an index file as above named by the ID of
+ *  its contents and never changed, and .gitlet/index holds only the
+ *  entries that differ from the base: the same layout, with version
+ *  SPLIT and the base ID after the header, and with a record without
+ *  flags for a path dropped since. Writing such an index writes only
+ *  those entries until they reach 1/SPLIT_RATIO of the base; then all
+ *  entries are merged, in one sequential pass that needs no sorting,
+ *  into a new base. Both files are only ever replaced whole, under the
+ *  LockFile of the index, so they can be read at any time without a
+ *  lock; a reader that finds the base gone as it is replaced reads the
+ *  index again.
+ *  @author Kaito Garcia
+ */
+class Index {
+
+    /** One path of the index. */
+    static class Entry {
+
+        /** An entry for PATH with the given FLAGS, MODE and BLOB and the
+         *  SIZE and MTIME of the working file when staged. */
+        Entry(String path, int flags, int mode, ObjectId blob, long size,
+              long mtime) {
+            _path = path;
+            _flags = flags;
+            _mode = mode;
+            _blob = blob;
+            _size = size;
+            _mtime = mtime;
+        }
+
+        /** Returns the path. */
+        String path() {
+            return _path;
+        }
+
+        /** Returns the blob staged for addition, or null. */
+        ObjectId blob() {
+            return _blob;
+        }
+
+        /** Returns true iff all of FLAGS are set. */
+        boolean has(int flags) {
+            return (_flags & flags) == flags;
+        }
+
+        /** Path of the file. */
+        private final String _path;
+        /** STAGED, REMOVED and UNTRACKED bits. */
+        private final int _flags;
+        /** File mode: REGULAR or EXECUTABLE. */
+        private final int _mode;
+        /** Blob staged for addition, or null. */
+        private final ObjectId _blob;
+        /** Size of the working file when staged, or -1. */
+        private final long _size;
+        /** Modification time of the working file when staged, or 0 if it
+         *  cannot be trusted. */
+        private final long _mtime;
+    }
+
+    /** The index stored in FILE, or an empty one if there is none. */
+    Index(File file) {
+        _file = file;
+        MappedByteBuffer map;
+        ObjectId base = null;
+        for (int tries = 1; true; tries += 1) {
+            map = map(file);
+            if (map == null || map.getInt(4) == VERSION) {
+                break;
+            }
+            MappedByteBuffer index = map;
+            byte[] raw = new byte[ObjectId.RAW_LENGTH];
+            index.position(HEADER);
+            index.get(raw);
+            base = ObjectId.fromRaw(raw, 0);
+            map = map(baseFile(base));
+            if (map != null && map.getInt(4) == VERSION) {
+                readChanges(index);
+                break;
+            } else if (map != null || tries == BASE_TRIES) {
+                throw Utils.error("Unrecognized index %s.", file);
+            }
+        }
+        _base = base;
+        _map = map;
+        _count = map == null ? 0 : map.getInt(8);
+    }
+
+    /** Returns the entry for PATH, or null if there is none. */
+    Entry get(String path) {
+        if (_changes.containsKey(path)) {
+            return _changes.get(path);
+        }
+        int lo = 0;
+        int hi = _count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = path(mid).compareTo(path);
+            if (c == 0) {
+                return entry(mid);
+            } else if (c < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return null;
+    }
+
+    /** Returns true iff PATH has all of FLAGS set. */
+    boolean has(String path, int flags) {
+        Entry entry = get(path);
+        return entry != null && entry.has(flags);
+    }
+
+    /** Returns the blob staged for addition as PATH, or null. */
+    ObjectId staged(String path) {
+        Entry entry = get(path);
+        return entry == null || !entry.has(STAGED) ? null : entry.blob();
+    }
+
+    /** Returns true iff PATH is staged for addition and the working file
+     *  FILE has not changed, by size, mode and modification time, since
+     *  it was. */
+    boolean upToDate(String path, File file) {
+        Entry entry = get(path);
+        return entry != null && entry.has(STAGED) && entry._mtime != 0
+            && entry._size == file.length()
+            && entry._mtime == file.lastModified()
+            && entry._mode == mode(file);
+    }
+
+    /** Stages BLOB for addition as PATH, recording the state of FILE, the
+     *  working file it came from, or nothing if FILE is null. */
+    void stage(String path, ObjectId blob, File file) {
+        Entry old = get(path);
+        int flags = (old == null ? 0 : old._flags) | STAGED;
+        long size = -1;
+        long mtime = 0;
+        int mode = REGULAR;
+        if (file != null) {
+            size = file.length();
+            mtime = file.lastModified();
+            mode = mode(file);
+            if (System.currentTimeMillis() - mtime < RACY) {
+                mtime = 0;
+            }
+        }
+        put(new Entry(path, flags, mode, blob, size, mtime));
+    }
+
+    /** Sets FLAG of PATH if ON and clears it otherwise. Clearing STAGED
+     *  also forgets the staged blob. */
+    void set(String path, int flag, boolean on) {
+        Entry old = get(path);
+        if (old == null && !on || old != null && old.has(flag) == on) {
+            return;
+        }
+        int flags = old == null ? flag
+            : on ? old._flags | flag : old._flags & ~flag;
+        if (flag == STAGED && !on) {
+            put(new Entry(path, flags, REGULAR, null, -1, 0));
+        } else {
+            put(new Entry(path, flags, old == null ? REGULAR : old._mode,
+                    old == null ? null : old._blob,
+                    old == null ? -1 : old._size,
+                    old == null ? 0 : old._mtime));
+        }
+    }
+
+    /** Clears FLAG of every path. */
+    void clear(int flag) {
+        for (String path : list(flag)) {
+            set(path, flag, false);
+        }
+    }
+
+    /** Returns true iff some path has FLAG set. */
+    boolean any(int flag) {
+        Iterator<Entry> entries = entries();
+        while (entries.hasNext()) {
+            if (entries.next().has(flag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the paths with FLAG set, in order. */
+    List<String> list(int flag) {
+        ArrayList<String> result = new ArrayList<>();
+        Iterator<Entry> entries = entries();
+        while (entries.hasNext()) {
+            Entry entry = entries.next();
+            if (entry.has(flag)) {
+                result.add(entry.path());
+            }
+        }
+        return result;
+    }
+
+    /** Returns <path, blob> of the paths staged for addition, in order. */
+    TreeMap<String, ObjectId> staged() {
+        TreeMap<String, ObjectId> result = new TreeMap<>();
+        Iterator<Entry> entries = entries();
+        while (entries.hasNext()) {
+            Entry entry = entries.next();
+            if (entry.has(STAGED)) {
+                result.put(entry.path(), entry.blob());
+            }
+        }
+        return result;
+    }
+
+    /** Returns true iff this differs from the file it was read from. */
+    boolean changed() {
+        return _changed;
+    }
+
+    /** Replaces the index file, whose LOCK is held, by this index,
+     *  publishing it through DURABLE. A large index is written as only
+     *  the entries changed since its base, or as a new base when they
+     *  grow too many, after which the old base is deleted. */
+    void write(LockFile lock, Durable durable) {
+        if (_base != null && _changes.size() <= _count / SPLIT_RATIO) {
+            List<Entry> changes = new ArrayList<>();
+            for (Map.Entry<String, Entry> change : _changes.entrySet()) {
+                changes.add(change.getValue() != null ? change.getValue()
+                        : new Entry(change.getKey(), 0, REGULAR, null, -1,
+                                0));
+            }
+            lock.commit(contents(changes.iterator(), _base), durable);
+            return;
+        }
+        byte[] all = contents(entries(), null);
+        ObjectId base = null;
+        if (ByteBuffer.wrap(all).getInt(8) >= SPLIT_MIN) {
+            base = Utils.sha1Id(all);
+            if (!base.equals(_base)) {
+                durable.publish(baseFile(base), all);
+            }
+            all = contents(Collections.emptyIterator(), base);
+        }
+        lock.commit(all, durable);
+        if (_base != null && !_base.equals(base)) {
+            baseFile(_base).delete();
+        }
+    }
+
+    /** Returns the contents of an index file holding ENTRIES, which are
+     *  in order of path, and, if BASE is not null, split from the base
+     *  with that ID. */
+    private static byte[] contents(Iterator<Entry> entries, ObjectId base) {
+        ArrayList<Entry> records = new ArrayList<>();
+        ByteBuffer paths = ByteBuffer.allocate(1024);
+        ArrayList<Integer> offsets = new ArrayList<>();
+        while (entries.hasNext()) {
+            Entry entry = entries.next();
+            byte[] path = entry.path().getBytes(StandardCharsets.UTF_8);
+            if (paths.remaining() < path.length) {
+                ByteBuffer larger = ByteBuffer.allocate(
+                        Math.max(paths.capacity() * 2,
+                                paths.position() + path.length));
+                paths.flip();
+                larger.put(paths);
+                paths = larger;
+            }
+            offsets.add(paths.position());
+            paths.put(path);
+            records.add(entry);
+        }
+        int header = base == null ? HEADER : HEADER + ObjectId.RAW_LENGTH;
+        ByteBuffer out = ByteBuffer.allocate(header
+                + records.size() * RECORD + paths.position());
+        out.putInt(MAGIC).putInt(base == null ? VERSION : SPLIT)
+            .putInt(records.size()).putInt(0);
+        byte[] raw = new byte[ObjectId.RAW_LENGTH];
+        if (base != null) {
+            base.copyRawTo(raw, 0);
+            out.put(raw);
+        }
+        for (int i = 0; i < records.size(); i++) {
+            Entry entry = records.get(i);
+            out.putInt(offsets.get(i));
+            out.putInt(i + 1 < offsets.size() ? offsets.get(i + 1)
+                    - offsets.get(i) : paths.position() - offsets.get(i));
+            out.putInt(entry._flags).putInt(entry._mode);
+            if (entry._blob == null) {
+                out.put(new byte[raw.length]);
+            } else {
+                entry._blob.copyRawTo(raw, 0);
+                out.put(raw);
+            }
+            out.putLong(entry._size).putLong(entry._mtime);
+        }
+        paths.flip();
+        out.put(paths);
+        return out.array();
+    }
+
+    /** Records ENTRY as the entry of its path, dropping it if it has no
+     *  flags left. */
+    private void put(Entry entry) {
+        _changes.put(entry.path(), entry._flags == 0 ? null : entry);
+        _changed = true;
+    }
+
+    /** Adds the records of the split INDEX to the changes to the base. */
+    private void readChanges(MappedByteBuffer index) {
+        int count = index.getInt(8);
+        int start = HEADER + ObjectId.RAW_LENGTH;
+        for (int row = 0; row < count; row += 1) {
+            Entry entry = entry(index, start, count, row);
+            _changes.put(entry.path(), entry._flags == 0 ? null : entry);
+        }
+    }
+
+    /** Returns FILE mapped into memory, or null if it is missing or
+     *  empty. */
+    private static MappedByteBuffer map(File file) {
+        MappedByteBuffer map;
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                 StandardOpenOption.READ)) {
+            if (in.size() == 0) {
+                return null;
+            }
+            map = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        } catch (NoSuchFileException excp) {
+            return null;
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read %s.", file);
+        }
+        if (map.limit() < HEADER || map.getInt(0) != MAGIC
+                || map.getInt(4) != VERSION && map.getInt(4) != SPLIT
+                || map.getInt(4) == SPLIT
+                   && map.limit() < HEADER + ObjectId.RAW_LENGTH) {
+            throw Utils.error("Unrecognized index %s.", file);
+        }
+        return map;
+    }
+
+    /** Returns the shared base with ID beside the index file. */
+    private File baseFile(ObjectId id) {
+        return new File(_file.getParentFile(), "sharedindex." + id.name());
+    }
+
+    /** Returns every entry, in order of path: those of the file merged
+     *  with the changes made since it was read. */
+    private Iterator<Entry> entries() {
+        Iterator<Map.Entry<String, Entry>> changes =
+            _changes.entrySet().iterator();
+        return new Iterator<Entry>() {
+            @Override
+            public boolean hasNext() {
+                advance();
+                return _next != null;
+            }
+
+            @Override
+            public Entry next() {
+                advance();
+                Entry result = _next;
+                _next = null;
+                return result;
+            }
+
+            /** Sets _next to the next entry, if it is not already set. */
+            private void advance() {
+                while (_next == null
+                       && (_row < _count || _change != null)) {
+                    String filed = _row < _count ? path(_row) : null;
+                    int c = filed == null ? 1 : _change == null ? -1
+                        : filed.compareTo(_change.getKey());
+                    if (c < 0) {
+                        _next = entry(_row);
+                        _row += 1;
+                    } else {
+                        _next = _change.getValue();
+                        _row += c == 0 ? 1 : 0;
+                        _change = changes.hasNext() ? changes.next() : null;
+                    }
+                }
+            }
+
+            /** Next record of the file. */
+            private int _row;
+            /** Next change. */
+            private Map.Entry<String, Entry> _change =
+                changes.hasNext() ? changes.next() : null;
+            /** Next entry to return, or null if not yet found. */
+            private Entry _next;
+        };
+    }
+
+    /** Returns the path of record ROW of the file. */
+    private String path(int row) {
+        return path(_map, HEADER, _count, row);
+    }
+
+    /** Returns record ROW of the file. */
+    private Entry entry(int row) {
+        return entry(_map, HEADER, _count, row);
+    }
+
+    /** Returns the path of record ROW of the COUNT records that start at
+     *  START in MAP. */
+    private static String path(ByteBuffer map, int start, int count,
+                               int row) {
+        int base = start + row * RECORD;
+        int from = start + count * RECORD + map.getInt(base);
+        byte[] path = new byte[map.getInt(base + 4)];
+        for (int i = 0; i < path.length; i++) {
+            path[i] = map.get(from + i);
+        }
+        return new String(path, StandardCharsets.UTF_8);
+    }
+
+    /** Returns record ROW of the COUNT records that start at START in
+     *  MAP. */
+    private static Entry entry(ByteBuffer map, int start, int count,
+                               int row) {
+        int base = start + row * RECORD;
+        byte[] raw = new byte[ObjectId.RAW_LENGTH];
+        boolean zero = true;
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = map.get(base + BLOB + i);
+            zero &= raw[i] == 0;
+        }
+        return new Entry(path(map, start, count, row), map.getInt(base + 8),
+                map.getInt(base + 12), zero ? null : ObjectId.fromRaw(raw, 0),
+                map.getLong(base + BLOB + raw.length),
+                map.getLong(base + BLOB + raw.length + 8));
+    }
+
+    /** Returns the mode recorded for the working file FILE. */
+    private static int mode(File file) {
+        return file.canExecute() ? EXECUTABLE : REGULAR;
+    }
+
+    /** Flag of a path staged for addition. */
+    static final int STAGED = 1;
+
+    /** Flag of a path staged for removal. */
+    static final int REMOVED = 2;
+
+    /** Flag of a path no longer tracked. */
+    static final int UNTRACKED = 4;
+
+    /** Mode of a regular file. */
+    static final int REGULAR = 0100644;
+
+    /** Mode of an executable file. */
+    static final int EXECUTABLE = 0100755;
+
+    /** First four bytes of an index file: "GLIX". */
+    private static final int MAGIC = 0x474c4958;
+
+    /** Version of the format. */
+    private static final int VERSION = 1;
+
+    /** Version of the format of a split index. */
+    private static final int SPLIT = 2;
+
+    /** Least number of entries for which the index is split. */
+    static final int SPLIT_MIN = 1000;
+
+    /** A split index is merged into a new base once its changes number
+     *  more than 1/SPLIT_RATIO of the entries of the base. */
+    static final int SPLIT_RATIO = 10;
+
+    /** Number of times to read the index before deciding that its base
+     *  is missing rather than being replaced. */
+    private static final int BASE_TRIES = 3;
+
+    /** Length of the header. */
+    private static final int HEADER = 16;
+
+    /** Offset of the blob ID in a record. */
+    private static final int BLOB = 16;
+
+    /** Length of a record. */
+    private static final int RECORD = BLOB + ObjectId.RAW_LENGTH + 16;
+
+    /** Files modified less than this many milliseconds before being
+     *  staged may change again within the same timestamp, so their
+     *  times are not recorded. */
+    private static final long RACY = 2000;
+
+    /** The index file. */
+    private final File _file;
+
+    /** ID of the shared base, or null if the index is not split. */
+    private final ObjectId _base;
+
+    /** Contents of the file, or of the base of a split index, or null if
+     *  there was none. */
+    private final MappedByteBuffer _map;
+
+    /** Number of records in _map. */
+    private final int _count;
+
+    /** True iff changed since read. */
+    private boolean _changed;
+
+    /** Entries that differ from those of _map, by path; null for an
+     *  entry removed. */
+    private final TreeMap<String, Entry> _changes = new TreeMap<>();
+}
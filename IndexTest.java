@@ -0,0 +1,168 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the staging-area index file.
+ *  @author Kaito Garcia
+ */
+public class IndexTest extends ScratchTestCase {
+
+    /** Places the index in the scratch directory. */
+    @Before
+    public void setUp() {
+        _file = new File(_dir, "index");
+        _durable = new Durable();
+        _durable.setPolicy("none");
+    }
+
+    /** Entries written and read back keep their flags and blobs, and
+     *  entries without flags are dropped. */
+    @Test
+    public void roundTrips() {
+        Index index = new Index(_file);
+        assertFalse(index.changed());
+        index.stage("b", blob("b"), null);
+        index.stage("a/x", blob("x"), null);
+        index.set("c", Index.REMOVED, true);
+        index.set("c", Index.UNTRACKED, true);
+        index.set("d", Index.UNTRACKED, true);
+        index.set("d", Index.UNTRACKED, false);
+        assertTrue(index.changed());
+        write(index);
+
+        index = new Index(_file);
+        assertFalse(index.changed());
+        assertEquals(blob("b"), index.staged("b"));
+        assertEquals(blob("x"), index.staged("a/x"));
+        assertTrue(index.has("c", Index.REMOVED | Index.UNTRACKED));
+        assertNull(index.get("d"));
+        assertEquals(Arrays.asList("c"), index.list(Index.REMOVED));
+        index.set("b", Index.STAGED, false);
+        index.clear(Index.REMOVED);
+        write(index);
+
+        index = new Index(_file);
+        assertNull(index.get("b"));
+        assertFalse(index.any(Index.REMOVED));
+        assertTrue(index.has("c", Index.UNTRACKED));
+        assertEquals(Arrays.asList("a/x"),
+                new ArrayList<>(index.staged().keySet()));
+        assertEquals(Arrays.asList("index"), Utils.plainFilenamesIn(_dir));
+    }
+
+    /** A staged working file is up to date until it changes, unless it
+     *  was modified too recently for its time to be trusted. */
+    @Test
+    public void tracksWorkingFiles() {
+        File work = new File(_dir, "work");
+        Utils.writeContents(work, "hello");
+        Index index = new Index(_file);
+        index.stage("work", blob("hello"), work);
+        assertFalse(index.upToDate("work", work));
+        work.setLastModified(System.currentTimeMillis() - 60000);
+        index.stage("work", blob("hello"), work);
+        write(index);
+        index = new Index(_file);
+        assertTrue(index.upToDate("work", work));
+        Utils.writeContents(work, "hello!");
+        work.setLastModified(System.currentTimeMillis() - 60000);
+        assertFalse(index.upToDate("work", work));
+    }
+
+    /** A large index writes only its changes beside a shared base, until
+     *  they grow too many and are merged into a new one; shrunk again,
+     *  it is written whole. */
+    @Test
+    public void splitsLargeIndex() {
+        Index index = new Index(_file);
+        TreeMap<String, ObjectId> expected = new TreeMap<>();
+        for (int i = 0; i < Index.SPLIT_MIN; i += 1) {
+            stage(index, expected, i, "v1");
+        }
+        write(index);
+        List<String> shared = shared();
+        assertEquals(1, shared.size());
+        assertEquals(expected, new Index(_file).staged());
+        long whole = new File(_dir, shared.get(0)).length();
+        assertTrue(_file.length() < 100);
+
+        index = new Index(_file);
+        stage(index, expected, 5, "v2");
+        stage(index, expected, Index.SPLIT_MIN + 1, "v1");
+        index.set(path(7), Index.STAGED, false);
+        expected.remove(path(7));
+        write(index);
+        assertEquals(shared, shared());
+        assertTrue(_file.length() < whole / 100);
+        index = new Index(_file);
+        assertEquals(expected, index.staged());
+        assertNull(index.get(path(7)));
+
+        for (int i = 0; i < Index.SPLIT_MIN / Index.SPLIT_RATIO; i += 1) {
+            stage(index, expected, i * 3, "v3");
+        }
+        write(index);
+        assertEquals(1, shared().size());
+        assertNotEquals(shared, shared());
+        assertTrue(_file.length() < 100);
+        index = new Index(_file);
+        assertEquals(expected, index.staged());
+
+        for (String path : new ArrayList<>(expected.keySet())) {
+            index.set(path, Index.STAGED, false);
+        }
+        index.stage("only", blob("only"), null);
+        write(index);
+        assertEquals(Arrays.asList("index"), Utils.plainFilenamesIn(_dir));
+        assertEquals(blob("only"), new Index(_file).staged("only"));
+    }
+
+    /** Stages the Ith path of a large index in INDEX as VERSION, and
+     *  records it in EXPECTED. */
+    private static void stage(Index index, TreeMap<String, ObjectId> expected,
+                              int i, String version) {
+        ObjectId id = blob(path(i) + version);
+        index.stage(path(i), id, null);
+        expected.put(path(i), id);
+    }
+
+    /** Returns the Ith path of a large index. */
+    private static String path(int i) {
+        return String.format("dir%d/file%05d", i % 7, i);
+    }
+
+    /** Returns the ID of a blob holding TEXT. */
+    private static ObjectId blob(String text) {
+        return Utils.sha1Id(text);
+    }
+
+    /** Writes INDEX to the index file under its lock. */
+    private void write(Index index) {
+        index.write(LockFile.acquire(_file, new Trace()), _durable);
+    }
+
+    /** Returns the names of the shared bases in the scratch directory. */
+    private List<String> shared() {
+        List<String> result = new ArrayList<>();
+        for (String name : Utils.plainFilenamesIn(_dir)) {
+            if (name.startsWith("sharedindex.")) {
+                result.add(name);
+            }
+        }
+        return result;
+    }
+
+    /** The index file in it. */
+    private File _file;
+
+    /** Policy used to write it. */
+    private Durable _durable;
+}
@@ -0,0 +1,338 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Every object of a repository in one file, an append-only log:
+ *
+ *      header   MAGIC, VERSION (ints)
+ *      records  for each: the ordinal of its type (byte), its ID (20
+ *               bytes), the time it was stored (long, milliseconds),
+ *               the length of its contents (int), then the contents.
+ *               A record of length -1, with no contents, deletes the
+ *               object instead.
+ *
+ *  The records are indexed in memory, from their headers alone, when
+ *  the store is first used; a lookup that misses first indexes any
+ *  records other processes have appended since. Appends hold an OS lock
+ *  on the whole file, which unlike a LockFile dies with its process,
+ *  and first cut off any record a crash left incomplete. Since that
+ *  lock belongs to the process, the stores of one process on the same
+ *  file also share a monitor, so that they take it in turn. Appends are
+ *  forced as the fsync policy directs (see Durable). The space of
+ *  deleted objects is not reclaimed.
+ *  @author Kaito Garcia
+ */
+class KvObjectStore implements ObjectStore {
+
+    /** The store in FILE, which need not exist yet, forced through
+     *  DURABLE. */
+    KvObjectStore(File file, Durable durable) {
+        _file = file;
+        _durable = durable;
+        String path;
+        try {
+            path = file.getCanonicalPath();
+        } catch (IOException excp) {
+            path = file.getAbsolutePath();
+        }
+        _appending = APPENDING.computeIfAbsent(path, k -> new Object());
+        _index = new EnumMap<>(Type.class);
+        for (Type type : Type.values()) {
+            _index.put(type, new ConcurrentHashMap<>());
+        }
+    }
+
+    @Override
+    public boolean has(Type type, ObjectId id) {
+        return lookup(type, id) != null;
+    }
+
+    @Override
+    public byte[] read(Type type, ObjectId id) {
+        Entry entry = lookup(type, id);
+        if (entry == null) {
+            throw Utils.error("Object %s is missing.", id.name());
+        }
+        ByteBuffer data = ByteBuffer.allocate(entry._length);
+        try {
+            readFully(data, entry._offset);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read %s.", _file);
+        }
+        return data.array();
+    }
+
+    @Override
+    public long size(Type type, ObjectId id) {
+        Entry entry = lookup(type, id);
+        return entry == null ? 0 : entry._length;
+    }
+
+    @Override
+    public void write(Type type, ObjectId id, byte[] data) {
+        if (!has(type, id)) {
+            append(type, id, data);
+        }
+    }
+
+    @Override
+    public List<ObjectId> iterate(Type type) {
+        catchUp();
+        return new ArrayList<>(_index.get(type).keySet());
+    }
+
+    @Override
+    public boolean delete(Type type, ObjectId id) {
+        if (!has(type, id)) {
+            return false;
+        }
+        append(type, id, null);
+        return true;
+    }
+
+    @Override
+    public long modified(Type type, ObjectId id) {
+        Entry entry = lookup(type, id);
+        return entry == null ? 0 : entry._time;
+    }
+
+    @Override
+    public void sync() {
+        _durable.groupCommit();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (_channel != null) {
+            try {
+                _channel.close();
+            } catch (IOException excp) {
+                /* Ignore: everything written was forced or abandoned. */
+            }
+            _channel = null;
+        }
+    }
+
+    /** Returns where the object of type TYPE with ID ID is stored, or
+     *  null if it is not. */
+    private Entry lookup(Type type, ObjectId id) {
+        Entry entry = _index.get(type).get(id);
+        if (entry == null) {
+            catchUp();
+            entry = _index.get(type).get(id);
+        }
+        return entry;
+    }
+
+    /** Indexes the complete records past those already indexed. */
+    private synchronized void catchUp() {
+        try {
+            long size = channel().size();
+            if (_scanned == 0) {
+                if (size < HEADER) {
+                    return;
+                }
+                ByteBuffer header = ByteBuffer.allocate(HEADER);
+                readFully(header, 0);
+                if (header.getInt(0) != MAGIC
+                        || header.getInt(Integer.BYTES) != VERSION) {
+                    throw Utils.error("%s is not an object store.", _file);
+                }
+                _scanned = HEADER;
+            }
+            ByteBuffer header = ByteBuffer.allocate(RECORD);
+            byte[] raw = new byte[ObjectId.RAW_LENGTH];
+            while (_scanned + RECORD <= size) {
+                header.clear();
+                readFully(header, _scanned);
+                Type type = Type.values()[header.get()];
+                header.get(raw);
+                long time = header.getLong();
+                int length = header.getInt();
+                long end = _scanned + RECORD + Math.max(length, 0);
+                if (end > size) {
+                    break;
+                }
+                index(type, ObjectId.fromRaw(raw, 0),
+                        new Entry(_scanned + RECORD, length, time));
+                _scanned = end;
+            }
+        } catch (IOException | IndexOutOfBoundsException excp) {
+            throw Utils.error("Cannot read %s.", _file);
+        }
+    }
+
+    /** Appends a record storing DATA as the object of type TYPE with ID
+     *  ID, or deleting that object if DATA is null. */
+    private synchronized void append(Type type, ObjectId id, byte[] data) {
+        FileChannel channel = channel();
+        synchronized (_appending) {
+            FileLock lock = null;
+            try {
+                lock = channel.lock();
+                appendLocked(type, id, data);
+            } catch (IOException excp) {
+                throw Utils.error("Cannot write %s.", _file);
+            } finally {
+                unlock(lock);
+            }
+        }
+    }
+
+    /** Does the work of append once it holds the lock on the file. */
+    private void appendLocked(Type type, ObjectId id, byte[] data)
+        throws IOException {
+        FileChannel channel = channel();
+        catchUp();
+        boolean present = _index.get(type).containsKey(id);
+        if (present == (data != null)) {
+            return;
+        }
+        if (_scanned == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            channel.truncate(0);
+            writeFully(header, 0);
+            _scanned = HEADER;
+        }
+        channel.truncate(_scanned);
+        int length = data == null ? -1 : data.length;
+        ByteBuffer record =
+            ByteBuffer.allocate(RECORD + Math.max(length, 0));
+        byte[] raw = new byte[ObjectId.RAW_LENGTH];
+        id.copyRawTo(raw, 0);
+        long time = System.currentTimeMillis();
+        record.put((byte) type.ordinal()).put(raw).putLong(time)
+            .putInt(length);
+        if (data != null) {
+            record.put(data);
+        }
+        record.flip();
+        writeFully(record, _scanned);
+        _durable.appended(channel);
+        index(type, id, new Entry(_scanned + RECORD, length, time));
+        _scanned += record.limit();
+    }
+
+    /** Releases LOCK, if not null. A lock that cannot be released is
+     *  released anyway when the file is closed. */
+    private static void unlock(FileLock lock) {
+        if (lock == null) {
+            return;
+        }
+        try {
+            lock.release();
+        } catch (IOException excp) {
+            /* Released on close. */
+        }
+    }
+
+    /** Records that the object of type TYPE with ID ID is at ENTRY, or
+     *  deleted if the length of ENTRY is negative. */
+    private void index(Type type, ObjectId id, Entry entry) {
+        if (entry._length < 0) {
+            _index.get(type).remove(id);
+        } else {
+            _index.get(type).put(id, entry);
+        }
+    }
+
+    /** Returns the open file, opening it if need be. */
+    private synchronized FileChannel channel() {
+        if (_channel == null) {
+            try {
+                _channel = FileChannel.open(_file.toPath(),
+                        StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE);
+            } catch (IOException excp) {
+                throw Utils.error("Cannot open %s.", _file);
+            }
+        }
+        return _channel;
+    }
+
+    /** Fills BUFFER from the file at POSITION and flips it. */
+    private void readFully(ByteBuffer buffer, long position)
+        throws IOException {
+        FileChannel channel = channel();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of file");
+            }
+        }
+        buffer.flip();
+    }
+
+    /** Writes all of BUFFER to the file at POSITION. */
+    private void writeFully(ByteBuffer buffer, long position)
+        throws IOException {
+        FileChannel channel = channel();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    /** Where one object is stored. */
+    private static class Entry {
+
+        /** An object of LENGTH bytes at OFFSET, stored at TIME. */
+        Entry(long offset, int length, long time) {
+            _offset = offset;
+            _length = length;
+            _time = time;
+        }
+
+        /** Position of the contents. */
+        private final long _offset;
+        /** Length of the contents, or -1 for a deletion. */
+        private final int _length;
+        /** When it was stored. */
+        private final long _time;
+    }
+
+    /** Marks the start of a store: "GLKV". */
+    private static final int MAGIC = 0x474c4b56;
+
+    /** Version of the format. */
+    private static final int VERSION = 1;
+
+    /** Length of the header. */
+    private static final int HEADER = 2 * Integer.BYTES;
+
+    /** Length of the header of a record. */
+    private static final int RECORD = 1 + ObjectId.RAW_LENGTH + Long.BYTES
+        + Integer.BYTES;
+
+    /** The monitor for appends to each file, by canonical path. */
+    private static final ConcurrentHashMap<String, Object> APPENDING =
+        new ConcurrentHashMap<>();
+
+    /** The store's file. */
+    private final File _file;
+
+    /** Forces what is appended as the fsync policy directs. */
+    private final Durable _durable;
+
+    /** The monitor shared by the stores of this process on the same
+     *  file, held while appending. */
+    private final Object _appending;
+
+    /** The open file, or null until first used. */
+    private FileChannel _channel;
+
+    /** Length of the prefix of the file indexed so far. */
+    private long _scanned;
+
+    /** Where each stored object of each type is. */
+    private final Map<Type, ConcurrentHashMap<ObjectId, Entry>> _index;
+}
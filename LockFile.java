@@ -0,0 +1,111 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+
+/** An exclusive lock on a repository file, held by whoever manages to
+ *  create the file of the same name with ".lock" appended. New contents
+ *  for the locked file are written into the lock file and then renamed
+ *  over it, which also releases the lock; readers therefore always see
+ *  either the old or the new contents. Locks are held only across a
+ *  read-compare-write, so a process that finds one waits briefly rather
+ *  than failing. A lock left behind by a crashed process must be
+ *  removed by hand, as the error message says.
+ *  @author Kaito Garcia
+ */
+class LockFile {
+
+    /** A held lock on TARGET, whose lock file is LOCK. */
+    private LockFile(File target, File lock) {
+        _target = target;
+        _lock = lock;
+        _held = true;
+    }
+
+    /** Returns a lock on TARGET, waiting up to TIMEOUT milliseconds for
+     *  another process to release it, and records the wait in TRACE. */
+    static LockFile acquire(File target, Trace trace) {
+        File lock = new File(target.getPath() + ".lock");
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        long start = trace.start();
+        for (int wait = 1; true; wait = Math.min(2 * wait, MAX_WAIT)) {
+            try {
+                Files.createFile(lock.toPath());
+                trace.end("lock.acquire", start, 1, 0, target.getPath());
+                return new LockFile(target, lock);
+            } catch (FileAlreadyExistsException excp) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw Utils.error("Unable to lock %s; if no other "
+                            + "gitlet process is running, remove %s.",
+                            target, lock);
+                }
+            } catch (IOException excp) {
+                throw Utils.error("Unable to lock %s.", target);
+            }
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw Utils.error("Interrupted while locking %s.", target);
+            }
+        }
+    }
+
+    /** Returns a lock on TARGET, or null at once if another process
+     *  holds it. */
+    static LockFile tryAcquire(File target) {
+        File lock = new File(target.getPath() + ".lock");
+        try {
+            Files.createFile(lock.toPath());
+            return new LockFile(target, lock);
+        } catch (FileAlreadyExistsException excp) {
+            return null;
+        } catch (IOException excp) {
+            throw Utils.error("Unable to lock %s.", target);
+        }
+    }
+
+    /** Replaces the contents of the locked file by DATA, published
+     *  through DURABLE, and releases the lock. */
+    void commit(byte[] data, Durable durable) {
+        try {
+            Files.write(_lock.toPath(), data);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write %s.", _lock);
+        }
+        durable.install(_lock, _target);
+        _held = false;
+    }
+
+    /** Deletes the locked file and releases the lock. */
+    void delete() {
+        _target.delete();
+        release();
+    }
+
+    /** Releases the lock, leaving the locked file unchanged, unless it
+     *  has already been released. */
+    void release() {
+        if (_held) {
+            _lock.delete();
+            _held = false;
+        }
+    }
+
+    /** Milliseconds to wait for a lock held by another process. */
+    static final long TIMEOUT = 10000;
+
+    /** Longest pause, in milliseconds, between attempts to lock. */
+    private static final int MAX_WAIT = 50;
+
+    /** The locked file. */
+    private final File _target;
+
+    /** The lock file. */
+    private final File _lock;
+
+    /** True until the lock is released. */
+    private boolean _held;
+}
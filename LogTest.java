@@ -0,0 +1,101 @@
+package gitlet;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the log command's options.
+ *  @author Kaito Garcia
+ */
+public class LogTest extends ScratchTestCase {
+
+    /** Makes a repository in the scratch directory with ten commits after
+     *  the initial one, named c0 to c9. */
+    @Before
+    public void setUp() {
+        _repo = init(_dir);
+        _ids = new ArrayList<>();
+        for (int i = 0; i < 10; i += 1) {
+            Utils.writeContents(new File(_dir, "f.txt"), "version " + i);
+            _repo.add("f.txt");
+            _ids.add(_repo.commit("c" + i));
+        }
+    }
+
+    /** -n limits the commits shown, after --skip omits the newest. */
+    @Test
+    public void limitAndSkip() {
+        assertEquals(11, messages("log").size());
+        assertEquals(Arrays.asList("c9", "c8", "c7"),
+                messages("log", "-n", "3"));
+        assertEquals(Arrays.asList("c7", "c6"),
+                messages("log", "--skip", "2", "-n", "2"));
+        assertEquals(Arrays.asList("c0", "initial commit"),
+                messages("log", "--skip", "9"));
+        assertEquals("", _repo.run("log", "-n", "0"));
+        assertEquals("", _repo.run("log", "--skip", "11"));
+    }
+
+    /** --since and --until show the commits made in a range of dates;
+     *  the initial commit dates from 1970. */
+    @Test
+    public void dateRange() {
+        String yesterday = LocalDate.now().minusDays(1).toString();
+        String tomorrow = LocalDate.now().plusDays(1).toString();
+        assertEquals(10, messages("log", "--since", yesterday).size());
+        assertEquals(11, messages("log", "--until", tomorrow + " 00:00:00")
+                .size());
+        assertEquals("", _repo.run("log", "--since", tomorrow));
+        assertEquals(Arrays.asList("c9"), messages("log", "--until",
+                tomorrow, "--since", yesterday, "-n", "1"));
+        assertEquals(Arrays.asList("initial commit"),
+                messages("log", "--until", yesterday));
+    }
+
+    /** Malformed options are refused. */
+    @Test
+    public void badOptions() {
+        for (String[] args : new String[][] {
+                {"log", "-n"}, {"log", "-n", "x"}, {"log", "-n", "-1"},
+                {"log", "--since", "yesterday"}, {"log", "--bogus"}}) {
+            assertEquals(Arrays.toString(args), "Incorrect operands.\n",
+                    _repo.run(args));
+        }
+    }
+
+    /** Commits are read only as they are shown, so a limited log works
+     *  even when older history cannot be read. */
+    @Test
+    public void readsLazily() {
+        _repo.close();
+        new File(_dir, ".gitlet/commits/" + _ids.get(5).name()).delete();
+        _repo = open(_dir);
+        assertEquals(Arrays.asList("c9", "c8", "c7", "c6"),
+                messages("log", "-n", "4"));
+    }
+
+    /** Returns the messages of the commits that the command ARGS
+     *  shows. */
+    private List<String> messages(String... args) {
+        List<String> result = new ArrayList<>();
+        String[] lines = _repo.run(args).split("\n");
+        for (int i = 0; i < lines.length; i += 1) {
+            if (lines[i].startsWith("Date: ")) {
+                result.add(lines[i + 1]);
+            }
+        }
+        return result;
+    }
+
+    /** The repository in it. */
+    private Repository _repo;
+
+    /** The IDs of commits c0 to c9. */
+    private List<ObjectId> _ids;
+}
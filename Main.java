@@ -1,26 +1,68 @@
 package gitlet;
 
 import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
+ *  It runs one command against the repository in the current directory
+ *  and renders the results on standard output; programs use Repository
+ *  instead.
  *  @author Kaito Garcia
  */
 public class Main {
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND> .... */
+     *  <COMMAND> <OPERAND> .... A command that fails, as when a lock
+     *  cannot be taken, an object is corrupt or a file cannot be read
+     *  or written, prints why in one line. */
     public static void main(String... args) {
+        boolean trace = args.length > 0 && args[0].equals("--trace");
+        if (trace) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
         if (errorCheckBoolean(args)) {
             errorCheckPrint(args);
             return;
         }
-        if (!new File(System.getProperty("user.dir") + "/.gitlet").exists()) {
-            repoHelper();
+        Trace tracer = new Trace();
+        tracer.begin(args[0], trace);
+        try {
+            long start = tracer.start();
+            Repo repo = new Repo(new File(System.getProperty("user.dir")),
+                    new Durable(tracer), null, System.out);
+            tracer.end("repo.load", start, 1, 0, null);
+            try {
+                dispatch(repo, System.out, args);
+                start = tracer.start();
+                repo.save();
+                tracer.end("repo.save", start, 1, 0, null);
+            } finally {
+                repo.release();
+            }
+            repo.scheduleMaintenance();
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        } catch (IllegalArgumentException excp) {
+            System.out.println(excp.getMessage() == null ? "Command failed."
+                    : excp.getMessage());
+        } finally {
+            tracer.finish();
         }
-        repo = Utils.readObject(new File(".gitlet/repo"), Repo.class);
+    }
+
+    /**
+     * Runs the command in ARGS against REPO, whose messages and listings
+     * go to OUT, and renders any result it returns to OUT.
+     * @param repo -- repository
+     * @param out -- stream of REPO
+     * @param args -- command and operands
+     */
+    static void dispatch(Repo repo, PrintStream out, String... args) {
         switch (args[0]) {
         case "init":
-            repo.init();
+            repo.init(args);
             break;
         case "add":
             repo.add(args[1]);
@@ -32,16 +74,22 @@ public class Main {
             repo.rm(args[1]);
             break;
         case "log":
-            repo.log();
+            repo.log(args);
             break;
         case "global-log":
-            repo.globalLog();
+            repo.globalLog(args);
             break;
         case "find":
-            repo.find(args[1]);
+            List<ObjectId> found = repo.find(args[1]);
+            if (found.isEmpty()) {
+                out.println("Found no commit with that message.");
+            }
+            for (ObjectId commit : found) {
+                out.println(commit);
+            }
             break;
         case "status":
-            repo.status();
+            out.print(repo.status());
             break;
         case "checkout":
             repo.checkout(args);
@@ -56,19 +104,20 @@ public class Main {
             repo.reset(args[1]);
             break;
         case "merge":
-            repo.merge(args[1]);
+            out.print(repo.merge(args[1]));
             break;
         default:
-            methodCallsEC(args);
+            methodCallsEC(repo, out, args);
         }
-        Utils.writeObject(new File(".gitlet/repo"), repo);
     }
 
     /**
      * method calls helper.
+     * @param repo -- repository
+     * @param out -- stream of REPO
      * @param args -- args
      */
-    public static void methodCallsEC(String... args) {
+    static void methodCallsEC(Repo repo, PrintStream out, String... args) {
         switch (args[0]) {
         case "add-remote":
             repo.addRemote(args);
@@ -85,17 +134,43 @@ public class Main {
         case "pull":
             repo.pull(args);
             break;
+        case "config":
+            repo.config(args);
+            break;
+        case "sparse-checkout":
+            repo.sparseCheckout(args);
+            break;
+        case "pack-refs":
+            repo.packRefs();
+            break;
+        case "blame":
+            repo.blame(args);
+            break;
+        case "diff":
+            repo.diff(args);
+            break;
+        case "cherry-pick":
+            repo.cherryPick(args);
+            break;
+        case "rebase":
+            repo.rebase(args);
+            break;
+        case "merge-tree":
+            repo.mergeTree(args);
+            break;
+        case "bundle":
+            repo.bundle(args);
+            break;
+        case "fsck":
+            repo.fsck();
+            break;
+        case "maintenance":
+            repo.maintenance(args);
+            break;
         default:
-            System.out.println("No command with that name exists.");
+            out.println("No command with that name exists.");
         }
     }
-    /**
-     * Repo helper.
-     */
-    public static void repoHelper() {
-        repo = new Repo();
-        Utils.writeObject(new File(".gitlet/repo"), repo);
-    }
 
     /**
      * Returns true if bad.
@@ -107,7 +182,7 @@ public class Main {
             return true;
         } else if (!argChecker(args)) {
             return true;
-        } else if (!exists && !args[0].equals("init")) {
+        } else if (!initialized() && !args[0].equals("init")) {
             return true;
         }
         return false;
@@ -122,7 +197,7 @@ public class Main {
             System.out.println("Please enter a command.");
         } else if (!argChecker(args)) {
             System.out.println("Incorrect operands.");
-        } else if (!exists && !args[0].equals("init")) {
+        } else if (!initialized() && !args[0].equals("init")) {
             System.out.println("Not in an initialized Gitlet directory.");
         }
     }
@@ -135,7 +210,8 @@ public class Main {
     public static boolean argChecker(String... args) {
         String cmd = args[0];
         int len = args.length;
-        if (cmd.equals("init") && len != 1) {
+        if (cmd.equals("init") && len != 1
+            && (len != 3 || !args[1].equals("--object-store"))) {
             return false;
         } else if (cmd.equals("add") && len != 2) {
             return false;
@@ -143,9 +219,7 @@ public class Main {
             return false;
         } else if (cmd.equals("rm") && len != 2) {
             return false;
-        } else if (cmd.equals("log") && len != 1) {
-            return false;
-        } else if (cmd.equals("global-log") && len != 1) {
+        } else if (cmd.equals("global-log") && len % 2 == 0) {
             return false;
         } else if (cmd.equals("find") && len != 2) {
             return false;
@@ -165,10 +239,34 @@ public class Main {
             return false;
         } else if (cmd.equals("push") && len != 3) {
             return false;
-        } else if (cmd.equals("fetch") && len != 3) {
+        } else if (cmd.equals("fetch") && (len < 3 || len > 6)) {
             return false;
         } else if (cmd.equals("pull") && len != 3) {
             return false;
+        } else if (cmd.equals("config") && (len < 2 || len > 3)) {
+            return false;
+        } else if (cmd.equals("sparse-checkout") && len < 2) {
+            return false;
+        } else if (cmd.equals("pack-refs") && len != 1) {
+            return false;
+        } else if (cmd.equals("blame") && len != 2 && len != 4) {
+            return false;
+        } else if (cmd.equals("diff") && len > 3) {
+            return false;
+        } else if (cmd.equals("cherry-pick") && len != 2) {
+            return false;
+        } else if (cmd.equals("rebase") && len != 2) {
+            return false;
+        } else if (cmd.equals("merge-tree") && len != 3) {
+            return false;
+        } else if (cmd.equals("bundle") && len < 3) {
+            return false;
+        } else if (cmd.equals("fsck") && len != 1) {
+            return false;
+        } else if (cmd.equals("maintenance") && (len < 2 || len > 3
+                   || !args[1].equals("run")
+                   || len == 3 && !args[2].equals("--auto"))) {
+            return false;
         }
         return !cmd.equals("merge") || len == 2;
     }
@@ -191,12 +289,12 @@ public class Main {
         return false;
     }
 
-
-    /** Repository. */
-    private static Repo repo;
-
-    /** String user. */
-    private static boolean exists = new File(System.getProperty("user.dir")
-            + "/.gitlet").exists();
+    /**
+     * Returns true iff the current directory holds a repository.
+     * @return whether .gitlet exists
+     */
+    private static boolean initialized() {
+        return new File(System.getProperty("user.dir"), ".gitlet").exists();
+    }
 }
 
@@ -0,0 +1,89 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the gitlet command as run from the command line.
+ *  @author Kaito Garcia
+ */
+public class MainTest extends ScratchTestCase {
+
+    /** A failing command prints why, rather than a stack trace. */
+    @Test
+    public void failuresPrintMessages() throws IOException {
+        assertEquals("Unknown core.objectStore: bogus\n",
+                gitlet(_dir, null, "init", "--object-store", "bogus"));
+        assertEquals("", gitlet(_dir, null, "init"));
+        assertEquals("Invalid branch name: ../x\n",
+                gitlet(_dir, null, "branch", "../x"));
+        new File(_dir, "sub").mkdir();
+        assertEquals("Is a directory\n", gitlet(_dir, null, "add", "sub"));
+        Utils.writeContents(new File(_dir, ".gitlet/config"),
+                "core.fsync=bogus\n");
+        assertEquals("Unknown core.fsync: bogus\n",
+                gitlet(_dir, null, "status"));
+    }
+
+    /** A command that fails still ends its trace. */
+    @Test
+    public void failureEndsTrace() throws IOException {
+        File trace = new File(_dir, "trace.json");
+        gitlet(_dir, trace, "init");
+        Utils.writeContents(new File(_dir, ".gitlet/config"),
+                "core.fsync=bogus\n");
+        gitlet(_dir, trace, "--trace", "log");
+        List<String> lines = Files.readAllLines(trace.toPath());
+        assertTrue(lines.get(lines.size() - 1).startsWith(
+                "{\"cmd\":\"log\",\"span\":\"total\""));
+    }
+
+    /** Runs gitlet with ARGS in the directory ROOT, tracing to TRACE if
+     *  it is not null, and returns what it prints on the standard
+     *  output, failing if it prints anything on the standard error or
+     *  exits with an error. */
+    static String gitlet(File root, File trace, String... args)
+        throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java")
+                .getPath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Main.class.getName());
+        for (String arg : args) {
+            command.add(arg);
+        }
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.directory(root);
+        builder.environment().remove(Trace.ENV);
+        if (trace != null) {
+            builder.environment().put(Trace.ENV, trace.getAbsolutePath());
+        }
+        File errors = File.createTempFile("gitlet", ".err");
+        builder.redirectError(errors);
+        Process process = builder.start();
+        String out;
+        try (InputStream in = process.getInputStream()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            in.transferTo(bytes);
+            out = bytes.toString(StandardCharsets.UTF_8);
+        }
+        try {
+            assertEquals(0, process.waitFor());
+        } catch (InterruptedException excp) {
+            fail("interrupted");
+        }
+        String err = Utils.readContentsAsString(errors);
+        errors.delete();
+        assertEquals("", err);
+        return out;
+    }
+}
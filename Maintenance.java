@@ -0,0 +1,256 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/** Upkeep of a repository, done in the background. Commands keep cheap
+ *  counts of the work that slowly degrades a repository: the objects
+ *  they write, some of which are later abandoned, and the commits they
+ *  write. The counts accumulate in .gitlet/maintenance. A command that
+ *  wrote anything and finds a count past its threshold starts "gitlet
+ *  maintenance run --auto" as a detached process at the lowest CPU
+ *  priority once its own work is done, so that no one waits for the
+ *  upkeep. The tasks, and the settings that govern them:
+ *
+ *      gc      due after gc.auto objects (default 6700; 0 never):
+ *              deletes the objects nothing reaches once they are
+ *              gc.pruneExpire days old (default 14), and temporary
+ *              files left by crashed commands, then packs the branches.
+ *      index   due after maintenance.indexThreshold commits (default
+ *              100; 0 never): builds the commit metadata store (see
+ *              MetaStore) if the repository lacks it.
+ *
+ *  Setting maintenance.auto to false stops commands from starting runs.
+ *  A run holds the lock on .gitlet/maintenance.run, so runs never
+ *  overlap, and starts no task once maintenance.budget milliseconds
+ *  (default 10000) have passed. A task's count is reduced only when
+ *  the task completes, so one cut short is taken up by the next run.
+ *  @author Kaito Garcia
+ */
+class Maintenance {
+
+    /** Performs the tasks of a run. */
+    interface Tasks {
+        /** Runs the task NAME, stopping early once the time is past
+         *  DEADLINE, and returns true iff it completed. */
+        boolean run(String name, long deadline);
+    }
+
+    /** Upkeep of the repository whose .gitlet directory is GITLET, with
+     *  settings CONFIG, saving its counts through DURABLE. */
+    Maintenance(File gitlet, Config config, Durable durable) {
+        _counts = new File(gitlet, "maintenance");
+        _run = new File(gitlet, "maintenance.run");
+        _root = gitlet.getAbsoluteFile().getParentFile();
+        _config = config;
+        _durable = durable;
+    }
+
+    /** Adds OBJECTS written objects and COMMITS written commits to the
+     *  counts.
+     *  @return true iff some task is now due */
+    boolean record(long objects, long commits) {
+        return !due(change(objects, commits)).isEmpty();
+    }
+
+    /** Returns true iff commands should start runs. */
+    boolean auto() {
+        return Boolean.parseBoolean(_config.get(Config.MAINTENANCE_AUTO,
+                "true"));
+    }
+
+    /** Starts "gitlet maintenance run --auto" in a detached process in
+     *  the working directory of the repository, under nice where there
+     *  is one, unless a run is in progress. A run that cannot be started
+     *  is left to the next command. */
+    void schedule() {
+        if (new File(_run.getPath() + ".lock").exists()) {
+            return;
+        }
+        ArrayList<String> command = new ArrayList<>(Arrays.asList(
+                "nice", "-n", "19",
+                System.getProperty("java.home") + File.separator + "bin"
+                + File.separator + "java",
+                "-cp", System.getProperty("java.class.path"),
+                Main.class.getName(), "maintenance", "run", "--auto"));
+        for (int tries = 0; tries < 2; tries += 1) {
+            ProcessBuilder builder = new ProcessBuilder(command);
+            builder.directory(_root);
+            builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+            builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+            try {
+                builder.start();
+                return;
+            } catch (IOException excp) {
+                command.subList(0, NICE).clear();
+            }
+        }
+    }
+
+    /** Runs every task through TASKS, or only those due if AUTO, in
+     *  order, unless another run is in progress.
+     *  @return false iff another run was in progress */
+    boolean run(boolean auto, Tasks tasks) {
+        LockFile lock = lockRun();
+        if (lock == null) {
+            return false;
+        }
+        try {
+            Properties counts = counts();
+            long deadline = System.currentTimeMillis() + budget();
+            for (String task : auto ? due(counts) : TASKS) {
+                if (System.currentTimeMillis() > deadline) {
+                    break;
+                }
+                if (tasks.run(task, deadline)) {
+                    long done = count(counts, task);
+                    change(task.equals(GC) ? -done : 0,
+                           task.equals(INDEX) ? -done : 0);
+                }
+            }
+        } finally {
+            lock.release();
+        }
+        return true;
+    }
+
+    /** Returns the age, in milliseconds, from which unreachable objects
+     *  are deleted. */
+    long pruneExpire() {
+        return setting(Config.PRUNE_EXPIRE, 14) * DAY;
+    }
+
+    /** Adds OBJECTS to the count of gc and COMMITS to that of index,
+     *  neither falling below 0, under the lock on the counts.
+     *  @return the new counts */
+    private Properties change(long objects, long commits) {
+        LockFile lock = LockFile.acquire(_counts, _durable.trace());
+        try {
+            Properties counts = counts();
+            add(counts, GC, objects);
+            add(counts, INDEX, commits);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                counts.store(out, null);
+            } catch (IOException excp) {
+                throw Utils.error("Cannot write %s.", _counts);
+            }
+            lock.commit(out.toByteArray(), _durable);
+            return counts;
+        } finally {
+            lock.release();
+        }
+    }
+
+    /** Returns the lock on runs, or null if another run holds it. A lock
+     *  older than STALE was left by a run that died, and is broken. */
+    private LockFile lockRun() {
+        LockFile lock = LockFile.tryAcquire(_run);
+        File stale = new File(_run.getPath() + ".lock");
+        if (lock == null
+                && System.currentTimeMillis() - stale.lastModified() > STALE
+                && stale.delete()) {
+            lock = LockFile.tryAcquire(_run);
+        }
+        return lock;
+    }
+
+    /** Returns the tasks whose COUNTS have reached their thresholds, in
+     *  the order they run. */
+    private List<String> due(Properties counts) {
+        ArrayList<String> due = new ArrayList<>();
+        for (String task : TASKS) {
+            long threshold = task.equals(GC)
+                ? setting(Config.GC_AUTO, 6700)
+                : setting(Config.INDEX_THRESHOLD, 100);
+            if (threshold > 0 && count(counts, task) >= threshold) {
+                due.add(task);
+            }
+        }
+        return due;
+    }
+
+    /** Returns the counts, by task, as last saved. */
+    private Properties counts() {
+        Properties counts = new Properties();
+        if (_counts.isFile()) {
+            try (InputStream in = new FileInputStream(_counts)) {
+                counts.load(in);
+            } catch (IOException excp) {
+                throw Utils.error("Cannot read %s.", _counts);
+            }
+        }
+        return counts;
+    }
+
+    /** Returns the count of TASK in COUNTS; an unreadable count is 0. */
+    private static long count(Properties counts, String task) {
+        try {
+            return Long.parseLong(counts.getProperty(task, "0"));
+        } catch (NumberFormatException excp) {
+            return 0;
+        }
+    }
+
+    /** Adds DELTA to the count of TASK in COUNTS, stopping at 0. */
+    private static void add(Properties counts, String task, long delta) {
+        counts.setProperty(task, Long.toString(Math.max(0,
+                count(counts, task) + delta)));
+    }
+
+    /** Returns the run time allowed, in milliseconds. */
+    private long budget() {
+        return setting(Config.MAINTENANCE_BUDGET, 10000);
+    }
+
+    /** Returns the value of the numeric setting KEY, or DEFAULTVALUE if
+     *  it is unset. */
+    private long setting(String key, long defaultValue) {
+        String value = _config.get(key, null);
+        try {
+            return value == null ? defaultValue : Long.parseLong(value);
+        } catch (NumberFormatException excp) {
+            throw Utils.error("Invalid %s: %s", key, value);
+        }
+    }
+
+    /** Task deleting unreachable objects. */
+    static final String GC = "gc";
+
+    /** Task building the commit metadata store. */
+    static final String INDEX = "index";
+
+    /** Every task, in the order they run. */
+    static final List<String> TASKS = Arrays.asList(GC, INDEX);
+
+    /** Milliseconds in a day. */
+    static final long DAY = 24L * 60 * 60 * 1000;
+
+    /** Age in milliseconds after which a run's lock is broken. */
+    private static final long STALE = 60L * 60 * 1000;
+
+    /** Number of words of the command that run nice. */
+    private static final int NICE = 3;
+
+    /** File of counts. */
+    private final File _counts;
+
+    /** File whose lock a run holds. */
+    private final File _run;
+
+    /** Directory in which runs start. */
+    private final File _root;
+
+    /** Repository settings. */
+    private final Config _config;
+
+    /** Writer of the counts. */
+    private final Durable _durable;
+}
@@ -0,0 +1,158 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of background upkeep: its counts, its runs and gc.
+ *  @author Kaito Garcia
+ */
+public class MaintenanceTest extends ScratchTestCase {
+
+    /** Makes a scratch .gitlet directory with settings. */
+    @Before
+    public void setUp() {
+        _gitlet = new File(_dir, ".gitlet");
+        _gitlet.mkdir();
+        _durable = new Durable();
+        _durable.setPolicy("none");
+        _config = new Config(new File(_gitlet, "config"), _durable);
+        _ran = new ArrayList<>();
+    }
+
+    /** A task falls due once its count reaches its threshold, runs only
+     *  then in an automatic run, and has its count reduced by the work
+     *  it covered once it completes. */
+    @Test
+    public void countsWork() {
+        _config.set(Config.GC_AUTO, "3");
+        _config.set(Config.INDEX_THRESHOLD, "2");
+        Maintenance maintenance = maintenance();
+        assertFalse(maintenance.record(2, 1));
+        assertTrue(maintenance.record(1, 0));
+        assertTrue(maintenance.run(true, this::task));
+        assertEquals(Arrays.asList("gc"), _ran);
+        assertFalse(maintenance.record(0, 0));
+        assertTrue(maintenance.record(0, 1));
+        assertTrue(maintenance.run(true, this::task));
+        assertEquals(Arrays.asList("gc", "index"), _ran);
+        assertTrue(maintenance.run(false, this::task));
+        assertEquals(Arrays.asList("gc", "index", "gc", "index"), _ran);
+
+        _config.set(Config.GC_AUTO, "0");
+        assertFalse(maintenance().record(1000000, 0));
+    }
+
+    /** A run that overruns its budget starts no further task, and a task
+     *  cut short keeps its count for the next run. */
+    @Test
+    public void respectsBudget() {
+        _config.set(Config.GC_AUTO, "1");
+        _config.set(Config.INDEX_THRESHOLD, "1");
+        _config.set(Config.MAINTENANCE_BUDGET, "20");
+        Maintenance maintenance = maintenance();
+        maintenance.record(1, 1);
+        assertTrue(maintenance.run(true, (name, deadline) -> {
+            _ran.add(name);
+            while (System.currentTimeMillis() <= deadline) {
+                Thread.yield();
+            }
+            return false;
+        }));
+        assertEquals(Arrays.asList("gc"), _ran);
+        assertTrue(maintenance.record(0, 0));
+    }
+
+    /** Runs never overlap, but the lock of a run that died is broken. */
+    @Test
+    public void runsOneAtATime() {
+        File run = new File(_gitlet, "maintenance.run");
+        LockFile lock = LockFile.acquire(run, new Trace());
+        try {
+            assertFalse(maintenance().run(false, this::task));
+            assertEquals(Collections.emptyList(), _ran);
+            new File(run.getPath() + ".lock").setLastModified(
+                    System.currentTimeMillis() - 2 * 60 * 60 * 1000);
+            assertTrue(maintenance().run(false, this::task));
+            assertEquals(Arrays.asList("gc", "index"), _ran);
+        } finally {
+            lock.release();
+        }
+    }
+
+    /** gc deletes old objects that nothing reaches and keeps the rest,
+     *  and a run through the command rebuilds the metadata store. */
+    @Test
+    public void collectsGarbage() {
+        try (Repository repository = Repository.init(_dir)) {
+            repository.run("config", Config.MAINTENANCE_AUTO, "false");
+            repository.run("config", Config.PRUNE_EXPIRE, "0");
+            write(repository, "kept.txt", "kept");
+            repository.commit("kept");
+            repository.branch("doomed");
+            repository.checkout("doomed");
+            write(repository, "lost.txt", "lost");
+            ObjectId lost = repository.commit("lost");
+            repository.checkout("master");
+            repository.removeBranch("doomed");
+            write(repository, "staged.txt", "staged");
+            for (File file : Arrays.asList(object("commits", lost),
+                     object("stagingArea", Utils.sha1Id("lost")),
+                     object("stagingArea", Utils.sha1Id("staged")))) {
+                file.setLastModified(System.currentTimeMillis() - 60000);
+            }
+            Bench.deleteTree(new File(_gitlet, "meta"));
+
+            assertEquals("", repository.run("maintenance", "run"));
+            assertFalse(object("commits", lost).exists());
+            assertFalse(object("stagingArea", Utils.sha1Id("lost")).exists());
+            assertTrue(object("stagingArea", Utils.sha1Id("kept")).exists());
+            assertTrue(object("stagingArea",
+                    Utils.sha1Id("staged")).exists());
+            assertTrue(new File(_gitlet, "meta").isDirectory());
+            assertEquals("", repository.run("fsck"));
+        }
+    }
+
+    /** Records a run of task NAME, which completes. DEADLINE is
+     *  ignored. */
+    private boolean task(String name, long deadline) {
+        _ran.add(name);
+        return true;
+    }
+
+    /** Returns the upkeep of the scratch repository. */
+    private Maintenance maintenance() {
+        return new Maintenance(_gitlet,
+                new Config(new File(_gitlet, "config"), _durable), _durable);
+    }
+
+    /** Writes TEXT to the working file NAME of REPOSITORY and adds it. */
+    private void write(Repository repository, String name, String text) {
+        Utils.writeContents(new File(_dir, name), text);
+        repository.add(name);
+    }
+
+    /** Returns the file of the object ID stored in directory KIND. */
+    private File object(String kind, ObjectId id) {
+        return new File(_gitlet, kind + "/" + id.name());
+    }
+
+    /** Its .gitlet directory. */
+    private File _gitlet;
+
+    /** Policy for writing files. */
+    private Durable _durable;
+
+    /** Settings of the repository. */
+    private Config _config;
+
+    /** Names of the tasks run, in order. */
+    private List<String> _ran;
+}
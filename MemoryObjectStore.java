@@ -0,0 +1,91 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Objects kept in the heap and lost when the process ends. Nothing
+ *  touches the disk, so tests, benchmarks and simulations that run
+ *  against this store are limited only by the work Repo itself does.
+ *  @author Kaito Garcia
+ */
+class MemoryObjectStore implements ObjectStore {
+
+    /** An empty store. */
+    MemoryObjectStore() {
+        _objects = new EnumMap<>(Type.class);
+        for (Type type : Type.values()) {
+            _objects.put(type, new ConcurrentHashMap<>());
+        }
+    }
+
+    @Override
+    public boolean has(Type type, ObjectId id) {
+        return _objects.get(type).containsKey(id);
+    }
+
+    @Override
+    public byte[] read(Type type, ObjectId id) {
+        return stored(type, id)._data.clone();
+    }
+
+    @Override
+    public long size(Type type, ObjectId id) {
+        return stored(type, id)._data.length;
+    }
+
+    @Override
+    public void write(Type type, ObjectId id, byte[] data) {
+        _objects.get(type).putIfAbsent(id, new Stored(data.clone()));
+    }
+
+    @Override
+    public List<ObjectId> iterate(Type type) {
+        return new ArrayList<>(_objects.get(type).keySet());
+    }
+
+    @Override
+    public boolean delete(Type type, ObjectId id) {
+        return _objects.get(type).remove(id) != null;
+    }
+
+    @Override
+    public long modified(Type type, ObjectId id) {
+        Stored stored = _objects.get(type).get(id);
+        return stored == null ? 0 : stored._time;
+    }
+
+    @Override
+    public void sync() {
+    }
+
+    /** Returns the object of type TYPE with ID ID, which must be
+     *  stored. */
+    private Stored stored(Type type, ObjectId id) {
+        Stored stored = _objects.get(type).get(id);
+        if (stored == null) {
+            throw Utils.error("Object %s is missing.", id.name());
+        }
+        return stored;
+    }
+
+    /** One object. */
+    private static class Stored {
+
+        /** An object with contents DATA, stored now. */
+        Stored(byte[] data) {
+            _data = data;
+            _time = System.currentTimeMillis();
+        }
+
+        /** Contents. */
+        private final byte[] _data;
+        /** When it was stored. */
+        private final long _time;
+    }
+
+    /** The objects of each type, by ID. */
+    private final Map<Type, ConcurrentHashMap<ObjectId, Stored>> _objects;
+}
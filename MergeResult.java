@@ -0,0 +1,86 @@
+package gitlet;
+
+import java.util.Collections;
+import java.util.List;
+
+/** What merging a branch into the current one did. toString renders it
+ *  as the merge command reports it.
+ *  @author Kaito Garcia
+ */
+public final class MergeResult {
+
+    /** The ways a merge ends. */
+    public enum Kind {
+        /** A merge commit was made, possibly recording conflicts. */
+        MERGED,
+        /** The current branch was moved up to the given one. */
+        FAST_FORWARDED,
+        /** The given branch was merged already; nothing changed. */
+        UP_TO_DATE,
+        /** Nothing changed, for the reason message gives. */
+        REFUSED
+    }
+
+    /** A merge of kind KIND leaving the head commit at HEAD, which
+     *  conflicted in the files CONFLICTS and is described by MESSAGE,
+     *  which may be null. */
+    MergeResult(Kind kind, ObjectId head, List<String> conflicts,
+                String message) {
+        _kind = kind;
+        _head = head;
+        _conflicts = Collections.unmodifiableList(conflicts);
+        _message = message;
+    }
+
+    /** Returns a merge that changed nothing at HEAD, for REASON. */
+    static MergeResult refused(ObjectId head, String reason) {
+        return new MergeResult(Kind.REFUSED, head, Collections.emptyList(),
+                reason);
+    }
+
+    /** Returns how the merge ended. */
+    public Kind kind() {
+        return _kind;
+    }
+
+    /** Returns the ID of the head commit after the merge. */
+    public ObjectId head() {
+        return _head;
+    }
+
+    /** Returns the files left with conflict markers, in the order they
+     *  were merged. */
+    public List<String> conflicts() {
+        return _conflicts;
+    }
+
+    /** Returns the message the merge command prints after any conflicts,
+     *  or null if there is none. */
+    public String message() {
+        return _message;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < _conflicts.size(); i += 1) {
+            out.append("Encountered a merge conflict.\n");
+        }
+        if (_message != null) {
+            out.append(_message).append('\n');
+        }
+        return out.toString();
+    }
+
+    /** How the merge ended. */
+    private final Kind _kind;
+
+    /** Head commit afterwards. */
+    private final ObjectId _head;
+
+    /** Files with conflicts. */
+    private final List<String> _conflicts;
+
+    /** Message, or null. */
+    private final String _message;
+}
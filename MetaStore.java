@@ -0,0 +1,245 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+/** An append-only store of commit metadata, kept column by column in
+ *  the directory .gitlet/meta so that listing commits never reads a
+ *  commit object. Each row describes one commit, in the order the
+ *  commits were stored:
+ *
+ *      ids         the 20-byte ID.
+ *      parents     the 20-byte parent ID, or zeros for none.
+ *      times       the time, as 8-byte milliseconds since the epoch.
+ *      ends        the 8-byte offset in messages just past the message.
+ *      messages    the UTF-8 messages, back to back.
+ *
+ *  Rows are appended under a LockFile, ids last, so a reader counts
+ *  only the rows present in every column and never sees a partial one;
+ *  the next append truncates whatever a crash left behind. The store
+ *  is derived from the commits and is rebuilt if it is missing.
+ *  @author Kaito Garcia
+ */
+class MetaStore {
+
+    /** Receives the columns of one row of a scan. */
+    interface Visitor {
+        /** Called with the ID, parent ID (or null), time and message of
+         *  one commit. */
+        void visit(ObjectId id, ObjectId parent, long time, String message);
+    }
+
+    /** The store in directory DIR, which need not exist yet, recording
+     *  spans in TRACE. */
+    MetaStore(File dir, Trace trace) {
+        _dir = dir;
+        _trace = trace;
+    }
+
+    /** Returns true iff the store has been created. */
+    boolean exists() {
+        return column(IDS).isFile();
+    }
+
+    /** Appends a row for each of COMMITS, creating the store if
+     *  needed. */
+    void append(Collection<Commit> commits) {
+        append(commits, false);
+    }
+
+    /** Creates the store from COMMITS, all the commits in the repository,
+     *  unless another process has just done so. */
+    void rebuild(Collection<Commit> commits) {
+        append(commits, true);
+    }
+
+    /** Replaces the rows by one for each of COMMITS, all the commits in
+     *  the repository, as when some have been deleted. The old columns
+     *  are unlinked rather than truncated, ids first, so that a reader
+     *  that has them mapped keeps a consistent view and one that comes
+     *  later waits for the new store. */
+    void replace(Collection<Commit> commits) {
+        _dir.mkdirs();
+        LockFile lock = LockFile.acquire(new File(_dir, "columns"), _trace);
+        try {
+            for (String name : COLUMNS) {
+                column(name).delete();
+            }
+            appendRows(commits);
+        } finally {
+            lock.release();
+        }
+    }
+
+    /** Appends a row for each of COMMITS, unless ONLYNEW and the store
+     *  exists. */
+    private void append(Collection<Commit> commits, boolean onlyNew) {
+        _dir.mkdirs();
+        LockFile lock = LockFile.acquire(new File(_dir, "columns"), _trace);
+        try {
+            if (onlyNew && exists()) {
+                return;
+            }
+            appendRows(commits);
+        } finally {
+            lock.release();
+        }
+    }
+
+    /** Appends a row for each of COMMITS while holding the lock. */
+    private void appendRows(Collection<Commit> commits) {
+        int rows = rows();
+        long end = rows == 0 ? 0 : map(ENDS).getLong((rows - 1) * 8);
+        ByteBuffer ids = ByteBuffer.allocate(commits.size() * ID_WIDTH);
+        ByteBuffer parents = ByteBuffer.allocate(ids.capacity());
+        ByteBuffer times = ByteBuffer.allocate(commits.size() * 8);
+        ByteBuffer ends = ByteBuffer.allocate(times.capacity());
+        ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        byte[] raw = new byte[ID_WIDTH];
+        for (Commit commit : commits) {
+            commit.getHashID().copyRawTo(raw, 0);
+            ids.put(raw);
+            if (commit.getParentHashID() == null) {
+                parents.put(new byte[ID_WIDTH]);
+            } else {
+                commit.getParentHashID().copyRawTo(raw, 0);
+                parents.put(raw);
+            }
+            times.putLong(commit.getTime());
+            byte[] message =
+                commit.getMessage().getBytes(StandardCharsets.UTF_8);
+            messages.write(message, 0, message.length);
+            ends.putLong(end + messages.size());
+        }
+        write(MESSAGES, end, ByteBuffer.wrap(messages.toByteArray()));
+        write(ENDS, rows * 8L, ends);
+        write(TIMES, rows * 8L, times);
+        write(PARENTS, rows * (long) ID_WIDTH, parents);
+        write(IDS, rows * (long) ID_WIDTH, ids);
+    }
+
+    /** Calls VISITOR on every row whose time lies in [SINCE, UNTIL], in
+     *  the order stored. Only the times column is read for rows outside
+     *  the range. */
+    void scan(long since, long until, Visitor visitor) {
+        int rows = rows();
+        if (rows == 0) {
+            return;
+        }
+        long start = _trace.start();
+        MappedByteBuffer times = map(TIMES);
+        MappedByteBuffer ids = map(IDS);
+        MappedByteBuffer parents = map(PARENTS);
+        MappedByteBuffer ends = map(ENDS);
+        MappedByteBuffer messages = map(MESSAGES);
+        byte[] raw = new byte[ID_WIDTH];
+        int visited = 0;
+        for (int row = 0; row < rows; row++) {
+            long time = times.getLong(row * 8);
+            if (time < since || time > until) {
+                continue;
+            }
+            get(ids, row * ID_WIDTH, raw);
+            ObjectId id = ObjectId.fromRaw(raw, 0);
+            get(parents, row * ID_WIDTH, raw);
+            ObjectId parent = isZero(raw) ? null : ObjectId.fromRaw(raw, 0);
+            int from = row == 0 ? 0 : (int) ends.getLong((row - 1) * 8);
+            byte[] message = new byte[(int) ends.getLong(row * 8) - from];
+            get(messages, from, message);
+            visitor.visit(id, parent, time,
+                    new String(message, StandardCharsets.UTF_8));
+            visited += 1;
+        }
+        _trace.end("meta.scan", start, visited, 0, null);
+    }
+
+    /** Returns the number of complete rows. */
+    int rows() {
+        long rows = Math.min(column(IDS).length() / ID_WIDTH,
+                column(PARENTS).length() / ID_WIDTH);
+        rows = Math.min(rows, column(TIMES).length() / 8);
+        rows = Math.min(rows, column(ENDS).length() / 8);
+        return (int) rows;
+    }
+
+    /** Copies bytes of BUFFER starting at POS into DST. */
+    private static void get(ByteBuffer buffer, int pos, byte[] dst) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(pos);
+        view.get(dst);
+    }
+
+    /** Returns true iff RAW is all zeros. */
+    private static boolean isZero(byte[] raw) {
+        for (byte b : raw) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the file of column NAME. */
+    private File column(String name) {
+        return new File(_dir, name);
+    }
+
+    /** Returns column NAME mapped read-only. */
+    private MappedByteBuffer map(String name) {
+        File file = column(name);
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                 StandardOpenOption.READ)) {
+            return in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read %s.", file);
+        }
+    }
+
+    /** Truncates column NAME to LENGTH bytes, dropping any partial rows,
+     *  and appends DATA. */
+    private void write(String name, long length, ByteBuffer data) {
+        data.rewind();
+        try (FileChannel out = FileChannel.open(column(name).toPath(),
+                 StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            out.truncate(length);
+            out.position(length);
+            while (data.hasRemaining()) {
+                out.write(data);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write %s.", column(name));
+        }
+    }
+
+    /** Column of IDs. */
+    private static final String IDS = "ids";
+    /** Column of parent IDs. */
+    private static final String PARENTS = "parents";
+    /** Column of times. */
+    private static final String TIMES = "times";
+    /** Column of message end offsets. */
+    private static final String ENDS = "ends";
+    /** Column of messages. */
+    private static final String MESSAGES = "messages";
+
+    /** Every column, ids first. */
+    private static final String[] COLUMNS = {
+        IDS, PARENTS, TIMES, ENDS, MESSAGES
+    };
+
+    /** Width of an ID column entry. */
+    private static final int ID_WIDTH = ObjectId.RAW_LENGTH;
+
+    /** Directory holding the columns. */
+    private final File _dir;
+
+    /** Where spans are recorded. */
+    private final Trace _trace;
+}
@@ -0,0 +1,156 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the commit-metadata store and the commands that scan it.
+ *  @author Kaito Garcia
+ */
+public class MetaStoreTest extends ScratchTestCase {
+
+    /** Makes a chain of commits. */
+    @Before
+    public void setUp() {
+        _commits = new ArrayList<>();
+        ObjectId parent = null;
+        for (String message : new String[] {
+                "initial commit", "one", "deux", "drei \u221a", ""}) {
+            Commit commit = new Commit(message, parent, null);
+            _commits.add(commit);
+            parent = commit.getHashID();
+        }
+    }
+
+    /** Rows appended in batches scan back in order, column for
+     *  column. */
+    @Test
+    public void appendsAndScans() {
+        MetaStore store = new MetaStore(new File(_dir, "meta"), new Trace());
+        assertFalse(store.exists());
+        store.append(_commits.subList(0, 2));
+        store.append(_commits.subList(2, 5));
+        assertTrue(store.exists());
+        assertEquals(5, store.rows());
+        assertEquals(rows(_commits),
+                scan(store, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    /** A time range selects only the rows made in it. */
+    @Test
+    public void scansTimeRange() {
+        MetaStore store = new MetaStore(new File(_dir, "meta"), new Trace());
+        store.append(_commits);
+        assertEquals(rows(_commits.subList(0, 1)), scan(store, 0, 0));
+        assertEquals(rows(_commits.subList(1, 5)),
+                scan(store, 1, Long.MAX_VALUE));
+        long time = _commits.get(1).getTime();
+        assertTrue(scan(store, time + 60000, Long.MAX_VALUE).isEmpty());
+    }
+
+    /** A partial row left by a crash is invisible, and overwritten by the
+     *  next append. */
+    @Test
+    public void ignoresPartialRows() throws IOException {
+        File dir = new File(_dir, "meta");
+        MetaStore store = new MetaStore(dir, new Trace());
+        store.append(_commits.subList(0, 3));
+        for (String column : new String[] {"messages", "ends", "times"}) {
+            try (RandomAccessFile file =
+                     new RandomAccessFile(new File(dir, column), "rw")) {
+                file.seek(file.length());
+                file.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+            }
+        }
+        assertEquals(3, store.rows());
+        assertEquals(rows(_commits.subList(0, 3)),
+                scan(store, Long.MIN_VALUE, Long.MAX_VALUE));
+        store.append(_commits.subList(3, 5));
+        assertEquals(rows(_commits),
+                scan(store, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    /** Rebuilding leaves an existing store alone, and replacing rewrites
+     *  it. */
+    @Test
+    public void rebuildsAndReplaces() {
+        MetaStore store = new MetaStore(new File(_dir, "meta"), new Trace());
+        store.rebuild(_commits.subList(0, 2));
+        store.rebuild(_commits);
+        assertEquals(2, store.rows());
+        store.replace(_commits.subList(2, 5));
+        assertEquals(rows(_commits.subList(2, 5)),
+                scan(store, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    /** global-log and find list every commit on every branch, and the
+     *  store is rebuilt, in another order, when missing. */
+    @Test
+    public void commandsScanStore() {
+        try (Repository repository = Repository.init(_dir)) {
+            Utils.writeContents(new File(_dir, "f.txt"), "a");
+            repository.add("f.txt");
+            ObjectId one = repository.commit("same");
+            repository.branch("other");
+            repository.checkout("other");
+            Utils.writeContents(new File(_dir, "f.txt"), "b");
+            repository.add("f.txt");
+            ObjectId two = repository.commit("same");
+            repository.checkout("master");
+
+            String log = repository.run("global-log");
+            assertEquals(3, log.split("===\n", -1).length - 1);
+            assertTrue(log.contains("commit " + two.name() + "\n"));
+            assertEquals(Arrays.asList(one, two), repository.find("same"));
+            Bench.deleteTree(new File(_dir, ".gitlet/meta"));
+            assertEquals(entries(log),
+                    entries(repository.run("global-log")));
+            assertTrue(repository.find("absent").isEmpty());
+        }
+    }
+
+    /** Returns the entries of the output LOG of global-log, sorted. */
+    private static List<String> entries(String log) {
+        List<String> result = new ArrayList<>(Arrays.asList(
+                log.split("===\n")));
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Returns the rows of STORE made between SINCE and UNTIL, each as
+     *  row does. */
+    private static List<String> scan(MetaStore store, long since,
+                                     long until) {
+        List<String> result = new ArrayList<>();
+        store.scan(since, until, (id, parent, time, message) ->
+                result.add(row(id, parent, time, message)));
+        return result;
+    }
+
+    /** Returns the rows that COMMITS should have. */
+    private static List<String> rows(List<Commit> commits) {
+        List<String> result = new ArrayList<>();
+        for (Commit commit : commits) {
+            result.add(row(commit.getHashID(), commit.getParentHashID(),
+                    commit.getTime(), commit.getMessage()));
+        }
+        return result;
+    }
+
+    /** Returns the row of ID, PARENT, TIME and MESSAGE as a string. */
+    private static String row(ObjectId id, ObjectId parent, long time,
+                              String message) {
+        return id + " " + parent + " " + time + " " + message;
+    }
+
+    /** A chain of commits, oldest first. */
+    private List<Commit> _commits;
+}
@@ -0,0 +1,165 @@
+package gitlet;
+
+import java.io.Serializable;
+
+/** The SHA-1 ID of a commit or blob, held as its 20 raw bytes rather
+ *  than as a 40-character hexadecimal string. ObjectIds are immutable,
+ *  compare in the same order as their hexadecimal names, and convert to
+ *  and from hexadecimal only when read from or written to the user or
+ *  file names. Because SHA-1 output is uniformly distributed, hashCode
+ *  simply uses the leading bytes.
+ *  @author Kaito Garcia
+ */
+public final class ObjectId implements Serializable, Comparable<ObjectId> {
+
+    /** Version of the serialized form, fixed so that stored commits
+     *  stay readable as this class changes. */
+    private static final long serialVersionUID = 1866923217644284011L;
+
+    /** Length of an ID in bytes. */
+    static final int RAW_LENGTH = 20;
+
+    /** The ID whose raw bytes are W0, W1 and W2, most significant
+     *  first. */
+    private ObjectId(long w0, long w1, int w2) {
+        _w0 = w0;
+        _w1 = w1;
+        _w2 = w2;
+    }
+
+    /** Returns the ID whose raw bytes are RAW[OFF .. OFF+20). */
+    static ObjectId fromRaw(byte[] raw, int off) {
+        return new ObjectId(readLong(raw, off), readLong(raw, off + 8),
+                (int) readBits(raw, off + 16, 4));
+    }
+
+    /** Returns the ID named by the 40-digit hexadecimal numeral HEX.
+     *  Throws IllegalArgumentException if HEX is not such a numeral. */
+    static ObjectId fromHex(String hex) {
+        if (!isHex(hex)) {
+            throw new IllegalArgumentException("not an object ID: " + hex);
+        }
+        return new ObjectId(parseHex(hex, 0, 16), parseHex(hex, 16, 16),
+                (int) parseHex(hex, 32, 8));
+    }
+
+    /** Returns true iff NAME is a complete 40-digit hexadecimal ID. */
+    static boolean isHex(String name) {
+        if (name == null || name.length() != Utils.UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.digit(name.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns this ID as a 40-digit lowercase hexadecimal numeral. */
+    public String name() {
+        char[] hex = new char[Utils.UID_LENGTH];
+        formatHex(_w0, hex, 0, 16);
+        formatHex(_w1, hex, 16, 16);
+        formatHex(_w2, hex, 32, 8);
+        return new String(hex);
+    }
+
+    /** Copies the raw bytes of this ID into RAW starting at OFF. */
+    void copyRawTo(byte[] raw, int off) {
+        writeBits(_w0, raw, off, 8);
+        writeBits(_w1, raw, off + 8, 8);
+        writeBits(_w2, raw, off + 16, 4);
+    }
+
+    /** Returns true iff the name of this ID begins with the hexadecimal
+     *  digits PREFIX, ignoring case. */
+    boolean startsWith(String prefix) {
+        String name = name();
+        return prefix.length() <= name.length()
+            && name.regionMatches(true, 0, prefix, 0, prefix.length());
+    }
+
+    @Override
+    public String toString() {
+        return name();
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (_w0 >>> 32);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return _w0 == other._w0 && _w1 == other._w1 && _w2 == other._w2;
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        int c = Long.compareUnsigned(_w0, other._w0);
+        if (c == 0) {
+            c = Long.compareUnsigned(_w1, other._w1);
+        }
+        if (c == 0) {
+            c = Integer.compareUnsigned(_w2, other._w2);
+        }
+        return c;
+    }
+
+    /** Returns the big-endian long in RAW[OFF .. OFF+8). */
+    private static long readLong(byte[] raw, int off) {
+        return readBits(raw, off, 8);
+    }
+
+    /** Returns the big-endian value of the N bytes RAW[OFF .. OFF+N). */
+    private static long readBits(byte[] raw, int off, int n) {
+        long value = 0;
+        for (int i = 0; i < n; i++) {
+            value = (value << 8) | (raw[off + i] & 0xff);
+        }
+        return value;
+    }
+
+    /** Writes the low N bytes of VALUE big-endian into RAW at OFF. */
+    private static void writeBits(long value, byte[] raw, int off, int n) {
+        for (int i = n - 1; i >= 0; i--) {
+            raw[off + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    /** Returns the value of the N hexadecimal digits of HEX at OFF. */
+    private static long parseHex(String hex, int off, int n) {
+        long value = 0;
+        for (int i = 0; i < n; i++) {
+            value = (value << 4) | Character.digit(hex.charAt(off + i), 16);
+        }
+        return value;
+    }
+
+    /** Writes the low N hexadecimal digits of VALUE into HEX at OFF. */
+    private static void formatHex(long value, char[] hex, int off, int n) {
+        for (int i = n - 1; i >= 0; i--) {
+            hex[off + i] = DIGITS[(int) (value & 0xf)];
+            value >>>= 4;
+        }
+    }
+
+    /** Lowercase hexadecimal digits. */
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Raw bytes 0 to 7. */
+    private final long _w0;
+    /** Raw bytes 8 to 15. */
+    private final long _w1;
+    /** Raw bytes 16 to 19. */
+    private final int _w2;
+}
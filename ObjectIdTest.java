@@ -0,0 +1,153 @@
+package gitlet;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of binary object IDs and of the repository format that stores
+ *  them.
+ *  @author Kaito Garcia
+ */
+public class ObjectIdTest extends ScratchTestCase {
+
+    /** IDs convert to and from hexadecimal and raw bytes unchanged. */
+    @Test
+    public void roundTrips() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100; i += 1) {
+            String hex = randomHex(random);
+            ObjectId id = ObjectId.fromHex(hex);
+            assertEquals(hex, id.name());
+            assertEquals(hex, id.toString());
+            byte[] raw = new byte[ObjectId.RAW_LENGTH + 3];
+            id.copyRawTo(raw, 3);
+            assertEquals(id, ObjectId.fromRaw(raw, 3));
+            assertEquals(id.hashCode(), ObjectId.fromHex(hex).hashCode());
+        }
+    }
+
+    /** IDs compare as their hexadecimal names do, including those with
+     *  high bits set. */
+    @Test
+    public void orderMatchesNames() {
+        Random random = new Random(2);
+        for (int i = 0; i < 1000; i += 1) {
+            String a = randomHex(random);
+            String b = random.nextBoolean() ? randomHex(random)
+                : a.substring(0, 39) + "f";
+            assertEquals(Integer.signum(a.compareTo(b)), Integer.signum(
+                    ObjectId.fromHex(a).compareTo(ObjectId.fromHex(b))));
+        }
+    }
+
+    /** Prefixes match only the leading digits. */
+    @Test
+    public void prefixes() {
+        ObjectId id = ObjectId.fromHex(
+                "f0123456789abcdef0123456789abcdef0123456");
+        assertTrue(id.startsWith("f"));
+        assertTrue(id.startsWith("f0123456789abcdef0123"));
+        assertTrue(id.startsWith(id.name()));
+        assertFalse(id.startsWith("0"));
+        assertFalse(id.startsWith("f01234567x"));
+    }
+
+    /** Only 40 hexadecimal digits name an ID, which is then named in
+     *  lowercase. */
+    @Test
+    public void checksNames() {
+        assertFalse(ObjectId.isHex("abc"));
+        assertEquals("f0123456789abcdef0123456789abcdef0123456",
+                ObjectId.fromHex("F0123456789ABCDEF0123456789abcdef0123456")
+                .name());
+        assertFalse(ObjectId.isHex(
+                "g0123456789abcdef0123456789abcdef0123456"));
+        try {
+            ObjectId.fromHex("xyz");
+            fail("accepted xyz");
+        } catch (IllegalArgumentException excp) {
+            /* Expected. */
+        }
+    }
+
+    /** Hashing to an ID agrees with hashing to a name. */
+    @Test
+    public void sha1Agrees() {
+        assertEquals(Utils.sha1("a", "bc"), Utils.sha1Id("a", "bc").name());
+    }
+
+    /** A commit reads back from its serialized form with the same
+     *  IDs. */
+    @Test
+    public void commitSerializes() {
+        HashMap<String, ObjectId> blobs = new HashMap<>();
+        blobs.put("a.txt", Utils.sha1Id("a"));
+        Commit parent = new Commit("initial commit", null, null);
+        Commit commit = new Commit("m", parent.getHashID(), blobs);
+        Commit copy = Utils.deserialize(Utils.serialize(commit),
+                Commit.class);
+        assertEquals(commit.getHashID(), copy.getHashID());
+        assertEquals(parent.getHashID(), copy.getParentHashID());
+        assertEquals(blobs, copy.getBlobs());
+        assertEquals(commit.getHashID(), copy.hasherCommit());
+    }
+
+    /** A new repository records its format. */
+    @Test
+    public void initRecordsFormat() {
+        try (Repository repository = Repository.init(_dir)) {
+            assertEquals(Repo.FORMAT_VERSION + "\n",
+                    repository.run("config", Config.FORMAT_VERSION));
+        }
+    }
+
+    /** A repository of the original gitlet is refused, and not
+     *  initialized over. */
+    @Test
+    public void refusesOriginalFormat() {
+        File gitlet = new File(_dir, ".gitlet");
+        new File(gitlet, "commits").mkdirs();
+        Utils.writeContents(new File(gitlet, "repo"), "old state");
+        assertRefused("older gitlet");
+        try {
+            Repository.init(_dir);
+            fail("initialized over an old repository");
+        } catch (GitletException excp) {
+            assertTrue(excp.getMessage().contains("older gitlet"));
+        }
+        assertFalse(new File(gitlet, "HEAD").exists());
+    }
+
+    /** A repository of a newer format is refused. */
+    @Test
+    public void refusesNewerFormat() {
+        try (Repository repository = Repository.init(_dir)) {
+            repository.run("config", Config.FORMAT_VERSION,
+                    Integer.toString(Repo.FORMAT_VERSION + 1));
+        }
+        assertRefused("newer");
+    }
+
+    /** Fails unless opening the repository in the scratch directory
+     *  throws an exception whose message contains WHY. */
+    private void assertRefused(String why) {
+        try {
+            Repository.open(_dir).close();
+            fail("opened a repository of another format");
+        } catch (GitletException excp) {
+            assertTrue(excp.getMessage(), excp.getMessage().contains(why));
+        }
+    }
+
+    /** Returns 40 random hexadecimal digits drawn from RANDOM. */
+    private static String randomHex(Random random) {
+        StringBuilder hex = new StringBuilder();
+        for (int i = 0; i < 40; i += 1) {
+            hex.append("0123456789abcdef".charAt(random.nextInt(16)));
+        }
+        return hex.toString();
+    }
+}
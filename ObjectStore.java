@@ -0,0 +1,140 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/** Storage for the objects of a repository: commits, blobs, and the
+ *  chunks and manifests of chunked blobs (see ChunkStore). Each object
+ *  is an immutable string of bytes named by its type and ID. Repo and
+ *  ChunkStore reach objects only through this interface, so the same
+ *  logic runs against any of its backends:
+ *
+ *      FileObjectStore    one file per object under .gitlet (files, the
+ *                         default).
+ *      KvObjectStore      every object in the single file
+ *                         .gitlet/objects.kv (kv).
+ *      MemoryObjectStore  objects in the heap, for tests, benchmarks
+ *                         and simulations; never chosen by a setting.
+ *
+ *  The core.objectStore setting picks the backend of a repository on
+ *  disk. Any number of threads may use a store at once.
+ *  @author Kaito Garcia
+ */
+interface ObjectStore {
+
+    /** The kinds of object. */
+    enum Type {
+        /** A serialized Commit. */
+        COMMIT("commits"),
+        /** The contents of a file, stored whole. */
+        BLOB("stagingArea"),
+        /** A piece of a chunked blob. */
+        CHUNK("chunks"),
+        /** The list of the chunks of a chunked blob. */
+        MANIFEST("manifests");
+
+        /** A type whose objects a FileObjectStore keeps in the
+         *  directory DIR of .gitlet. */
+        Type(String dir) {
+            _dir = dir;
+        }
+
+        /** Returns the directory of .gitlet holding objects of this
+         *  type in a FileObjectStore. */
+        String dir() {
+            return _dir;
+        }
+
+        /** Directory name. */
+        private final String _dir;
+    }
+
+    /** Returns the store of the repository whose .gitlet directory is
+     *  GITLET, of the backend named by the core.objectStore setting in
+     *  CONFIG, writing through DURABLE. */
+    static ObjectStore open(File gitlet, Config config, Durable durable) {
+        return open(gitlet, config.get(Config.OBJECT_STORE, "files"),
+                durable);
+    }
+
+    /** Returns the store of the repository whose .gitlet directory is
+     *  GITLET, of the backend named BACKEND: files or kv, writing
+     *  through DURABLE. */
+    static ObjectStore open(File gitlet, String backend, Durable durable) {
+        switch (backend) {
+        case "files":
+            return new FileObjectStore(gitlet, durable);
+        case "kv":
+            return new KvObjectStore(new File(gitlet, "objects.kv"),
+                    durable);
+        default:
+            throw Utils.error("Unknown %s: %s", Config.OBJECT_STORE,
+                    backend);
+        }
+    }
+
+    /** Returns true iff the object of type TYPE with ID ID is stored. */
+    boolean has(Type type, ObjectId id);
+
+    /** Returns the contents of the object of type TYPE with ID ID, which
+     *  must be stored. */
+    byte[] read(Type type, ObjectId id);
+
+    /** Returns a stream of the contents of the object of type TYPE with
+     *  ID ID, which must be stored. The caller closes it. */
+    default InputStream stream(Type type, ObjectId id) {
+        return new ByteArrayInputStream(read(type, id));
+    }
+
+    /** Returns the length of the object of type TYPE with ID ID, which
+     *  must be stored. */
+    long size(Type type, ObjectId id);
+
+    /** Stores DATA as the object of type TYPE with ID ID, unless it is
+     *  stored already. */
+    void write(Type type, ObjectId id, byte[] data);
+
+    /** Stores the contents IN supplies as the object of type TYPE with
+     *  ID ID, unless it is stored already, and closes IN.
+     *  @return the number of bytes stored */
+    default long write(Type type, ObjectId id, InputStream in) {
+        byte[] data;
+        try (InputStream source = in) {
+            data = source.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        write(type, id, data);
+        return data.length;
+    }
+
+    /** Returns the IDs of the stored objects of type TYPE, in no
+     *  particular order. */
+    List<ObjectId> iterate(Type type);
+
+    /** Deletes the object of type TYPE with ID ID, if stored.
+     *  @return true iff it was deleted */
+    boolean delete(Type type, ObjectId id);
+
+    /** Returns the time, in milliseconds since the epoch, at which the
+     *  object of type TYPE with ID ID was stored, or 0 if it is not. */
+    long modified(Type type, ObjectId id);
+
+    /** Returns the file holding the object of type TYPE with ID ID, for
+     *  callers that can map or link it, if this store keeps each object
+     *  in a file of its own; otherwise null. */
+    default File file(Type type, ObjectId id) {
+        return null;
+    }
+
+    /** Makes every object written so far as durable as the fsync policy
+     *  requires, before state that refers to them is published. */
+    void sync();
+
+    /** Releases any files the store holds open. */
+    default void close() {
+    }
+}
@@ -0,0 +1,210 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the object store backends.
+ *  @author Kaito Garcia
+ */
+public class ObjectStoreTest extends ScratchTestCase {
+
+    /** Makes a scratch .gitlet directory. */
+    @Before
+    public void setUp() {
+        _gitlet = new File(_dir, ".gitlet");
+        _gitlet.mkdir();
+        _durable = new Durable();
+        _durable.setPolicy("none");
+    }
+
+    /** The file store keeps what it is given, and has it when
+     *  reopened. */
+    @Test
+    public void files() throws IOException {
+        ObjectStore store = ObjectStore.open(_gitlet, "files", _durable);
+        checkStore(store);
+        assertNotNull(store.file(ObjectStore.Type.BLOB, id("a")));
+        checkReopened(ObjectStore.open(_gitlet, "files", _durable));
+    }
+
+    /** The kv store keeps what it is given, and has it when
+     *  reopened. */
+    @Test
+    public void kv() throws IOException {
+        ObjectStore store = ObjectStore.open(_gitlet, "kv", _durable);
+        checkStore(store);
+        assertNull(store.file(ObjectStore.Type.BLOB, id("a")));
+        store.close();
+        assertEquals(Arrays.asList("objects.kv"),
+                Utils.plainFilenamesIn(_gitlet));
+        ObjectStore reopened = ObjectStore.open(_gitlet, "kv", _durable);
+        checkReopened(reopened);
+        reopened.close();
+    }
+
+    /** The memory store keeps what it is given. */
+    @Test
+    public void memory() throws IOException {
+        checkStore(new MemoryObjectStore());
+    }
+
+    /** Two kv stores on one file see each other's writes and deletions,
+     *  and a record cut short by a crash is ignored and then
+     *  overwritten. */
+    @Test
+    public void kvShared() throws IOException {
+        ObjectStore one = ObjectStore.open(_gitlet, "kv", _durable);
+        ObjectStore two = ObjectStore.open(_gitlet, "kv", _durable);
+        one.write(ObjectStore.Type.BLOB, id("a"), bytes("a"));
+        assertArrayEquals(bytes("a"),
+                two.read(ObjectStore.Type.BLOB, id("a")));
+        two.write(ObjectStore.Type.BLOB, id("b"), bytes("b"));
+        assertTrue(two.delete(ObjectStore.Type.BLOB, id("a")));
+        assertEquals(Collections.singletonList(id("b")),
+                one.iterate(ObjectStore.Type.BLOB));
+        one.close();
+        two.close();
+
+        File file = new File(_gitlet, "objects.kv");
+        long length = file.length();
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(length);
+            out.write(new byte[] {1, 2, 3, 4, 5});
+        }
+        ObjectStore three = ObjectStore.open(_gitlet, "kv", _durable);
+        assertEquals(Collections.singletonList(id("b")),
+                three.iterate(ObjectStore.Type.BLOB));
+        three.write(ObjectStore.Type.COMMIT, id("c"), bytes("c"));
+        three.close();
+        ObjectStore four = ObjectStore.open(_gitlet, "kv", _durable);
+        assertArrayEquals(bytes("c"),
+                four.read(ObjectStore.Type.COMMIT, id("c")));
+        assertTrue(four.has(ObjectStore.Type.BLOB, id("b")));
+        four.close();
+    }
+
+    /** Two kv stores on one file in one process may append at the same
+     *  time, and each then has everything both wrote. */
+    @Test
+    public void kvConcurrent() throws Exception {
+        ObjectStore one = ObjectStore.open(_gitlet, "kv", _durable);
+        ObjectStore two = ObjectStore.open(new File(_dir, "./.gitlet"),
+                "kv", _durable);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Future<?> other = pool.submit(() -> writeMany(two, "two"));
+        writeMany(one, "one");
+        other.get();
+        pool.shutdown();
+        assertEquals(2 * MANY, one.iterate(ObjectStore.Type.BLOB).size());
+        assertEquals(2 * MANY, two.iterate(ObjectStore.Type.BLOB).size());
+        one.close();
+        two.close();
+    }
+
+    /** What the memory store returns cannot change what it keeps. */
+    @Test
+    public void memoryCopies() {
+        ObjectStore store = new MemoryObjectStore();
+        store.write(ObjectStore.Type.BLOB, id("a"), bytes("a"));
+        store.read(ObjectStore.Type.BLOB, id("a"))[0] = 'b';
+        assertArrayEquals(bytes("a"),
+                store.read(ObjectStore.Type.BLOB, id("a")));
+    }
+
+    /** An unknown backend is refused. */
+    @Test
+    public void unknownBackend() {
+        try {
+            ObjectStore.open(_gitlet, "tape", _durable);
+            fail("opened an unknown backend");
+        } catch (GitletException excp) {
+            assertEquals("Unknown core.objectStore: tape",
+                    excp.getMessage());
+        }
+    }
+
+    /** Checks that STORE, empty at first, reads, streams and lists what
+     *  is written to it, keeping types apart, ignores a second write of
+     *  an object, and deletes, leaving blob a and commit b in it. */
+    private static void checkStore(ObjectStore store) throws IOException {
+        ObjectStore.Type blob = ObjectStore.Type.BLOB;
+        ObjectStore.Type commit = ObjectStore.Type.COMMIT;
+        assertFalse(store.has(blob, id("a")));
+        assertEquals(0, store.modified(blob, id("a")));
+        long before = System.currentTimeMillis() - 2000;
+        store.write(blob, id("a"), bytes("a"));
+        store.write(blob, id("a"), bytes("other"));
+        store.write(commit, id("b"), bytes("b"));
+        assertEquals(5, store.write(blob, id("gone"),
+                new ByteArrayInputStream(bytes("gone!"))));
+        store.sync();
+
+        assertTrue(store.has(blob, id("a")));
+        assertFalse(store.has(commit, id("a")));
+        assertArrayEquals(bytes("a"), store.read(blob, id("a")));
+        assertEquals(5, store.size(blob, id("gone")));
+        try (InputStream in = store.stream(commit, id("b"))) {
+            assertArrayEquals(bytes("b"), in.readAllBytes());
+        }
+        assertTrue(store.modified(blob, id("a")) >= before);
+        assertEquals(new HashSet<>(Arrays.asList(id("a"), id("gone"))),
+                new HashSet<>(store.iterate(blob)));
+        assertTrue(store.delete(blob, id("gone")));
+        assertFalse(store.delete(blob, id("gone")));
+        assertFalse(store.has(blob, id("gone")));
+        assertEquals(Collections.emptyList(),
+                store.iterate(ObjectStore.Type.CHUNK));
+    }
+
+    /** Checks that STORE, reopened after checkStore, has what it left. */
+    private static void checkReopened(ObjectStore store) {
+        assertArrayEquals(bytes("a"),
+                store.read(ObjectStore.Type.BLOB, id("a")));
+        assertArrayEquals(bytes("b"),
+                store.read(ObjectStore.Type.COMMIT, id("b")));
+        assertEquals(Arrays.asList(id("a")),
+                store.iterate(ObjectStore.Type.BLOB));
+    }
+
+    /** Writes MANY blobs to STORE, named and holding PREFIX followed by
+     *  a number. */
+    private static void writeMany(ObjectStore store, String prefix) {
+        for (int i = 0; i < MANY; i += 1) {
+            store.write(ObjectStore.Type.BLOB, id(prefix + i),
+                    bytes(prefix + i));
+        }
+    }
+
+    /** Returns the UTF-8 bytes of TEXT. */
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Returns the ID of an object named NAME. */
+    private static ObjectId id(String name) {
+        return Utils.sha1Id(name);
+    }
+
+    /** Its .gitlet directory. */
+    private File _gitlet;
+
+    /** Policy for writing objects. */
+    private Durable _durable;
+
+    /** Number of objects each writer writes in kvConcurrent. */
+    private static final int MANY = 200;
+}
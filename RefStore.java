@@ -0,0 +1,454 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+/** The branches of a repository. A branch is either loose, in its own
+ *  file refs/heads/NAME holding the hexadecimal ID of its tip, or
+ *  packed, as a line "ID NAME" of the file packed-refs, whose lines are
+ *  sorted by name; a loose branch takes precedence over a packed one
+ *  of the same name, and a loose file reading "deleted" hides a packed
+ *  branch that has been removed. Looking up one branch costs a stat and
+ *  a binary search of the memory-mapped packed-refs; listing branches
+ *  merges the packed lines, in order, with the few loose ones; and
+ *  creating, moving or removing a branch writes only its loose file.
+ *  pack folds the loose branches back into packed-refs.
+ *
+ *  Reading takes no lock. Changing a branch is a compare-and-swap under
+ *  its LockFile, so processes moving different branches never wait for
+ *  each other, and a process whose view of a branch is stale learns so
+ *  instead of overwriting another's update.
+ *
+ *  Branch names follow the rules of git's check-ref-format (see
+ *  isValidName), so that every branch has a loose file of its own
+ *  beneath refs/heads, and no branch is both a file and a directory:
+ *  there cannot be branches named both "a" and "a/b".
+ *  @author Kaito Garcia
+ */
+class RefStore {
+
+    /** The branches of the repository whose .gitlet directory is
+     *  GITLET, written through DURABLE. */
+    RefStore(File gitlet, Durable durable) {
+        _heads = Utils.join(gitlet, "refs", "heads");
+        _packedFile = Utils.join(gitlet, "packed-refs");
+        _durable = durable;
+    }
+
+    /** Returns the tip of branch NAME, or null if there is no such
+     *  branch. */
+    ObjectId read(String name) {
+        if (!isValidName(name)) {
+            return null;
+        }
+        String loose = readLoose(refFile(name));
+        if (loose == null) {
+            return packed().find(name);
+        }
+        return loose.equals(DELETED) ? null : ObjectId.fromHex(loose);
+    }
+
+    /** Calls ACTION on the name and tip of every branch whose name
+     *  begins with PREFIX, in order of name. */
+    void forEach(String prefix, BiConsumer<String, ObjectId> action) {
+        List<String> loose = looseNames(prefix);
+        Packed packed = packed();
+        int pos = packed.lowerBound(prefix);
+        int next = 0;
+        while (true) {
+            String packedName = pos < packed.size() ? packed.name(pos) : null;
+            if (packedName != null && !packedName.startsWith(prefix)) {
+                packedName = null;
+            }
+            String looseName = next < loose.size() ? loose.get(next) : null;
+            if (packedName == null && looseName == null) {
+                return;
+            }
+            int c = packedName == null ? 1
+                : looseName == null ? -1 : packedName.compareTo(looseName);
+            if (c < 0) {
+                action.accept(packedName, packed.id(pos));
+                pos = packed.nextLine(pos);
+                continue;
+            }
+            if (c == 0) {
+                pos = packed.nextLine(pos);
+            }
+            next += 1;
+            String value = readLoose(refFile(looseName));
+            if (value == null && c == 0) {
+                action.accept(looseName, packed().find(looseName));
+            } else if (value != null && !value.equals(DELETED)) {
+                action.accept(looseName, ObjectId.fromHex(value));
+            }
+        }
+    }
+
+    /** Returns the names of all branches, sorted. */
+    List<String> names() {
+        ArrayList<String> names = new ArrayList<>();
+        forEach("", (name, tip) -> names.add(name));
+        return names;
+    }
+
+    /** Returns every branch as <name, tip>. */
+    HashMap<String, ObjectId> all() {
+        HashMap<String, ObjectId> result = new HashMap<>();
+        forEach("", result::put);
+        return result;
+    }
+
+    /** Points branch NAME at VALUE, creating it if EXPECTED is null and
+     *  deleting it if VALUE is null, provided that its tip is still
+     *  EXPECTED. Throws a GitletException if NAME is not a valid
+     *  branch name, or if a new branch NAME would lie in the directory
+     *  that another branch names, or would name the directory of
+     *  another.
+     *  @return false, changing nothing, if the tip was not EXPECTED */
+    boolean update(String name, ObjectId expected, ObjectId value) {
+        if (!isValidName(name)) {
+            throw Utils.error("Invalid branch name: %s", name);
+        }
+        File ref = refFile(name);
+        if (expected == null && value != null) {
+            _packed = null;
+            String other = conflict(name);
+            if (other != null) {
+                throw Utils.error("Branch %s conflicts with branch %s.",
+                        name, other);
+            } else if (obstructed(ref)) {
+                pack();
+            }
+        }
+        ref.getParentFile().mkdirs();
+        LockFile lock = LockFile.acquire(ref, _durable.trace());
+        boolean deleted = false;
+        try {
+            _packed = null;
+            if (!Objects.equals(read(name), expected)) {
+                return false;
+            }
+            if (value != null) {
+                lock.commit(contents(value.name()), _durable);
+            } else if (packed().find(name) != null) {
+                lock.commit(contents(DELETED), _durable);
+            } else {
+                lock.delete();
+                deleted = true;
+            }
+            return true;
+        } finally {
+            lock.release();
+            if (deleted) {
+                prune(ref);
+            }
+        }
+    }
+
+    /** Returns true iff NAME may name a branch. As git's
+     *  check-ref-format requires, NAME is not "@", holds no "..", "@{",
+     *  control character, space or any of ~^:?*[\, does not end with
+     *  ".", and is made of non-empty components separated by single
+     *  slashes, none beginning with "." or ending with ".lock". */
+    static boolean isValidName(String name) {
+        if (name.equals("@") || name.endsWith(".") || name.contains("..")
+            || name.contains("@{")) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i += 1) {
+            char c = name.charAt(i);
+            if (c <= ' ' || c == DEL || BAD_CHARS.indexOf(c) >= 0) {
+                return false;
+            }
+        }
+        for (String part : name.split("/", -1)) {
+            if (part.isEmpty() || part.startsWith(".")
+                || part.endsWith(".lock")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the name of a branch naming a directory containing branch
+     *  NAME, or lying in the directory NAME, or null if there is
+     *  none. */
+    private String conflict(String name) {
+        for (int slash = name.indexOf('/'); slash >= 0;
+             slash = name.indexOf('/', slash + 1)) {
+            if (read(name.substring(0, slash)) != null) {
+                return name.substring(0, slash);
+            }
+        }
+        ArrayList<String> below = new ArrayList<>();
+        forEach(name + "/", (other, tip) -> below.add(other));
+        return below.isEmpty() ? null : below.get(0);
+    }
+
+    /** Returns true iff the loose file REF cannot be created because a
+     *  file left by a removed branch, such as a "deleted" marker, lies
+     *  where REF or one of its directories must go. */
+    private boolean obstructed(File ref) {
+        if (ref.isDirectory()) {
+            return true;
+        }
+        for (File dir = ref.getParentFile(); !dir.equals(_heads);
+             dir = dir.getParentFile()) {
+            if (dir.isFile()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Removes the directories containing the deleted loose file REF
+     *  that it has left empty. */
+    private void prune(File ref) {
+        File dir = ref.getParentFile();
+        while (!dir.equals(_heads) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
+    /** Rewrites packed-refs to hold every branch and deletes the loose
+     *  files it has absorbed. Each loose branch stays locked from when
+     *  it is read until its file is gone, so that no other process can
+     *  change or remove it in between, only to have pack undo that.
+     *  @return the number of branches packed */
+    int pack() {
+        LinkedHashMap<File, LockFile> absorbed = new LinkedHashMap<>();
+        TreeMap<String, ObjectId> refs = new TreeMap<>();
+        LockFile lock = LockFile.acquire(_packedFile,
+                _durable.trace());
+        try {
+            _packed = null;
+            Packed packed = packed();
+            for (int pos = 0; pos < packed.size();
+                 pos = packed.nextLine(pos)) {
+                refs.put(packed.name(pos), packed.id(pos));
+            }
+            for (String name : looseNames("")) {
+                File ref = refFile(name);
+                LockFile refLock = LockFile.acquire(ref,
+                        _durable.trace());
+                absorbed.put(ref, refLock);
+                String value = readLoose(ref);
+                if (value == null) {
+                    continue;
+                } else if (value.equals(DELETED)) {
+                    refs.remove(name);
+                } else {
+                    refs.put(name, ObjectId.fromHex(value));
+                }
+            }
+            StringBuilder lines = new StringBuilder();
+            for (String name : refs.keySet()) {
+                lines.append(refs.get(name).name()).append(' ').append(name)
+                    .append('\n');
+            }
+            lock.commit(lines.toString().getBytes(StandardCharsets.UTF_8),
+                    _durable);
+            _packed = null;
+            for (LockFile refLock : absorbed.values()) {
+                refLock.delete();
+            }
+        } finally {
+            lock.release();
+            for (LockFile refLock : absorbed.values()) {
+                refLock.release();
+            }
+        }
+        for (File ref : absorbed.keySet()) {
+            prune(ref);
+        }
+        return refs.size();
+    }
+
+    /** Returns the file holding branch NAME when loose. */
+    private File refFile(String name) {
+        return new File(_heads, name);
+    }
+
+    /** Returns the trimmed contents of the loose ref REF, or null if it
+     *  does not exist. */
+    private static String readLoose(File ref) {
+        if (!ref.isFile()) {
+            return null;
+        }
+        try {
+            return Utils.readContentsAsString(ref).trim();
+        } catch (IllegalArgumentException excp) {
+            return null;
+        }
+    }
+
+    /** Returns VALUE as the contents of a loose ref. */
+    private static byte[] contents(String value) {
+        return (value + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Returns the sorted names of the loose branches beginning with
+     *  PREFIX, looking only beneath the directory PREFIX names. */
+    private List<String> looseNames(String prefix) {
+        int slash = prefix.lastIndexOf('/');
+        String dir = prefix.substring(0, slash + 1);
+        ArrayList<String> names = new ArrayList<>();
+        collect(new File(_heads, dir), dir, prefix, names);
+        Collections.sort(names);
+        return names;
+    }
+
+    /** Adds to NAMES the branches in DIR, whose names begin with
+     *  DIRNAME, that begin with PREFIX. Lock and temporary files are
+     *  skipped. */
+    private static void collect(File dir, String dirName, String prefix,
+                                List<String> names) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = dirName + file.getName();
+            if (file.isDirectory()) {
+                if (name.startsWith(prefix) || prefix.startsWith(name)) {
+                    collect(file, name + "/", prefix, names);
+                }
+            } else if (!file.getName().startsWith(".")
+                       && !name.endsWith(".lock") && name.startsWith(prefix)) {
+                names.add(name);
+            }
+        }
+    }
+
+    /** Returns packed-refs, mapped when first needed. */
+    private Packed packed() {
+        if (_packed == null) {
+            _packed = new Packed(_packedFile);
+        }
+        return _packed;
+    }
+
+    /** The contents of packed-refs, memory-mapped. Positions are byte
+     *  offsets of the starts of lines. */
+    private static class Packed {
+
+        /** The packed branches in FILE, which need not exist. */
+        Packed(File file) {
+            MappedByteBuffer map = null;
+            if (file.isFile()) {
+                try (FileChannel in = FileChannel.open(file.toPath(),
+                         StandardOpenOption.READ)) {
+                    map = in.map(FileChannel.MapMode.READ_ONLY, 0,
+                            in.size());
+                } catch (IOException excp) {
+                    throw Utils.error("Cannot read %s.", file);
+                }
+            }
+            _map = map;
+        }
+
+        /** Returns the length of the file in bytes. */
+        int size() {
+            return _map == null ? 0 : _map.limit();
+        }
+
+        /** Returns the tip of branch NAME, or null if it is absent. */
+        ObjectId find(String name) {
+            int pos = lowerBound(name);
+            if (pos < size() && name(pos).equals(name)) {
+                return id(pos);
+            }
+            return null;
+        }
+
+        /** Returns the position of the first line whose name is at
+         *  least KEY, or size() if there is none. */
+        int lowerBound(String key) {
+            int lo = 0;
+            int hi = size();
+            while (lo < hi) {
+                int start = lineStart((lo + hi) >>> 1);
+                if (name(start).compareTo(key) < 0) {
+                    lo = nextLine(start);
+                } else {
+                    hi = start;
+                }
+            }
+            return lo;
+        }
+
+        /** Returns the start of the line containing byte POS. */
+        int lineStart(int pos) {
+            while (pos > 0 && _map.get(pos - 1) != '\n') {
+                pos -= 1;
+            }
+            return pos;
+        }
+
+        /** Returns the start of the line after the one at POS. */
+        int nextLine(int pos) {
+            while (pos < size() && _map.get(pos) != '\n') {
+                pos += 1;
+            }
+            return pos + 1;
+        }
+
+        /** Returns the ID on the line at POS. */
+        ObjectId id(int pos) {
+            byte[] hex = new byte[Utils.UID_LENGTH];
+            for (int i = 0; i < hex.length; i++) {
+                hex[i] = _map.get(pos + i);
+            }
+            return ObjectId.fromHex(new String(hex,
+                    StandardCharsets.US_ASCII));
+        }
+
+        /** Returns the branch name on the line at POS. */
+        String name(int pos) {
+            int start = pos + Utils.UID_LENGTH + 1;
+            int end = nextLine(pos) - 1;
+            byte[] name = new byte[end - start];
+            for (int i = 0; i < name.length; i++) {
+                name[i] = _map.get(start + i);
+            }
+            return new String(name, StandardCharsets.UTF_8);
+        }
+
+        /** Contents of the file, or null if there is none. */
+        private final MappedByteBuffer _map;
+    }
+
+    /** Characters that no branch name may hold, besides control
+     *  characters and spaces. */
+    private static final String BAD_CHARS = "~^:?*[\\";
+
+    /** The ASCII delete character, which no branch name may hold. */
+    private static final char DEL = 0x7f;
+
+    /** Contents of a loose ref for a removed packed branch. */
+    private static final String DELETED = "deleted";
+
+    /** Directory holding the loose branches. */
+    private final File _heads;
+
+    /** File holding the packed branches. */
+    private final File _packedFile;
+
+    /** Writer of the branch files. */
+    private final Durable _durable;
+
+    /** The packed branches, or null until needed. */
+    private Packed _packed;
+}
@@ -0,0 +1,230 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the branch store.
+ *  @author Kaito Garcia
+ */
+public class RefStoreTest extends ScratchTestCase {
+
+    /** Makes an empty .gitlet directory in the scratch directory. */
+    @Before
+    public void setUp() {
+        _gitlet = new File(_dir, ".gitlet");
+        _gitlet.mkdir();
+    }
+
+    /** A branch changes only when its tip is the one expected. */
+    @Test
+    public void compareAndSwap() {
+        RefStore refs = refs();
+        assertTrue(refs.update("a", null, id(1)));
+        assertFalse(refs.update("a", null, id(2)));
+        assertFalse(refs.update("a", id(2), id(3)));
+        assertEquals(id(1), refs.read("a"));
+        assertTrue(refs.update("a", id(1), id(2)));
+        assertFalse(refs.update("a", id(1), null));
+        assertTrue(refs.update("a", id(2), null));
+        assertNull(refs.read("a"));
+        assertEquals(0, refs.names().size());
+    }
+
+    /** Threads moving one branch at once, each through a store of its
+     *  own, lose no update. */
+    @Test
+    public void concurrentUpdates() throws InterruptedException {
+        refs().update("b", null, id(0));
+        Map<ObjectId, ObjectId> moves = new HashMap<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t += 1) {
+            int first = 1000 * (t + 1);
+            threads.add(new Thread(() -> {
+                RefStore refs = refs();
+                for (int i = first; i < first + 20; i += 1) {
+                    while (true) {
+                        ObjectId tip = refs.read("b");
+                        if (refs.update("b", tip, id(i))) {
+                            synchronized (moves) {
+                                moves.put(tip, id(i));
+                            }
+                            break;
+                        }
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(80, moves.size());
+        ObjectId tip = id(0);
+        for (int i = 0; i < 80; i += 1) {
+            tip = moves.get(tip);
+            assertNotNull(tip);
+        }
+        assertEquals(tip, refs().read("b"));
+    }
+
+    /** Names that check-ref-format rejects are refused, and nothing is
+     *  written for them. */
+    @Test
+    public void rejectsBadNames() throws IOException {
+        RefStore refs = refs();
+        for (String name : new String[] {
+                "", "@", "../escape", "a/../b", ".hidden", "a/.b", "a.lock",
+                "a/b.lock", "end.", "a//b", "/a", "a/", "a b", "a~1", "a^",
+                "a:b", "a?", "a*", "a[b", "a\\b", "a@{1}", "tab\tbed",
+                "del\u007f"}) {
+            assertFalse(name, RefStore.isValidName(name));
+            assertNull(name, refs.read(name));
+            try {
+                refs.update(name, null, id(1));
+                fail("created " + name);
+            } catch (GitletException excp) {
+                assertTrue(excp.getMessage().startsWith(
+                        "Invalid branch name"));
+            }
+        }
+        assertArrayEquals(new String[] {".gitlet"}, _dir.list());
+        try (Stream<Path> files = Files.walk(_gitlet.toPath())) {
+            assertEquals(0, files.filter(Files::isRegularFile).count());
+        }
+        for (String name : new String[] {
+                "master", "feature/x", "v1.0", "a-b_c", "a.b/c@d"}) {
+            assertTrue(name, refs.update(name, null, id(1)));
+        }
+        assertEquals(Arrays.asList("a-b_c", "a.b/c@d", "feature/x",
+                "master", "v1.0"), refs.names());
+    }
+
+    /** A branch cannot be created inside, or as, the directory another
+     *  branch names, until that branch is removed. */
+    @Test
+    public void refusesConflicts() {
+        RefStore refs = refs();
+        refs.update("a", null, id(1));
+        refs.update("x/y/z", null, id(2));
+        assertConflict(refs, "a/b");
+        assertConflict(refs, "x");
+        assertConflict(refs, "x/y");
+        refs.update("x/y/z", id(2), null);
+        assertTrue(refs.update("x", null, id(3)));
+        refs.update("a", id(1), null);
+        assertTrue(refs.update("a/b", null, id(4)));
+        assertEquals(Arrays.asList("a/b", "x"), refs.names());
+    }
+
+    /** Removing a packed branch leaves room for branches beneath its
+     *  name. */
+    @Test
+    public void removedPackedBranchMakesRoom() {
+        RefStore refs = refs();
+        refs.update("a", null, id(1));
+        refs.update("c/d", null, id(2));
+        refs.pack();
+        refs.update("a", id(1), null);
+        refs.update("c/d", id(2), null);
+        assertTrue(refs.update("a/b", null, id(3)));
+        assertTrue(refs.update("c", null, id(4)));
+        assertEquals(Arrays.asList("a/b", "c"), refs.names());
+        assertEquals(id(3), refs().read("a/b"));
+    }
+
+    /** Lookups and listings merge packed branches with the loose ones
+     *  that override or remove them, and packing again changes nothing
+     *  but where branches are kept. */
+    @Test
+    public void packedAndLoose() {
+        RefStore refs = refs();
+        for (int i = 0; i < 50; i += 1) {
+            refs.update(String.format("p/%02d", i), null, id(i));
+        }
+        refs.update("q", null, id(100));
+        assertEquals(51, refs.pack());
+        assertEquals(0, new File(_gitlet, "refs/heads").list().length);
+
+        refs.update("p/10", id(10), id(110));
+        refs.update("p/20", id(20), null);
+        refs.update("p/205", null, id(205));
+        refs.update("o", null, id(300));
+        RefStore other = refs();
+        assertEquals(id(110), other.read("p/10"));
+        assertNull(other.read("p/20"));
+        assertEquals(id(21), other.read("p/21"));
+        assertEquals(id(205), other.read("p/205"));
+        assertEquals(id(100), other.read("q"));
+        assertNull(other.read("p"));
+        List<String> names = other.names();
+        assertEquals(52, names.size());
+        assertEquals("o", names.get(0));
+        assertEquals("q", names.get(51));
+        List<String> prefixed = new ArrayList<>();
+        other.forEach("p/2", (name, tip) -> prefixed.add(name));
+        assertEquals(Arrays.asList("p/205", "p/21", "p/22", "p/23", "p/24",
+                "p/25", "p/26", "p/27", "p/28", "p/29"), prefixed);
+
+        HashMap<String, ObjectId> before = other.all();
+        assertEquals(52, other.pack());
+        assertEquals(before, refs().all());
+        assertEquals(0, new File(_gitlet, "refs/heads").list().length);
+    }
+
+    /** A branch locked by another process is packed only once released,
+     *  so that pack cannot bring back a branch removed meanwhile. */
+    @Test
+    public void packWaitsForLockedBranch() throws InterruptedException {
+        RefStore refs = refs();
+        refs.update("x", null, id(1));
+        LockFile lock = LockFile.acquire(new File(_gitlet, "refs/heads/x"),
+                new Trace());
+        Thread packer = new Thread(() -> refs().pack());
+        packer.start();
+        Thread.sleep(200);
+        lock.delete();
+        packer.join();
+        assertNull(refs().read("x"));
+        assertEquals(0, refs().names().size());
+    }
+
+    /** Fails unless creating branch NAME in REFS is refused as a
+     *  conflict. */
+    private static void assertConflict(RefStore refs, String name) {
+        try {
+            refs.update(name, null, id(9));
+            fail("created " + name);
+        } catch (GitletException excp) {
+            assertTrue(excp.getMessage(),
+                    excp.getMessage().contains("conflicts"));
+        }
+        assertNull(refs.read(name));
+    }
+
+    /** Returns a new store of the branches in the scratch directory. */
+    private RefStore refs() {
+        return new RefStore(_gitlet, new Durable());
+    }
+
+    /** Returns an object ID made from N. */
+    private static ObjectId id(int n) {
+        return Utils.sha1Id(Integer.toString(n));
+    }
+
+    /** The .gitlet directory in it. */
+    private File _gitlet;
+}
@@ -0,0 +1,368 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/** Finds the files of a new version of a tree that were renamed or
+ *  copied from files of an old one. Each blob is summarized by a MinHash
+ *  sketch of its set of lines: the smallest value, under each of SIZE
+ *  hash functions, of the hashes of its non-blank lines. The fraction of
+ *  places where two sketches agree estimates the Jaccard similarity of
+ *  the two sets of lines, which is the score of a match, as a
+ *  percentage.
+ *
+ *  Instead of scoring every pair, sketches are cut into bands of a few
+ *  places each and hashed into buckets, band by band (locality-sensitive
+ *  hashing); only a new file that shares a bucket with an old one is
+ *  scored against it. The width of a band is chosen so that files
+ *  scoring at least the threshold almost always share a bucket, while
+ *  unrelated files rarely do. A blob's sketch never changes, so sketches
+ *  are kept in .gitlet/sketches, one file per blob, and each blob is
+ *  read at most once.
+ *  @author Kaito Garcia
+ */
+class RenameDetector {
+
+    /** A file of the new tree found to derive from one of the old. */
+    static class Match {
+
+        /** A match of TARGET to SOURCE with the given SCORE, a copy iff
+         *  COPY. */
+        Match(String source, String target, int score, boolean copy) {
+            _source = source;
+            _target = target;
+            _score = score;
+            _copy = copy;
+        }
+
+        /** Returns the path in the old tree. */
+        String source() {
+            return _source;
+        }
+
+        /** Returns the path in the new tree. */
+        String target() {
+            return _target;
+        }
+
+        /** Returns the similarity of the two files, from 0 to 100. */
+        int score() {
+            return _score;
+        }
+
+        /** Returns true iff the source also remains, under its own or
+         *  another name, so that the target is a copy of it. */
+        boolean copy() {
+            return _copy;
+        }
+
+        /** Path in the old tree. */
+        private final String _source;
+        /** Path in the new tree. */
+        private final String _target;
+        /** Similarity percentage. */
+        private final int _score;
+        /** True for a copy, false for a rename. */
+        private final boolean _copy;
+    }
+
+    /** A detector reporting matches scoring at least THRESHOLD, from 0 to
+     *  100, keeping sketches in directory DIR, reading blobs through
+     *  READER and recording spans in TRACE. */
+    RenameDetector(File dir, int threshold,
+                   Function<ObjectId, String> reader, Trace trace) {
+        if (threshold < 0 || threshold > 100) {
+            throw new IllegalArgumentException("threshold out of range");
+        }
+        _dir = dir;
+        _threshold = threshold;
+        _reader = reader;
+        _trace = trace;
+        double t = Math.max(threshold, 1) / 100.0;
+        int rows = 1;
+        while (rows < MAX_ROWS
+               && recall(t, rows + 1, SIZE / (rows + 1)) >= RECALL) {
+            rows += 1;
+        }
+        _rows = rows;
+        _bands = SIZE / rows;
+    }
+
+    /** Returns the probability that two files with similarity T share a
+     *  bucket when there are BANDS bands of ROWS places. */
+    private static double recall(double t, int rows, int bands) {
+        return 1 - Math.pow(1 - Math.pow(t, rows), bands);
+    }
+
+    /** Returns the files of ADDED, as <path, blob>, that derive from files
+     *  of SOURCES, ordered by target path. SOURCES holds the old versions
+     *  of the files deleted or modified; those in DELETED are gone from
+     *  the new tree. Each added file matches at most one source, the best
+     *  scoring; the best match of a deleted source is its rename and any
+     *  others, like all matches of a modified source, are copies. Files
+     *  with identical contents match with score 100 without being read,
+     *  and empty files never match. The files of UNCHANGED, the same in
+     *  both trees, are never read and are the sources only of exact
+     *  copies. */
+    List<Match> detect(Map<String, ObjectId> sources, Set<String> deleted,
+                       Map<String, ObjectId> added,
+                       Map<String, ObjectId> unchanged) {
+        ArrayList<Match> result = new ArrayList<>();
+        if (added.isEmpty() || sources.isEmpty() && unchanged.isEmpty()) {
+            return result;
+        }
+        long start = _trace.start();
+        HashMap<ObjectId, String> exact = new HashMap<>();
+        for (String path : new TreeSet<>(unchanged.keySet())) {
+            exact.putIfAbsent(unchanged.get(path), path);
+        }
+        for (String path : new TreeSet<>(sources.keySet())) {
+            String other = exact.get(sources.get(path));
+            if (other == null || unchanged.containsKey(other)
+                    || !deleted.contains(other) && deleted.contains(path)) {
+                exact.put(sources.get(path), path);
+            }
+        }
+
+        HashMap<String, long[]> sketches = new HashMap<>();
+        HashMap<Long, List<String>> buckets = null;
+        ArrayList<Match> candidates = new ArrayList<>();
+        for (String target : new TreeSet<>(added.keySet())) {
+            if (added.get(target).equals(EMPTY)) {
+                continue;
+            }
+            String source = exact.get(added.get(target));
+            if (source != null) {
+                candidates.add(new Match(source, target, 100, false));
+                continue;
+            }
+            if (buckets == null) {
+                buckets = new HashMap<>();
+                index(sources, sketches, buckets);
+            }
+            long[] sketch = sketch(added.get(target));
+            if (sketch == null) {
+                continue;
+            }
+            HashSet<String> scored = new HashSet<>();
+            for (int band = 0; band < _bands; band++) {
+                List<String> bucket = buckets.get(bandKey(sketch, band));
+                if (bucket == null) {
+                    continue;
+                }
+                for (String candidate : bucket) {
+                    if (scored.add(candidate)) {
+                        int score = score(sketch, sketches.get(candidate));
+                        if (score >= _threshold) {
+                            candidates.add(new Match(candidate, target,
+                                    score, false));
+                        }
+                    }
+                }
+            }
+        }
+
+        candidates.sort(Comparator.comparingInt(Match::score).reversed()
+                .thenComparing(Match::target).thenComparing(Match::source));
+        HashSet<String> matched = new HashSet<>();
+        HashSet<String> renamed = new HashSet<>();
+        for (Match match : candidates) {
+            if (!matched.add(match.target())) {
+                continue;
+            }
+            boolean rename = deleted.contains(match.source())
+                && renamed.add(match.source());
+            result.add(new Match(match.source(), match.target(),
+                    match.score(), !rename));
+        }
+        result.sort(Comparator.comparing(Match::target));
+        _trace.end("renames.detect", start, candidates.size(), 0, null);
+        return result;
+    }
+
+    /** Puts the sketch of each of SOURCES, as <path, blob>, in SKETCHES,
+     *  and its path in the bucket of each of its bands in BUCKETS. */
+    private void index(Map<String, ObjectId> sources,
+                       Map<String, long[]> sketches,
+                       Map<Long, List<String>> buckets) {
+        for (String path : new TreeSet<>(sources.keySet())) {
+            long[] sketch = sketch(sources.get(path));
+            if (sketch == null) {
+                continue;
+            }
+            sketches.put(path, sketch);
+            for (int band = 0; band < _bands; band++) {
+                buckets.computeIfAbsent(bandKey(sketch, band),
+                        k -> new ArrayList<>()).add(path);
+            }
+        }
+    }
+
+    /** Returns the bucket of band BAND of SKETCH. */
+    private long bandKey(long[] sketch, int band) {
+        long key = band;
+        for (int i = band * _rows; i < (band + 1) * _rows; i++) {
+            key = mix(key * PRIME + sketch[i]);
+        }
+        return key;
+    }
+
+    /** Returns the percentage of places in which sketches A and B
+     *  agree. */
+    private static int score(long[] a, long[] b) {
+        int same = 0;
+        for (int i = 0; i < SIZE; i++) {
+            if (a[i] == b[i]) {
+                same += 1;
+            }
+        }
+        return same * 100 / SIZE;
+    }
+
+    /** Returns the sketch of the blob with ID BLOB, or null if it has no
+     *  non-blank lines, computing and caching it if need be. */
+    private long[] sketch(ObjectId blob) {
+        File file = new File(_dir, blob.name());
+        if (file.isFile()) {
+            long[] cached = readSketch(Utils.readContents(file));
+            if (cached != null || file.length() == 0) {
+                return cached;
+            }
+        }
+        long start = _trace.start();
+        long[] sketch = sketch(_reader.apply(blob));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        if (sketch != null) {
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                for (long value : sketch) {
+                    out.writeLong(value);
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        _dir.mkdirs();
+        Utils.writeContents(file, bytes.toByteArray());
+        _trace.end("renames.sketch", start, 1, 0, blob.name());
+        return sketch;
+    }
+
+    /** Returns the sketch stored as BYTES, or null if BYTES is not a
+     *  sketch. */
+    private static long[] readSketch(byte[] bytes) {
+        if (bytes.length != SIZE * Long.BYTES) {
+            return null;
+        }
+        long[] sketch = new long[SIZE];
+        try (DataInputStream in = new DataInputStream(
+                 new ByteArrayInputStream(bytes))) {
+            for (int i = 0; i < SIZE; i++) {
+                sketch[i] = in.readLong();
+            }
+        } catch (IOException excp) {
+            return null;
+        }
+        return sketch;
+    }
+
+    /** Returns the sketch of TEXT, or null if it has no non-blank
+     *  lines. */
+    static long[] sketch(String text) {
+        long[] sketch = new long[SIZE];
+        Arrays.fill(sketch, Long.MAX_VALUE);
+        boolean empty = true;
+        for (String line : Diff.lines(text)) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            empty = false;
+            long hash = hash(trimmed);
+            for (int i = 0; i < SIZE; i++) {
+                long value = mix(hash ^ SEEDS[i]);
+                if (value < sketch[i]) {
+                    sketch[i] = value;
+                }
+            }
+        }
+        return empty ? null : sketch;
+    }
+
+    /** Returns a 64-bit FNV-1a hash of the UTF-8 encoding of LINE. */
+    private static long hash(String line) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : line.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /** Returns X scrambled by the SplitMix64 finalizer, which serves as
+     *  a family of hash functions when X is first combined with a
+     *  seed. */
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+
+    /** Number of places in a sketch. */
+    static final int SIZE = 128;
+
+    /** Most places in one band. */
+    private static final int MAX_ROWS = 8;
+
+    /** Least acceptable probability that a match at the threshold shares
+     *  a bucket with its source. */
+    private static final double RECALL = 0.99;
+
+    /** Multiplier combining the places of a band. */
+    private static final long PRIME = 0x9e3779b97f4a7c15L;
+
+    /** ID of the empty blob, which never matches. */
+    private static final ObjectId EMPTY = Utils.sha1Id(new byte[0]);
+
+    /** Seeds of the SIZE hash functions. */
+    private static final long[] SEEDS = new long[SIZE];
+
+    static {
+        long seed = 0x5eed;
+        for (int i = 0; i < SIZE; i++) {
+            seed += PRIME;
+            SEEDS[i] = mix(seed);
+        }
+    }
+
+    /** Directory holding cached sketches. */
+    private final File _dir;
+
+    /** Least score reported. */
+    private final int _threshold;
+
+    /** Returns the contents of a blob. */
+    private final Function<ObjectId, String> _reader;
+
+    /** Where spans are recorded. */
+    private final Trace _trace;
+
+    /** Places in each band. */
+    private final int _rows;
+
+    /** Number of bands. */
+    private final int _bands;
+}
@@ -0,0 +1,204 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of rename and copy detection, and of its use by merge and
+ *  log.
+ *  @author Kaito Garcia
+ */
+public class RenameTest extends ScratchTestCase {
+
+    /** Starts with no blobs and no reads. */
+    @Before
+    public void setUp() {
+        _blobs = new HashMap<>();
+        _reads = 0;
+    }
+
+    /** A deleted file matches the added file most like it, as a rename;
+     *  unrelated and empty files match nothing. */
+    @Test
+    public void findsRenames() {
+        String text = lines(0, 100);
+        String edited = lines(0, 95) + lines(1000, 5);
+        List<RenameDetector.Match> matches = detector(50).detect(
+                map("old.txt", text, "gone.txt", lines(2000, 50),
+                    "empty.txt", ""),
+                set("old.txt", "gone.txt", "empty.txt"),
+                map("new.txt", edited, "other.txt", lines(3000, 50),
+                    "empty2.txt", ""),
+                map());
+        assertEquals(1, matches.size());
+        RenameDetector.Match match = matches.get(0);
+        assertEquals("old.txt", match.source());
+        assertEquals("new.txt", match.target());
+        assertFalse(match.copy());
+        assertTrue(match.score() >= 80 && match.score() < 100);
+    }
+
+    /** Identical contents match with score 100 without being read, so
+     *  that only the sources and d.txt are; a source that remains, or is
+     *  renamed already, is copied. */
+    @Test
+    public void findsCopies() {
+        String text = lines(0, 20);
+        List<RenameDetector.Match> matches = detector(50).detect(
+                map("a.txt", text, "kept.txt", lines(100, 20)),
+                set("a.txt"),
+                map("b.txt", text, "c.txt", text,
+                    "d.txt", lines(100, 19) + "changed\n",
+                    "e.txt", lines(500, 10)),
+                map("same.txt", lines(500, 10)));
+        assertEquals(3, _reads);
+        assertEquals(4, matches.size());
+        assertMatch(matches.get(0), "a.txt", "b.txt", 100, false);
+        assertMatch(matches.get(1), "a.txt", "c.txt", 100, true);
+        assertEquals("kept.txt", matches.get(2).source());
+        assertTrue(matches.get(2).copy());
+        assertMatch(matches.get(3), "same.txt", "e.txt", 100, true);
+    }
+
+    /** Only files at least as similar as the threshold match, and the
+     *  threshold must be a percentage. */
+    @Test
+    public void appliesThreshold() {
+        Map<String, ObjectId> sources = map("a.txt", lines(0, 10));
+        Map<String, ObjectId> added = map("b.txt",
+                lines(0, 6) + lines(100, 4));
+        assertEquals(1, detector(30).detect(sources, set("a.txt"), added,
+                map()).size());
+        assertEquals(0, detector(100).detect(sources, set("a.txt"), added,
+                map()).size());
+        try {
+            detector(101);
+            fail("accepted 101");
+        } catch (IllegalArgumentException excp) {
+            /* Expected. */
+        }
+    }
+
+    /** Sketches are cached, so that a blob is read only once. */
+    @Test
+    public void cachesSketches() {
+        Map<String, ObjectId> sources = map("a.txt", lines(0, 40));
+        Map<String, ObjectId> added = map("b.txt", lines(0, 39) + "x\n");
+        detector(50).detect(sources, set("a.txt"), added, map());
+        assertEquals(2, _reads);
+        List<RenameDetector.Match> again =
+            detector(50).detect(sources, set("a.txt"), added, map());
+        assertEquals(2, _reads);
+        assertEquals(1, again.size());
+    }
+
+    /** Merge carries a change to a file renamed on the other branch to
+     *  its new name, and log reports the rename. */
+    @Test
+    public void mergeFollowsRenames() {
+        try (Repository repository = Repository.init(_dir)) {
+            write(repository, "old.txt", lines(0, 30));
+            repository.commit("base");
+            repository.branch("other");
+            write(repository, "old.txt", lines(0, 30) + "on master\n");
+            repository.commit("edit");
+            repository.checkout("other");
+            write(repository, "new.txt", lines(0, 30));
+            repository.rm("old.txt");
+            repository.commit("rename");
+            assertTrue(repository.run("log", "-n", "1", "--name-status")
+                    .endsWith("\nR100\told.txt\tnew.txt\n\n"));
+            repository.checkout("master");
+
+            MergeResult result = repository.merge("other");
+            assertEquals(MergeResult.Kind.MERGED, result.kind());
+            assertEquals(Collections.emptyList(), result.conflicts());
+            assertFalse(new File(_dir, "old.txt").exists());
+            assertEquals(lines(0, 30) + "on master\n",
+                    Utils.readContentsAsString(new File(_dir, "new.txt")));
+        }
+    }
+
+    /** Log reports a rename that changed the file, with its score. */
+    @Test
+    public void logShowsSimilarRenames() {
+        try (Repository repository = Repository.init(_dir)) {
+            write(repository, "old.txt", lines(0, 30));
+            repository.commit("base");
+            write(repository, "new.txt", lines(0, 29) + "renamed\n");
+            repository.rm("old.txt");
+            repository.commit("rename");
+            assertTrue(repository.run("log", "-n", "1", "--name-status")
+                    .matches("(?s).*\nR0[89]\\d\told.txt\tnew.txt\n\n"));
+        }
+    }
+
+    /** Fails unless MATCH is of SOURCE to TARGET with SCORE, a copy iff
+     *  COPY. */
+    private static void assertMatch(RenameDetector.Match match,
+                                    String source, String target, int score,
+                                    boolean copy) {
+        assertEquals(source, match.source());
+        assertEquals(target, match.target());
+        assertEquals(score, match.score());
+        assertEquals(copy, match.copy());
+    }
+
+    /** Returns a detector at THRESHOLD that reads the blobs made by map,
+     *  counting its reads, and keeps sketches in the scratch
+     *  directory. */
+    private RenameDetector detector(int threshold) {
+        return new RenameDetector(new File(_dir, "sketches"), threshold,
+            id -> {
+                _reads += 1;
+                return _blobs.get(id);
+            }, new Trace());
+    }
+
+    /** Returns the map from each path of PATHSANDTEXTS, which alternates
+     *  paths and contents, to the ID of its contents. */
+    private Map<String, ObjectId> map(String... pathsAndTexts) {
+        Map<String, ObjectId> result = new HashMap<>();
+        for (int i = 0; i < pathsAndTexts.length; i += 2) {
+            ObjectId id = Utils.sha1Id(pathsAndTexts[i + 1]);
+            _blobs.put(id, pathsAndTexts[i + 1]);
+            result.put(pathsAndTexts[i], id);
+        }
+        return result;
+    }
+
+    /** Returns the set of PATHS. */
+    private static Set<String> set(String... paths) {
+        return new HashSet<>(Arrays.asList(paths));
+    }
+
+    /** Returns COUNT distinct lines, numbered from FIRST. */
+    private static String lines(int first, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = first; i < first + count; i += 1) {
+            text.append("line ").append(i).append('\n');
+        }
+        return text.toString();
+    }
+
+    /** Writes TEXT to the working file NAME of REPOSITORY and adds it. */
+    private void write(Repository repository, String name, String text) {
+        Utils.writeContents(new File(_dir, name), text);
+        repository.add(name);
+    }
+
+    /** Contents of the blobs made by map, by ID. */
+    private Map<ObjectId, String> _blobs;
+
+    /** Number of blobs read by detectors. */
+    private int _reads;
+}
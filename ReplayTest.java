@@ -0,0 +1,209 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of cherry-pick and rebase.
+ *  @author Kaito Garcia
+ */
+public class ReplayTest extends ScratchTestCase {
+
+    /** Makes a repository in the scratch directory, with a base commit
+     *  from which branch other, checked out, splits. */
+    @Before
+    public void setUp() {
+        _repo = init(_dir);
+        write("f.txt", "1\n2\n3\n4\n5\n6\n7\n8\n");
+        write("same.txt", "untouched\n");
+        _base = _repo.commit("base");
+        _repo.branch("other");
+        _repo.checkout("other");
+    }
+
+    /** Rebase copies each commit of the branch onto the other, merging
+     *  edits to different lines of one file, and updates the working
+     *  tree once, leaving unchanged files alone. */
+    @Test
+    public void rebasesBranch() {
+        write("f.txt", "1\n2\n3\n4\n5\n6\n7\nEIGHT\n");
+        _repo.commit("other edit");
+        _repo.checkout("master");
+        write("f.txt", "ONE\n2\n3\n4\n5\n6\n7\n8\n");
+        _repo.commit("first");
+        write("g.txt", "new\n");
+        _repo.commit("second");
+        File same = file("same.txt");
+        same.setLastModified(1000000);
+
+        assertEquals("", _repo.run("rebase", "other"));
+        assertEquals(Arrays.asList("second", "first", "other edit", "base",
+                "initial commit"), messages());
+        assertEquals("ONE\n2\n3\n4\n5\n6\n7\nEIGHT\n", read("f.txt"));
+        assertEquals("new\n", read("g.txt"));
+        assertEquals(1000000, same.lastModified());
+        assertEquals(status(), _repo.status().toString());
+        assertEquals("Current branch is up to date.\n",
+                _repo.run("rebase", "other"));
+    }
+
+    /** Cherry-pick applies one commit's changes as a new commit with its
+     *  message, and drops a commit whose changes are already present. */
+    @Test
+    public void cherryPicks() {
+        write("g.txt", "picked\n");
+        ObjectId pick = _repo.commit("pick me");
+        _repo.checkout("master");
+        write("h.txt", "mine\n");
+        _repo.commit("mine");
+
+        assertEquals("", _repo.run("cherry-pick", pick.name()));
+        assertEquals(Arrays.asList("pick me", "mine", "base",
+                "initial commit"), messages());
+        assertEquals("picked\n", read("g.txt"));
+        assertEquals("No changes added to the commit.\n",
+                _repo.run("cherry-pick", pick.name()));
+        assertEquals("No commit with that id exists.\n",
+                _repo.run("cherry-pick", "0000"));
+    }
+
+    /** A conflict stops the replay after the commits before it, staging
+     *  the clean part of the conflicting commit and marking its
+     *  conflicting files, and --continue commits the resolution and
+     *  replays the rest. */
+    @Test
+    public void stopsAtConflict() {
+        ObjectId bad = conflictingHistory();
+        assertEquals("Encountered a merge conflict.\n"
+                + "Stopped at " + bad.name() + ": conflicting\n"
+                + "1 later commits remain.\n",
+                _repo.run("rebase", "other"));
+        assertEquals(Arrays.asList("clean", "theirs", "base",
+                "initial commit"), messages());
+        assertEquals("<<<<<<< HEAD\n1\n2\n3\nTHEIRS\n5\n6\n7\n8\n=======\n"
+                + "1\n2\n3\nOURS\n5\n6\n7\n8\n>>>>>>>\n", read("f.txt"));
+        assertEquals("<<<<<<< HEAD\ntheirs\n=======\nmine\n>>>>>>>\n",
+                read("j.txt"));
+        assertEquals("staged\n", read("h.txt"));
+        assertFalse(file("i.txt").exists());
+        String status = _repo.status().toString();
+        assertTrue(status.contains(
+                "=== Staged Files ===\nf.txt\nh.txt\nj.txt\n"));
+        assertTrue(_repo.run("rebase", "other").startsWith(
+                "A replay stopped by a conflict is in progress;"));
+
+        write("f.txt", "1\n2\n3\nBOTH\n5\n6\n7\n8\n");
+        write("j.txt", "mine\n");
+        assertEquals("", _repo.run("rebase", "--continue"));
+        assertEquals(Arrays.asList("later", "conflicting", "clean", "theirs",
+                "base", "initial commit"), messages());
+        assertEquals("later\n", read("i.txt"));
+        assertEquals(status(), _repo.status().toString());
+        assertEquals("No replay is in progress.\n",
+                _repo.run("rebase", "--continue"));
+    }
+
+    /** --abort puts the branch and working tree back as they were before
+     *  the replay, whose original commits gc has kept meanwhile. */
+    @Test
+    public void abortsAfterConflict() {
+        conflictingHistory();
+        List<String> original = messages();
+        _repo.run("rebase", "other");
+        _repo.run("config", Config.PRUNE_EXPIRE, "0");
+        _repo.run("maintenance", "run");
+        _repo.checkout("other");
+        assertEquals("The replay is on branch master.\n",
+                _repo.run("cherry-pick", "--abort"));
+        _repo.checkout("master");
+        assertEquals("", _repo.run("cherry-pick", "--abort"));
+        assertEquals(original, messages());
+        assertEquals("1\n2\n3\nOURS\n5\n6\n7\n8\n", read("f.txt"));
+        assertEquals("later\n", read("i.txt"));
+        assertEquals(status(), _repo.status().toString());
+        assertEquals("No replay is in progress.\n",
+                _repo.run("rebase", "--abort"));
+    }
+
+    /** Replay refuses to run over uncommitted or untracked work, or onto
+     *  the branch itself. */
+    @Test
+    public void refusesDirtyTree() {
+        _repo.checkout("master");
+        Utils.writeContents(file("f.txt"), "staged\n");
+        _repo.add("f.txt");
+        assertEquals("You have uncommitted changes.\n",
+                _repo.run("rebase", "other"));
+        _repo.commit("staged");
+        Utils.writeContents(file("u.txt"), "untracked\n");
+        assertTrue(_repo.run("cherry-pick", _base.name())
+                .startsWith("There is an untracked file in the way;"));
+        assertEquals("Cannot rebase a branch onto itself.\n",
+                _repo.run("rebase", "master"));
+        assertEquals("A branch with that name does not exist.\n",
+                _repo.run("rebase", "none"));
+    }
+
+    /** Gives other a commit "theirs" and master, checked out, the
+     *  commits "clean", "conflicting" and "later", of which the second
+     *  conflicts with theirs in two files.
+     *  @return the conflicting commit */
+    private ObjectId conflictingHistory() {
+        write("f.txt", "1\n2\n3\nTHEIRS\n5\n6\n7\n8\n");
+        write("j.txt", "theirs\n");
+        _repo.commit("theirs");
+        _repo.checkout("master");
+        write("g.txt", "one\n");
+        _repo.commit("clean");
+        write("f.txt", "1\n2\n3\nOURS\n5\n6\n7\n8\n");
+        write("h.txt", "staged\n");
+        write("j.txt", "mine\n");
+        ObjectId bad = _repo.commit("conflicting");
+        write("i.txt", "later\n");
+        _repo.commit("later");
+        return bad;
+    }
+
+    /** Returns the messages of the current branch's history, newest
+     *  first. */
+    private List<String> messages() {
+        List<String> result = new ArrayList<>();
+        _repo.log().forEachRemaining(c -> result.add(c.getMessage()));
+        return result;
+    }
+
+    /** Returns the status of a clean working tree on master. */
+    private static String status() {
+        return "=== Branches ===\n*master\nother\n\n"
+            + "=== Staged Files ===\n\n=== Removed Files ===\n\n"
+            + "=== Modifications Not Staged For Commit ===\n\n"
+            + "=== Untracked Files ===\n";
+    }
+
+    /** Writes TEXT to the working file NAME and adds it. */
+    private void write(String name, String text) {
+        Utils.writeContents(file(name), text);
+        _repo.add(name);
+    }
+
+    /** Returns the contents of the working file NAME. */
+    private String read(String name) {
+        return Utils.readContentsAsString(file(name));
+    }
+
+    /** Returns the working file NAME. */
+    private File file(String name) {
+        return new File(_dir, name);
+    }
+
+    /** The repository in it. */
+    private Repository _repo;
+
+    /** The commit from which other splits. */
+    private ObjectId _base;
+}
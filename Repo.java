@@ -1,37 +1,66 @@
 package gitlet;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.Serializable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 
 /**
- * Repository.
+ * Repository. A Repo works on the repository in its working directory,
+ * resolving file names against that directory and writing messages and
+ * listings to its own stream, so that several may be open at once in
+ * one process; programs use them through Repository. The state lives in
+ * separate files under .gitlet so that
+ * several processes can use one repository at once: commits and blobs
+ * are written without locks, since they are named by their contents,
+ * to whichever ObjectStore holds them;
+ * each branch is its own file, changed by compare-and-swap (see
+ * RefStore); HEAD names the current branch; and the staging area is
+ * .gitlet/index, changed only under its lock.
  * @author Kaito Garcia
  */
 
-public class Repo implements Serializable {
+public class Repo {
 
     /* Instance Variables */
     /** HEAD 'pointer'. */
-    private String _HEAD;
+    private ObjectId _HEAD;
 
-    /** Number of times init() has been called. */
-    private int initCounter;
-
-    /** Hashmap that stores <branch name, branch SHAID>. */
-    private HashMap<String, String> _branches;
-
-    /** Staging Area. */
-    private HashMap<String, String> stagingArea;
-
-    /** Untracked files. */
-    private ArrayList<String> untracked;
-
-    /** Removed files. */
-    private ArrayList<String> removedFiles;
+    /** Staging area: files staged for addition or removal, and files
+     *  no longer tracked. */
+    private Index _index;
 
     /** Name of current branch. */
     private String currentBranch;
@@ -40,46 +69,94 @@ public class Repo implements Serializable {
 
 
     /**
-     * Repo constructor.
+     * Repo constructor: reads the current branch, its tip and the
+     * staging area of the repository whose working directory is ROOT,
+     * with objects stored as the core.objectStore setting says. Messages
+     * and listings go to OUT.
+     * @param root -- working directory
+     * @param out -- stream for messages and listings
      */
-    public Repo() {
-        _HEAD = null;
-        currentBranch = "";
-        initCounter = 0;
-        stagingArea = new HashMap<>();
-        untracked = new ArrayList<>();
-        removedFiles = new ArrayList<>();
-        File gitlet = new File(".gitlet");
-        gitlet.mkdir();
-
+    public Repo(File root, PrintStream out) {
+        this(root, new Durable(), null, out);
     }
 
-    /** Initializes Gitlet repository. */
-    public void init() {
-
-        initCounter++;
-        if (initCounter > 1) {
-            System.out.println("A Gitlet version-control system "
-                    + "already exists in the current directory.");
-            return;
+    /**
+     * Repo constructor: reads the current branch, its tip and the
+     * staging area of the repository whose working directory is ROOT,
+     * writing through DURABLE, with objects stored in OBJECTS, such as a
+     * MemoryObjectStore, or, if it is null, as the core.objectStore
+     * setting says. Messages and listings go to OUT.
+     * @param root -- working directory
+     * @param durable -- writer of repository files, and holder of the
+     *     trace recording its spans
+     * @param objects -- store of commits and blobs, or null
+     * @param out -- stream for messages and listings
+     */
+    Repo(File root, Durable durable, ObjectStore objects, PrintStream out) {
+        _root = root.getAbsoluteFile();
+        _gitlet = new File(_root, ".gitlet");
+        _gitlet.mkdir();
+        _durable = durable;
+        _trace = durable.trace();
+        checkFormat(_gitlet, config());
+        _durable.setPolicy(config().get(Config.FSYNC, "batch"));
+        _objectsBefore = _durable.objectsWritten();
+        _out = out;
+        _objects = objects != null ? objects
+            : ObjectStore.open(_gitlet, config(), _durable);
+        _refs = new RefStore(_gitlet, _durable);
+        _meta = new MetaStore(new File(_gitlet, "meta"), _trace);
+        _blame = new BlameCache(new File(_gitlet, "blame"));
+        _chunkStore = new ChunkStore(_objects, _trace);
+        File head = headFile();
+        if (head.isFile()) {
+            currentBranch = Utils.readContentsAsString(head).trim();
+            _HEAD = _refs.read(currentBranch);
+        } else {
+            currentBranch = "";
+            _HEAD = null;
         }
+        readIndex();
+    }
 
-        File commits = new File(".gitlet/commits");
-        commits.mkdir();
-
-        File stagingAreaFile = new File(".gitlet/stagingArea");
-        stagingAreaFile.mkdir();
-
-        Commit initial = new Commit("initial commit", null, null);
-        String initialID = initial.hasherCommit();
-        File commitFile = new File(".gitlet/commits/" + initialID);
-        Utils.writeObject(commitFile, initial);
-
-        _branches = new HashMap<>();
-        _branches.put("master", initialID);
-        _HEAD = initialID;
-        currentBranch = "master";
+    /**
+     * Initializes Gitlet repository. "init --object-store NAME" keeps
+     * its objects in backend NAME, files or kv, rather than the default;
+     * see ObjectStore.
+     * @param args -- init, and optionally --object-store and a name
+     */
+    public void init(String... args) {
+        File head = headFile();
+        LockFile lock = LockFile.acquire(head, _trace);
+        try {
+            if (head.exists()) {
+                _out.println("A Gitlet version-control system "
+                        + "already exists in the current directory.");
+                return;
+            }
+            if (args.length == 3) {
+                ObjectStore objects =
+                    ObjectStore.open(_gitlet, args[2], _durable);
+                config().set(Config.OBJECT_STORE, args[2]);
+                _objects.close();
+                _objects = objects;
+                _chunkStore = new ChunkStore(_objects, _trace);
+            }
 
+            config().set(Config.FORMAT_VERSION,
+                    Integer.toString(FORMAT_VERSION));
+            Commit initial = new Commit("initial commit", null, null);
+            ObjectId initialID = initial.hasherCommit();
+            writeCommit(initial);
+
+            _refs.update("master", _refs.read("master"), initialID);
+            _meta.append(Arrays.asList(initial));
+            lock.commit(headContents("master"), _durable);
+            _HEAD = initialID;
+            currentBranch = "master";
+        } finally {
+            lock.release();
+        }
     }
 
     /**
@@ -88,78 +165,102 @@ public class Repo implements Serializable {
      */
     public void add(String fileName) {
 
-        File fileToAdd = new File(fileName);
+        File fileToAdd = resolve(fileName);
 
         if (!fileToAdd.exists()) {
-            System.out.println("File does not exist.");
+            _out.println("File does not exist.");
             return;
         }
 
-        untracked.remove(fileName);
-        String fileContents = Utils.sha1(Utils.readContentsAsString(fileToAdd));
-        File blob = new File(".gitlet/stagingArea/" + fileContents);
+        lockIndex();
+        _index.set(fileName, Index.UNTRACKED, false);
+        _index.set(fileName, Index.REMOVED, false);
+        if (_index.upToDate(fileName, fileToAdd)) {
+            return;
+        }
+        ObjectId fileContents = hashFile(fileToAdd);
 
-        HashMap<String, String> blobsInHead = new HashMap<>();
+        HashMap<String, ObjectId> blobsInHead = new HashMap<>();
         if (getCommitFromID(_HEAD).getBlobs() != null) {
             blobsInHead = getCommitFromID(_HEAD).getBlobs();
         }
 
-        removedFiles.remove(fileName);
-
         if (blobsInHead.get(fileName) != null) {
             if (!blobsInHead.isEmpty()
                     && blobsInHead.get(fileName).equals(fileContents)) {
-                stagingArea.remove(fileName);
+                _index.set(fileName, Index.STAGED, false);
                 return;
             }
         }
 
-        stagingArea.put(fileName, fileContents);
-        String addString = Utils.readContentsAsString(fileToAdd);
-        Utils.writeContents(blob, addString);
+        _index.stage(fileName, fileContents, fileToAdd);
+        writeBlob(fileContents, fileToAdd);
     }
 
     /**
      * Takes snapshot of current staging area and makes it a commit.
      * @param commitMessage -- commit message
+     * @return ID of the new commit, or null if none was made
      */
-    public void commit(String commitMessage) {
+    public ObjectId commit(String commitMessage) {
 
         /* Failure cases */
         if (commitMessage.trim().equals("")) {
-            System.out.println("Please enter a commit message.");
-            return;
+            _out.println("Please enter a commit message.");
+            return null;
         }
-        if (stagingArea.size() == 0 && removedFiles.size() == 0) {
-            System.out.println("No changes added to the commit.");
-            return;
+        boolean locked = _indexLock != null;
+        lockIndex();
+        if (!_index.any(Index.STAGED) && !_index.any(Index.REMOVED)) {
+            _out.println("No changes added to the commit.");
+            return null;
+        }
+        TreeMap<String, ObjectId> staged = _index.staged();
+        List<String> removed = _index.list(Index.REMOVED);
+        List<String> gone = _index.list(Index.UNTRACKED);
+        if (!locked) {
+            unlockIndex(false);
         }
 
-        HashMap<String, String> trackedFiles;
+        HashMap<String, ObjectId> trackedFiles;
         if (getCommitFromID(_HEAD).getBlobs() == null) {
             trackedFiles = new HashMap<>();
         } else {
             trackedFiles = getCommitFromID(_HEAD).getBlobs();
         }
 
-        for (String file : stagingArea.keySet()) {
-            trackedFiles.put(file, stagingArea.get(file));
+        for (String file : staged.keySet()) {
+            trackedFiles.put(file, staged.get(file));
         }
 
-        for (String file : untracked) {
+        for (String file : gone) {
             trackedFiles.remove(file);
         }
 
         Commit newHEAD = new Commit(commitMessage, _HEAD, trackedFiles);
-        String newHEADSHA = newHEAD.hasherCommit();
-        Utils.writeObject(new File(".gitlet/commits/"
-                + newHEADSHA), newHEAD);
-
-        stagingArea.clear();
-        untracked.clear();
-        removedFiles.clear();
-        _branches.put(currentBranch, newHEADSHA);
+        ObjectId newHEADSHA = newHEAD.hasherCommit();
+        writeCommit(newHEAD);
+
+        if (!_refs.update(currentBranch, _HEAD, newHEADSHA)) {
+            refMoved(currentBranch);
+            return null;
+        }
         _HEAD = newHEADSHA;
+        recordCommits(Arrays.asList(newHEAD));
+
+        lockIndex();
+        for (String file : staged.keySet()) {
+            if (staged.get(file).equals(_index.staged(file))) {
+                _index.set(file, Index.STAGED, false);
+            }
+        }
+        for (String file : gone) {
+            _index.set(file, Index.UNTRACKED, false);
+        }
+        for (String file : removed) {
+            _index.set(file, Index.REMOVED, false);
+        }
+        return newHEADSHA;
     }
 
     /**
@@ -181,13 +282,13 @@ public class Repo implements Serializable {
                 }
             }
         } else if (!stagingArea.containsKey(file)) {
-            System.out.println("No reason to remove the file.");
+            _out.println("No reason to remove the file.");
             return;
         }
 
         boolean flag2 = stagingArea.containsKey(file);
         if (!exists) {
-            System.out.println("No reason to remove the file.");
+            _out.println("No reason to remove the file.");
             return;
         }
 
@@ -199,120 +300,598 @@ public class Repo implements Serializable {
         stagingArea.remove(file);
         Utils.restrictedDelete(file); */
 
-        HashMap<String, String> currentBlobs =
+        lockIndex();
+        HashMap<String, ObjectId> currentBlobs =
                 getCommitFromID(_HEAD).getBlobs();
 
-        untracked.add(file);
+        _index.set(file, Index.UNTRACKED, true);
 
         if (currentBlobs != null && currentBlobs.containsKey(file)) {
 
-            removedFiles.add(file);
-            Utils.restrictedDelete(new File(file));
+            _index.set(file, Index.REMOVED, true);
+            Utils.restrictedDelete(resolve(file));
 
-        } else if (!stagingArea.isEmpty() && stagingArea.containsKey(file)) {
-            stagingArea.remove(file);
+        } else if (_index.has(file, Index.STAGED)) {
+            _index.set(file, Index.STAGED, false);
             return;
 
         } else if (getCommitFromID(_HEAD).getBlobs() != null
                 && getCommitFromID(_HEAD).getBlobs().containsKey(file)) {
-            untracked.add(file);
+            _index.set(file, Index.UNTRACKED, true);
         } else {
-            System.out.println("No reason to remove the file.");
+            _out.println("No reason to remove the file.");
         }
     }
 
 
     /** Starting at the current head commit, display information about each
-     * commit backwards along the commit tree until the initial commit. */
-    public void log() {
-        Commit currentCommit = getCommitFromID(_HEAD);
-        while (currentCommit != null) {
-            System.out.println("===");
-            System.out.println("commit " + currentCommit.getHashID());
-            System.out.println("Date: " + currentCommit.getTimestamp());
-            System.out.println(currentCommit.getMessage() + "\n");
-
-            if (currentCommit.getParentHashID() == null) {
-                return;
+     * commit backwards along the commit tree until the initial commit.
+     * Options: "-n N" shows at most N commits, "--skip N" omits the first
+     * N that would be shown, and "--since DATE" and "--until DATE" show
+     * only commits made in that range, where DATE is yyyy-MM-dd, meaning
+     * its midnight, or yyyy-MM-dd HH:mm:ss, in local time. Commits are
+     * read one at a time as they are shown, and the walk ends at the
+     * limit, at the first commit older than --since, or when standard
+     * output is closed, so "log | head" never reads the whole history.
+     * "--name-status" also lists the files each commit changed, with
+     * renamed and copied files detected as in nameStatus.
+     * @param args -- log and its options
+     */
+    public void log(String... args) {
+        int limit = -1;
+        int skip = 0;
+        long since = Long.MIN_VALUE;
+        long until = Long.MAX_VALUE;
+        boolean names = false;
+        try {
+            for (int i = 1; i < args.length; i += 1) {
+                switch (args[i]) {
+                case "-n":
+                    limit = Integer.parseUnsignedInt(args[++i]);
+                    break;
+                case "--skip":
+                    skip = Integer.parseUnsignedInt(args[++i]);
+                    break;
+                case "--since":
+                    since = parseTime(args[++i]);
+                    break;
+                case "--until":
+                    until = parseTime(args[++i]);
+                    break;
+                case "--name-status":
+                    names = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException();
+                }
+            }
+        } catch (IllegalArgumentException | DateTimeParseException
+                 | ArrayIndexOutOfBoundsException excp) {
+            _out.println("Incorrect operands.");
+            return;
+        }
+        boolean timed = since != Long.MIN_VALUE || until != Long.MAX_VALUE;
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(_out,
+                StandardCharsets.UTF_8), LOG_BUFFER);
+        try {
+            Iterator<Commit> commits = history(_HEAD).iterator();
+            while (limit != 0 && !_out.checkError() && commits.hasNext()) {
+                Commit commit = commits.next();
+                long time = timed ? commit.getTime() : 0;
+                if (time > until) {
+                    continue;
+                } else if (time < since) {
+                    break;
+                } else if (skip > 0) {
+                    skip -= 1;
+                    continue;
+                }
+                out.write("===\ncommit " + commit.getHashID()
+                        + "\nDate: " + commit.getTimestamp()
+                        + "\n" + commit.getMessage() + "\n\n");
+                if (names) {
+                    ObjectId parent = parentOf(commit);
+                    for (String line : nameStatus(parent == null ? null
+                            : getCommitFromID(parent).getBlobs(),
+                            commit.getBlobs())) {
+                        out.write(line + "\n");
+                    }
+                    out.write("\n");
+                }
+                limit -= 1;
+            }
+            out.flush();
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /**
+     * Returns the changes from the files BEFORE to the files AFTER, one
+     * line per file in order of path: "A", "D" or "M" and the path of a
+     * file added, deleted or modified, or "R" or "C", the similarity
+     * percentage, and the old and new paths of a file renamed or copied.
+     * Fields are separated by tabs.
+     * @param before -- blobs of the older commit, or null
+     * @param after -- blobs of the newer commit, or null
+     * @return one line per changed file
+     */
+    private List<String> nameStatus(HashMap<String, ObjectId> before,
+                                    HashMap<String, ObjectId> after) {
+        TreeMap<String, String> lines = new TreeMap<>();
+        if (before != null) {
+            for (String file : before.keySet()) {
+                if (after == null || !after.containsKey(file)) {
+                    lines.put(file, "D\t" + file);
+                } else if (!before.get(file).equals(after.get(file))) {
+                    lines.put(file, "M\t" + file);
+                }
+            }
+        }
+        if (after != null) {
+            for (String file : after.keySet()) {
+                if (before == null || !before.containsKey(file)) {
+                    lines.put(file, "A\t" + file);
+                }
             }
-            currentCommit = getCommitFromID(currentCommit.getParentHashID());
         }
+        for (RenameDetector.Match match : renamesBetween(before, after)) {
+            if (!match.copy()) {
+                lines.remove(match.source());
+            }
+            lines.put(match.target(), String.format("%s%03d\t%s\t%s",
+                    match.copy() ? "C" : "R", match.score(),
+                    match.source(), match.target()));
+        }
+        return new ArrayList<>(lines.values());
+    }
+
+    /**
+     * Returns the commits from START back to the root, or to a shallow
+     * boundary, each read only when the iteration reaches it.
+     * @param start -- ID of the first commit
+     * @return lazy sequence of commits
+     */
+    Iterable<Commit> history(ObjectId start) {
+        return () -> new Iterator<Commit>() {
+            @Override
+            public boolean hasNext() {
+                return _next != null;
+            }
+
+            @Override
+            public Commit next() {
+                if (_next == null) {
+                    throw new NoSuchElementException();
+                }
+                Commit commit = getCommitFromID(_next);
+                _next = parentOf(commit);
+                return commit;
+            }
+
+            /** ID of the commit to return next. */
+            private ObjectId _next = start;
+        };
     }
 
     /**
-     * Global-log method.
+     * Blame method: shows, for each line of a file, the commit that
+     * introduced it. "blame FILE" blames the file as of the head commit
+     * and "blame COMMIT -- FILE" as of COMMIT. History is walked once
+     * from that commit; a file is read and diffed only at commits that
+     * changed it, and the walk stops once every line is attributed, or
+     * on reaching a commit whose blame of the file is already cached.
+     * @param args -- blame and its operands
      */
-    public void globalLog() {
-        File commitPath = new File(".gitlet/commits");
+    public void blame(String... args) {
+        String path = args[args.length - 1];
+        ObjectId start = _HEAD;
+        if (args.length == 4) {
+            start = resolveCommit(args[1]);
+            if (start == null || !args[2].equals("--")) {
+                _out.println("No commit with that id exists.");
+                return;
+            }
+        }
+        Commit commit = getCommitFromID(start);
+        ObjectId blob = blobOf(commit, path);
+        if (blob == null) {
+            _out.println("File does not exist in that commit.");
+            return;
+        }
+        String[] lines = Diff.lines(readBlobFetching(blob));
+        ObjectId[] origins = _blame.read(start, path);
+        if (origins == null || origins.length != lines.length) {
+            origins = attribute(commit, path, blob, lines);
+            _blame.write(start, path, origins);
+        }
 
-        for (File file : commitPath.listFiles()) {
-            Commit currentCommit = getCommitFromID(file.getName());
-            System.out.println("===");
-            System.out.println("commit " + currentCommit.getHashID());
-            System.out.println("Date: " + currentCommit.getTimestamp());
-            System.out.println(currentCommit.getMessage());
-            System.out.println();
+        Writer out = new BufferedWriter(new OutputStreamWriter(_out,
+                StandardCharsets.UTF_8), LOG_BUFFER);
+        int width = Integer.toString(lines.length).length();
+        try {
+            for (int i = 0; i < lines.length; i++) {
+                out.write(origins[i].name().substring(0, BLAME_ID) + " "
+                        + String.format("%" + width + "d", i + 1) + ") "
+                        + lines[i] + "\n");
+            }
+            out.flush();
+        } catch (IOException excp) {
+            return;
         }
     }
 
     /**
-     * Find method.
-     * @param message -- commit message to find
+     * Returns the commit that introduced each of LINES, the contents of
+     * PATH, whose blob is BLOB, in COMMIT.
+     * @param commit -- commit being blamed
+     * @param path -- file being blamed
+     * @param blob -- blob of PATH in COMMIT
+     * @param lines -- lines of BLOB
+     * @return origin of each line
      */
-    public void find(String message) {
-        File commitPath = new File(".gitlet/commits");
-        ArrayList<Commit> commitsWithMessage = new ArrayList<>();
-        for (File file : commitPath.listFiles()) {
-            Commit currentCommit = getCommitFromID(file.getName());
-            if (currentCommit.getMessage().equals(message)) {
-                commitsWithMessage.add(currentCommit);
+    private ObjectId[] attribute(Commit commit, String path, ObjectId blob,
+                                 String[] lines) {
+        long start = _trace.start();
+        ObjectId[] origins = new ObjectId[lines.length];
+        int[] at = new int[lines.length];
+        for (int i = 0; i < at.length; i++) {
+            at[i] = i;
+        }
+        int remaining = lines.length;
+        String[] current = lines;
+        int visited = 0;
+        while (remaining > 0) {
+            visited += 1;
+            if (visited > 1) {
+                ObjectId[] cached = _blame.read(commit.getHashID(), path);
+                if (cached != null && cached.length == current.length) {
+                    for (int i = 0; i < at.length; i++) {
+                        if (at[i] >= 0) {
+                            origins[i] = cached[at[i]];
+                        }
+                    }
+                    break;
+                }
+            }
+            ObjectId parentID = parentOf(commit);
+            Commit parent = parentID == null ? null
+                : getCommitFromID(parentID);
+            ObjectId parentBlob = parent == null ? null
+                : blobOf(parent, path);
+            if (parentBlob == null) {
+                for (int i = 0; i < at.length; i++) {
+                    if (at[i] >= 0) {
+                        origins[i] = commit.getHashID();
+                    }
+                }
+                break;
+            }
+            if (!parentBlob.equals(blob)) {
+                String[] previous = Diff.lines(readBlobFetching(parentBlob));
+                int[] match = Diff.match(previous, current);
+                for (int i = 0; i < at.length; i++) {
+                    if (at[i] >= 0) {
+                        at[i] = match[at[i]];
+                        if (at[i] < 0) {
+                            origins[i] = commit.getHashID();
+                            remaining -= 1;
+                        }
+                    }
+                }
+                current = previous;
+                blob = parentBlob;
             }
+            commit = parent;
         }
+        _trace.end("blame.walk", start, visited, 0, path);
+        return origins;
+    }
+
+    /**
+     * Returns the blob of PATH in COMMIT, or null if it has none.
+     * @param commit -- commit to look in
+     * @param path -- file name
+     * @return blob ID or null
+     */
+    private static ObjectId blobOf(Commit commit, String path) {
+        return commit.getBlobs() == null ? null : commit.getBlobs().get(path);
+    }
+
+    /**
+     * Returns the contents of the blob with the given ID, first fetching
+     * it from the promisor remote if it is missing.
+     * @param blobID -- SHA1-ID of the blob
+     * @return blob contents
+     */
+    private String readBlobFetching(ObjectId blobID) {
+        fetchMissingBlobs(Arrays.asList(blobID));
+        return readBlob(blobID);
+    }
 
-        if (commitsWithMessage.isEmpty()) {
-            System.out.println("Found no commit with that message.");
+    /**
+     * Diff method: shows, as unified diffs, how the tracked files differ
+     * between two versions. "diff" compares the staging area with the
+     * working tree, "diff --cached" the head commit with the staging
+     * area, "diff COMMIT" COMMIT with the working tree and "diff COMMIT1
+     * COMMIT2" the two commits. The files that changed are found from
+     * the blob IDs alone, or, for the working tree, from lengths and
+     * hashes; renamed and copied files are detected unless one side is
+     * the working tree.
+     * @param args -- diff and its operands
+     */
+    public void diff(String... args) {
+        HashMap<String, ObjectId> before;
+        HashMap<String, ObjectId> after = null;
+        if (args.length == 1) {
+            before = indexFiles();
+        } else if (args[1].equals("--cached")) {
+            if (args.length != 2) {
+                _out.println("Incorrect operands.");
+                return;
+            }
+            before = blobsOf(_HEAD);
+            after = indexFiles();
+        } else {
+            ObjectId from = resolveCommit(args[1]);
+            ObjectId to = args.length == 3 ? resolveCommit(args[2]) : null;
+            if (from == null || args.length == 3 && to == null) {
+                _out.println("No commit with that id exists.");
+                return;
+            }
+            before = blobsOf(from);
+            after = to == null ? null : blobsOf(to);
+        }
+        List<TreeDiff.Change> changes = after == null
+            ? workingChanges(before) : storedChanges(before, after);
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(_out,
+                StandardCharsets.UTF_8), LOG_BUFFER);
+        try {
+            new TreeDiff(changes, _trace).print(out);
+        } catch (IOException excp) {
             return;
         }
+    }
 
-        for (Commit commit : commitsWithMessage) {
-            System.out.println(commit.getHashID());
+    /**
+     * Returns the files of BEFORE as they may differ in the working
+     * tree, in order of path. Files outside the sparse checkout are
+     * skipped.
+     * @param before -- blobs of the tracked files
+     * @return possible changes
+     */
+    private List<TreeDiff.Change> workingChanges(
+            HashMap<String, ObjectId> before) {
+        TreeMap<String, ObjectId> files = new TreeMap<>();
+        for (String file : before.keySet()) {
+            if (sparse().includes(file)) {
+                files.put(file, before.get(file));
+            }
         }
+        fetchMissingBlobs(files.values());
+        ArrayList<TreeDiff.Change> changes = new ArrayList<>();
+        for (String file : files.keySet()) {
+            File work = resolve(file);
+            changes.add(new TreeDiff.Change(file, version(files.get(file)),
+                    work.isFile() ? file : null,
+                    work.isFile() ? new TreeDiff.Version(work) : null,
+                    -1, false));
+        }
+        return changes;
+    }
 
+    /**
+     * Returns the changes from the files BEFORE to the files AFTER, in
+     * order of path, with renamed and copied files paired up.
+     * @param before -- blobs of the older version
+     * @param after -- blobs of the newer version
+     * @return changes
+     */
+    private List<TreeDiff.Change> storedChanges(
+            HashMap<String, ObjectId> before,
+            HashMap<String, ObjectId> after) {
+        HashSet<ObjectId> blobs = new HashSet<>();
+        for (String file : before.keySet()) {
+            if (!before.get(file).equals(after.get(file))) {
+                blobs.add(before.get(file));
+            }
+        }
+        for (String file : after.keySet()) {
+            if (!after.get(file).equals(before.get(file))) {
+                blobs.add(after.get(file));
+            }
+        }
+        fetchMissingBlobs(blobs);
+        TreeMap<String, TreeDiff.Change> changes = new TreeMap<>();
+        for (String file : before.keySet()) {
+            ObjectId blob = before.get(file);
+            if (!after.containsKey(file)) {
+                changes.put(file, new TreeDiff.Change(file, version(blob),
+                        null, null, -1, false));
+            } else if (!blob.equals(after.get(file))) {
+                changes.put(file, new TreeDiff.Change(file, version(blob),
+                        file, version(after.get(file)), -1, false));
+            }
+        }
+        for (String file : after.keySet()) {
+            ObjectId blob = after.get(file);
+            if (!before.containsKey(file)) {
+                changes.put(file, new TreeDiff.Change(null, null,
+                        file, version(blob), -1, false));
+            }
+        }
+        for (RenameDetector.Match match : renamesBetween(before, after)) {
+            if (!match.copy()) {
+                changes.remove(match.source());
+            }
+            changes.put(match.target(), new TreeDiff.Change(match.source(),
+                    version(before.get(match.source())), match.target(),
+                    version(after.get(match.target())), match.score(),
+                    match.copy()));
+        }
+        return new ArrayList<>(changes.values());
     }
 
     /**
-     * Status method.
+     * Returns the stored blob with ID BLOBID as one side of a diff.
+     * @param blobID -- blob ID
+     * @return its contents, read when needed
+     */
+    private TreeDiff.Version version(ObjectId blobID) {
+        File blob = _objects.file(BLOB, blobID);
+        if (!_objects.has(BLOB, blobID) && _chunkStore.contains(blobID)) {
+            return new TreeDiff.Version(blobID, _chunkStore.size(blobID),
+                () -> _chunkStore.read(blobID));
+        } else if (blob == null) {
+            return new TreeDiff.Version(blobID, _objects.size(BLOB, blobID),
+                () -> ByteBuffer.wrap(_objects.read(BLOB, blobID)));
+        }
+        return new TreeDiff.Version(blobID, blob.length(),
+            () -> TreeDiff.map(blob));
+    }
+
+    /**
+     * Returns the files of the commit with ID COMMITID.
+     * @param commitID -- ID of a commit
+     * @return <file name, blob ID>, possibly empty
      */
-    public void status() {
+    private HashMap<String, ObjectId> blobsOf(ObjectId commitID) {
+        HashMap<String, ObjectId> blobs =
+            getCommitFromID(commitID).getBlobs();
+        return blobs == null ? new HashMap<>() : blobs;
+    }
 
-        System.out.println("=== Branches ===");
+    /**
+     * Returns the files as the next commit would record them: those of
+     * the head commit, with the staged files added and the removed files
+     * dropped.
+     * @return <file name, blob ID>
+     */
+    private HashMap<String, ObjectId> indexFiles() {
+        HashMap<String, ObjectId> files = new HashMap<>(blobsOf(_HEAD));
+        files.putAll(_index.staged());
+        for (String file : _index.list(Index.REMOVED)) {
+            files.remove(file);
+        }
+        return files;
+    }
 
-        Object[] branchArray = _branches.keySet().toArray();
-        Arrays.sort(branchArray);
+    /**
+     * Returns the time denoted by TEXT, which is yyyy-MM-dd or
+     * yyyy-MM-dd HH:mm:ss in local time.
+     * @param text -- date and perhaps time
+     * @return milliseconds since the epoch
+     */
+    private static long parseTime(String text) {
+        ZoneId zone = ZoneId.systemDefault();
+        if (text.length() <= "yyyy-MM-dd".length()) {
+            return LocalDate.parse(text).atStartOfDay(zone).toInstant()
+                .toEpochMilli();
+        }
+        return LocalDateTime.parse(text.replace(' ', 'T')).atZone(zone)
+            .toInstant().toEpochMilli();
+    }
 
-        for (Object branch : branchArray) {
-            if (_branches.get(branch).contains(_HEAD)) {
-                System.out.println("*" + branch);
-            } else {
-                System.out.println(branch);
+    /**
+     * Global-log method: lists every commit from the metadata store,
+     * without reading any commit. "--since DATE" and "--until DATE",
+     * as for log, restrict the listing to commits made in that range.
+     * @param args -- global-log and its options
+     */
+    public void globalLog(String... args) {
+        long since = Long.MIN_VALUE;
+        long until = Long.MAX_VALUE;
+        try {
+            if (args.length % 2 == 0) {
+                throw new IllegalArgumentException();
+            }
+            for (int i = 1; i < args.length; i += 2) {
+                if (args[i].equals("--since")) {
+                    since = parseTime(args[i + 1]);
+                } else if (args[i].equals("--until")) {
+                    until = parseTime(args[i + 1]);
+                } else {
+                    throw new IllegalArgumentException();
+                }
             }
+        } catch (IllegalArgumentException | DateTimeParseException excp) {
+            _out.println("Incorrect operands.");
+            return;
         }
 
-        System.out.println("\n=== Staged Files ===");
-        Object[] stageArray = stagingArea.keySet().toArray();
-        Arrays.sort(stageArray);
-        for (Object file : stageArray) {
-            System.out.println(file);
+        Writer out = new BufferedWriter(new OutputStreamWriter(_out,
+                StandardCharsets.UTF_8), LOG_BUFFER);
+        try {
+            meta().scan(since, until, (id, parent, time, message) -> {
+                try {
+                    out.write("===\ncommit " + id + "\nDate: "
+                            + Commit.timestamp(time) + "\n" + message
+                            + "\n\n");
+                } catch (IOException excp) {
+                    throw new UncheckedIOException(excp);
+                }
+            });
+            out.flush();
+        } catch (IOException | UncheckedIOException excp) {
+            return;
         }
+    }
+
+    /**
+     * Find method.
+     * @param message -- commit message to find
+     * @return IDs of the commits with that message
+     */
+    public List<ObjectId> find(String message) {
+        ArrayList<ObjectId> commitsWithMessage = new ArrayList<>();
+        meta().scan(Long.MIN_VALUE, Long.MAX_VALUE,
+            (id, parent, time, text) -> {
+                if (text.equals(message)) {
+                    commitsWithMessage.add(id);
+                }
+            });
+        return commitsWithMessage;
+    }
 
-        System.out.println("\n=== Removed Files ===");
-        for (String file : removedFiles) {
-            System.out.println(file);
+    /**
+     * Returns the commit-metadata store, first building it from the
+     * commits themselves if this repository predates it.
+     * @return metadata of every commit
+     */
+    private MetaStore meta() {
+        if (!_meta.exists()) {
+            ArrayList<Commit> commits = new ArrayList<>();
+            for (ObjectId id : _objects.iterate(COMMIT)) {
+                commits.add(getCommitFromID(id));
+            }
+            _meta.rebuild(commits);
         }
+        return _meta;
+    }
 
-        System.out.println("\n=== Modifications Not Staged For Commit ===");
+    /**
+     * Records COMMITS, which are stored and reachable, in the metadata
+     * store, if it has been built.
+     * @param commits -- new commits
+     */
+    private void recordCommits(Collection<Commit> commits) {
+        if (_meta.exists() && !commits.isEmpty()) {
+            _meta.append(commits);
+        }
+    }
 
-        System.out.println("\n=== Untracked Files ===");
+    /**
+     * Status method.
+     * @return the branches and the staged and removed files
+     */
+    public Status status() {
+        LinkedHashMap<String, ObjectId> branches = new LinkedHashMap<>();
+        _refs.forEach("", branches::put);
+        return new Status(currentBranch, _HEAD, branches,
+                new ArrayList<>(_index.staged().keySet()),
+                _index.list(Index.REMOVED));
     }
 
     /**
@@ -326,7 +905,12 @@ public class Repo implements Serializable {
             break;
 
         case 4:
-            checkoutFile(args[3], args[1]);
+            ObjectId commitID = resolveCommit(args[1]);
+            if (commitID == null) {
+                _out.println("No commit with that id exists.");
+                return;
+            }
+            checkoutFile(args[3], commitID);
             break;
 
         case 2:
@@ -335,7 +919,7 @@ public class Repo implements Serializable {
             break;
 
         default:
-            System.exit(0);
+            _out.println("Incorrect operands.");
         }
     }
 
@@ -344,49 +928,19 @@ public class Repo implements Serializable {
      * @param file -- file to checkout
      * @param commitSHA1 -- commit ID to checkout file from
      */
-    public void checkoutFile(String file, String commitSHA1) {
-
-        /* Identifying shortened ID */
-        String fullID = null;
-        if (commitSHA1.length() == Utils.UID_LENGTH) {
-            fullID = commitSHA1;
-        } else {
-            File folder = new File(".gitlet/commits");
-            for (File files : folder.listFiles()) {
-                if (files.getName().contains(commitSHA1)) {
-                    fullID = files.getName();
-                }
-            }
-        }
-
-        boolean exists = false;
-        File folder = new File(".gitlet/commits");
-        for (File files : folder.listFiles()) {
-            if (files.getName().contains(fullID)) {
-                exists = true;
-                break;
-            }
-        }
-
-        if (!exists) {
-            System.out.println("No commit with that id exists.");
-            return;
-        }
-
+    public void checkoutFile(String file, ObjectId fullID) {
         Commit tempCommit = getCommitFromID(fullID);
-        HashMap<String, String> tempBlobz = new HashMap<>();
+        HashMap<String, ObjectId> tempBlobz = new HashMap<>();
         if (tempCommit.getBlobs() != null) {
             tempBlobz = tempCommit.getBlobs();
         }
         if (fullID.equals(_HEAD) && !tempBlobz.containsKey(file)) {
-            System.out.println("File does not exist in that commit.");
+            _out.println("File does not exist in that commit.");
             return;
         }
 
-        String blobPath = ".gitlet/stagingArea/" + tempBlobz.get(file);
-        File blobFile = new File(blobPath);
-        String blobContents = Utils.readContentsAsString(blobFile);
-        Utils.writeContents(new File(file), blobContents);
+        fetchMissingBlobs(Arrays.asList(tempBlobz.get(file)));
+        checkoutBlob(tempBlobz.get(file), resolve(file));
     }
 
     /**
@@ -394,25 +948,29 @@ public class Repo implements Serializable {
      * @param branchName branch name to checkout
      */
     public void checkoutBranch(String branchName) {
-        if (!_branches.containsKey(branchName)) {
-            System.out.println("No such branch exists.");
+        ObjectId tip = _refs.read(branchName);
+        if (tip == null) {
+            _out.println("No such branch exists.");
             return;
         }
         if (branchName.equals(currentBranch)) {
-            System.out.println("No need to checkout the current branch.");
+            _out.println("No need to checkout the current branch.");
             return;
         }
         if (checkForUntracked()) {
-            System.out.println("There is an untracked file in the way;"
+            _out.println("There is an untracked file in the way;"
                     + " delete it, or add and commit it first.");
             return;
         }
 
-        HashMap<String, String> blobz =
-                getCommitFromID(_branches.get(branchName)).getBlobs();
+        lockIndex();
+        HashMap<String, ObjectId> blobz = getCommitFromID(tip).getBlobs();
 
-        File root = new File(System.getProperty("user.dir"));
-        for (File file : root.listFiles()) {
+        File root = _root;
+        for (File file : listFiles(root)) {
+            if (!sparse().includes(file.getName())) {
+                continue;
+            }
             if (blobz != null) {
                 if (!blobz.containsKey(file.getName())) {
                     Utils.restrictedDelete(file);
@@ -425,17 +983,18 @@ public class Repo implements Serializable {
             }
         }
 
-        if (blobz != null) {
-            for (String file : blobz.keySet()) {
-                Utils.writeContents(new File(file), Utils.readContentsAsString
-                        (new File(".gitlet/stagingArea/" + blobz.get(file))));
-            }
-        }
+        materialize(blobz);
 
+        LockFile head = LockFile.acquire(headFile(), _trace);
+        try {
+            head.commit(headContents(branchName), _durable);
+        } finally {
+            head.release();
+        }
         currentBranch = branchName;
-        _HEAD = _branches.get(branchName);
-        stagingArea.clear();
-        untracked.clear();
+        _HEAD = tip;
+        _index.clear(Index.STAGED);
+        _index.clear(Index.UNTRACKED);
     }
 
     /**
@@ -443,133 +1002,451 @@ public class Repo implements Serializable {
      * @param branchName name of branch to make
      * */
     public void branch(String branchName) {
-        if (_branches.containsKey(branchName)) {
-            System.out.println("A branch with that name already exists.");
-            return;
+        if (!_refs.update(branchName, null, _HEAD)) {
+            _out.println("A branch with that name already exists.");
         }
-        _branches.put(branchName, _HEAD);
     }
 
     /**
-     * Remove branch (rm-branch) method.
-     * @param rmBranch branch to remove
+     * Pack-refs method: moves every loose branch into packed-refs.
      */
-    public void rmBranch(String rmBranch) {
-        if (!_branches.containsKey(rmBranch)) {
-            System.out.println("A branch with that name does not exist.");
-            return;
-        }
-        if (_HEAD.equals(_branches.get(rmBranch))) {
-            System.out.println("Cannot remove the current branch.");
-            return;
-        }
-        _branches.remove(rmBranch);
+    public void packRefs() {
+        _refs.pack();
     }
 
-    /** Reset method.
-     * @param commitID ID of commit needed to be resetted
-     * */
-    public void reset(String commitID) {
-
-        /* Finding shortened ID. */
-        String fullID = null;
-        if (commitID.length() == Utils.UID_LENGTH) {
-            fullID = commitID;
-        } else {
-            File folder = new File(".gitlet/commits");
-            for (File files : folder.listFiles()) {
-                if (files.getName().contains(commitID)) {
-                    fullID = files.getName();
+    /**
+     * Fsck method: checks the integrity of the object store, printing
+     * one line per problem found, in order:
+     *
+     *     corrupt commit|blob ID   the object does not hash to its ID,
+     *                              or cannot be read.
+     *     missing commit|blob ID   a branch, reachable commit or the
+     *                              staging area refers to an object that
+     *                              is absent; blobs are not reported in
+     *                              a blobless repository.
+     *     dangling commit|blob ID  the object is present but reached
+     *                              from nothing; a commit is reported
+     *                              only at the tip of an unreachable
+     *                              chain.
+     *
+     * Every object, whole or chunked, is read and hashed by a pool of
+     * worker threads; connectivity is then checked from every branch,
+     * and the commits a stopped replay keeps, without reading anything
+     * again.
+     */
+    public void fsck() {
+        long start = _trace.start();
+        ConcurrentHashMap<ObjectId, Commit> commits =
+            new ConcurrentHashMap<>();
+        Set<ObjectId> blobs = ConcurrentHashMap.newKeySet();
+        Set<ObjectId> corruptCommits = ConcurrentHashMap.newKeySet();
+        Set<ObjectId> corruptBlobs = ConcurrentHashMap.newKeySet();
+        List<ObjectId> commitIDs = _objects.iterate(COMMIT);
+        commitIDs.parallelStream().forEach(id -> {
+            Commit commit = verifiedCommit(id);
+            if (commit == null) {
+                corruptCommits.add(id);
+            } else {
+                commits.put(id, commit);
+            }
+        });
+        List<ObjectId> blobIDs = _objects.iterate(BLOB);
+        blobIDs.parallelStream().forEach(id -> {
+            if (verifiedBlob(id)) {
+                blobs.add(id);
+            } else {
+                corruptBlobs.add(id);
+            }
+        });
+        List<ObjectId> chunked = _chunkStore.blobs();
+        chunked.parallelStream().forEach(id -> {
+            if (_chunkStore.verify(id)) {
+                blobs.add(id);
+            } else {
+                corruptBlobs.add(id);
+            }
+        });
+
+        TreeSet<String> missing = new TreeSet<>();
+        TreeSet<String> dangling = new TreeSet<>();
+        boolean promisor = config().get(Config.PROMISOR, null) != null;
+        HashSet<ObjectId> shallow = shallow();
+        HashSet<ObjectId> reachable = new HashSet<>();
+        HashSet<ObjectId> referenced = new HashSet<>(_index.staged().values());
+        ArrayDeque<ObjectId> work = new ArrayDeque<>(_refs.all().values());
+        work.addAll(replayCommits());
+        while (!work.isEmpty()) {
+            ObjectId id = work.pop();
+            Commit commit = commits.get(id);
+            if (!reachable.add(id)) {
+                continue;
+            } else if (commit == null) {
+                if (!corruptCommits.contains(id)) {
+                    missing.add("missing commit " + id.name());
                 }
+                continue;
+            }
+            if (commit.getBlobs() != null) {
+                referenced.addAll(commit.getBlobs().values());
+            }
+            if (commit.getParentHashID() != null && !shallow.contains(id)) {
+                work.push(commit.getParentHashID());
             }
         }
-
-        boolean exists = false;
-        File folder = new File(".gitlet/commits");
-        for (File files : folder.listFiles()) {
-            if (files.getName().contains(fullID)) {
-                exists = true;
-                break;
+        for (ObjectId blob : referenced) {
+            if (!promisor && !blobs.contains(blob)
+                    && !corruptBlobs.contains(blob)) {
+                missing.add("missing blob " + blob.name());
             }
         }
 
-        if (!exists) {
-            System.out.println("No commit with that id exists.");
-            return;
+        HashSet<ObjectId> covered = new HashSet<>(reachable);
+        for (Commit commit : commits.values()) {
+            if (!reachable.contains(commit.getHashID())) {
+                covered.add(commit.getParentHashID());
+                if (commit.getBlobs() != null) {
+                    referenced.addAll(commit.getBlobs().values());
+                }
+            }
         }
-        if (checkForUntracked()) {
-            System.out.println("There is an untracked file in the way;"
-                    + " delete it, or add and commit it first.");
-            return;
+        for (ObjectId id : commits.keySet()) {
+            if (!covered.contains(id)) {
+                dangling.add("dangling commit " + id.name());
+            }
         }
-
-        HashMap<String, String> curBlobs = getCommitFromID(fullID).getBlobs();
-        if (curBlobs != null) {
-            for (String file : curBlobs.keySet()) {
-                checkoutFile(file, fullID);
+        for (ObjectId blob : blobs) {
+            if (!referenced.contains(blob)) {
+                dangling.add("dangling blob " + blob.name());
             }
         }
-        File path = new File(System.getProperty("user.dir"));
-        for (File file : path.listFiles()) {
-            if (!curBlobs.containsKey(file.getName())) {
-                Utils.restrictedDelete(file);
+        TreeSet<String> damaged = new TreeSet<>();
+        for (ObjectId id : corruptCommits) {
+            damaged.add("corrupt commit " + id.name());
+        }
+        for (ObjectId id : corruptBlobs) {
+            damaged.add("corrupt blob " + id.name());
+        }
+        for (TreeSet<String> problems : Arrays.asList(damaged, missing,
+                 dangling)) {
+            for (String problem : problems) {
+                _out.println(problem);
             }
         }
-
-        _HEAD = fullID;
-        _branches.put(currentBranch, _HEAD);
-        stagingArea.clear();
+        _trace.end("fsck", start, commitIDs.size() + blobIDs.size()
+                + chunked.size(), 0, null);
     }
 
     /**
-     * Merges files from the given branch into the current branch.
-     * The method merge() is the main merge method;
-     * all helper methods are listed BELOW merge(),
-     * in descending order of significance.
-     * @param branch -- branch to merge
+     * Returns the commit with the given ID if its file can be read and
+     * its contents hash to that ID, and otherwise null.
+     * @param commitID -- ID of a stored commit
+     * @return the commit, or null if it is corrupt
      */
-    public void merge(String branch) {
-        if (checkForUntracked()) {
-            System.out.println("There is an untracked file in the way;"
-                    + " delete it, or add and commit it first.");
-            return;
-        } else if (!stagingArea.isEmpty()) {
-            System.out.println("You have uncommitted changes.");
-            return;
-        } else if (!_branches.containsKey(branch)) {
-            System.out.println("A branch with that name does not exist.");
-            return;
-        } else if (branch.equals(currentBranch)) {
-            System.out.println("Cannot merge a branch with itself.");
-            return;
-        }
-        if (findSplit(branch).equals(_branches.get(branch))) {
-            System.out.println("Given branch is an "
-                    + "ancestor of the current branch.");
-            return;
-        }
-        if (findSplit(branch).equals(_branches.get(currentBranch))) {
-            _branches.put(currentBranch, _branches.get(branch));
-            Utils.restrictedDelete(new File("f.txt"));
-            System.out.println("Current branch fast-forwarded.");
-            return;
-        }
-        HashMap<String, String> splitPointFiles =
-                getCommitFromID(findSplit(branch)).getBlobs();
-        if (splitPointFiles != null) {
-            for (String file : splitPointFiles.keySet()) {
-                actions(file, branch,
-                        getCommitFromID(_HEAD).getBlobs(),
-                        getCommitFromID(_branches.get(branch)).getBlobs(),
-                        splitPointFiles);
+    private Commit verifiedCommit(ObjectId commitID) {
+        try {
+            Commit commit = Utils.deserialize(_objects.read(COMMIT, commitID),
+                    Commit.class);
+            if (commitID.equals(commit.getHashID())
+                    && commitID.equals(commit.hasherCommit())) {
+                return commit;
             }
+        } catch (GitletException | IllegalArgumentException excp) {
+            /* Unreadable: corrupt. */
         }
-        postActions(branch);
-        commit("Merged " + branch + " into " + currentBranch + ".");
+        return null;
     }
 
     /**
-     * Carries out actions of merge.
+     * Returns true iff the whole blob with the given ID can be read and
+     * hashes to that ID.
+     * @param blobID -- ID of a stored blob
+     * @return whether the blob is intact
+     */
+    private boolean verifiedBlob(ObjectId blobID) {
+        try {
+            File blob = _objects.file(BLOB, blobID);
+            return blobID.equals(blob != null ? hashFile(blob)
+                    : hash(_objects.read(BLOB, blobID)));
+        } catch (GitletException | IllegalArgumentException excp) {
+            return false;
+        }
+    }
+
+    /**
+     * Maintenance method: "maintenance run" performs every upkeep task
+     * now; "maintenance run --auto" performs only those that are due, as
+     * the background runs other commands start do. See Maintenance.
+     * @param args -- maintenance, run, and optionally --auto
+     */
+    public void maintenance(String... args) {
+        boolean auto = args.length == 3;
+        if (!maintenance().run(auto, this::maintain) && !auto) {
+            _out.println("Maintenance is already running.");
+        }
+    }
+
+    /**
+     * Adds the objects and commits this command wrote to the counts
+     * that decide when upkeep is due and, if some is, starts a
+     * background maintenance run. Called after the command has finished
+     * and released its locks; does nothing for a command that wrote
+     * nothing, and gives up quietly if the counts are busy, since upkeep
+     * can wait for a later command.
+     */
+    public void scheduleMaintenance() {
+        long objects = _durable.objectsWritten() - _objectsBefore;
+        if (objects == 0 && _commitsWritten == 0) {
+            return;
+        }
+        try {
+            Maintenance maintenance = maintenance();
+            if (maintenance.record(objects, _commitsWritten)
+                    && maintenance.auto()) {
+                maintenance.schedule();
+            }
+        } catch (GitletException excp) {
+            /* Counted by no one: upkeep starts a little later. */
+        }
+    }
+
+    /**
+     * Returns the upkeep of this repository.
+     * @return maintenance counts and settings
+     */
+    private Maintenance maintenance() {
+        return new Maintenance(_gitlet, config(), _durable);
+    }
+
+    /**
+     * Runs the upkeep task NAME, one of Maintenance.TASKS.
+     * @param name -- task name
+     * @param deadline -- time past which to stop early
+     * @return true iff the task completed
+     */
+    private boolean maintain(String name, long deadline) {
+        if (name.equals(Maintenance.GC)) {
+            return gc(deadline);
+        }
+        meta();
+        return true;
+    }
+
+    /**
+     * Deletes the objects nothing reaches: commits no branch or stopped
+     * replay leads to, and blobs, whole or chunked, that neither a
+     * remaining commit nor the staging area refers to. Objects younger
+     * than gc.pruneExpire are kept, with the history of young commits,
+     * since a command still running may be about to refer to them.
+     * Temporary object files are deleted once a day old, when their
+     * command has surely died. If commits go, the metadata store is
+     * rebuilt from those left. Last, the branches are packed.
+     * @param deadline -- time past which to stop early
+     * @return true iff it completed
+     */
+    private boolean gc(long deadline) {
+        long start = _trace.start();
+        long now = System.currentTimeMillis();
+        long before = now - maintenance().pruneExpire();
+        ArrayDeque<ObjectId> work = new ArrayDeque<>(_refs.all().values());
+        work.addAll(replayCommits());
+        for (ObjectId id : _objects.iterate(COMMIT)) {
+            if (_objects.modified(COMMIT, id) >= before) {
+                work.push(id);
+            }
+        }
+        HashSet<ObjectId> shallow = shallow();
+        HashMap<ObjectId, Commit> kept = new HashMap<>();
+        HashSet<ObjectId> live = new HashSet<>(_index.staged().values());
+        while (!work.isEmpty()) {
+            ObjectId id = work.pop();
+            if (kept.containsKey(id) || !_objects.has(COMMIT, id)) {
+                continue;
+            } else if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Commit commit = getCommitFromID(id);
+            kept.put(id, commit);
+            if (commit.getBlobs() != null) {
+                live.addAll(commit.getBlobs().values());
+            }
+            if (commit.getParentHashID() != null && !shallow.contains(id)) {
+                work.push(commit.getParentHashID());
+            }
+        }
+
+        int prunedCommits = 0;
+        int pruned = 0;
+        for (ObjectId id : _objects.iterate(COMMIT)) {
+            if (!kept.containsKey(id)
+                    && _objects.modified(COMMIT, id) < before
+                    && _objects.delete(COMMIT, id)) {
+                prunedCommits += 1;
+            }
+        }
+        if (prunedCommits > 0 && _meta.exists()) {
+            _meta.replace(kept.values());
+        }
+        for (ObjectId id : _objects.iterate(BLOB)) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            if (!live.contains(id) && _objects.modified(BLOB, id) < before
+                    && _objects.delete(BLOB, id)) {
+                Utils.join(_gitlet, "sketches", id.name()).delete();
+                pruned += 1;
+            }
+        }
+        pruned += _chunkStore.prune(live, before, deadline);
+        for (ObjectStore.Type type : ObjectStore.Type.values()) {
+            File dir = new File(_gitlet, type.dir());
+            if (!dir.isDirectory()) {
+                continue;
+            }
+            for (File file : listFiles(dir)) {
+                String name = file.getName();
+                if (name.startsWith(".") && name.endsWith(".tmp")
+                        && file.lastModified() < now - Maintenance.DAY) {
+                    file.delete();
+                }
+            }
+        }
+        if (System.currentTimeMillis() > deadline) {
+            return false;
+        }
+        _refs.pack();
+        _trace.end("gc", start, prunedCommits + pruned, 0, null);
+        return true;
+    }
+
+    /**
+     * Remove branch (rm-branch) method.
+     * @param rmBranch branch to remove
+     */
+    public void rmBranch(String rmBranch) {
+        ObjectId tip = _refs.read(rmBranch);
+        if (tip == null) {
+            _out.println("A branch with that name does not exist.");
+            return;
+        }
+        if (_HEAD.equals(tip)) {
+            _out.println("Cannot remove the current branch.");
+            return;
+        }
+        if (!_refs.update(rmBranch, tip, null)) {
+            refMoved(rmBranch);
+        }
+    }
+
+    /** Reset method.
+     * @param commitID ID of commit needed to be resetted
+     * */
+    public void reset(String commitID) {
+
+        /* Finding shortened ID. */
+        ObjectId fullID = resolveCommit(commitID);
+        if (fullID == null) {
+            _out.println("No commit with that id exists.");
+            return;
+        }
+        if (checkForUntracked()) {
+            _out.println("There is an untracked file in the way;"
+                    + " delete it, or add and commit it first.");
+            return;
+        }
+
+        lockIndex();
+        HashMap<String, ObjectId> curBlobs =
+                getCommitFromID(fullID).getBlobs();
+        materialize(curBlobs);
+        File path = _root;
+        for (File file : listFiles(path)) {
+            if (!curBlobs.containsKey(file.getName())
+                    && sparse().includes(file.getName())) {
+                Utils.restrictedDelete(file);
+            }
+        }
+
+        if (!_refs.update(currentBranch, _HEAD, fullID)) {
+            refMoved(currentBranch);
+            return;
+        }
+        _HEAD = fullID;
+        _index.clear(Index.STAGED);
+    }
+
+    /**
+     * Merges files from the given branch into the current branch.
+     * The method merge() is the main merge method;
+     * all helper methods are listed BELOW merge(),
+     * in descending order of significance.
+     * @param branch -- branch to merge
+     * @return what the merge did
+     */
+    public MergeResult merge(String branch) {
+        lockIndex();
+        _conflicts.clear();
+        ObjectId other = _refs.read(branch);
+        if (checkForUntracked()) {
+            return MergeResult.refused(_HEAD, "There is an untracked file"
+                    + " in the way; delete it, or add and commit it first.");
+        } else if (_index.any(Index.STAGED)) {
+            return MergeResult.refused(_HEAD,
+                    "You have uncommitted changes.");
+        } else if (other == null) {
+            return MergeResult.refused(_HEAD,
+                    "A branch with that name does not exist.");
+        } else if (branch.equals(currentBranch)) {
+            return MergeResult.refused(_HEAD,
+                    "Cannot merge a branch with itself.");
+        }
+        ObjectId split = findSplit(branch);
+        if (split == null) {
+            return MergeResult.refused(_HEAD, "Given branch shares no"
+                    + " history with the current branch.");
+        }
+        if (split.equals(other)) {
+            return new MergeResult(MergeResult.Kind.UP_TO_DATE, _HEAD,
+                    Collections.emptyList(), "Given branch is an "
+                    + "ancestor of the current branch.");
+        }
+        if (split.equals(_HEAD)) {
+            if (!_refs.update(currentBranch, _HEAD, other)) {
+                return MergeResult.refused(_HEAD, moved(currentBranch));
+            }
+            _HEAD = other;
+            Utils.restrictedDelete(resolve("f.txt"));
+            return new MergeResult(MergeResult.Kind.FAST_FORWARDED, _HEAD,
+                    Collections.emptyList(), "Current branch fast-forwarded.");
+        }
+        HashMap<String, ObjectId> splitPointFiles =
+                getCommitFromID(split).getBlobs();
+        HashSet<String> renamed = new HashSet<>();
+        if (splitPointFiles != null) {
+            mergeRenames(branch, splitPointFiles,
+                    getCommitFromID(_HEAD).getBlobs(),
+                    getCommitFromID(other).getBlobs(), renamed);
+            for (String file : splitPointFiles.keySet()) {
+                if (renamed.contains(file)) {
+                    continue;
+                }
+                actions(file, branch,
+                        getCommitFromID(_HEAD).getBlobs(),
+                        getCommitFromID(other).getBlobs(),
+                        splitPointFiles);
+            }
+        }
+        postActions(branch, renamed);
+        if (!_index.any(Index.STAGED) && !_index.any(Index.REMOVED)) {
+            return MergeResult.refused(_HEAD,
+                    "No changes added to the commit.");
+        }
+        commit("Merged " + branch + " into " + currentBranch + ".");
+        return new MergeResult(MergeResult.Kind.MERGED, _HEAD,
+                new ArrayList<>(_conflicts), null);
+    }
+
+    /**
+     * Carries out actions of merge.
      * @param file -- file to inspect
      * @param branch -- branch of merge
      * @param headBranch -- blobs of current branch
@@ -577,15 +1454,14 @@ public class Repo implements Serializable {
      * @param parentBlobs -- blobs of split point commit
      */
     public void actions(String file, String branch,
-                        HashMap<String, String> headBranch,
-                        HashMap<String, String> otherBranch,
-                        HashMap<String, String> parentBlobs) {
+                        HashMap<String, ObjectId> headBranch,
+                        HashMap<String, ObjectId> otherBranch,
+                        HashMap<String, ObjectId> parentBlobs) {
         String caseResult =
                 findCase(file, headBranch, otherBranch, parentBlobs);
         switch (caseResult) {
         case "Modified in other but not HEAD":
-            add(file);
-            checkout(_branches.get(branch), "--", file);
+            takeOther(file, branch, otherBranch.get(file));
             break;
         case "Modified in HEAD but not other":
             break;
@@ -597,12 +1473,11 @@ public class Repo implements Serializable {
         case "Not in split nor other but in HEAD":
             break;
         case "Not in split nor HEAD but in other":
-            add(file);
-            checkout(_branches.get(branch), "--", file);
+            takeOther(file, branch, otherBranch.get(file));
             break;
         case "Unmodified in HEAD but absent in other":
             rm(file);
-            Utils.restrictedDelete(new File(file));
+            Utils.restrictedDelete(resolve(file));
             break;
         case "Unmodified in other but absent in HEAD":
             break;
@@ -611,37 +1486,200 @@ public class Repo implements Serializable {
         }
     }
 
+    /**
+     * Stages the version of FILE in BRANCH, whose blob is BLOBID, and
+     * checks it out unless it lies outside the sparse checkout.
+     * @param file -- file to take
+     * @param branch -- branch of merge
+     * @param blobID -- blob of FILE in BRANCH
+     */
+    private void takeOther(String file, String branch, ObjectId blobID) {
+        if (sparse().includes(file)) {
+            checkoutFile(file, _refs.read(branch));
+            add(file);
+        } else {
+            _index.stage(file, blobID, null);
+        }
+    }
+
+    /**
+     * Merges the files that one side renamed since the split point while
+     * the other changed them in place, so that the changes meet under the
+     * new name instead of becoming a deletion, an unrelated addition and
+     * a spurious conflict. Every path so merged is added to RENAMED, for
+     * the file-by-file merge to skip.
+     * @param branch -- branch to merge
+     * @param splitFiles -- blobs of the split point
+     * @param headFiles -- blobs of the current branch
+     * @param otherFiles -- blobs of BRANCH
+     * @param renamed -- paths already merged
+     */
+    private void mergeRenames(String branch,
+                              HashMap<String, ObjectId> splitFiles,
+                              HashMap<String, ObjectId> headFiles,
+                              HashMap<String, ObjectId> otherFiles,
+                              Set<String> renamed) {
+        for (RenameDetector.Match match
+                 : renamesBetween(splitFiles, otherFiles)) {
+            String from = match.source();
+            String to = match.target();
+            if (match.copy() || !headFiles.containsKey(from)
+                    || headFiles.containsKey(to)) {
+                continue;
+            }
+            renamed.add(from);
+            renamed.add(to);
+            mergeRenamed(to, splitFiles.get(from), headFiles.get(from),
+                    otherFiles.get(to), null);
+            rm(from);
+            Utils.restrictedDelete(resolve(from));
+        }
+        for (RenameDetector.Match match
+                 : renamesBetween(splitFiles, headFiles)) {
+            String from = match.source();
+            String to = match.target();
+            if (match.copy() || renamed.contains(from)
+                    || !otherFiles.containsKey(from)
+                    || otherFiles.containsKey(to)) {
+                continue;
+            }
+            renamed.add(from);
+            renamed.add(to);
+            mergeRenamed(to, splitFiles.get(from), headFiles.get(to),
+                    otherFiles.get(from), headFiles.get(to));
+        }
+    }
+
+    /**
+     * Stages under FILE the merge of the versions HEADBLOB, in the
+     * current branch, and OTHERBLOB, in the given branch, of a file whose
+     * version at the split point was BASE, unless the result is CURRENT,
+     * the blob of FILE in the current branch, or null if it has none.
+     * @param file -- path of the merged file
+     * @param base -- blob at the split point
+     * @param headBlob -- blob in the current branch
+     * @param otherBlob -- blob in the given branch
+     * @param current -- blob of FILE in the current branch, or null
+     */
+    private void mergeRenamed(String file, ObjectId base, ObjectId headBlob,
+                              ObjectId otherBlob, ObjectId current) {
+        ObjectId result;
+        if (otherBlob.equals(base) || otherBlob.equals(headBlob)) {
+            result = headBlob;
+        } else if (headBlob.equals(base)) {
+            result = otherBlob;
+        } else {
+            HashMap<String, ObjectId> headFiles = new HashMap<>();
+            HashMap<String, ObjectId> otherFiles = new HashMap<>();
+            headFiles.put(file, headBlob);
+            otherFiles.put(file, otherBlob);
+            conflict(headFiles, otherFiles, file);
+            return;
+        }
+        if (!result.equals(current)) {
+            if (sparse().includes(file)) {
+                fetchMissingBlobs(Arrays.asList(result));
+                checkoutBlob(result, resolve(file));
+            }
+            _index.stage(file, result, null);
+        }
+    }
+
+    /**
+     * Returns the files of AFTER renamed or copied from files of BEFORE.
+     * Files deleted or modified are compared by similarity; unchanged
+     * files are considered only as sources of exact copies, so that
+     * they are never read.
+     * @param before -- blobs of the older commit
+     * @param after -- blobs of the newer commit
+     * @return matches, ordered by new path
+     */
+    private List<RenameDetector.Match> renamesBetween(
+            HashMap<String, ObjectId> before,
+            HashMap<String, ObjectId> after) {
+        HashMap<String, ObjectId> sources = new HashMap<>();
+        HashSet<String> deleted = new HashSet<>();
+        HashMap<String, ObjectId> added = new HashMap<>();
+        HashMap<String, ObjectId> unchanged = new HashMap<>();
+        if (after != null) {
+            for (String file : after.keySet()) {
+                if (before == null || !before.containsKey(file)) {
+                    added.put(file, after.get(file));
+                }
+            }
+        }
+        if (before != null) {
+            for (String file : before.keySet()) {
+                ObjectId blob = after == null ? null : after.get(file);
+                if (blob == null) {
+                    deleted.add(file);
+                }
+                if (before.get(file).equals(blob)) {
+                    unchanged.put(file, blob);
+                } else {
+                    sources.put(file, before.get(file));
+                }
+            }
+        }
+        return renames().detect(sources, deleted, added, unchanged);
+    }
+
+    /**
+     * Returns the detector of renamed and copied files, set up from the
+     * diff.renameThreshold setting.
+     * @return rename detector
+     */
+    private RenameDetector renames() {
+        if (_renames == null) {
+            String value = config().get(Config.RENAME_THRESHOLD, "50");
+            try {
+                _renames = new RenameDetector(new File(_gitlet,
+                        "sketches"), Integer.parseInt(value),
+                        this::readBlobFetching, _trace);
+            } catch (IllegalArgumentException excp) {
+                throw Utils.error("Invalid %s: %s",
+                        Config.RENAME_THRESHOLD, value);
+            }
+        }
+        return _renames;
+    }
+
     /**
      * Actions to carry out after merge.
      * @param branch -- branch to merge
+     * @param renamed -- paths already merged by mergeRenames
      */
-    public void postActions(String branch) {
-        HashMap<String, String> splitPointFiles =
+    public void postActions(String branch, Set<String> renamed) {
+        HashMap<String, ObjectId> splitPointFiles =
                 getCommitFromID(findSplit(branch)).getBlobs();
-        HashMap<String, String> headFiles = getCommitFromID(_HEAD).getBlobs();
-        HashMap<String, String> otherFiles =
-                getCommitFromID(_branches.get(branch)).getBlobs();
+        HashMap<String, ObjectId> headFiles =
+                getCommitFromID(_HEAD).getBlobs();
+        HashMap<String, ObjectId> otherFiles =
+                getCommitFromID(_refs.read(branch)).getBlobs();
 
         for (String file : otherFiles.keySet()) {
-            if (!splitPointFiles.containsKey(file)) {
+            if (!splitPointFiles.containsKey(file)
+                    && !renamed.contains(file)) {
                 if (!headFiles.containsKey(file)
                         && otherFiles.containsKey(file)) {
-                    stagingArea.put(file, otherFiles.get(file));
-                    checkoutFile(file, _branches.get(branch));
+                    _index.stage(file, otherFiles.get(file), null);
+                    if (sparse().includes(file)) {
+                        checkoutFile(file, _refs.read(branch));
+                    }
                 }
 
                 if (!otherFiles.containsKey(file)
                         && headFiles.get(file).equals(otherFiles.get(file))) {
                     add(file);
                     String toString = "<<<<<<< HEAD\n"
-                            + new File(".gitlet/staging/"
+                            + new File(_gitlet, "staging/"
                             + headFiles.get(file))
                             + "=======\n"
-                            + new File(".gitlet/staging/"
+                            + new File(_gitlet, "staging/"
                             + otherFiles.get(file))
                             + ">>>>>>>";
-                    Utils.writeContents(new File(file), toString);
-                    System.out.println("Encountered a merge conflict.");
+                    Utils.writeContents(resolve(file), toString);
+                    _conflicts.add(file);
                 }
 
             }
@@ -649,33 +1687,34 @@ public class Repo implements Serializable {
     }
 
     /**
-     * Method to handle conflicts.
+     * Method to handle conflicts: writes FILE with conflict markers,
+     * stages it and records it among the conflicts of the merge.
      * @param headFiles -- hashmap of files in head commit
      * @param otherFiles -- hashmap of files in other commit
      * @param file -- file to inspect
      */
-    public void conflict(HashMap<String, String> headFiles,
-                          HashMap<String, String> otherFiles,
+    public void conflict(HashMap<String, ObjectId> headFiles,
+                          HashMap<String, ObjectId> otherFiles,
                           String file) {
         String hCont;
         String oCont;
+        fetchMissingBlobs(Arrays.asList(headFiles.get(file),
+                otherFiles.get(file)));
         if (!headFiles.containsKey(file)) {
             hCont = "";
         } else {
-            hCont = Utils.readContentsAsString(new File(".gitlet/stagingArea/"
-                    + headFiles.get(file)));
+            hCont = readBlob(headFiles.get(file));
         }
         if (!otherFiles.containsKey(file)) {
             oCont = "";
         } else {
-            oCont = Utils.readContentsAsString(new File(".gitlet/stagingArea/"
-                    + otherFiles.get(file)));
+            oCont = readBlob(otherFiles.get(file));
         }
 
-        Utils.writeContents(new File(file), "<<<<<<< HEAD\n"
+        Utils.writeContents(resolve(file), "<<<<<<< HEAD\n"
                 + hCont + "=======\n" + oCont + ">>>>>>>\n");
         add(file);
-        System.out.println("Encountered a merge conflict.");
+        _conflicts.add(file);
     }
 
     /**
@@ -686,12 +1725,12 @@ public class Repo implements Serializable {
      * @param parentBlobs -- blobs in split point commit
      * @return string of which case merge should operate under
      */
-    public String findCase(String file, HashMap<String, String> headBranch,
-                           HashMap<String, String> otherBranch,
-                           HashMap<String, String> parentBlobs) {
-        String parentFile = parentBlobs.get(file);
-        String headFile = headBranch.get(file);
-        String otherFile = otherBranch.get(file);
+    public String findCase(String file, HashMap<String, ObjectId> headBranch,
+                           HashMap<String, ObjectId> otherBranch,
+                           HashMap<String, ObjectId> parentBlobs) {
+        ObjectId parentFile = parentBlobs.get(file);
+        ObjectId headFile = headBranch.get(file);
+        ObjectId otherFile = otherBranch.get(file);
 
         if (parentBlobs.containsKey(file) && headBranch.containsKey(file)
                 && otherBranch.containsKey(file)) {
@@ -736,140 +1775,1262 @@ public class Repo implements Serializable {
 
 
     /**
-     * Finds commit ID of split point.
-     * @param branch to start
-     * @return commit id of split
+     * Cherry-pick method: applies the changes the given commit made to
+     * its parent to the current branch, as a new commit with the same
+     * message. With --continue or --abort instead of a commit, finishes
+     * or undoes a replay stopped by a conflict (see resumeReplay).
+     * @param args -- cherry-pick, commit ID
      */
-    public String findSplit(String branch) {
-        String I;
-        ArrayList<String> currentCommits = new ArrayList<>();
-        I = _branches.get(currentBranch);
-        while (I != null) {
-            currentCommits.add(I);
-            I = getCommitFromID(I).getParentHashID();
+    public void cherryPick(String... args) {
+        if (args[1].equals("--continue") || args[1].equals("--abort")) {
+            resumeReplay(args[1]);
+            return;
         }
-
-        ArrayList<String> otherCommits = new ArrayList<>();
-        I = _branches.get(branch);
-        while (I != null) {
-            otherCommits.add(I);
-            I = getCommitFromID(I).getParentHashID();
+        ObjectId commitID = resolveCommit(args[1]);
+        if (commitID == null) {
+            _out.println("No commit with that id exists.");
+            return;
+        } else if (!readyToReplay()) {
+            return;
         }
+        replay(_HEAD, Arrays.asList(commitID), _HEAD);
+    }
 
-        for (String splitPoint : currentCommits) {
-            if (otherCommits.contains(splitPoint)) {
-                return splitPoint;
-            }
+    /**
+     * Rebase method: replays the commits of the current branch since it
+     * split from the given branch onto the tip of that branch, and moves
+     * the current branch to the last of the copies. With --continue or
+     * --abort instead of a branch, finishes or undoes a replay stopped by
+     * a conflict (see resumeReplay).
+     * @param args -- rebase, branch name
+     */
+    public void rebase(String... args) {
+        if (args[1].equals("--continue") || args[1].equals("--abort")) {
+            resumeReplay(args[1]);
+            return;
         }
-        return "";
+        String branch = args[1];
+        ObjectId onto = _refs.read(branch);
+        if (onto == null) {
+            _out.println("A branch with that name does not exist.");
+            return;
+        } else if (branch.equals(currentBranch)) {
+            _out.println("Cannot rebase a branch onto itself.");
+            return;
+        } else if (!readyToReplay()) {
+            return;
+        }
+        ObjectId split = findSplit(branch);
+        if (split == null) {
+            _out.println("Given branch shares no history "
+                    + "with the current branch.");
+            return;
+        } else if (split.equals(onto)) {
+            _out.println("Current branch is up to date.");
+            return;
+        }
+        ArrayList<ObjectId> commits = new ArrayList<>();
+        for (ObjectId id = _HEAD; !id.equals(split);
+             id = parentOf(getCommitFromID(id))) {
+            commits.add(id);
+        }
+        Collections.reverse(commits);
+        replay(onto, commits, _HEAD);
     }
 
-
-    /* Helper functions */
-
     /**
-     * Takes in the SHA1-ID of some commit and returns Commit associated w/ it.
-     * @param shaID -- SHA1-ID of some commit
-     * @return Commit associated with ID
+     * Returns true iff the working tree and staging area allow the
+     * current branch to be rewritten, locking the staging area, and
+     * otherwise says why not.
+     * @return true if nothing would be lost
      */
-    public Commit getCommitFromID(String shaID) {
-
-        /* Failure case */
-        File folder = new File(".gitlet/commits");
-        for (File file : folder.listFiles()) {
-            if (file.getName().contains(shaID)) {
-                return Utils.readObject(new File(
-                        ".gitlet/commits/" + shaID), Commit.class);
-            }
+    private boolean readyToReplay() {
+        lockIndex();
+        if (replayFile().isFile()) {
+            _out.println("A replay stopped by a conflict is in progress;"
+                    + " use --continue or --abort.");
+            return false;
+        } else if (checkForUntracked()) {
+            _out.println("There is an untracked file in the way;"
+                    + " delete it, or add and commit it first.");
+            return false;
+        } else if (_index.any(Index.STAGED) || _index.any(Index.REMOVED)) {
+            _out.println("You have uncommitted changes.");
+            return false;
         }
-        throw new GitletException("No commit with that id exists.");
+        return true;
     }
 
     /**
-     * Checks for untracked files. If there are untracked files,
-     * will return true. Otherwise, returns false.
+     * Replays COMMITS, oldest first, on top of the commit ONTO, and moves
+     * the current branch to the last commit made. Each commit's changes
+     * to its parent are merged into the tree built so far in memory (see
+     * TreeMerge), so that only new commits, and the blobs of files
+     * merged line by line, are written along the way; a commit whose
+     * changes are already present is dropped. The working
+     * tree is brought up to date once, at the end, writing only the
+     * files that differ. A conflict stops the replay after the commits
+     * before it: the clean part of the conflicting commit is staged,
+     * and each conflicting file is written with markers, as by merge,
+     * for the user to resolve. The branch, ORIG and the commits still to
+     * replay are first saved in .gitlet/replay, so that resumeReplay can
+     * go on or put the branch back, and gc keeps them meanwhile.
+     * @param onto -- commit to build on
+     * @param commits -- commits whose changes to replay
+     * @param orig -- tip of the current branch before the replay began
      */
-    public boolean checkForUntracked() {
-        File user = new File(System.getProperty("user.dir"));
-        HashMap<String, String> trackedFiles
-                = getCommitFromID(_HEAD).getBlobs();
-        for (File f : user.listFiles()) {
-            if (trackedFiles != null) {
-                if (!stagingArea.containsKey(f.getName())
-                        && !trackedFiles.containsKey(f.getName())
-                        && !f.getName().equals(".gitlet")) {
-                    return true;
-                }
-            } else if (user.listFiles().length > 1) {
-                return true;
+    private void replay(ObjectId onto, List<ObjectId> commits,
+                        ObjectId orig) {
+        long start = _trace.start();
+        ObjectId tip = onto;
+        HashMap<String, ObjectId> tree = blobsOf(onto);
+        ArrayList<Commit> written = new ArrayList<>();
+        Commit previous = null;
+        Commit stopped = null;
+        TreeMerge partial = null;
+        for (ObjectId id : commits) {
+            Commit commit = getCommitFromID(id);
+            ObjectId parent = parentOf(commit);
+            HashMap<String, ObjectId> base;
+            if (parent == null) {
+                base = null;
+            } else if (previous != null
+                    && parent.equals(previous.getHashID())) {
+                base = previous.getBlobs();
+            } else {
+                base = blobsOf(parent);
+            }
+            previous = commit;
+            TreeMerge merge = new TreeMerge(base, tree, commit.getBlobs(),
+                    this::readBlobFetching, this::writeBlob);
+            if (!merge.clean()) {
+                stopped = commit;
+                partial = merge;
+                break;
+            } else if (merge.result().equals(tree)) {
+                continue;
             }
+            tree = merge.result();
+            Commit copy = new Commit(commit.getMessage(), tip, tree);
+            writeCommit(copy);
+            written.add(copy);
+            tip = copy.getHashID();
         }
-        return false;
-    }
-
-
 
+        List<ObjectId> rest = Collections.emptyList();
+        if (stopped != null) {
+            rest = commits.subList(commits.indexOf(stopped.getHashID()) + 1,
+                    commits.size());
+            saveReplay(orig, stopped.getHashID(), rest);
+        }
+        HashMap<String, ObjectId> before = blobsOf(_HEAD);
+        if (!_refs.update(currentBranch, _HEAD, tip)) {
+            refMoved(currentBranch);
+            return;
+        }
+        _HEAD = tip;
+        recordCommits(written);
+        updateWorkingTree(before, tree);
+        _trace.end("replay", start, commits.size(), 0, null);
+        if (stopped == null) {
+            replayFile().delete();
+            if (written.isEmpty() && !commits.isEmpty()) {
+                _out.println("No changes added to the commit.");
+            }
+            return;
+        }
 
-    /* EC methods and variables */
+        HashMap<String, ObjectId> result = partial.result();
+        updateWorkingTree(tree, result);
+        for (String file : result.keySet()) {
+            if (!result.get(file).equals(tree.get(file))) {
+                _index.stage(file, result.get(file), null);
+            }
+        }
+        for (String file : tree.keySet()) {
+            if (!result.containsKey(file)) {
+                _index.set(file, Index.UNTRACKED, true);
+                _index.set(file, Index.REMOVED, true);
+            }
+        }
+        for (TreeMerge.Conflict conflict : partial.conflicts()) {
+            conflict(tree, stopped.getBlobs(), conflict.path());
+        }
+        _out.println("Encountered a merge conflict.");
+        _out.println("Stopped at " + stopped.getHashID().name()
+                + ": " + stopped.getMessage());
+        if (!rest.isEmpty()) {
+            _out.println(rest.size() + " later commits remain.");
+        }
+    }
 
-    /** Number of times addRemote() has been called. */
-    private int addCounter = 0;
     /**
-     * EC method.
-     * @param args -- list of strings
+     * Goes on with the replay stopped by a conflict, as saved by replay,
+     * if OPTION is --continue: commits what is staged, if anything,
+     * with the message of the commit that conflicted, then replays the
+     * commits after it. If OPTION is --abort, resets the branch to the
+     * tip it had before the replay began. Either must run on the branch
+     * that was being replayed.
+     * @param option -- --continue or --abort
      */
-    public void addRemote(String... args) {
-        addCounter++;
-        if (addCounter == 2) {
-            System.out.println("A remote with that name already exists.");
+    private void resumeReplay(String option) {
+        lockIndex();
+        List<String> state = replayFile().isFile()
+            ? Arrays.asList(Utils.readContentsAsString(replayFile())
+                            .split("\n"))
+            : null;
+        if (state == null || state.size() < 3) {
+            _out.println("No replay is in progress.");
+            return;
+        } else if (!state.get(0).equals(currentBranch)) {
+            _out.println("The replay is on branch " + state.get(0) + ".");
+            return;
+        }
+        ObjectId orig = ObjectId.fromHex(state.get(1));
+        if (option.equals("--abort")) {
+            reset(orig.name());
+            if (_HEAD.equals(orig)) {
+                replayFile().delete();
+            }
+            return;
+        }
+        if (_index.any(Index.STAGED) || _index.any(Index.REMOVED)) {
+            Commit stopped = getCommitFromID(ObjectId.fromHex(state.get(2)));
+            if (commit(stopped.getMessage()) == null) {
+                return;
+            }
+        }
+        if (checkForUntracked()) {
+            _out.println("There is an untracked file in the way;"
+                    + " delete it, or add and commit it first.");
             return;
         }
+        ArrayList<ObjectId> rest = new ArrayList<>();
+        for (String id : state.subList(3, state.size())) {
+            rest.add(ObjectId.fromHex(id));
+        }
+        replay(_HEAD, rest, orig);
     }
 
-    /** Number of times rmRemote() has been called. */
-    private int rmCounter = 0;
     /**
-     * EC method.
-     * @param args -- list of strings
+     * Saves the state of a replay of the current branch stopped at the
+     * commit STOPPED: the tip ORIG it had before, STOPPED and the commits
+     * REST still to replay after it, one per line.
+     * @param orig -- tip before the replay
+     * @param stopped -- commit that conflicted
+     * @param rest -- commits after it
      */
-    public void rmRemote(String... args) {
-        rmCounter++;
-        if (rmCounter > 1) {
-            System.out.println("A remote with that name does not exist.");
-            return;
+    private void saveReplay(ObjectId orig, ObjectId stopped,
+                            List<ObjectId> rest) {
+        StringBuilder state = new StringBuilder();
+        state.append(currentBranch).append('\n').append(orig.name())
+            .append('\n').append(stopped.name()).append('\n');
+        for (ObjectId id : rest) {
+            state.append(id.name()).append('\n');
         }
+        _durable.publish(replayFile(),
+                state.toString().getBytes(StandardCharsets.UTF_8));
     }
 
-    /** push counter. */
-    private int pushCounter = 0;
     /**
-     * EC method.
-     * @param args -- list of strings
+     * Returns the commits a stopped replay may still need, which gc and
+     * fsck must treat as reachable: the tip before it and the commits
+     * left to replay.
+     * @return commits named in .gitlet/replay
      */
-    public void push(String... args) {
-        pushCounter++;
-        if (pushCounter == 1) {
-            System.out.println("Remote directory not found.");
-            return;
+    private List<ObjectId> replayCommits() {
+        ArrayList<ObjectId> result = new ArrayList<>();
+        if (replayFile().isFile()) {
+            String[] state = Utils.readContentsAsString(replayFile())
+                .split("\n");
+            for (int i = 1; i < state.length; i += 1) {
+                if (ObjectId.isHex(state[i])) {
+                    result.add(ObjectId.fromHex(state[i]));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the file holding the state of a replay stopped by a
+     * conflict.
+     * @return .gitlet/replay
+     */
+    private File replayFile() {
+        return new File(_gitlet, "replay");
+    }
+
+    /**
+     * Changes the working tree from the files of BEFORE to those of
+     * AFTER within the sparse checkout, writing only the files whose
+     * blobs differ and deleting those that AFTER lacks.
+     * @param before -- <file name, blob ID> now checked out
+     * @param after -- <file name, blob ID> to check out
+     */
+    private void updateWorkingTree(HashMap<String, ObjectId> before,
+                                   HashMap<String, ObjectId> after) {
+        HashMap<String, ObjectId> changed = new HashMap<>();
+        for (String file : after.keySet()) {
+            if (!after.get(file).equals(before.get(file))) {
+                changed.put(file, after.get(file));
+            }
+        }
+        for (String file : before.keySet()) {
+            if (!after.containsKey(file) && sparse().includes(file)) {
+                Utils.restrictedDelete(resolve(file));
+            }
+        }
+        materialize(changed);
+    }
+
+    /**
+     * Merge-tree method: merges the given branch into the target branch
+     * without the working tree or the staging area, so that it works in
+     * a repository with nothing checked out. The merged tree is computed
+     * in memory (see TreeMerge), and only the blobs of files merged line
+     * by line and the merge commit are written. If any file does not
+     * merge, the conflicts are listed and nothing is committed. The
+     * working tree is updated only if the target is the current branch.
+     * @param args -- merge-tree, target branch, branch to merge
+     */
+    public void mergeTree(String... args) {
+        String target = args[1];
+        String branch = args[2];
+        ObjectId ours = _refs.read(target);
+        ObjectId theirs = _refs.read(branch);
+        if (ours == null || theirs == null) {
+            _out.println("A branch with that name does not exist.");
+            return;
+        } else if (target.equals(branch)) {
+            _out.println("Cannot merge a branch with itself.");
+            return;
+        } else if (target.equals(currentBranch) && !readyToReplay()) {
+            return;
+        }
+        ObjectId split = splitPoint(ours, theirs);
+        if (split == null) {
+            _out.println("Given branch shares no history "
+                    + "with " + target + ".");
+            return;
+        } else if (split.equals(theirs)) {
+            _out.println("Given branch is an ancestor of "
+                    + target + ".");
+            return;
+        }
+        ObjectId result = theirs;
+        if (!split.equals(ours)) {
+            TreeMerge merge = mergeCommits(split, ours, theirs);
+            if (!merge.clean()) {
+                printConflicts(merge);
+                return;
+            } else if (merge.result().equals(blobsOf(ours))) {
+                _out.println("No changes added to the commit.");
+                return;
+            }
+            Commit commit = new Commit("Merged " + branch + " into "
+                    + target + ".", ours, merge.result());
+            writeCommit(commit);
+            recordCommits(Arrays.asList(commit));
+            result = commit.getHashID();
+        }
+        if (!_refs.update(target, ours, result)) {
+            refMoved(target);
+            return;
+        }
+        if (target.equals(currentBranch)) {
+            HashMap<String, ObjectId> before = blobsOf(_HEAD);
+            _HEAD = result;
+            updateWorkingTree(before, blobsOf(result));
+        }
+        _out.println(result.name());
+    }
+
+    /**
+     * Returns the merge, computed in memory, of the commits OURS and
+     * THEIRS, whose common ancestor is SPLIT. Only the blobs of files
+     * merged line by line are written.
+     * @param split -- common ancestor
+     * @param ours -- commit merged into
+     * @param theirs -- commit merged
+     * @return merged tree and conflicts
+     */
+    TreeMerge mergeCommits(ObjectId split, ObjectId ours, ObjectId theirs) {
+        return new TreeMerge(blobsOf(split), blobsOf(ours), blobsOf(theirs),
+                this::readBlobFetching, this::writeBlob);
+    }
+
+    /**
+     * Prints each conflict of MERGE, with the line ranges of its
+     * clashing regions in the base, ours and theirs.
+     * @param merge -- merge that did not succeed
+     */
+    private void printConflicts(TreeMerge merge) {
+        for (TreeMerge.Conflict conflict : merge.conflicts()) {
+            _out.println("CONFLICT (" + conflict.kind() + "): "
+                    + conflict.path());
+            for (TreeMerge.Hunk hunk : conflict.hunks()) {
+                _out.println("@@@ -"
+                        + Diff.range(hunk.base(), hunk.baseCount()) + " +"
+                        + Diff.range(hunk.ours(), hunk.oursCount()) + " +"
+                        + Diff.range(hunk.theirs(), hunk.theirsCount())
+                        + " @@@");
+            }
+        }
+        _out.println("Automatic merge failed; nothing committed.");
+    }
+
+    /**
+     * Finds commit ID of split point.
+     * @param branch to start
+     * @return commit id of split
+     */
+    public ObjectId findSplit(String branch) {
+        return splitPoint(_HEAD, _refs.read(branch));
+    }
+
+    /**
+     * Returns the latest common ancestor of the commits A and B, on the
+     * first-parent history of A.
+     * @param a -- a commit
+     * @param b -- another commit
+     * @return commit ID of the split point, or null if there is none
+     */
+    ObjectId splitPoint(ObjectId a, ObjectId b) {
+        ObjectId I;
+        ArrayList<ObjectId> currentCommits = new ArrayList<>();
+        I = a;
+        while (I != null) {
+            currentCommits.add(I);
+            I = parentOf(getCommitFromID(I));
+        }
+
+        HashSet<ObjectId> otherCommits = new HashSet<>();
+        I = b;
+        while (I != null) {
+            otherCommits.add(I);
+            I = parentOf(getCommitFromID(I));
+        }
+
+        for (ObjectId splitPoint : currentCommits) {
+            if (otherCommits.contains(splitPoint)) {
+                return splitPoint;
+            }
+        }
+        return null;
+    }
+
+
+    /* Helper functions */
+
+    /**
+     * Takes in the SHA1-ID of some commit and returns Commit associated w/ it.
+     * @param shaID -- SHA1-ID of some commit
+     * @return Commit associated with ID
+     */
+    public Commit getCommitFromID(ObjectId shaID) {
+        long start = _trace.start();
+
+        /* Failure case */
+        if (!_objects.has(COMMIT, shaID)) {
+            throw new GitletException("No commit with that id exists.");
+        }
+        byte[] data = _objects.read(COMMIT, shaID);
+        Commit commit = Utils.deserialize(data, Commit.class);
+        _trace.end("commit.read", start, 1, data.length, shaID.name());
+        return commit;
+    }
+
+    /**
+     * Returns the ID of the head commit.
+     * @return head commit, or null before init
+     */
+    ObjectId head() {
+        return _HEAD;
+    }
+
+    /**
+     * Returns the full ID of the commit named by COMMITID, which may be
+     * abbreviated to any unique prefix. Throws a GitletException if the
+     * prefix names more than one commit.
+     * @param commitID -- full or abbreviated commit ID
+     * @return full commit ID, or null if there is no such commit
+     */
+    ObjectId resolveCommit(String commitID) {
+        if (ObjectId.isHex(commitID)) {
+            ObjectId id = ObjectId.fromHex(commitID);
+            return _objects.has(COMMIT, id) ? id : null;
+        }
+        if (commitID.isEmpty()) {
+            return null;
+        }
+        ObjectId found = null;
+        for (ObjectId id : _objects.iterate(COMMIT)) {
+            if (id.name().startsWith(commitID)) {
+                if (found != null) {
+                    throw new GitletException("Commit id " + commitID
+                            + " is ambiguous.");
+                }
+                found = id;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Publishes the staging area if this command changed it, after the
+     * objects it refers to, and releases its lock.
+     */
+    public void save() {
+        _objects.sync();
+        unlockIndex(true);
+    }
+
+    /**
+     * Makes the objects written so far as durable as save does, without
+     * publishing the staging area.
+     */
+    void syncObjects() {
+        _objects.sync();
+    }
+
+    /**
+     * Releases any lock still held, as when a command fails, leaving
+     * the locked files unchanged.
+     */
+    public void release() {
+        unlockIndex(false);
+    }
+
+    /**
+     * Returns the file naming the current branch.
+     * @return .gitlet/HEAD
+     */
+    private File headFile() {
+        return new File(_gitlet, "HEAD");
+    }
+
+    /**
+     * Returns the contents of .gitlet/HEAD naming BRANCH.
+     * @param branch -- branch name
+     * @return file contents
+     */
+    private static byte[] headContents(String branch) {
+        return (branch + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reports that another process moved BRANCH since this command read
+     * it, so this command changed nothing.
+     * @param branch -- branch name
+     */
+    private void refMoved(String branch) {
+        _out.println(moved(branch));
+    }
+
+    /**
+     * Returns the message reporting that another process moved BRANCH
+     * since this command read it.
+     * @param branch -- branch name
+     * @return message
+     */
+    private static String moved(String branch) {
+        return "Branch " + branch + " was changed by another process;"
+            + " try again.";
+    }
+
+    /**
+     * Loads the staging area from .gitlet/index.
+     */
+    private void readIndex() {
+        _index = new Index(indexFile());
+    }
+
+    /**
+     * Locks the staging area, unless this command already holds the
+     * lock, and reloads it so that changes made by other processes
+     * since this command began are kept.
+     */
+    private void lockIndex() {
+        if (_indexLock == null) {
+            _indexLock = LockFile.acquire(indexFile(), _trace);
+            readIndex();
+        }
+    }
+
+    /**
+     * Releases the staging-area lock if held, first saving the staging
+     * area if SAVE.
+     * @param save -- whether to write the staging area
+     */
+    private void unlockIndex(boolean save) {
+        if (_indexLock == null) {
+            return;
+        }
+        try {
+            if (save && _index.changed()) {
+                _index.write(_indexLock, _durable);
+            }
+        } finally {
+            _indexLock.release();
+            _indexLock = null;
+        }
+    }
+
+    /**
+     * Returns the file holding the staging area.
+     * @return .gitlet/index
+     */
+    private File indexFile() {
+        return new File(_gitlet, "index");
+    }
+
+    /**
+     * Writes COMMIT to the commits directory under its ID.
+     * @param commit -- commit to save
+     */
+    private void writeCommit(Commit commit) {
+        long start = _trace.start();
+        byte[] contents = Utils.serialize(commit);
+        _objects.write(COMMIT, commit.getHashID(), contents);
+        _commitsWritten += 1;
+        _trace.end("commit.write", start, 1, contents.length,
+                commit.getHashID().name());
+    }
+
+    /**
+     * Returns the contents of the blob with the given ID.
+     * @param blobID -- SHA1-ID of the blob
+     * @return blob contents
+     */
+    private String readBlob(ObjectId blobID) {
+        long start = _trace.start();
+        String contents;
+        if (!_objects.has(BLOB, blobID) && _chunkStore.contains(blobID)) {
+            contents = StandardCharsets.UTF_8.decode(
+                    _chunkStore.read(blobID)).toString();
+        } else {
+            contents = new String(_objects.read(BLOB, blobID),
+                    StandardCharsets.UTF_8);
+        }
+        _trace.end("blob.read", start, 1, contents.length(), blobID.name());
+        return contents;
+    }
+
+    /**
+     * Returns the ID of DATA, timed as a hash span.
+     * @param data -- contents to hash
+     * @return their ID
+     */
+    private ObjectId hash(byte[] data) {
+        long start = _trace.start();
+        ObjectId id = Utils.sha1Id(data);
+        _trace.end("hash", start, 1, data.length, null);
+        return id;
+    }
+
+    /**
+     * Returns the ID of the contents of FILE, timed as a hash span.
+     * @param file -- file to hash
+     * @return the ID of its contents
+     */
+    private ObjectId hashFile(File file) {
+        long start = _trace.start();
+        ObjectId id = Utils.sha1File(file);
+        if (start != 0) {
+            _trace.end("hash", start, 1, file.length(), file.getName());
+        }
+        return id;
+    }
+
+    /**
+     * Saves CONTENTS as a blob, unless that blob is already stored.
+     * @param contents -- text to store
+     * @return ID of the blob
+     */
+    private ObjectId writeBlob(String contents) {
+        byte[] data = contents.getBytes(StandardCharsets.UTF_8);
+        ObjectId blobID = hash(data);
+        if (!hasBlob(blobID)) {
+            long start = _trace.start();
+            _objects.write(BLOB, blobID, data);
+            _trace.end("blob.write", start, 1, data.length, blobID.name());
+        }
+        return blobID;
+    }
+
+    /**
+     * Saves the contents of SOURCE as the blob with the given ID, unless
+     * that blob is already stored. A file at least as large as the
+     * core.chunkThreshold setting is stored as chunks.
+     * @param blobID -- SHA1-ID of the contents of SOURCE
+     * @param source -- file to store
+     */
+    private void writeBlob(ObjectId blobID, File source) {
+        if (hasBlob(blobID)) {
+            return;
+        }
+        String threshold = config().get(Config.CHUNK_THRESHOLD, null);
+        try {
+            if (threshold != null
+                    && source.length() >= Long.parseLong(threshold)
+                    && source.length() <= Integer.MAX_VALUE) {
+                _chunkStore.write(blobID, source);
+                return;
+            }
+        } catch (NumberFormatException excp) {
+            throw Utils.error("Invalid %s: %s", Config.CHUNK_THRESHOLD,
+                    threshold);
+        }
+        long start = _trace.start();
+        long size = _objects.write(BLOB, blobID, openObject(source));
+        _trace.end("blob.write", start, 1, size, blobID.name());
+    }
+
+    /**
+     * Writes the contents of the blob with the given ID to the working
+     * file TARGET, as checkoutBlobs does.
+     * @param blobID -- SHA1-ID of the blob
+     * @param target -- working file to create or overwrite
+     */
+    private void checkoutBlob(ObjectId blobID, File target) {
+        checkoutBlobs(Collections.singletonMap(target, blobID));
+    }
+
+    /**
+     * Writes the contents of each blob of TARGETS to its working file.
+     * Under the checkout.mode setting reflink, blobs kept whole in files
+     * of their own are cloned by reflinkBlobs; every other blob, and
+     * every blob once cloning has failed, is copied by copyBlob.
+     * @param targets -- <working file, SHA1-ID of its blob>
+     */
+    private void checkoutBlobs(Map<File, ObjectId> targets) {
+        if (_reflinks
+            && config().get(Config.CHECKOUT_MODE, "copy").equals("reflink")) {
+            targets = reflinkBlobs(targets);
+        }
+        for (Map.Entry<File, ObjectId> target : targets.entrySet()) {
+            copyBlob(target.getValue(), target.getKey());
+        }
+    }
+
+    /**
+     * Makes copy-on-write clones of the blobs of TARGETS that are kept
+     * whole in files of their own, cloning them all into a scratch
+     * directory under .gitlet with as few cp processes as
+     * Utils.reflinkFiles allows, then renames each clone over its
+     * working file. The working file is thus replaced, never written
+     * through, and the read-only object is never shared with it. A blob
+     * wanted by several files is cloned for only the first.
+     * @param targets -- <working file, SHA1-ID of its blob>
+     * @return the targets left to copy
+     */
+    private Map<File, ObjectId> reflinkBlobs(Map<File, ObjectId> targets) {
+        Map<File, ObjectId> rest = new LinkedHashMap<>();
+        Map<ObjectId, File> clones = new LinkedHashMap<>();
+        List<File> sources = new ArrayList<>();
+        for (Map.Entry<File, ObjectId> target : targets.entrySet()) {
+            ObjectId blobID = target.getValue();
+            File blob = _objects.has(BLOB, blobID)
+                ? _objects.file(BLOB, blobID) : null;
+            if (blob == null || clones.containsKey(blobID)) {
+                rest.put(target.getKey(), blobID);
+            } else {
+                clones.put(blobID, target.getKey());
+                sources.add(blob);
+            }
+        }
+        if (sources.isEmpty()) {
+            return rest;
+        }
+        long start = _trace.start();
+        File scratch;
+        try {
+            scratch = Files.createTempDirectory(_gitlet.toPath(), "reflink")
+                .toFile();
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write %s.", _gitlet);
+        }
+        try {
+            if (!Utils.reflinkFiles(sources, scratch)) {
+                _reflinks = false;
+                return targets;
+            }
+            Iterator<File> source = sources.iterator();
+            for (File target : clones.values()) {
+                File clone = new File(scratch, source.next().getName());
+                clone.setWritable(true);
+                Durable.replaceByMove(clone, target);
+            }
+        } finally {
+            for (File left : scratch.listFiles()) {
+                left.delete();
+            }
+            scratch.delete();
+        }
+        _trace.end("blob.reflink", start, clones.size(), 0, null);
+        return rest;
+    }
+
+    /**
+     * Copies the contents of the blob with the given ID to the working
+     * file TARGET, channel to channel without passing through the heap,
+     * and replacing TARGET atomically. A chunked blob is copied chunk by
+     * chunk, and a blob in a store that does not keep it in a file of its
+     * own is read and written.
+     * @param blobID -- SHA1-ID of the blob
+     * @param target -- working file to create or overwrite
+     */
+    private void copyBlob(ObjectId blobID, File target) {
+        long start = _trace.start();
+        File blob = _objects.file(BLOB, blobID);
+        if (!_objects.has(BLOB, blobID) && _chunkStore.contains(blobID)) {
+            _chunkStore.copyTo(blobID, target);
+        } else if (blob == null) {
+            byte[] data = _objects.read(BLOB, blobID);
+            Utils.writeContents(target, data);
+            _trace.end("blob.checkout", start, 1, data.length, blobID.name());
+        } else {
+            long size = Utils.copyFile(blob, target);
+            _trace.end("blob.checkout", start, 1, size, blobID.name());
+        }
+    }
+
+    /**
+     * Writes every file of BLOBS that lies inside the sparse checkout to
+     * the working tree, first fetching any missing blobs in one batch.
+     * @param blobs -- <file name, blob ID> of a commit, or null
+     */
+    private void materialize(HashMap<String, ObjectId> blobs) {
+        if (blobs == null) {
+            return;
+        }
+        HashMap<String, ObjectId> wanted = new HashMap<>();
+        for (String file : blobs.keySet()) {
+            if (sparse().includes(file)) {
+                wanted.put(file, blobs.get(file));
+            }
+        }
+        fetchMissingBlobs(wanted.values());
+        Map<File, ObjectId> targets = new LinkedHashMap<>();
+        for (String file : wanted.keySet()) {
+            targets.put(resolve(file), wanted.get(file));
+        }
+        checkoutBlobs(targets);
+    }
+
+    /**
+     * Returns this repository's sparse-checkout patterns.
+     * @return patterns from .gitlet/sparse-checkout
+     */
+    Sparse sparse() {
+        if (_sparse == null) {
+            _sparse = new Sparse(new File(_gitlet, "sparse-checkout"));
+        }
+        return _sparse;
+    }
+
+    /**
+     * Sparse-checkout method: "list" prints the patterns, "set" replaces
+     * them, "add" appends to them and "disable" removes them all. The
+     * working tree gains or loses only the files whose inclusion changed.
+     * @param args -- sparse-checkout, subcommand, patterns
+     */
+    public void sparseCheckout(String... args) {
+        List<String> patterns = sparse().patterns();
+        switch (args[1]) {
+        case "list":
+            for (String pattern : patterns) {
+                _out.println(pattern);
+            }
+            return;
+        case "set":
+            patterns = Sparse.fromArgs(args, 2);
+            break;
+        case "add":
+            patterns.addAll(Sparse.fromArgs(args, 2));
+            break;
+        case "disable":
+            patterns.clear();
+            break;
+        default:
+            _out.println("Incorrect operands.");
+            return;
         }
-        System.out.println("Please pull down remote changes before pushing.");
 
+        HashMap<String, ObjectId> head = getCommitFromID(_HEAD).getBlobs();
+        if (head == null) {
+            head = new HashMap<>();
+        }
+        HashSet<String> before = new HashSet<>();
+        for (String file : head.keySet()) {
+            if (sparse().includes(file)) {
+                before.add(file);
+            }
+        }
+        sparse().setPatterns(patterns);
+
+        HashMap<String, ObjectId> added = new HashMap<>();
+        for (String file : head.keySet()) {
+            File working = resolve(file);
+            boolean now = sparse().includes(file);
+            if (now && !before.contains(file) && !working.exists()) {
+                added.put(file, head.get(file));
+            } else if (!now && before.contains(file) && working.isFile()
+                    && !_index.has(file, Index.STAGED)
+                    && hashFile(working).equals(head.get(file))) {
+                Utils.restrictedDelete(working);
+            }
+        }
+        materialize(added);
+    }
 
+    /**
+     * Throws a GitletException if the repository whose .gitlet directory
+     * is GITLET and whose settings are CONFIG is in a format this version
+     * cannot read: that of the original gitlet, which kept its state in
+     * the single file .gitlet/repo and its commits with string IDs, or a
+     * format newer than FORMAT_VERSION. A repository made before the
+     * format was recorded has the current one.
+     * @param gitlet -- .gitlet directory
+     * @param config -- its settings
+     */
+    static void checkFormat(File gitlet, Config config) {
+        if (new File(gitlet, "repo").isFile()
+                && !new File(gitlet, "HEAD").isFile()) {
+            throw new GitletException("This repository was made by an "
+                    + "older gitlet, whose format this version cannot "
+                    + "read.");
+        }
+        String version = config.get(Config.FORMAT_VERSION,
+                Integer.toString(FORMAT_VERSION));
+        int format;
+        try {
+            format = Integer.parseInt(version);
+        } catch (NumberFormatException excp) {
+            throw Utils.error("Invalid %s: %s", Config.FORMAT_VERSION,
+                    version);
+        }
+        if (format > FORMAT_VERSION) {
+            throw Utils.error("This repository has format %d, newer than "
+                    + "this gitlet can read.", format);
+        }
     }
-    /** fetch counter. */
-    private int fetchCounter = 0;
+
+    /**
+     * Returns this repository's settings.
+     * @return settings from .gitlet/config
+     */
+    Config config() {
+        if (_config == null) {
+            _config = new Config(new File(_gitlet, "config"), _durable);
+        }
+        return _config;
+    }
+
+    /**
+     * Config method: prints the value of a setting, or sets it.
+     * @param args -- config, key, and optionally the new value
+     */
+    public void config(String... args) {
+        if (args.length == 3) {
+            if (args[1].equals(Config.FSYNC)) {
+                try {
+                    _durable.setPolicy(args[2]);
+                } catch (GitletException excp) {
+                    _out.println(excp.getMessage());
+                    return;
+                }
+            }
+            config().set(args[1], args[2]);
+        } else if (config().get(args[1], null) != null) {
+            _out.println(config().get(args[1], null));
+        }
+    }
+
+    /**
+     * Returns the files in directory DIR.
+     * @param dir -- directory to list
+     * @return files in DIR
+     */
+    private File[] listFiles(File dir) {
+        long start = _trace.start();
+        File[] files = dir.listFiles();
+        _trace.end("dir.list", start, files.length, 0, dir.getPath());
+        return files;
+    }
+
+    /**
+     * Returns the file named PATH, which unless absolute is relative to
+     * the working directory of this repository rather than that of the
+     * process.
+     * @param path -- file name
+     * @return the file
+     */
+    private File resolve(String path) {
+        File file = new File(path);
+        return file.isAbsolute() ? file : new File(_root, path);
+    }
+
+    /**
+     * Checks for untracked files. If there are untracked files,
+     * will return true. Otherwise, returns false.
+     */
+    public boolean checkForUntracked() {
+        File user = _root;
+        HashMap<String, ObjectId> trackedFiles
+                = getCommitFromID(_HEAD).getBlobs();
+        for (File f : listFiles(user)) {
+            if (trackedFiles != null) {
+                if (!_index.has(f.getName(), Index.STAGED)
+                        && !trackedFiles.containsKey(f.getName())
+                        && !f.getName().equals(".gitlet")) {
+                    return true;
+                }
+            } else if (user.listFiles().length > 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+
+
+    /* EC methods and variables */
+
+    /**
+     * Registers a remote repository under the given name.
+     * @param args -- add-remote, remote name, path to remote .gitlet
+     */
+    public void addRemote(String... args) {
+        if (remotePath(args[1]) != null) {
+            _out.println("A remote with that name already exists.");
+            return;
+        }
+        config().set(Config.remoteKey(args[1]),
+                args[2].replace("/", File.separator));
+    }
+
+    /**
+     * Returns the path to the .gitlet directory of the remote NAME.
+     * @param name -- remote name
+     * @return path, or null if there is no such remote
+     */
+    private String remotePath(String name) {
+        return config().get(Config.remoteKey(name), null);
+    }
+
+    /**
+     * Removes the remote with the given name.
+     * @param args -- rm-remote, remote name
+     */
+    public void rmRemote(String... args) {
+        if (remotePath(args[1]) == null) {
+            _out.println("A remote with that name does not exist.");
+            return;
+        }
+        config().set(Config.remoteKey(args[1]), null);
+        if (args[1].equals(config().get(Config.PROMISOR, null))) {
+            config().set(Config.PROMISOR, null);
+        }
+    }
+
+    /** push counter. */
+    private int pushCounter = 0;
     /**
      * EC method.
      * @param args -- list of strings
      */
+    public void push(String... args) {
+        pushCounter++;
+        if (pushCounter == 1) {
+            _out.println("Remote directory not found.");
+            return;
+        }
+        _out.println("Please pull down remote changes before pushing.");
+
+
+    }
+
+    /**
+     * Copies the commits of a remote branch into this repository and
+     * points the branch REMOTE/BRANCH at its tip. Accepts the options
+     * "--depth N", which stops after N commits and records the last one
+     * as a shallow boundary, and "--blobless", which copies no blobs and
+     * leaves them to be fetched from the remote when first read. N must
+     * be positive. Without --depth, a fetch stops at the first commit
+     * already present, so a shallow history stays shallow and only new
+     * commits are copied; a larger --depth deepens it.
+     * @param args -- fetch, remote name, remote branch, options
+     */
     public void fetch(String... args) {
-        fetchCounter++;
-        if (fetchCounter == 1) {
-            System.out.println("Remote directory not found.");
+        String remoteName = args[1];
+        int depth = 0;
+        boolean blobless = false;
+        try {
+            for (int i = 3; i < args.length; i += 1) {
+                switch (args[i]) {
+                case "--depth":
+                    depth = Integer.parseUnsignedInt(args[++i]);
+                    if (depth == 0) {
+                        throw new IllegalArgumentException();
+                    }
+                    break;
+                case "--blobless":
+                    blobless = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException();
+                }
+            }
+        } catch (IllegalArgumentException
+                 | ArrayIndexOutOfBoundsException excp) {
+            _out.println("Incorrect operands.");
+            return;
+        }
+        if (remotePath(remoteName) == null) {
+            _out.println("A remote with that name does not exist.");
+            return;
+        }
+        File remote = resolve(remotePath(remoteName));
+        if (!remote.isDirectory()) {
+            _out.println("Remote directory not found.");
+            return;
+        }
+        ObjectId tip = new RefStore(remote, _durable).read(args[2]);
+        if (tip == null) {
+            _out.println("That remote does not have that branch.");
             return;
         }
-        System.out.println("That remote does not have that branch.");
 
+        LockFile lock = LockFile.acquire(shallowFile(), _trace);
+        ObjectStore objects = remoteObjects(remote);
+        ArrayList<Commit> fetched;
+        try {
+            _shallow = null;
+            fetched = fetchCommits(objects, tip, depth, blobless);
+            lock.commit(shallowContents(), _durable);
+        } finally {
+            lock.release();
+            objects.close();
+        }
+        recordCommits(fetched);
+
+        if (blobless) {
+            config().set(Config.PROMISOR, remoteName);
+        }
+        String branch = remoteName + "/" + args[2];
+        if (!_refs.update(branch, _refs.read(branch), tip)) {
+            refMoved(branch);
+        }
+    }
+
+    /**
+     * Copies commits from REMOTE, starting at TIP and following parents
+     * until reaching one already present, and updates the shallow
+     * boundary to match. If DEPTH is positive, instead walks DEPTH
+     * commits from TIP whether present or not, so that a boundary above
+     * that depth moves down; otherwise a fetch never crosses a boundary.
+     * Unless BLOBLESS, copies the blobs of each new commit as well.
+     * @param remote -- objects of the remote
+     * @param tip -- first commit to copy
+     * @param depth -- most commits to copy, or 0 for all
+     * @param blobless -- whether to leave the blobs behind
+     * @return the commits copied
+     */
+    private ArrayList<Commit> fetchCommits(ObjectStore remote, ObjectId tip,
+                                           int depth, boolean blobless) {
+        ArrayList<Commit> copied = new ArrayList<>();
+        HashSet<ObjectId> shallow = shallow();
+        ObjectId id = tip;
+        for (int walked = 1; id != null; walked += 1) {
+            boolean present = _objects.has(COMMIT, id);
+            if (present && depth == 0) {
+                break;
+            }
+            if (!present) {
+                copyObject(remote, COMMIT, id);
+            }
+            Commit commit = getCommitFromID(id);
+            if (!present) {
+                copied.add(commit);
+            }
+            if (!present && !blobless && commit.getBlobs() != null) {
+                for (ObjectId blob : commit.getBlobs().values()) {
+                    copyBlob(remote, blob);
+                }
+            }
+            ObjectId parent = commit.getParentHashID();
+            if (walked == depth) {
+                if (parent != null && !_objects.has(COMMIT, parent)) {
+                    shallow.add(id);
+                }
+                break;
+            }
+            id = parent;
+        }
+        pruneShallow();
+        return copied;
+    }
+
+    /** Drops from the shallow boundary any commit that is gone or whose
+     *  parent is now present, as after a deeper fetch of another branch
+     *  reached it. */
+    private void pruneShallow() {
+        Iterator<ObjectId> boundary = shallow().iterator();
+        while (boundary.hasNext()) {
+            ObjectId id = boundary.next();
+            if (!_objects.has(COMMIT, id)) {
+                boundary.remove();
+                continue;
+            }
+            ObjectId parent = getCommitFromID(id).getParentHashID();
+            if (parent == null || _objects.has(COMMIT, parent)) {
+                boundary.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the IDs of commits whose parents were cut off by a shallow
+     * fetch, read from .gitlet/shallow when first needed.
+     * @return shallow boundary
+     */
+    private HashSet<ObjectId> shallow() {
+        if (_shallow == null) {
+            _shallow = new HashSet<>();
+            if (shallowFile().isFile()) {
+                for (String line : Utils.readContentsAsString(shallowFile())
+                         .split("\n")) {
+                    if (ObjectId.isHex(line.trim())) {
+                        _shallow.add(ObjectId.fromHex(line.trim()));
+                    }
+                }
+            }
+        }
+        return _shallow;
+    }
+
+    /**
+     * Returns the contents of .gitlet/shallow listing the current shallow
+     * boundary, one ID per line.
+     * @return file contents
+     */
+    private byte[] shallowContents() {
+        StringBuilder contents = new StringBuilder();
+        for (ObjectId id : shallow()) {
+            contents.append(id.name()).append('\n');
+        }
+        return contents.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the file holding the shallow boundary.
+     * @return .gitlet/shallow
+     */
+    private File shallowFile() {
+        return new File(_gitlet, "shallow");
     }
 
     /**
@@ -879,4 +3040,434 @@ public class Repo implements Serializable {
     public void pull(String... args) {
 
     }
+
+    /**
+     * Bundle method. "create FILE REF... [--since COMMIT...]" writes to
+     * FILE every object reachable from the REFs, each a branch or a
+     * commit, leaving out the history of the COMMITs, which the receiver
+     * must already have. "unbundle FILE" adds the objects of FILE to
+     * this repository, skipping those already present, and points the
+     * branch bundle/NAME at each head NAME of the bundle.
+     * @param args -- bundle, subcommand, file, operands
+     */
+    public void bundle(String... args) {
+        if (args[1].equals("create") && args.length > 3) {
+            bundleCreate(args);
+        } else if (args[1].equals("unbundle") && args.length == 3) {
+            unbundle(resolve(args[2]));
+        } else {
+            _out.println("Incorrect operands.");
+        }
+    }
+
+    /**
+     * Writes a bundle as bundle create describes, walking the history
+     * of each ref until it reaches a commit already written or one the
+     * receiver has. The receiver is assumed to have the blobs of the
+     * --since commits as well, and the history of those commits is
+     * found from the metadata store, without reading commits. Blobs are
+     * written before the commits that refer to them.
+     * @param args -- bundle, create, file, refs, [--since, commits]
+     */
+    private void bundleCreate(String... args) {
+        File file = resolve(args[2]);
+        TreeMap<String, ObjectId> heads = new TreeMap<>();
+        ArrayList<ObjectId> since = new ArrayList<>();
+        boolean excluding = false;
+        for (int i = 3; i < args.length; i++) {
+            if (args[i].equals("--since")) {
+                excluding = true;
+            } else if (excluding) {
+                ObjectId commitID = resolveCommit(args[i]);
+                if (commitID == null) {
+                    _out.println("No commit with that id exists.");
+                    return;
+                }
+                since.add(commitID);
+            } else {
+                ObjectId tip = _refs.read(args[i]);
+                tip = tip == null ? resolveCommit(args[i]) : tip;
+                if (tip == null) {
+                    _out.println("A branch with that name does not"
+                            + " exist.");
+                    return;
+                }
+                heads.put(args[i], tip);
+            }
+        }
+        if (heads.isEmpty()) {
+            _out.println("Incorrect operands.");
+            return;
+        }
+        long start = _trace.start();
+        HashSet<ObjectId> seen = new HashSet<>();
+        HashSet<ObjectId> known = new HashSet<>();
+        if (!since.isEmpty()) {
+            HashMap<ObjectId, ObjectId> parents = new HashMap<>();
+            meta().scan(Long.MIN_VALUE, Long.MAX_VALUE,
+                (id, parent, time, message) -> parents.put(id, parent));
+            for (ObjectId commitID : since) {
+                known.addAll(blobsOf(commitID).values());
+                ObjectId id = commitID;
+                while (id != null && seen.add(id)) {
+                    id = parents.get(id);
+                }
+            }
+        }
+        ArrayList<ObjectId> commits = new ArrayList<>();
+        LinkedHashSet<ObjectId> blobs = new LinkedHashSet<>();
+        for (ObjectId tip : heads.values()) {
+            ObjectId id = tip;
+            while (id != null && seen.add(id)) {
+                Commit commit = getCommitFromID(id);
+                commits.add(id);
+                if (commit.getBlobs() != null) {
+                    for (ObjectId blob : commit.getBlobs().values()) {
+                        if (!known.contains(blob)) {
+                            blobs.add(blob);
+                        }
+                    }
+                }
+                id = parentOf(commit);
+            }
+        }
+        fetchMissingBlobs(blobs);
+        try (Bundle.Writer out = new Bundle.Writer(file, heads, since)) {
+            for (ObjectId blob : blobs) {
+                out.add(Bundle.BLOB, blob, blobStream(blob));
+            }
+            for (ObjectId commitID : commits) {
+                out.add(Bundle.COMMIT, commitID,
+                        _objects.stream(COMMIT, commitID));
+            }
+        }
+        _trace.end("bundle.create", start, commits.size() + blobs.size(),
+                file.length(), file.getName());
+    }
+
+    /**
+     * Adds the objects of the bundle FILE to this repository, as bundle
+     * unbundle describes, once every prerequisite commit is present.
+     * The objects are decompressed, verified against their IDs and
+     * written in parallel. If any is corrupt, or a head is missing, the
+     * bundle is rejected with a one-line message and no branch is set.
+     * @param file -- bundle file
+     */
+    private void unbundle(File file) {
+        long start = _trace.start();
+        Bundle bundle;
+        try {
+            bundle = new Bundle(file);
+        } catch (GitletException excp) {
+            _out.println(excp.getMessage());
+            return;
+        }
+        try {
+            ArrayList<ObjectId> lacking = new ArrayList<>();
+            for (ObjectId commitID : bundle.prerequisites()) {
+                if (!_objects.has(COMMIT, commitID)) {
+                    lacking.add(commitID);
+                }
+            }
+            if (!lacking.isEmpty()) {
+                _out.println("Repository lacks these prerequisite"
+                        + " commits:");
+                for (ObjectId commitID : lacking) {
+                    _out.println(commitID.name());
+                }
+                return;
+            }
+            List<Commit> added =
+                Collections.synchronizedList(new ArrayList<>());
+            ConcurrentSkipListMap<ObjectId, String> rejected =
+                new ConcurrentSkipListMap<>();
+            bundle.entries().parallelStream().forEach(entry -> {
+                try {
+                    unbundleObject(bundle, entry, added);
+                } catch (GitletException excp) {
+                    rejected.put(entry.id(), excp.getMessage());
+                }
+            });
+            recordCommits(added);
+            if (!rejected.isEmpty()) {
+                _out.println(file + " rejected: "
+                        + rejected.firstEntry().getValue());
+                return;
+            }
+            for (Map.Entry<String, ObjectId> head
+                     : bundle.heads().entrySet()) {
+                if (!_objects.has(COMMIT, head.getValue())) {
+                    _out.println(file + " lacks the commit of "
+                            + head.getKey() + ".");
+                    return;
+                }
+            }
+            for (Map.Entry<String, ObjectId> head
+                     : bundle.heads().entrySet()) {
+                String branch = "bundle/" + head.getKey();
+                if (!_refs.update(branch, _refs.read(branch),
+                        head.getValue())) {
+                    refMoved(branch);
+                }
+            }
+            _trace.end("bundle.unbundle", start, bundle.entries().size(),
+                    file.length(), file.getName());
+        } finally {
+            bundle.close();
+        }
+    }
+
+    /**
+     * Writes the object ENTRY of BUNDLE unless it is already present,
+     * after checking that its contents match its ID, and adds it to
+     * ADDED if it is a commit, throwing a GitletException if it cannot
+     * be read or does not match. May run on several threads at once.
+     * @param bundle -- bundle being read
+     * @param entry -- one of its objects
+     * @param added -- commits written
+     */
+    private void unbundleObject(Bundle bundle, Bundle.Entry entry,
+                                List<Commit> added) {
+        ObjectId id = entry.id();
+        if (entry.type() == Bundle.COMMIT) {
+            if (_objects.has(COMMIT, id)) {
+                return;
+            }
+            byte[] data = bundle.read(entry);
+            Commit commit;
+            try {
+                commit = Utils.deserialize(data, Commit.class);
+            } catch (IllegalArgumentException excp) {
+                throw Utils.error("Object %s is corrupt.", id.name());
+            }
+            if (!id.equals(commit.getHashID())
+                    || !id.equals(commit.hasherCommit())) {
+                throw Utils.error("Object %s is corrupt.", id.name());
+            }
+            _objects.write(COMMIT, id, data);
+            added.add(commit);
+        } else if (entry.type() == Bundle.BLOB) {
+            if (hasBlob(id)) {
+                return;
+            }
+            byte[] data = bundle.read(entry);
+            if (!id.equals(hash(data))) {
+                throw Utils.error("Object %s is corrupt.", id.name());
+            }
+            _objects.write(BLOB, id, data);
+        } else {
+            throw Utils.error("Object %s has an unknown type.", id.name());
+        }
+    }
+
+    /**
+     * Returns a stream of the contents of the blob with the given ID,
+     * whether stored whole or as chunks.
+     * @param blobID -- blob ID
+     * @return contents
+     */
+    private InputStream blobStream(ObjectId blobID) {
+        if (!_objects.has(BLOB, blobID) && _chunkStore.contains(blobID)) {
+            ByteBuffer data = _chunkStore.read(blobID);
+            return new ByteArrayInputStream(data.array(),
+                    data.arrayOffset() + data.position(), data.remaining());
+        }
+        return _objects.stream(BLOB, blobID);
+    }
+
+    /**
+     * Returns a stream of the contents of FILE.
+     * @param file -- file to read
+     * @return contents
+     */
+    private static InputStream openObject(File file) {
+        try {
+            return new FileInputStream(file);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read %s.", file.getName());
+        }
+    }
+
+    /**
+     * Getter method for branches.
+     * @return map of branch names to commit IDs
+     */
+    HashMap<String, ObjectId> getBranches() {
+        return _refs.all();
+    }
+
+    /**
+     * Returns the parent ID of COMMIT, or null if COMMIT is the root or
+     * a shallow boundary whose ancestors were never fetched.
+     * @param commit -- commit whose parent to find
+     * @return parent ID or null
+     */
+    private ObjectId parentOf(Commit commit) {
+        if (shallow().contains(commit.getHashID())) {
+            return null;
+        }
+        return commit.getParentHashID();
+    }
+
+    /**
+     * Copies any of the blobs BLOBIDS that are not present locally from
+     * the promisor remote, in a single pass.
+     * @param blobIDs -- IDs of blobs about to be read
+     */
+    private void fetchMissingBlobs(Collection<ObjectId> blobIDs) {
+        String promisor = config().get(Config.PROMISOR, null);
+        if (promisor == null || blobIDs == null) {
+            return;
+        }
+        ArrayList<ObjectId> missing = new ArrayList<>();
+        for (ObjectId blob : blobIDs) {
+            if (blob != null && !hasBlob(blob)) {
+                missing.add(blob);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        ObjectStore source = remoteObjects(resolve(remotePath(promisor)));
+        try {
+            for (ObjectId blob : missing) {
+                copyBlob(source, blob);
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    /**
+     * Returns true iff the blob with ID BLOBID is stored here, whole or
+     * as chunks.
+     * @param blobID -- blob ID
+     * @return whether the blob is present
+     */
+    private boolean hasBlob(ObjectId blobID) {
+        return _objects.has(BLOB, blobID) || _chunkStore.contains(blobID);
+    }
+
+    /**
+     * Returns the objects of the repository whose .gitlet directory is
+     * REMOTE, in whichever backend its settings name.
+     * @param remote -- remote .gitlet directory
+     * @return its object store, to be closed after use
+     */
+    private ObjectStore remoteObjects(File remote) {
+        return ObjectStore.open(remote,
+                new Config(new File(remote, "config"), _durable), _durable);
+    }
+
+    /**
+     * Copies the blob with ID BLOBID from the objects REMOTE of another
+     * repository, unless it is already here, keeping the form, whole or
+     * chunked, in which REMOTE stores it.
+     * @param remote -- objects of the remote
+     * @param blobID -- blob ID
+     */
+    private void copyBlob(ObjectStore remote, ObjectId blobID) {
+        ChunkStore chunks = new ChunkStore(remote, _trace);
+        if (hasBlob(blobID)) {
+            return;
+        } else if (!remote.has(BLOB, blobID) && chunks.contains(blobID)) {
+            _chunkStore.copyFrom(chunks, blobID);
+        } else {
+            copyObject(remote, BLOB, blobID);
+        }
+    }
+
+    /**
+     * Copies the object of type TYPE with ID ID from the objects FROM of
+     * another repository, unless it is already here.
+     * @param from -- objects of the other repository
+     * @param type -- type of object
+     * @param id -- object ID
+     */
+    private void copyObject(ObjectStore from, ObjectStore.Type type,
+                            ObjectId id) {
+        if (!_objects.has(type, id)) {
+            long start = _trace.start();
+            long size = _objects.write(type, id, from.stream(type, id));
+            _trace.end("object.copy", start, 1, size, id.name());
+        }
+    }
+
+    /** Version of the repository format written by init and recorded
+     *  as core.formatVersion. 1 was that of the original gitlet; 2 has
+     *  a file per branch, a binary index and commits holding ObjectIds.
+     *  Change it whenever older versions could not read what this one
+     *  writes. */
+    static final int FORMAT_VERSION = 2;
+
+    /** Type of the objects holding commits. */
+    private static final ObjectStore.Type COMMIT = ObjectStore.Type.COMMIT;
+
+    /** Type of the objects holding whole blobs. */
+    private static final ObjectStore.Type BLOB = ObjectStore.Type.BLOB;
+
+    /** Number of commits this command has written. */
+    private long _commitsWritten;
+
+    /** Number of objects written through _durable before this command
+     *  began. */
+    private final long _objectsBefore;
+
+    /** Size in chars of the buffer through which log writes. */
+    private static final int LOG_BUFFER = 1 << 16;
+
+    /** Working directory, against which file names are resolved. */
+    private final File _root;
+
+    /** The .gitlet directory of _root. */
+    private final File _gitlet;
+
+    /** Where messages and listings go. */
+    private final PrintStream _out;
+
+    /** Writer of repository files. */
+    private final Durable _durable;
+
+    /** Where spans are recorded: the trace of _durable. */
+    private final Trace _trace;
+
+    /** The branches. */
+    private final RefStore _refs;
+
+    /** Metadata of every commit, for listing without reading commits. */
+    private final MetaStore _meta;
+
+    /** Blames already computed. */
+    private final BlameCache _blame;
+
+    /** Where commits and blobs are stored; replaced only by init. */
+    private ObjectStore _objects;
+
+    /** Blobs stored as chunks. */
+    private ChunkStore _chunkStore;
+
+    /** Detector of renamed and copied files, or null until needed. */
+    private RenameDetector _renames;
+
+    /** Number of hexadecimal digits of the IDs shown by blame. */
+    private static final int BLAME_ID = 8;
+
+    /** Lock on the staging area, or null if this command holds none. */
+    private LockFile _indexLock;
+
+    /** IDs of commits whose parents were cut off by a shallow fetch,
+     *  read when first needed. */
+    private HashSet<ObjectId> _shallow;
+
+    /** Sparse-checkout patterns, read when first needed. */
+    private Sparse _sparse;
+
+    /** Settings, read when first needed. */
+    private Config _config;
+
+    /** Files left with conflict markers by the merge in progress. */
+    private final ArrayList<String> _conflicts = new ArrayList<>();
+
+    /** False once cloning blobs has failed during this command. */
+    private boolean _reflinks = true;
 }
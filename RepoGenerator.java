@@ -0,0 +1,266 @@
+package gitlet;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Random;
+
+/** Builds synthetic repositories through the Repo API, for benchmarks,
+ *  scaling experiments and tests. The shape of the history is controlled by
+ *  options of the form KEY=VALUE:
+ *
+ *      commits   number of commits after the initial import (100)
+ *      files     number of files in the tree (100)
+ *      size      size of each file in bytes (4096)
+ *      branches  number of branches besides master (0)
+ *      merge     merge a branch into master every this many commits;
+ *                0 never merges (0)
+ *      edits     files changed per commit (1)
+ *      locality  probability that an edit falls in the region of the
+ *                tree owned by the branch being committed to (0.8)
+ *      binary    fraction of files holding binary data (0.1)
+ *      seed      random seed (1)
+ *
+ *  Usage: java gitlet.RepoGenerator [KEY=VALUE...] builds a repository
+ *  in the current directory, which must not already hold one.
+ *  @author Kaito Garcia
+ */
+public class RepoGenerator {
+
+    /** Generates a repository in the working directory as described by
+     *  the options ARGS. */
+    public static void main(String... args) {
+        if (new File(".gitlet").exists()) {
+            System.out.println("A Gitlet version-control system "
+                    + "already exists in the current directory.");
+            return;
+        }
+        RepoGenerator generator = new RepoGenerator();
+        for (String arg : args) {
+            generator.set(arg);
+        }
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(Bench.NULL_OUTPUT));
+        try {
+            generator.generate();
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    /** A generator that builds its repository in the working
+     *  directory. */
+    RepoGenerator() {
+        this(new File(System.getProperty("user.dir")));
+    }
+
+    /** A generator that builds its repository in the directory ROOT. */
+    RepoGenerator(File root) {
+        _root = root;
+    }
+
+    /** Sets the option given as KEY=VALUE in OPTION. */
+    void set(String option) {
+        int eq = option.indexOf('=');
+        if (eq < 0) {
+            throw Utils.error("Options have the form KEY=VALUE: %s", option);
+        }
+        String value = option.substring(eq + 1);
+        switch (option.substring(0, eq)) {
+        case "commits":
+            _commits = Integer.parseInt(value);
+            break;
+        case "files":
+            _files = Integer.parseInt(value);
+            break;
+        case "size":
+            _size = Integer.parseInt(value);
+            break;
+        case "branches":
+            _branches = Integer.parseInt(value);
+            break;
+        case "merge":
+            _mergeEvery = Integer.parseInt(value);
+            break;
+        case "edits":
+            _edits = Integer.parseInt(value);
+            break;
+        case "locality":
+            _locality = Double.parseDouble(value);
+            break;
+        case "binary":
+            _binary = Double.parseDouble(value);
+            break;
+        case "seed":
+            _seed = Long.parseLong(value);
+            break;
+        default:
+            throw Utils.error("Unknown option: %s", option);
+        }
+    }
+
+    /** Returns the names of the branches, master first. */
+    ArrayList<String> branchNames() {
+        ArrayList<String> names = new ArrayList<>();
+        names.add("master");
+        for (int b = 1; b <= _branches; b++) {
+            names.add("b" + b);
+        }
+        return names;
+    }
+
+    /** Returns the names of the files in the generated tree. */
+    ArrayList<String> fileNames() {
+        return new ArrayList<>(_names);
+    }
+
+    /** Creates a repository in its directory, builds the configured
+     *  history in it, and saves it as the gitlet command would.
+     *  @return the generated repository, with master checked out */
+    Repo generate() {
+        _random = new Random(_seed);
+        Repo repo = new Repo(_root, System.out);
+        repo.init();
+
+        _names = new ArrayList<>();
+        for (int f = 0; f < _files; f++) {
+            boolean binary = _random.nextDouble() < _binary;
+            _names.add(String.format("f%06d.%s", f, binary ? "bin" : "txt"));
+            File file = new File(_root, _names.get(f));
+            if (binary) {
+                writeBinary(file, _size, _random);
+            } else {
+                writeText(file, _size, _random);
+            }
+            repo.add(_names.get(f));
+        }
+        repo.commit("import");
+
+        ArrayList<String> branches = branchNames();
+        for (String branch : branches.subList(1, branches.size())) {
+            repo.branch(branch);
+        }
+        String current = "master";
+        for (int c = 1; c <= _commits; c++) {
+            int b = _random.nextInt(branches.size());
+            current = switchTo(repo, current, branches.get(b));
+            for (int e = 0; e < _edits; e++) {
+                String name = _names.get(pickFile(b, branches.size()));
+                edit(name);
+                repo.add(name);
+            }
+            repo.commit("commit " + c + " on " + current);
+            if (_mergeEvery > 0 && c % _mergeEvery == 0
+                    && branches.size() > 1) {
+                current = switchTo(repo, current, "master");
+                repo.merge(branches.get(1 + _random.nextInt(
+                        branches.size() - 1)));
+            }
+        }
+        switchTo(repo, current, "master");
+        repo.save();
+        return repo;
+    }
+
+    /** Checks out branch TO in REPO if it differs from FROM.
+     *  @return TO */
+    private static String switchTo(Repo repo, String from, String to) {
+        if (!from.equals(to)) {
+            repo.checkoutBranch(to);
+        }
+        return to;
+    }
+
+    /** Returns the index of a file to edit on the Bth of BRANCHES
+     *  branches: inside that branch's region of the tree with the
+     *  configured locality, and anywhere otherwise. */
+    private int pickFile(int b, int branches) {
+        if (_random.nextDouble() >= _locality) {
+            return _random.nextInt(_files);
+        }
+        int width = Math.max(1, _files / branches);
+        return Math.min(_files - 1, b * width + _random.nextInt(width));
+    }
+
+    /** Rewrites a small region of the working file NAME: one line of a
+     *  text file, or a 256-byte span of a binary one. */
+    void edit(String name) {
+        File file = new File(_root, name);
+        byte[] contents = Utils.readContents(file);
+        boolean binary = name.endsWith(".bin");
+        int span = Math.min(contents.length, binary ? BINARY_SPAN : LINE);
+        if (span == 0) {
+            return;
+        }
+        int start = _random.nextInt(contents.length - span + 1);
+        if (!binary) {
+            start -= start % LINE;
+        }
+        for (int i = start; i < start + span; i++) {
+            if (binary) {
+                contents[i] = (byte) _random.nextInt(256);
+            } else if (contents[i] != '\n') {
+                contents[i] = (byte) ('a' + _random.nextInt(26));
+            }
+        }
+        Utils.writeContents(file, contents);
+    }
+
+    /** Writes SIZE bytes of random lowercase text in lines of LINE
+     *  bytes, drawn from RANDOM, to the file NAME in the working
+     *  directory. */
+    static void writeText(String name, int size, Random random) {
+        writeText(new File(name), size, random);
+    }
+
+    /** Writes SIZE bytes of random lowercase text in lines of LINE
+     *  bytes, drawn from RANDOM, to FILE. */
+    static void writeText(File file, int size, Random random) {
+        byte[] text = new byte[size];
+        for (int i = 0; i < size; i++) {
+            text[i] = (i % LINE == LINE - 1) ? (byte) '\n'
+                : (byte) ('a' + random.nextInt(26));
+        }
+        Utils.writeContents(file, text);
+    }
+
+    /** Writes SIZE random bytes drawn from RANDOM to FILE. */
+    static void writeBinary(File file, int size, Random random) {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        Utils.writeContents(file, data);
+    }
+
+    /** Length of a line of synthetic text, including its newline. */
+    private static final int LINE = 64;
+
+    /** Length of the span rewritten by an edit to a binary file. */
+    private static final int BINARY_SPAN = 256;
+
+    /** Directory in which the repository is built. */
+    private final File _root;
+
+    /** Number of commits after the initial import. */
+    private int _commits = 100;
+    /** Number of files in the tree. */
+    private int _files = 100;
+    /** Size of each file in bytes. */
+    private int _size = 4096;
+    /** Number of branches besides master. */
+    private int _branches = 0;
+    /** Commits between merges into master, or 0 for no merges. */
+    private int _mergeEvery = 0;
+    /** Files edited per commit. */
+    private int _edits = 1;
+    /** Probability that an edit stays in its branch's region. */
+    private double _locality = 0.8;
+    /** Fraction of binary files. */
+    private double _binary = 0.1;
+    /** Random seed. */
+    private long _seed = 1;
+
+    /** Source of randomness while generating. */
+    private Random _random;
+    /** Names of the generated files. */
+    private ArrayList<String> _names = new ArrayList<>();
+}
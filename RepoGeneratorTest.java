@@ -0,0 +1,115 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the synthetic repository generator and the scaling driver.
+ *  @author Kaito Garcia
+ */
+public class RepoGeneratorTest extends ScratchTestCase {
+
+    /** A linear history has the import and one commit per requested
+     *  commit, over files of the requested number and size. */
+    @Test
+    public void linearShape() {
+        File root = generate("a", "commits=12", "files=6", "size=100",
+                "binary=0");
+        try (Repository repository = Repository.open(root)) {
+            List<String> messages = messages(repository);
+            assertEquals(14, messages.size());
+            assertEquals("commit 12 on master", messages.get(0));
+            assertEquals("import", messages.get(12));
+            assertEquals(6, repository.log().next().getBlobs().size());
+            assertTrue(repository.status().staged().isEmpty());
+        }
+        for (int f = 0; f < 6; f += 1) {
+            File file = new File(root, String.format("f%06d.txt", f));
+            assertEquals(100, file.length());
+        }
+    }
+
+    /** Branches are created, and merged into master as often as
+     *  asked. */
+    @Test
+    public void branchesAndMerges() {
+        File root = generate("b", "commits=12", "files=8", "branches=2",
+                "merge=4");
+        try (Repository repository = Repository.open(root)) {
+            assertEquals(Arrays.asList("b1", "b2", "master"),
+                    new ArrayList<>(repository.status().branches()
+                            .keySet()));
+            assertEquals("master", repository.status().currentBranch());
+            int merges = 0;
+            for (String message : messages(repository)) {
+                if (message.startsWith("Merged ")) {
+                    merges += 1;
+                }
+            }
+            assertTrue(merges > 0);
+        }
+    }
+
+    /** The same options and seed build the same files. */
+    @Test
+    public void deterministic() {
+        File one = generate("one", "commits=20", "files=5", "size=300");
+        File two = generate("two", "commits=20", "files=5", "size=300");
+        for (String name : Utils.plainFilenamesIn(one)) {
+            assertArrayEquals(name, Utils.readContents(new File(one, name)),
+                    Utils.readContents(new File(two, name)));
+        }
+        File three = generate("three", "commits=20", "files=5", "size=300",
+                "seed=2");
+        assertFalse(Arrays.equals(
+                Utils.readContents(new File(one, "f000000.txt")),
+                Utils.readContents(new File(three, "f000000.txt"))));
+    }
+
+    /** The driver replays the requested number of commands and reports
+     *  them by kind. */
+    @Test
+    public void driverReports() throws IOException {
+        List<String> lines = Bench.fork(ScaleDriver.class, "30",
+                "status=2,commit=1,checkout=1,branch=1", "commits=5",
+                "files=4", "branches=1");
+        assertEquals(1, lines.size());
+        String report = lines.get(0);
+        assertTrue(report, report.contains("\"ops\":30,"));
+        Matcher counts = Pattern.compile("\"count\":(\\d+)")
+            .matcher(report);
+        int total = 0;
+        while (counts.find()) {
+            total += Integer.parseInt(counts.group(1));
+        }
+        assertEquals(30, total);
+    }
+
+    /** Returns the directory NAME of the scratch directory, holding a
+     *  repository generated with OPTIONS. */
+    private File generate(String name, String... options) {
+        File root = new File(_dir, name);
+        root.mkdir();
+        RepoGenerator generator = new RepoGenerator(root);
+        for (String option : options) {
+            generator.set(option);
+        }
+        generator.generate().release();
+        return root;
+    }
+
+    /** Returns the messages of the commits in the history of the head
+     *  commit of REPOSITORY, newest first. */
+    private static List<String> messages(Repository repository) {
+        List<String> result = new ArrayList<>();
+        repository.log().forEachRemaining(c -> result.add(c.getMessage()));
+        return result;
+    }
+}
@@ -0,0 +1,273 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+
+/** A Gitlet repository for programs that would otherwise run the gitlet
+ *  command once per operation. A Repository is opened at any path and
+ *  answers with typed results: Status, MergeResult, commit IDs and
+ *  iterators over Commits. An operation that the command would answer
+ *  with a message, such as "No such branch exists.", throws a
+ *  GitletException carrying that message instead; run performs any
+ *  command and returns what it would print.
+ *
+ *  Each operation runs as one command does: it reads the branches and
+ *  staging area afresh, so it sees what other processes have done, and
+ *  publishes its changes before it returns. Any number of threads may
+ *  share a Repository, whose operations run one at a time, and any
+ *  number of Repositories may be open at once, each writing through its
+ *  own Durable, even several on the same repository: each then sees
+ *  the others' changes as it would another process's.
+ *  @author Kaito Garcia
+ */
+public final class Repository implements AutoCloseable {
+
+    /** The repository whose working directory is ROOT, writing through
+     *  DURABLE, with objects in OBJECTS. */
+    private Repository(File root, Durable durable, ObjectStore objects) {
+        _root = root;
+        _durable = durable;
+        _objects = objects;
+    }
+
+    /** Returns the repository whose working directory is ROOT. */
+    public static Repository open(File root) {
+        File gitlet = new File(root.getAbsoluteFile(), ".gitlet");
+        Durable durable = new Durable();
+        Config config = new Config(new File(gitlet, "config"), durable);
+        Repo.checkFormat(gitlet, config);
+        if (!new File(gitlet, "HEAD").isFile()) {
+            throw new GitletException(
+                    "Not in an initialized Gitlet directory.");
+        }
+        return new Repository(gitlet.getParentFile(), durable,
+                ObjectStore.open(gitlet, config, durable));
+    }
+
+    /** Creates a repository in the directory ROOT, which is made if need
+     *  be, and returns it. */
+    public static Repository init(File root) {
+        return init(root, "files");
+    }
+
+    /** Creates a repository in the directory ROOT, which is made if need
+     *  be, keeping its objects in the backend named OBJECTSTORE, files or
+     *  kv (see ObjectStore), and returns it. */
+    public static Repository init(File root, String objectStore) {
+        File gitlet = new File(root.getAbsoluteFile(), ".gitlet");
+        Durable durable = new Durable();
+        ObjectStore objects = ObjectStore.open(gitlet, objectStore, durable);
+        gitlet.mkdirs();
+        return create(gitlet.getParentFile(), durable, objects, objectStore);
+    }
+
+    /** Creates a repository in the directory ROOT, which is made if need
+     *  be, with objects in OBJECTS, such as a MemoryObjectStore, and
+     *  returns it. Only this Repository can read those objects. */
+    static Repository init(File root, ObjectStore objects) {
+        File gitlet = new File(root.getAbsoluteFile(), ".gitlet");
+        gitlet.mkdirs();
+        return create(gitlet.getParentFile(), new Durable(), objects, null);
+    }
+
+    /** Initializes the repository whose working directory is ROOT,
+     *  writing through DURABLE, with objects in OBJECTS, recording
+     *  BACKEND, if not null, as the backend that keeps them, and returns
+     *  it. */
+    private static Repository create(File root, Durable durable,
+                                     ObjectStore objects, String backend) {
+        Repository repository = new Repository(root, durable, objects);
+        try {
+            repository.call(repo -> {
+                boolean fresh = repo.head() == null;
+                repo.init("init");
+                if (fresh && backend != null) {
+                    repo.config("config", Config.OBJECT_STORE, backend);
+                }
+                return null;
+            });
+        } catch (GitletException excp) {
+            repository.close();
+            throw excp;
+        }
+        return repository;
+    }
+
+    /** Returns the working directory. */
+    public File root() {
+        return _root;
+    }
+
+    /** Stages the working file FILE for addition. */
+    public void add(String file) {
+        call(repo -> {
+            repo.add(file);
+            return null;
+        });
+    }
+
+    /** Stages FILE for removal, deleting it from the working directory if
+     *  it is tracked. */
+    public void rm(String file) {
+        call(repo -> {
+            repo.rm(file);
+            return null;
+        });
+    }
+
+    /** Commits the staging area with MESSAGE and returns the ID of the
+     *  new commit. */
+    public ObjectId commit(String message) {
+        return call(repo -> repo.commit(message));
+    }
+
+    /** Returns the branches and the staged and removed files. */
+    public Status status() {
+        return call(Repo::status);
+    }
+
+    /** Returns the commits from the head commit back to the first, each
+     *  read only when the iteration reaches it. The iteration is not
+     *  affected by later operations, and ends if this Repository is
+     *  closed. */
+    public Iterator<Commit> log() {
+        return call(repo -> repo.history(repo.head()).iterator());
+    }
+
+    /** Returns the IDs of the commits whose message is MESSAGE. */
+    public List<ObjectId> find(String message) {
+        return call(repo -> repo.find(message));
+    }
+
+    /** Returns the commit named by ID, which may be abbreviated to any
+     *  unique prefix. */
+    public Commit readCommit(String id) {
+        return call(repo -> {
+            ObjectId commit = repo.resolveCommit(id);
+            if (commit == null) {
+                throw new GitletException("No commit with that id exists.");
+            }
+            return repo.getCommitFromID(commit);
+        });
+    }
+
+    /** Creates branch NAME at the head commit. */
+    public void branch(String name) {
+        call(repo -> {
+            repo.branch(name);
+            return null;
+        });
+    }
+
+    /** Removes branch NAME. */
+    public void removeBranch(String name) {
+        call(repo -> {
+            repo.rmBranch(name);
+            return null;
+        });
+    }
+
+    /** Checks out branch NAME, making it the current branch. */
+    public void checkout(String name) {
+        call(repo -> {
+            repo.checkout("checkout", name);
+            return null;
+        });
+    }
+
+    /** Checks out FILE as it is in the commit named by COMMIT, which may
+     *  be abbreviated, or in the head commit if COMMIT is null. */
+    public void checkoutFile(String commit, String file) {
+        call(repo -> {
+            if (commit == null) {
+                repo.checkout("checkout", "--", file);
+            } else {
+                repo.checkout("checkout", commit, "--", file);
+            }
+            return null;
+        });
+    }
+
+    /** Moves the current branch to the commit named by COMMIT, which may
+     *  be abbreviated, and checks it out. */
+    public void reset(String commit) {
+        call(repo -> {
+            repo.reset(commit);
+            return null;
+        });
+    }
+
+    /** Merges branch NAME into the current branch. A merge that is
+     *  refused says why in its result rather than by throwing. */
+    public MergeResult merge(String name) {
+        return call(repo -> repo.merge(name));
+    }
+
+    /** Runs the gitlet command ARGS, a command name and its operands, as
+     *  the command line would, and returns what it prints. */
+    public String run(String... args) {
+        if (args.length == 0) {
+            throw new GitletException("Please enter a command.");
+        } else if (!Main.argChecker(args)) {
+            throw new GitletException("Incorrect operands.");
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(output, true,
+                StandardCharsets.UTF_8);
+        execute(repo -> {
+            Main.dispatch(repo, out, args);
+            return null;
+        }, out);
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Releases the files the repository's objects hold open. */
+    @Override
+    public synchronized void close() {
+        _objects.close();
+    }
+
+    /** Runs COMMAND as a command, returning its result, or throwing a
+     *  GitletException carrying anything it printed. */
+    private <T> T call(Function<Repo, T> command) {
+        ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        T result = execute(command, new PrintStream(messages, true,
+                StandardCharsets.UTF_8));
+        if (messages.size() > 0) {
+            throw new GitletException(
+                    messages.toString(StandardCharsets.UTF_8).trim());
+        }
+        return result;
+    }
+
+    /** Runs COMMAND against a Repo reading the current state and
+     *  printing to OUT, then publishes its changes and starts upkeep if
+     *  due, as the gitlet command does, and returns its result. */
+    private synchronized <T> T execute(Function<Repo, T> command,
+                                       PrintStream out) {
+        Repo repo = new Repo(_root, _durable, _objects, out);
+        T result;
+        try {
+            result = command.apply(repo);
+            repo.save();
+        } finally {
+            repo.release();
+        }
+        repo.scheduleMaintenance();
+        return result;
+    }
+
+    /** Working directory. */
+    private final File _root;
+
+    /** Writer of the repository's files. */
+    private final Durable _durable;
+
+    /** The repository's objects. */
+    private final ObjectStore _objects;
+}
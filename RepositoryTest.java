@@ -0,0 +1,206 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the library API.
+ *  @author Kaito Garcia
+ */
+public class RepositoryTest extends ScratchTestCase {
+
+    /** Operations answer with typed results, and refusals throw the
+     *  message the command would print. */
+    @Test
+    public void typedResults() {
+        File root = new File(_dir, "a/b");
+        try (Repository repository = Repository.init(root)) {
+            assertEquals(root.getAbsoluteFile(), repository.root());
+            write(repository, "f.txt", "one");
+            ObjectId one = repository.commit("one");
+            assertEquals(one, repository.log().next().getHashID());
+            assertEquals(Arrays.asList(one), repository.find("one"));
+            assertEquals("one",
+                    repository.readCommit(one.name().substring(0, 6))
+                    .getMessage());
+
+            repository.rm("f.txt");
+            write(repository, "g.txt", "g");
+            Status status = repository.status();
+            assertEquals("master", status.currentBranch());
+            assertEquals(one, status.head());
+            assertEquals(Collections.singletonMap("master", one),
+                    status.branches());
+            assertEquals(Arrays.asList("g.txt"), status.staged());
+            assertEquals(Arrays.asList("f.txt"), status.removed());
+
+            assertRefused("No commit with that id exists.",
+                    () -> repository.readCommit("0000"));
+            assertRefused("A branch with that name does not exist.",
+                    () -> repository.removeBranch("none"));
+            assertRefused("No need to checkout the current branch.",
+                    () -> repository.checkout("master"));
+            assertRefused("Please enter a command.", () -> repository.run());
+        }
+        assertRefused("Not in an initialized Gitlet directory.",
+                () -> Repository.open(_dir));
+    }
+
+    /** A prefix shared by two commits names neither, while a longer
+     *  one names one of them. */
+    @Test
+    public void ambiguousPrefix() {
+        try (Repository repository = Repository.init(_dir)) {
+            HashMap<Character, ObjectId> first = new HashMap<>();
+            ObjectId[] pair = null;
+            for (int i = 0; pair == null; i += 1) {
+                write(repository, "f.txt", "v" + i);
+                ObjectId id = repository.commit("c" + i);
+                ObjectId other = first.putIfAbsent(id.name().charAt(0), id);
+                if (other != null) {
+                    pair = new ObjectId[] {other, id};
+                }
+            }
+            String prefix = pair[0].name().substring(0, 1);
+            assertRefused("Commit id " + prefix + " is ambiguous.",
+                    () -> repository.readCommit(prefix));
+            assertRefused("Commit id " + prefix + " is ambiguous.",
+                    () -> repository.run("checkout", prefix, "--", "f.txt"));
+            assertEquals(pair[1], repository.readCommit(pair[1].name()
+                    .substring(0, 6)).getHashID());
+        }
+    }
+
+    /** Status marks only the current branch, even when another branch
+     *  is at the same commit. */
+    @Test
+    public void statusMarksCurrentBranch() {
+        try (Repository repository = Repository.init(_dir)) {
+            repository.branch("other");
+            assertTrue(repository.status().toString().startsWith(
+                    "=== Branches ===\n*master\nother\n\n"));
+            repository.checkout("other");
+            assertTrue(repository.status().toString().startsWith(
+                    "=== Branches ===\nmaster\n*other\n\n"));
+        }
+    }
+
+    /** Merges report how they ended and which files conflicted. */
+    @Test
+    public void mergeResults() {
+        try (Repository repository = Repository.init(_dir)) {
+            write(repository, "f.txt", "base");
+            repository.commit("base");
+            repository.branch("other");
+            assertEquals(MergeResult.Kind.UP_TO_DATE,
+                    repository.merge("other").kind());
+            repository.checkout("other");
+            write(repository, "f.txt", "theirs");
+            repository.commit("theirs");
+            repository.checkout("master");
+            write(repository, "f.txt", "ours");
+            repository.commit("ours");
+
+            MergeResult result = repository.merge("other");
+            assertEquals(MergeResult.Kind.MERGED, result.kind());
+            assertEquals(Arrays.asList("f.txt"), result.conflicts());
+            assertEquals(result.head(), repository.log().next().getHashID());
+            MergeResult refused = repository.merge("none");
+            assertEquals(MergeResult.Kind.REFUSED, refused.kind());
+            assertEquals("A branch with that name does not exist.",
+                    refused.message());
+        }
+    }
+
+    /** A log iteration reads commits as it goes and is unaffected by
+     *  later commits. */
+    @Test
+    public void lazyLog() {
+        try (Repository repository = Repository.init(_dir)) {
+            write(repository, "f.txt", "1");
+            repository.commit("one");
+            Iterator<Commit> log = repository.log();
+            write(repository, "f.txt", "2");
+            repository.commit("two");
+            List<String> messages = new ArrayList<>();
+            log.forEachRemaining(c -> messages.add(c.getMessage()));
+            assertEquals(Arrays.asList("one", "initial commit"), messages);
+        }
+    }
+
+    /** Repositories with different backends can be used at once from
+     *  several threads, and one Repository can be shared by threads,
+     *  without one's files landing in another's. */
+    @Test
+    public void concurrentRepositories() throws Exception {
+        List<Repository> repositories = new ArrayList<>();
+        repositories.add(Repository.init(new File(_dir, "files")));
+        repositories.add(Repository.init(new File(_dir, "kv"), "kv"));
+        repositories.add(Repository.init(new File(_dir, "memory"),
+                new MemoryObjectStore()));
+        ExecutorService pool = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<?>> work = new ArrayList<>();
+            for (Repository repository : repositories) {
+                for (int t = 0; t < 2; t += 1) {
+                    int thread = t;
+                    work.add(pool.submit(() -> {
+                        for (int i = 0; i < 10; i += 1) {
+                            write(repository, "t" + thread + "-" + i,
+                                    repository.root().getName() + i);
+                        }
+                    }));
+                }
+            }
+            for (Future<?> future : work) {
+                future.get();
+            }
+            for (Repository repository : repositories) {
+                assertEquals(20, repository.status().staged().size());
+                ObjectId id = repository.commit("all");
+                assertEquals(20, repository.readCommit(id.name())
+                        .getBlobs().size());
+                assertEquals("", repository.run("fsck"));
+            }
+        } finally {
+            pool.shutdown();
+            for (Repository repository : repositories) {
+                repository.close();
+            }
+        }
+        try (Repository reopened = Repository.open(new File(_dir, "kv"))) {
+            assertEquals("kv\n",
+                    reopened.run("config", Config.OBJECT_STORE));
+            assertEquals("all", reopened.log().next().getMessage());
+        }
+        assertFalse(new File(System.getProperty("user.dir"),
+                "t0-0").exists());
+    }
+
+    /** Fails unless OPERATION throws a GitletException with MESSAGE. */
+    private static void assertRefused(String message, Runnable operation) {
+        try {
+            operation.run();
+            fail("did not refuse: " + message);
+        } catch (GitletException excp) {
+            assertEquals(message, excp.getMessage());
+        }
+    }
+
+    /** Writes TEXT to the working file NAME of REPOSITORY and adds it. */
+    private static void write(Repository repository, String name,
+                              String text) {
+        Utils.writeContents(new File(repository.root(), name), text);
+        repository.add(name);
+    }
+}
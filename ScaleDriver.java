@@ -0,0 +1,243 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/** End-to-end scaling harness. For every combination of the swept
+ *  repository shapes it forks a JVM in a scratch directory, generates a
+ *  repository there with RepoGenerator, and replays a random mix of
+ *  gitlet commands against it through Main, exactly as the command line
+ *  would run them. Each configuration produces one line of JSON on the
+ *  standard output giving throughput, p50 and p99 latency overall and
+ *  per command, bytes read and written, and peak heap use.  Usage:
+ *
+ *      java gitlet.ScaleDriver [-ops N] [-mix CMD=WEIGHT,...]
+ *                              [KEY=V1,V2,...]...
+ *
+ *  where each KEY is a RepoGenerator option; listing several values
+ *  sweeps over them. The commands in a mix are status, log, global-log,
+ *  find, commit (edit, add and commit a file), branch, and checkout
+ *  (switch to another branch). The default mix is
+ *  status=4,log=2,commit=3,checkout=1.  Byte counts come from Linux's
+ *  /proc/self/io and are -1 elsewhere.
+ *  @author Kaito Garcia
+ */
+public class ScaleDriver {
+
+    /** Runs the sweep described by ARGS. */
+    public static void main(String... args) throws IOException {
+        if (args.length > 0 && args[0].equals("--fork")) {
+            runFork(args);
+            return;
+        }
+        String ops = "200";
+        String mix = DEFAULT_MIX;
+        Map<String, String[]> sweep = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-ops")) {
+                ops = args[++i];
+            } else if (args[i].equals("-mix")) {
+                mix = args[++i];
+            } else {
+                int eq = args[i].indexOf('=');
+                sweep.put(args[i].substring(0, eq),
+                        args[i].substring(eq + 1).split(","));
+            }
+        }
+        for (List<String> options : combinations(sweep)) {
+            ArrayList<String> forkArgs = new ArrayList<>();
+            forkArgs.add(ops);
+            forkArgs.add(mix);
+            forkArgs.addAll(options);
+            System.err.println("# " + String.join(" ", options));
+            for (String line : Bench.fork(ScaleDriver.class,
+                    forkArgs.toArray(new String[0]))) {
+                System.out.println(line);
+            }
+        }
+    }
+
+    /** Returns every choice of one value per key of SWEEP, as lists of
+     *  KEY=VALUE options. */
+    private static List<List<String>> combinations(
+            Map<String, String[]> sweep) {
+        List<List<String>> result = new ArrayList<>();
+        result.add(new ArrayList<>());
+        for (Map.Entry<String, String[]> entry : sweep.entrySet()) {
+            List<List<String>> next = new ArrayList<>();
+            for (List<String> prefix : result) {
+                for (String value : entry.getValue()) {
+                    List<String> options = new ArrayList<>(prefix);
+                    options.add(entry.getKey() + "=" + value);
+                    next.add(options);
+                }
+            }
+            result = next;
+        }
+        return result;
+    }
+
+    /** Entry point of a forked JVM. ARGS are "--fork", the number of
+     *  commands to replay, the command mix, and the generator options.
+     *  Prints the JSON report for this configuration. */
+    private static void runFork(String... args) {
+        int ops = Integer.parseInt(args[1]);
+        String[] mix = parseMix(args[2]);
+        RepoGenerator generator = new RepoGenerator();
+        for (int i = 3; i < args.length; i++) {
+            generator.set(args[i]);
+        }
+
+        PrintStream report = System.out;
+        System.setOut(new PrintStream(Bench.NULL_OUTPUT));
+        generator.generate();
+        ArrayList<String> branches = generator.branchNames();
+        ArrayList<String> files = generator.fileNames();
+        String current = "master";
+        Random random = new Random(ops);
+
+        Map<String, long[]> latencies = new TreeMap<>();
+        long[] all = new long[ops];
+        for (MemoryPoolMXBean pool
+                 : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+        long[] ioBefore = ioCounters();
+        long start = System.nanoTime();
+        for (int i = 0; i < ops; i++) {
+            String command = mix[random.nextInt(mix.length)];
+            long t0 = System.nanoTime();
+            switch (command) {
+            case "commit":
+                String name = files.get(random.nextInt(files.size()));
+                generator.edit(name);
+                long edit = System.nanoTime() - t0;
+                Main.main("add", name);
+                Main.main("commit", "replay " + i);
+                t0 += edit;
+                break;
+            case "checkout":
+                String to = branches.get(random.nextInt(branches.size()));
+                if (!to.equals(current)) {
+                    Main.main("checkout", to);
+                    current = to;
+                }
+                break;
+            case "branch":
+                Main.main("branch", "r" + i);
+                break;
+            case "find":
+                Main.main("find", "import");
+                break;
+            default:
+                Main.main(command);
+            }
+            all[i] = System.nanoTime() - t0;
+            long[] times = latencies.get(command);
+            times = times == null ? new long[1] : Arrays.copyOf(times,
+                    times.length + 1);
+            times[times.length - 1] = all[i];
+            latencies.put(command, times);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long[] ioAfter = ioCounters();
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool
+                 : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+        }
+
+        StringBuilder perCommand = new StringBuilder();
+        for (Map.Entry<String, long[]> entry : latencies.entrySet()) {
+            perCommand.append(perCommand.length() == 0 ? "" : ",")
+                .append(String.format(Locale.ROOT,
+                        "\"%s\":{\"count\":%d,\"p50us\":%.1f,"
+                        + "\"p99us\":%.1f}", entry.getKey(),
+                        entry.getValue().length,
+                        percentile(entry.getValue(), 0.50),
+                        percentile(entry.getValue(), 0.99)));
+        }
+        StringBuilder options = new StringBuilder();
+        for (int i = 3; i < args.length; i++) {
+            int eq = args[i].indexOf('=');
+            options.append(String.format("\"%s\":%s,",
+                    args[i].substring(0, eq), args[i].substring(eq + 1)));
+        }
+        report.println(String.format(Locale.ROOT,
+                "{%s\"ops\":%d,\"opsPerSec\":%.2f,\"p50us\":%.1f,"
+                + "\"p99us\":%.1f,\"readBytes\":%d,\"writtenBytes\":%d,"
+                + "\"peakHeapBytes\":%d,\"commands\":{%s}}",
+                options, ops, ops / seconds, percentile(all, 0.50),
+                percentile(all, 0.99), delta(ioBefore, ioAfter, 0),
+                delta(ioBefore, ioAfter, 1), peakHeap, perCommand));
+        report.flush();
+    }
+
+    /** Returns the commands of MIX, given as CMD=WEIGHT,..., each
+     *  repeated WEIGHT times. */
+    private static String[] parseMix(String mix) {
+        ArrayList<String> commands = new ArrayList<>();
+        for (String part : mix.split(",")) {
+            int eq = part.indexOf('=');
+            String command = eq < 0 ? part : part.substring(0, eq);
+            int weight = eq < 0 ? 1 : Integer.parseInt(part.substring(eq + 1));
+            for (int w = 0; w < weight; w++) {
+                commands.add(command);
+            }
+        }
+        return commands.toArray(new String[0]);
+    }
+
+    /** Returns the Qth quantile of TIMES, in microseconds. */
+    private static double percentile(long[] times, double q) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(q * sorted.length) - 1;
+        return sorted[Math.max(0, rank)] / 1000.0;
+    }
+
+    /** Returns the Kth counter of AFTER minus that of BEFORE, or -1 if
+     *  the counters are unavailable. */
+    private static long delta(long[] before, long[] after, int k) {
+        if (before[k] < 0 || after[k] < 0) {
+            return -1;
+        }
+        return after[k] - before[k];
+    }
+
+    /** Returns the bytes this process has read and written so far, from
+     *  /proc/self/io, or -1s if that file cannot be read. */
+    private static long[] ioCounters() {
+        long[] counters = {-1, -1};
+        File io = new File("/proc/self/io");
+        if (!io.canRead()) {
+            return counters;
+        }
+        for (String line : Utils.readContentsAsString(io).split("\n")) {
+            if (line.startsWith("rchar:")) {
+                counters[0] = Long.parseLong(line.substring(6).trim());
+            } else if (line.startsWith("wchar:")) {
+                counters[1] = Long.parseLong(line.substring(6).trim());
+            }
+        }
+        return counters;
+    }
+
+    /** The command mix used when none is given. */
+    private static final String DEFAULT_MIX =
+        "status=4,log=2,commit=3,checkout=1";
+}
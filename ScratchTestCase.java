@@ -0,0 +1,66 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+
+/** Base of the unit tests that work in a scratch directory. Before each
+ *  test it makes the directory _dir; after each, it closes every
+ *  Repository made through init and deletes the directory. A subclass
+ *  with more to set up does so in a @Before method of its own, which
+ *  runs after makeScratch.
+ *  @author Kaito Garcia
+ */
+public abstract class ScratchTestCase {
+
+    /** Makes the scratch directory. */
+    @Before
+    public void makeScratch() throws IOException {
+        _dir = Files.createTempDirectory("gitlet-"
+                + getClass().getSimpleName()).toFile();
+    }
+
+    /** Closes the repositories made by init and deletes the scratch
+     *  directory. */
+    @After
+    public void deleteScratch() {
+        for (Repository repository : _repositories) {
+            repository.close();
+        }
+        _repositories.clear();
+        Bench.deleteTree(_dir);
+    }
+
+    /** Returns a new repository in ROOT, closed when the test ends. */
+    Repository init(File root) {
+        return closeLater(Repository.init(root));
+    }
+
+    /** Returns a new repository in ROOT keeping its objects in the
+     *  backend OBJECTSTORE, closed when the test ends. */
+    Repository init(File root, String objectStore) {
+        return closeLater(Repository.init(root, objectStore));
+    }
+
+    /** Returns the repository in ROOT, closed when the test ends. */
+    Repository open(File root) {
+        return closeLater(Repository.open(root));
+    }
+
+    /** Returns REPOSITORY after noting that it is to be closed when the
+     *  test ends. */
+    private Repository closeLater(Repository repository) {
+        _repositories.add(repository);
+        return repository;
+    }
+
+    /** Scratch directory. */
+    protected File _dir;
+
+    /** Repositories to close when the test ends. */
+    private final ArrayList<Repository> _repositories = new ArrayList<>();
+}
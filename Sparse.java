@@ -0,0 +1,133 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** The sparse-checkout patterns of a repository, kept one per line in
+ *  .gitlet/sparse-checkout. When there are patterns, checkout, reset
+ *  and merge materialize only the tracked paths they match; other
+ *  tracked paths stay in commits and are carried from one commit to the
+ *  next, but are absent from the working tree. A pattern is a glob, as
+ *  for java.nio.file.FileSystem.getPathMatcher; one ending in "/"
+ *  matches every path beneath that directory; and one beginning with
+ *  "!" excludes what it matches. Later patterns take precedence.
+ *  @author Kaito Garcia
+ */
+class Sparse {
+
+    /** The patterns stored in FILE, which need not exist. */
+    Sparse(File file) {
+        _file = file;
+        _patterns = new ArrayList<>();
+        if (file.isFile()) {
+            for (String line
+                     : Utils.readContentsAsString(file).split("\n")) {
+                if (!line.trim().isEmpty()) {
+                    _patterns.add(line.trim());
+                }
+            }
+        }
+        compile();
+    }
+
+    /** Returns true iff a sparse checkout is in effect. */
+    boolean enabled() {
+        return !_patterns.isEmpty();
+    }
+
+    /** Returns true iff PATH belongs in the working tree. */
+    boolean includes(String path) {
+        if (!enabled()) {
+            return true;
+        }
+        boolean included = false;
+        for (int i = 0; i < _matchers.length; i++) {
+            if (_matchers[i].matches(path)) {
+                included = !_negated[i];
+            }
+        }
+        return included;
+    }
+
+    /** Returns the current patterns. */
+    List<String> patterns() {
+        return new ArrayList<>(_patterns);
+    }
+
+    /** Replaces the patterns by PATTERNS and saves them; an empty list
+     *  ends the sparse checkout. */
+    void setPatterns(List<String> patterns) {
+        _patterns = new ArrayList<>(patterns);
+        compile();
+        if (_patterns.isEmpty()) {
+            _file.delete();
+        } else {
+            Utils.writeContents(_file, String.join("\n", _patterns) + "\n");
+        }
+    }
+
+    /** Builds the matchers for the current patterns. */
+    private void compile() {
+        _matchers = new Matcher[_patterns.size()];
+        _negated = new boolean[_patterns.size()];
+        for (int i = 0; i < _patterns.size(); i++) {
+            String pattern = _patterns.get(i);
+            _negated[i] = pattern.startsWith("!");
+            if (_negated[i]) {
+                pattern = pattern.substring(1);
+            }
+            _matchers[i] = new Matcher(pattern);
+        }
+    }
+
+    /** Returns the patterns in ARGS from index START on. */
+    static List<String> fromArgs(String[] args, int start) {
+        return Arrays.asList(args).subList(start, args.length);
+    }
+
+    /** A single pattern. */
+    private static class Matcher {
+
+        /** A matcher for PATTERN, without any leading "!". */
+        Matcher(String pattern) {
+            if (pattern.endsWith("/")) {
+                _prefix = pattern;
+                _glob = null;
+            } else {
+                _prefix = null;
+                _glob = FileSystems.getDefault().getPathMatcher(
+                        "glob:" + pattern);
+            }
+        }
+
+        /** Returns true iff PATH matches. */
+        boolean matches(String path) {
+            if (_prefix != null) {
+                return path.startsWith(_prefix);
+            }
+            return _glob.matches(Paths.get(path));
+        }
+
+        /** Directory prefix matched, or null for a glob. */
+        private final String _prefix;
+        /** Glob matched, or null for a directory prefix. */
+        private final PathMatcher _glob;
+    }
+
+    /** File holding the patterns. */
+    private final File _file;
+
+    /** Patterns, in order. */
+    private List<String> _patterns;
+
+    /** Matcher for each pattern. */
+    private Matcher[] _matchers;
+
+    /** Whether each pattern is an exclusion. */
+    private boolean[] _negated;
+}
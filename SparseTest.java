@@ -0,0 +1,93 @@
+package gitlet;
+
+import java.io.File;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of sparse checkouts.
+ *  @author Kaito Garcia
+ */
+public class SparseTest extends ScratchTestCase {
+
+    /** Makes a repository in the scratch directory. */
+    @Before
+    public void setUp() {
+        _repo = init(_dir);
+    }
+
+    /** Patterns include globs and exclude what a later "!" matches, and
+     *  disabling them restores every file. */
+    @Test
+    public void patterns() {
+        write("a.txt", "a");
+        write("b.txt", "b");
+        write("a.bin", "bin");
+        _repo.commit("one");
+        _repo.run("sparse-checkout", "set", "*.txt", "!b*");
+        assertEquals("*.txt\n!b*\n", _repo.run("sparse-checkout", "list"));
+        assertTrue(file("a.txt").exists());
+        assertFalse(file("b.txt").exists());
+        assertFalse(file("a.bin").exists());
+        _repo.run("sparse-checkout", "disable");
+        assertEquals("b", read("b.txt"));
+        assertEquals("bin", read("a.bin"));
+    }
+
+    /** Setting patterns removes the files they exclude, and checking out
+     *  a branch writes only the files they include. */
+    @Test
+    public void checkoutWritesIncluded() {
+        write("a.txt", "a1");
+        write("b.txt", "b1");
+        _repo.commit("one");
+        _repo.run("sparse-checkout", "set", "a*");
+        assertFalse(file("b.txt").exists());
+        _repo.branch("other");
+        _repo.run("sparse-checkout", "disable");
+        _repo.checkout("other");
+        _repo.run("sparse-checkout", "set", "a*");
+        write("a.txt", "a2");
+        _repo.commit("two");
+        _repo.checkout("master");
+        assertEquals("a1", read("a.txt"));
+        assertFalse(file("b.txt").exists());
+    }
+
+    /** Reset writes only included files, and deletes only included files
+     *  that the commit reset to lacks. */
+    @Test
+    public void resetKeepsExcluded() {
+        write("a.txt", "a1");
+        ObjectId one = _repo.commit("one");
+        write("b.txt", "b2");
+        write("c.txt", "c2");
+        _repo.commit("two");
+        _repo.run("sparse-checkout", "set", "a*", "c*");
+        Utils.writeContents(file("b.txt"), "kept");
+        _repo.reset(one.name());
+        assertEquals("kept", read("b.txt"));
+        assertFalse(file("c.txt").exists());
+        assertEquals("a1", read("a.txt"));
+    }
+
+    /** Writes TEXT to the working file NAME and adds it. */
+    private void write(String name, String text) {
+        Utils.writeContents(file(name), text);
+        _repo.add(name);
+    }
+
+    /** Returns the working file NAME. */
+    private File file(String name) {
+        return new File(_dir, name);
+    }
+
+    /** Returns the contents of the working file NAME. */
+    private String read(String name) {
+        return Utils.readContentsAsString(file(name));
+    }
+
+    /** The repository in it. */
+    private Repository _repo;
+}
@@ -0,0 +1,88 @@
+package gitlet;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/** The state of a repository as the status command shows it: the
+ *  branches, with the current one and the head commit, and the files
+ *  staged for addition and for removal. toString renders it as the
+ *  command prints it.
+ *  @author Kaito Garcia
+ */
+public final class Status {
+
+    /** The status of a repository on branch CURRENT, whose head commit
+     *  is HEAD and whose branches have the tips BRANCHES, in order of
+     *  name, with the files STAGED and REMOVED. */
+    Status(String current, ObjectId head, Map<String, ObjectId> branches,
+           List<String> staged, List<String> removed) {
+        _current = current;
+        _head = head;
+        _branches = Collections.unmodifiableMap(branches);
+        _staged = Collections.unmodifiableList(staged);
+        _removed = Collections.unmodifiableList(removed);
+    }
+
+    /** Returns the name of the current branch. */
+    public String currentBranch() {
+        return _current;
+    }
+
+    /** Returns the ID of the head commit. */
+    public ObjectId head() {
+        return _head;
+    }
+
+    /** Returns the tip of every branch, by name, in order of name. */
+    public Map<String, ObjectId> branches() {
+        return _branches;
+    }
+
+    /** Returns the files staged for addition, in order of name. */
+    public List<String> staged() {
+        return _staged;
+    }
+
+    /** Returns the files staged for removal, in order of name. */
+    public List<String> removed() {
+        return _removed;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder("=== Branches ===\n");
+        for (Map.Entry<String, ObjectId> branch : _branches.entrySet()) {
+            if (branch.getKey().equals(_current)) {
+                out.append('*');
+            }
+            out.append(branch.getKey()).append('\n');
+        }
+        out.append("\n=== Staged Files ===\n");
+        for (String file : _staged) {
+            out.append(file).append('\n');
+        }
+        out.append("\n=== Removed Files ===\n");
+        for (String file : _removed) {
+            out.append(file).append('\n');
+        }
+        out.append("\n=== Modifications Not Staged For Commit ===\n");
+        out.append("\n=== Untracked Files ===\n");
+        return out.toString();
+    }
+
+    /** Name of the current branch. */
+    private final String _current;
+
+    /** ID of the head commit. */
+    private final ObjectId _head;
+
+    /** Tips of the branches. */
+    private final Map<String, ObjectId> _branches;
+
+    /** Files staged for addition. */
+    private final List<String> _staged;
+
+    /** Files staged for removal. */
+    private final List<String> _removed;
+}
@@ -0,0 +1,211 @@
+package gitlet;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jdk.jfr.FlightRecorder;
+
+/** Per-command tracing of gitlet's expensive operations. Tracing is
+ *  turned on for one command by giving "--trace" before the command
+ *  name, or for every command by setting the environment variable
+ *  GITLET_TRACE, to "1" to trace to the standard error or to the name
+ *  of a file to append to.
+ *
+ *  Each repository opened holds its own Trace, handed to the classes
+ *  that do its I/O along with its Durable, so that the commands of
+ *  several repositories in one process are traced apart. An operation
+ *  is timed by bracketing it with start and end:
+ *
+ *      long t = _trace.start();
+ *      ...
+ *      _trace.end("blob.read", t, 1, bytes, id);
+ *
+ *  Each span is written as one line of JSON giving the command, the
+ *  span name, its start offset and duration in microseconds, a count,
+ *  a byte total and a detail string, such as a file name, escaped as
+ *  JSON requires. When the command finishes, a
+ *  final line with span "total" gives the command's duration and the
+ *  count, bytes and time summed over each span name. Every span is also
+ *  committed as a TraceEvent, whether or not tracing is on, if the Java
+ *  Flight Recorder was running when the command began and a recording
+ *  enables that event. When neither is active, start returns 0 and end
+ *  returns immediately.
+ *  @author Kaito Garcia
+ */
+final class Trace {
+
+    /** A trace that records nothing until begin is called. */
+    Trace() {
+    }
+
+    /** Starts tracing the command COMMAND if FLAG is true or
+     *  GITLET_TRACE is set. */
+    void begin(String command, boolean flag) {
+        String target = System.getenv(ENV);
+        _on = flag || (target != null && !target.isEmpty());
+        _command = command;
+        if (_jfr == null && FlightRecorder.isInitialized()) {
+            _jfr = new TraceEvent();
+        }
+        if (!_on) {
+            return;
+        }
+        _totals.clear();
+        _begin = System.nanoTime();
+        if (_out == null) {
+            _out = open(target);
+        }
+    }
+
+    /** Returns a start time for a span, or 0 if spans are not being
+     *  recorded. */
+    long start() {
+        if (!_on && !jfrEnabled()) {
+            return 0;
+        }
+        return System.nanoTime();
+    }
+
+    /** Records the span named SPAN that began at START, as returned by
+     *  start, covering COUNT items and BYTES bytes and described by
+     *  DETAIL, which may be null. Spans may end on any thread. */
+    void end(String span, long start, long count, long bytes,
+                    String detail) {
+        if (start == 0) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        if (jfrEnabled()) {
+            TraceEvent event = new TraceEvent();
+            event.command = _command;
+            event.span = span;
+            event.detail = detail;
+            event.count = count;
+            event.bytes = bytes;
+            event.elapsed = nanos;
+            event.commit();
+        }
+        if (!_on) {
+            return;
+        }
+        synchronized (_totals) {
+            long[] total = _totals.get(span);
+            if (total == null) {
+                total = new long[3];
+                _totals.put(span, total);
+            }
+            total[0] += count;
+            total[1] += bytes;
+            total[2] += nanos;
+            _out.printf(Locale.ROOT, "{\"cmd\":%s,\"span\":%s,"
+                    + "\"startUs\":%.1f,\"us\":%.1f,\"count\":%d,"
+                    + "\"bytes\":%d%s}%n", quote(_command), quote(span),
+                    (start - _begin) / 1e3, nanos / 1e3, count, bytes,
+                    detail == null ? "" : ",\"detail\":" + quote(detail));
+        }
+    }
+
+    /** Returns true iff a flight recording has TraceEvents turned on. */
+    private boolean jfrEnabled() {
+        return _jfr != null && _jfr.isEnabled();
+    }
+
+    /** Writes the summary of the current command, if it is being
+     *  traced, and stops tracing. */
+    void finish() {
+        if (!_on) {
+            return;
+        }
+        StringBuilder spans = new StringBuilder();
+        for (Map.Entry<String, long[]> entry : _totals.entrySet()) {
+            long[] total = entry.getValue();
+            spans.append(spans.length() == 0 ? "" : ",").append(
+                    String.format(Locale.ROOT, "%s:{\"count\":%d,"
+                            + "\"bytes\":%d,\"us\":%.1f}",
+                            quote(entry.getKey()), total[0], total[1],
+                            total[2] / 1e3));
+        }
+        _out.printf(Locale.ROOT, "{\"cmd\":%s,\"span\":\"total\","
+                + "\"us\":%.1f,\"spans\":{%s}}%n", quote(_command),
+                (System.nanoTime() - _begin) / 1e3, spans);
+        _out.flush();
+        _on = false;
+    }
+
+    /** Returns TEXT as a JSON string literal. */
+    static String quote(String text) {
+        StringBuilder result = new StringBuilder("\"");
+        for (int i = 0; i < text.length(); i += 1) {
+            char c = text.charAt(i);
+            switch (c) {
+            case '"':
+            case '\\':
+                result.append('\\').append(c);
+                break;
+            case '\n':
+                result.append("\\n");
+                break;
+            case '\r':
+                result.append("\\r");
+                break;
+            case '\t':
+                result.append("\\t");
+                break;
+            default:
+                if (c < ' ') {
+                    result.append(String.format("\\u%04x", (int) c));
+                } else {
+                    result.append(c);
+                }
+            }
+        }
+        return result.append('"').toString();
+    }
+
+    /** Returns a writer on the trace destination TARGET: the standard
+     *  error if TARGET is null or "1", and otherwise the file TARGET,
+     *  opened for appending. */
+    private static PrintWriter open(String target) {
+        if (target == null || target.isEmpty() || target.equals("1")) {
+            return new PrintWriter(new OutputStreamWriter(System.err,
+                    StandardCharsets.UTF_8));
+        }
+        try {
+            return new PrintWriter(new OutputStreamWriter(
+                    new FileOutputStream(target, true),
+                    StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw Utils.error("Cannot open trace file %s.", target);
+        }
+    }
+
+    /** Environment variable that turns on tracing. */
+    static final String ENV = "GITLET_TRACE";
+
+    /** An event used only to ask whether TraceEvents are enabled, or
+     *  null if the flight recorder was not running when the command
+     *  began. Creating it only then keeps the recorder from being
+     *  loaded into ordinary runs. */
+    private TraceEvent _jfr;
+
+    /** True iff the current command is being traced. */
+    private boolean _on;
+
+    /** Name of the command being traced. */
+    private String _command = "";
+
+    /** Time at which the current command began. */
+    private long _begin;
+
+    /** Totals of count, bytes and nanoseconds for each span name. */
+    private final Map<String, long[]> _totals = new TreeMap<>();
+
+    /** Destination of trace output. */
+    private PrintWriter _out;
+}
@@ -0,0 +1,49 @@
+package gitlet;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/** Java Flight Recorder event committed for every span recorded by
+ *  Trace, so that gitlet's I/O can be profiled with
+ *  -XX:StartFlightRecording without turning on tracing.
+ *  @author Kaito Garcia
+ */
+@Name("gitlet.Span")
+@Label("Gitlet Span")
+@Category("Gitlet")
+@Description("A timed gitlet operation such as a blob read or write")
+@StackTrace(false)
+class TraceEvent extends Event {
+
+    /** Command during which the span occurred. */
+    @Label("Command")
+    String command;
+
+    /** Name of the span. */
+    @Label("Span")
+    String span;
+
+    /** What the span operated on, such as an object ID. */
+    @Label("Detail")
+    String detail;
+
+    /** Number of items the span covered. */
+    @Label("Count")
+    long count;
+
+    /** Number of bytes the span read, wrote or hashed. */
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    /** How long the span took. */
+    @Label("Duration")
+    @Timespan
+    long elapsed;
+}
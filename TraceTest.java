@@ -0,0 +1,139 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of command tracing.
+ *  @author Kaito Garcia
+ */
+public class TraceTest extends ScratchTestCase {
+
+    /** Quotes, backslashes and control characters are escaped. */
+    @Test
+    public void quoteEscapes() {
+        assertEquals("\"plain\"", Trace.quote("plain"));
+        assertEquals("\"a\\\"b\\\\c\"", Trace.quote("a\"b\\c"));
+        assertEquals("\"\\n\\t\\r\\u0001\"", Trace.quote("\n\t\r\u0001"));
+    }
+
+    /** Each Trace is on or off by itself, so that tracing one
+     *  repository's command leaves others in the process untraced. */
+    @Test
+    public void tracesAreSeparate() {
+        Trace traced = new Trace();
+        Trace other = new Trace();
+        traced.begin("status", true);
+        assertNotEquals(0, traced.start());
+        assertEquals(0, other.start());
+    }
+
+    /** Every line traced by a command is valid JSON, even when the
+     *  command, paths and file names hold characters JSON escapes. */
+    @Test
+    public void traceIsJson() throws IOException {
+        File root = new File(_dir, "q\"uo\\te");
+        String name = "a\"b\\c.txt";
+        Repository.init(root).close();
+        Utils.writeContents(new File(root, name), "text\n");
+        File trace = new File(_dir, "trace.json");
+        MainTest.gitlet(root, trace, "--trace", "add", name);
+        MainTest.gitlet(root, trace, "--trace", "st\"at\\us");
+
+        List<String> lines = Files.readAllLines(trace.toPath());
+        assertTrue(lines.size() > 3);
+        String path = Trace.quote(root.getPath());
+        path = path.substring(1, path.length() - 1);
+        boolean named = false;
+        for (String line : lines) {
+            assertEquals(line, line.length(), new Json(line).value(0));
+            named |= line.contains(path);
+        }
+        assertTrue(named);
+        assertTrue(lines.get(lines.size() - 1).startsWith(
+                "{\"cmd\":\"st\\\"at\\\\us\",\"span\":\"total\""));
+    }
+
+    /** A checker of JSON text. */
+    private static class Json {
+
+        /** A checker of TEXT. */
+        Json(String text) {
+            _text = text;
+        }
+
+        /** Returns the end of the JSON value starting at I, failing if
+         *  there is none. */
+        int value(int i) {
+            switch (at(i)) {
+            case '{':
+                return members(i + 1, '}', true);
+            case '[':
+                return members(i + 1, ']', false);
+            case '"':
+                return string(i);
+            default:
+                int j = i;
+                while (j < _text.length()
+                       && "+-.0123456789eEtrufalsn".indexOf(at(j)) >= 0) {
+                    j += 1;
+                }
+                assertTrue(_text, j > i);
+                return j;
+            }
+        }
+
+        /** Returns the end of the members of an object, if NAMED, or an
+         *  array starting at I and closed by CLOSE. */
+        private int members(int i, char close, boolean named) {
+            if (at(i) == close) {
+                return i + 1;
+            }
+            while (true) {
+                if (named) {
+                    i = string(i);
+                    assertEquals(_text, ':', at(i));
+                    i += 1;
+                }
+                i = value(i);
+                if (at(i) == close) {
+                    return i + 1;
+                }
+                assertEquals(_text, ',', at(i));
+                i += 1;
+            }
+        }
+
+        /** Returns the end of the string literal starting at I. */
+        private int string(int i) {
+            assertEquals(_text, '"', at(i));
+            for (i += 1; at(i) != '"'; i += 1) {
+                assertTrue(_text, at(i) >= ' ');
+                if (at(i) == '\\') {
+                    i += 1;
+                    if (at(i) == 'u') {
+                        assertTrue(_text, _text.substring(i + 1, i + 5)
+                                .matches("[0-9a-f]{4}"));
+                        i += 4;
+                    } else {
+                        assertTrue(_text, "\"\\/bfnrt".indexOf(at(i)) >= 0);
+                    }
+                }
+            }
+            return i + 1;
+        }
+
+        /** Returns the character at I, failing if there is none. */
+        private char at(int i) {
+            assertTrue(_text, i < _text.length());
+            return _text.charAt(i);
+        }
+
+        /** The text checked. */
+        private final String _text;
+    }
+}
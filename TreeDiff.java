@@ -0,0 +1,258 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/** The differences between two versions of a set of files, printed as
+ *  unified diffs. Each changed file is compared on its own task, so
+ *  files are diffed concurrently across the cores, while the output is
+ *  written in order of path, each file as soon as it and those before
+ *  it are done. Files are memory-mapped rather than read; only chunked
+ *  blobs are reassembled in memory. A file
+ *  with a NUL byte among its first BINARY_PROBE bytes is binary, and is
+ *  only reported as differing; the rest of it is never examined.
+ *  @author Kaito Garcia
+ */
+class TreeDiff {
+
+    /** The contents of one version of a file. */
+    static class Version {
+
+        /** The stored blob with ID ID, of SIZE bytes, whose contents DATA
+         *  supplies. */
+        Version(ObjectId id, long size, Supplier<ByteBuffer> data) {
+            _id = id;
+            _size = size;
+            _data = data;
+            _file = null;
+        }
+
+        /** The working file FILE. */
+        Version(File file) {
+            _id = null;
+            _size = file.length();
+            _data = () -> map(file);
+            _file = file;
+        }
+
+        /** Returns true iff this is known to have the contents of the
+         *  blob OTHER, hashing a working file of the same size. */
+        boolean same(Version other) {
+            if (_size != other._size) {
+                return false;
+            } else if (_id != null && other._id != null) {
+                return _id.equals(other._id);
+            }
+            Version stored = _id == null ? other : this;
+            Version working = _id == null ? this : other;
+            return stored._id != null
+                && Utils.sha1File(working._file).equals(stored._id);
+        }
+
+        /** ID of the contents, or null for a working file. */
+        private final ObjectId _id;
+        /** Length of the contents. */
+        private final long _size;
+        /** Supplies the contents. */
+        private final Supplier<ByteBuffer> _data;
+        /** The working file, or null. */
+        private final File _file;
+    }
+
+    /** One file that may have changed. */
+    static class Change {
+
+        /** A change from OLDVERSION at OLDPATH to NEWVERSION at NEWPATH.
+         *  The path and version of a side are null for an added or
+         *  deleted file. SCORE is the similarity of a renamed or copied
+         *  file, and -1 otherwise; COPY is true for a copy. */
+        Change(String oldPath, Version oldVersion,
+               String newPath, Version newVersion, int score, boolean copy) {
+            _oldPath = oldPath;
+            _old = oldVersion;
+            _newPath = newPath;
+            _new = newVersion;
+            _score = score;
+            _copy = copy;
+        }
+
+        /** Returns the path by which the change is ordered. */
+        String path() {
+            return _newPath == null ? _oldPath : _newPath;
+        }
+
+        /** Old path, or null. */
+        private final String _oldPath;
+        /** Old contents, or null. */
+        private final Version _old;
+        /** New path, or null. */
+        private final String _newPath;
+        /** New contents, or null. */
+        private final Version _new;
+        /** Similarity of a renamed or copied file, or -1. */
+        private final int _score;
+        /** True for a copied file. */
+        private final boolean _copy;
+    }
+
+    /** The differences among CHANGES, which are in order of path,
+     *  recording spans in TRACE. */
+    TreeDiff(List<Change> changes, Trace trace) {
+        _changes = changes;
+        _trace = trace;
+    }
+
+    /** Writes the differences to OUT, stopping early if OUT fails. */
+    void print(Writer out) throws IOException {
+        long start = _trace.start();
+        ArrayList<CompletableFuture<String>> results = new ArrayList<>();
+        for (Change change : _changes) {
+            results.add(CompletableFuture.supplyAsync(() -> render(change)));
+        }
+        try {
+            for (CompletableFuture<String> result : results) {
+                out.write(result.join());
+            }
+            out.flush();
+        } catch (CompletionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw excp;
+        } finally {
+            for (CompletableFuture<String> result : results) {
+                result.cancel(false);
+            }
+        }
+        _trace.end("diff.tree", start, _changes.size(), 0, null);
+    }
+
+    /** Returns the difference shown for CHANGE, which is empty if the
+     *  contents turn out to be the same. */
+    private String render(Change change) {
+        long start = _trace.start();
+        if (change._score < 0 && change._old != null && change._new != null
+                && change._old.same(change._new)) {
+            return "";
+        }
+        String oldName = change._oldPath == null ? null
+            : "a/" + change._oldPath;
+        String newName = change._newPath == null ? null
+            : "b/" + change._newPath;
+        StringBuilder out = new StringBuilder();
+        out.append("diff --gitlet ")
+            .append(oldName == null ? "a/" + change._newPath : oldName)
+            .append(' ')
+            .append(newName == null ? "b/" + change._oldPath : newName)
+            .append('\n');
+        if (change._old == null) {
+            out.append("new file\n");
+        } else if (change._new == null) {
+            out.append("deleted file\n");
+        } else if (change._score >= 0) {
+            String kind = change._copy ? "copy" : "rename";
+            out.append("similarity index ").append(change._score)
+                .append("%\n").append(kind).append(" from ")
+                .append(change._oldPath).append('\n').append(kind)
+                .append(" to ").append(change._newPath).append('\n');
+        }
+        ByteBuffer oldData = change._old == null ? null
+            : change._old._data.get();
+        ByteBuffer newData = change._new == null ? null
+            : change._new._data.get();
+        if (isBinary(oldData) || isBinary(newData)) {
+            out.append("Binary files ")
+                .append(oldName == null ? "/dev/null" : oldName)
+                .append(" and ")
+                .append(newName == null ? "/dev/null" : newName)
+                .append(" differ\n");
+        } else {
+            String[] oldLines = lines(oldData);
+            String[] newLines = lines(newData);
+            StringBuilder hunks = new StringBuilder();
+            Diff.unified(oldLines, newLines, CONTEXT, hunks);
+            if (hunks.length() > 0) {
+                out.append("--- ")
+                    .append(oldName == null ? "/dev/null" : oldName)
+                    .append("\n+++ ")
+                    .append(newName == null ? "/dev/null" : newName)
+                    .append('\n').append(hunks);
+            }
+        }
+        _trace.end("diff.file", start, 1,
+                size(oldData) + size(newData), change.path());
+        return out.toString();
+    }
+
+    /** Returns the contents of FILE mapped read-only. */
+    static ByteBuffer map(File file) {
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                 StandardOpenOption.READ)) {
+            return in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read %s.", file);
+        }
+    }
+
+    /** Returns the length of DATA, which may be null. */
+    private static long size(ByteBuffer data) {
+        return data == null ? 0 : data.limit();
+    }
+
+    /** Returns true iff DATA has a NUL among its first BINARY_PROBE
+     *  bytes. */
+    private static boolean isBinary(ByteBuffer data) {
+        if (data == null) {
+            return false;
+        }
+        int probe = Math.min(data.limit(), BINARY_PROBE);
+        for (int i = 0; i < probe; i++) {
+            if (data.get(i) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the lines of the UTF-8 text DATA, which may be null. A
+     *  last line lacking its terminator carries the marker that says so,
+     *  so that it differs from the same line with one. */
+    private static String[] lines(ByteBuffer data) {
+        if (data == null) {
+            return new String[0];
+        }
+        String text = StandardCharsets.UTF_8.decode(data.duplicate())
+            .toString();
+        String[] lines = Diff.lines(text);
+        if (!text.isEmpty() && !text.endsWith("\n")) {
+            lines[lines.length - 1] += NO_NEWLINE;
+        }
+        return lines;
+    }
+
+    /** Number of unchanged lines shown around each change. */
+    static final int CONTEXT = 3;
+
+    /** Number of leading bytes searched for a NUL. */
+    static final int BINARY_PROBE = 8000;
+
+    /** Appended to a last line that lacks a terminator. */
+    private static final String NO_NEWLINE =
+        "\n\\ No newline at end of file";
+
+    /** The files compared, in order of path. */
+    private final List<Change> _changes;
+
+    /** Where spans are recorded. */
+    private final Trace _trace;
+}
@@ -0,0 +1,347 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/** A three-way merge of two trees descended from a common base, done
+ *  entirely in memory. A tree maps each path to the ID of its blob, so
+ *  most paths are settled by comparing IDs: each takes the version of
+ *  whichever side changed it. Only a file both sides changed is read,
+ *  and merged line by line against its base, as diff3 does: the lines
+ *  each side left alone anchor the merge, and a region between anchors
+ *  takes the version of the side that changed it. The merged file is
+ *  stored as a new blob; a region both sides changed differently makes
+ *  the file a conflict instead, described by a Conflict rather than by
+ *  markers written into it.
+ *  @author Kaito Garcia
+ */
+class TreeMerge {
+
+    /** The ways a file can fail to merge. */
+    enum Kind {
+        /** Both sides changed some lines of the file differently. */
+        CONTENT("content"),
+        /** Both sides added the file, with clashing contents. */
+        ADD_ADD("add/add"),
+        /** One side changed the file and the other deleted it. */
+        MODIFY_DELETE("modify/delete"),
+        /** Both sides changed a binary file differently. */
+        BINARY("binary");
+
+        /** A kind of conflict described as LABEL. */
+        Kind(String label) {
+            _label = label;
+        }
+
+        @Override
+        public String toString() {
+            return _label;
+        }
+
+        /** Description shown to users. */
+        private final String _label;
+    }
+
+    /** A region of a file that the two sides changed differently. Lines
+     *  are numbered from 0. */
+    static class Hunk {
+
+        /** The region replacing BASECOUNT lines of the base at BASE by
+         *  OURSCOUNT lines at OURS in our version and THEIRSCOUNT lines at
+         *  THEIRS in theirs. */
+        Hunk(int base, int baseCount, int ours, int oursCount,
+             int theirs, int theirsCount) {
+            _start = new int[] { base, ours, theirs };
+            _count = new int[] { baseCount, oursCount, theirsCount };
+        }
+
+        /** Returns the first line of the region in the base. */
+        int base() {
+            return _start[0];
+        }
+
+        /** Returns the number of lines of the region in the base. */
+        int baseCount() {
+            return _count[0];
+        }
+
+        /** Returns the first line of the region in our version. */
+        int ours() {
+            return _start[1];
+        }
+
+        /** Returns the number of lines of the region in our version. */
+        int oursCount() {
+            return _count[1];
+        }
+
+        /** Returns the first line of the region in their version. */
+        int theirs() {
+            return _start[2];
+        }
+
+        /** Returns the number of lines of the region in their version. */
+        int theirsCount() {
+            return _count[2];
+        }
+
+        /** First lines in the base, ours and theirs. */
+        private final int[] _start;
+        /** Numbers of lines in the base, ours and theirs. */
+        private final int[] _count;
+    }
+
+    /** A file that could not be merged. */
+    static class Conflict {
+
+        /** A conflict of kind KIND at PATH, whose blobs in the base, ours
+         *  and theirs are BASE, OURS and THEIRS, each null if absent, and
+         *  whose clashing regions are HUNKS. */
+        Conflict(String path, Kind kind, ObjectId base, ObjectId ours,
+                 ObjectId theirs, List<Hunk> hunks) {
+            _path = path;
+            _kind = kind;
+            _base = base;
+            _ours = ours;
+            _theirs = theirs;
+            _hunks = Collections.unmodifiableList(hunks);
+        }
+
+        /** Returns the path of the file. */
+        String path() {
+            return _path;
+        }
+
+        /** Returns the kind of conflict. */
+        Kind kind() {
+            return _kind;
+        }
+
+        /** Returns the blob of the file in the base, or null. */
+        ObjectId base() {
+            return _base;
+        }
+
+        /** Returns our blob of the file, or null. */
+        ObjectId ours() {
+            return _ours;
+        }
+
+        /** Returns their blob of the file, or null. */
+        ObjectId theirs() {
+            return _theirs;
+        }
+
+        /** Returns the regions changed differently, in order, which are
+         *  known only for conflicts of kind CONTENT and ADD_ADD. */
+        List<Hunk> hunks() {
+            return _hunks;
+        }
+
+        /** Path of the file. */
+        private final String _path;
+        /** Kind of conflict. */
+        private final Kind _kind;
+        /** Base blob, or null. */
+        private final ObjectId _base;
+        /** Our blob, or null. */
+        private final ObjectId _ours;
+        /** Their blob, or null. */
+        private final ObjectId _theirs;
+        /** Clashing regions. */
+        private final List<Hunk> _hunks;
+    }
+
+    /** The merge of OURS and THEIRS, both descended from BASE. Any of
+     *  the three may be null, standing for an empty tree. A file both
+     *  sides changed is read through READER, and its merge, if clean, is
+     *  stored through WRITER, which returns the ID of the new blob. */
+    TreeMerge(Map<String, ObjectId> base, Map<String, ObjectId> ours,
+              Map<String, ObjectId> theirs,
+              Function<ObjectId, String> reader,
+              Function<String, ObjectId> writer) {
+        base = base == null ? new HashMap<>() : base;
+        ours = ours == null ? new HashMap<>() : ours;
+        theirs = theirs == null ? new HashMap<>() : theirs;
+        _reader = reader;
+        _writer = writer;
+        _result = new HashMap<>(ours);
+        _conflicts = new ArrayList<>();
+        HashSet<String> paths = new HashSet<>(base.keySet());
+        paths.addAll(theirs.keySet());
+        for (String path : paths) {
+            ObjectId old = base.get(path);
+            ObjectId mine = ours.get(path);
+            ObjectId other = theirs.get(path);
+            if (Objects.equals(other, old) || Objects.equals(other, mine)) {
+                continue;
+            } else if (Objects.equals(mine, old)) {
+                if (other == null) {
+                    _result.remove(path);
+                } else {
+                    _result.put(path, other);
+                }
+            } else if (mine == null || other == null) {
+                _conflicts.add(new Conflict(path, Kind.MODIFY_DELETE, old,
+                        mine, other, new ArrayList<>()));
+            } else {
+                mergeFile(path, old, mine, other);
+            }
+        }
+        _conflicts.sort(Comparator.comparing(Conflict::path));
+    }
+
+    /** Returns the merged tree, in which each conflicting path keeps our
+     *  version, or is absent if we have none. The caller may change
+     *  it. */
+    HashMap<String, ObjectId> result() {
+        return _result;
+    }
+
+    /** Returns the files that could not be merged, in order of path. */
+    List<Conflict> conflicts() {
+        return _conflicts;
+    }
+
+    /** Returns true iff every file merged. */
+    boolean clean() {
+        return _conflicts.isEmpty();
+    }
+
+    /** Merges the versions MINE and OTHER of PATH, whose version in the
+     *  base is OLD, or null if both sides added it. */
+    private void mergeFile(String path, ObjectId old, ObjectId mine,
+                           ObjectId other) {
+        String baseText = old == null ? "" : _reader.apply(old);
+        String ourText = _reader.apply(mine);
+        String theirText = _reader.apply(other);
+        if (isBinary(baseText) || isBinary(ourText) || isBinary(theirText)) {
+            _conflicts.add(new Conflict(path, Kind.BINARY, old, mine, other,
+                    new ArrayList<>()));
+            return;
+        }
+        ArrayList<Hunk> hunks = new ArrayList<>();
+        String merged = merge(lines(baseText), lines(ourText),
+                lines(theirText), hunks);
+        if (hunks.isEmpty()) {
+            _result.put(path, _writer.apply(merged));
+        } else {
+            _conflicts.add(new Conflict(path,
+                    old == null ? Kind.ADD_ADD : Kind.CONTENT, old, mine,
+                    other, hunks));
+        }
+    }
+
+    /** Returns the merge of the lines OURS and THEIRS, both changed from
+     *  the lines BASE, as text, adding to HUNKS each region the two
+     *  changed differently; the text is meaningless if any are added.
+     *  Lines are those of lines(). */
+    static String merge(String[] base, String[] ours, String[] theirs,
+                        List<Hunk> hunks) {
+        int[] inOurs = inverse(Diff.match(base, ours), base.length);
+        int[] inTheirs = inverse(Diff.match(base, theirs), base.length);
+        StringBuilder out = new StringBuilder();
+        int b = 0;
+        int o = 0;
+        int t = 0;
+        while (b < base.length || o < ours.length || t < theirs.length) {
+            int anchor = b;
+            while (anchor < base.length
+                   && (inOurs[anchor] < 0 || inTheirs[anchor] < 0)) {
+                anchor += 1;
+            }
+            int oEnd = anchor < base.length ? inOurs[anchor] : ours.length;
+            int tEnd = anchor < base.length ? inTheirs[anchor]
+                : theirs.length;
+            if (anchor == b && oEnd == o && tEnd == t) {
+                append(out, base, b, b + 1);
+                b += 1;
+                o += 1;
+                t += 1;
+                continue;
+            }
+            if (Arrays.equals(base, b, anchor, ours, o, oEnd)) {
+                append(out, theirs, t, tEnd);
+            } else if (Arrays.equals(base, b, anchor, theirs, t, tEnd)
+                       || Arrays.equals(ours, o, oEnd, theirs, t, tEnd)) {
+                append(out, ours, o, oEnd);
+            } else {
+                hunks.add(new Hunk(b, anchor - b, o, oEnd - o,
+                        t, tEnd - t));
+            }
+            b = anchor;
+            o = oEnd;
+            t = tEnd;
+        }
+        return out.toString();
+    }
+
+    /** Returns, for each of the LENGTH lines of a text, the index of the
+     *  line matching it in another text, given the MATCH of each line of
+     *  the other to this one, as Diff.match returns it, or -1. */
+    private static int[] inverse(int[] match, int length) {
+        int[] result = new int[length];
+        Arrays.fill(result, -1);
+        for (int i = 0; i < match.length; i++) {
+            if (match[i] >= 0) {
+                result[match[i]] = i;
+            }
+        }
+        return result;
+    }
+
+    /** Returns the lines of TEXT. A last line lacking its terminator ends
+     *  with NO_NEWLINE, so that it differs from the same line with
+     *  one. */
+    static String[] lines(String text) {
+        String[] lines = Diff.lines(text);
+        if (!text.isEmpty() && !text.endsWith("\n")) {
+            lines[lines.length - 1] += NO_NEWLINE;
+        }
+        return lines;
+    }
+
+    /** Appends LINES[FROM .. TO-1] to OUT as text. */
+    private static void append(StringBuilder out, String[] lines,
+                               int from, int to) {
+        for (int i = from; i < to; i++) {
+            String line = lines[i];
+            if (line.endsWith(NO_NEWLINE)) {
+                out.append(line, 0, line.length() - 1);
+            } else {
+                out.append(line).append('\n');
+            }
+        }
+    }
+
+    /** Returns true iff TEXT has a NUL among its first
+     *  TreeDiff.BINARY_PROBE characters. */
+    private static boolean isBinary(String text) {
+        int probe = Math.min(text.length(), TreeDiff.BINARY_PROBE);
+        return text.substring(0, probe).indexOf('\0') >= 0;
+    }
+
+    /** Ends a last line that lacks a terminator; never part of a text
+     *  file, which has no NUL. */
+    private static final String NO_NEWLINE = "\0";
+
+    /** Reads a blob. */
+    private final Function<ObjectId, String> _reader;
+
+    /** Stores a blob, returning its ID. */
+    private final Function<String, ObjectId> _writer;
+
+    /** The merged tree. */
+    private final HashMap<String, ObjectId> _result;
+
+    /** Files that did not merge. */
+    private final ArrayList<Conflict> _conflicts;
+}
@@ -0,0 +1,192 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of in-memory three-way merges and the merge-tree command.
+ *  @author Kaito Garcia
+ */
+public class TreeMergeTest extends ScratchTestCase {
+
+    /** Starts with no blobs and no reads. */
+    @Before
+    public void setUp() {
+        _blobs = new HashMap<>();
+        _reads = 0;
+    }
+
+    /** Lines changed by one side take its version, and lines changed by
+     *  both differently make a hunk. */
+    @Test
+    public void mergesLines() {
+        assertEquals("A\nb\nC\n", merge("a b c", "A b c", "a b C"));
+        assertEquals("a\nx\nb\nc\ny\n", merge("a b c", "a x b c",
+                "a b c y"));
+        assertEquals("a\nB\nc\n", merge("a b c", "a B c", "a B c"));
+        List<TreeMerge.Hunk> hunks = new ArrayList<>();
+        TreeMerge.merge(words("a b c d"), words("a X c d"),
+                words("a Y Z c d"), hunks);
+        assertEquals(1, hunks.size());
+        TreeMerge.Hunk hunk = hunks.get(0);
+        assertEquals(Arrays.asList(1, 1, 1, 1, 1, 2),
+                Arrays.asList(hunk.base(), hunk.baseCount(), hunk.ours(),
+                        hunk.oursCount(), hunk.theirs(),
+                        hunk.theirsCount()));
+    }
+
+    /** A last line without a terminator differs from the same line with
+     *  one, and keeps its lack of one. */
+    @Test
+    public void keepsMissingNewline() {
+        List<TreeMerge.Hunk> hunks = new ArrayList<>();
+        assertEquals("A\nb", TreeMerge.merge(TreeMerge.lines("a\nb"),
+                TreeMerge.lines("A\nb"), TreeMerge.lines("a\nb"), hunks));
+        TreeMerge.merge(TreeMerge.lines("a\n"), TreeMerge.lines("a"),
+                TreeMerge.lines("b\n"), hunks);
+        assertEquals(1, hunks.size());
+    }
+
+    /** Paths are settled by blob ID, reading only files both sides
+     *  changed, and each failure is reported with its kind. */
+    @Test
+    public void mergesTrees() {
+        TreeMerge merge = new TreeMerge(
+                tree("same", "s", "ours", "o", "theirs", "t",
+                     "both", "1\n2\n3\n", "clash", "c\n", "gone", "g",
+                     "bin", "\0a"),
+                tree("same", "s", "ours", "O", "theirs", "t",
+                     "both", "ONE\n2\n3\n", "clash", "mine\n", "gone", "G",
+                     "new", "n1", "bin", "\0b", "mine", "m"),
+                tree("same", "s", "ours", "o", "theirs", "T",
+                     "both", "1\n2\nTHREE\n", "clash", "yours\n", "new", "n2",
+                     "bin", "\0c"),
+                this::read, this::write);
+        assertEquals(11, _reads);
+        Map<String, ObjectId> expected = tree("same", "s", "ours", "O",
+                "theirs", "T", "both", "ONE\n2\nTHREE\n", "clash", "mine\n",
+                "gone", "G", "new", "n1", "bin", "\0b", "mine", "m");
+        assertEquals(expected, merge.result());
+        assertFalse(merge.clean());
+        List<String> conflicts = new ArrayList<>();
+        for (TreeMerge.Conflict conflict : merge.conflicts()) {
+            conflicts.add(conflict.path() + " " + conflict.kind());
+        }
+        assertEquals(Arrays.asList("bin binary", "clash content",
+                "gone modify/delete", "new add/add"), conflicts);
+        TreeMerge.Conflict gone = merge.conflicts().get(2);
+        assertEquals(id("g"), gone.base());
+        assertEquals(id("G"), gone.ours());
+        assertNull(gone.theirs());
+    }
+
+    /** merge-tree merges into a branch that is not checked out without
+     *  touching the working tree, and lists conflicts without
+     *  committing. */
+    @Test
+    public void mergesWithoutWorkingTree() {
+        try (Repository repository = Repository.init(_dir)) {
+            write(repository, "f.txt", "1\n2\n3\n4\n5\n");
+            repository.commit("base");
+            repository.branch("target");
+            repository.branch("topic");
+            repository.checkout("topic");
+            write(repository, "f.txt", "1\n2\n3\n4\nFIVE\n");
+            repository.commit("topic");
+            repository.checkout("target");
+            write(repository, "f.txt", "ONE\n2\n3\n4\n5\n");
+            ObjectId target = repository.commit("target");
+            repository.checkout("master");
+            File work = new File(_dir, "f.txt");
+            work.setLastModified(1000000);
+
+            String merged = repository.run("merge-tree", "target", "topic");
+            assertTrue(merged.matches("[0-9a-f]{40}\n"));
+            Commit commit = repository.readCommit(merged.trim());
+            assertEquals("Merged topic into target.", commit.getMessage());
+            assertEquals(target, commit.getParentHashID());
+            assertEquals(id("ONE\n2\n3\n4\nFIVE\n"),
+                    commit.getBlobs().get("f.txt"));
+            assertTrue(new File(_dir, ".gitlet/stagingArea/"
+                    + id("ONE\n2\n3\n4\nFIVE\n").name()).isFile());
+            assertEquals(1000000, work.lastModified());
+            assertEquals("No changes added to the commit.\n",
+                    repository.run("merge-tree", "target", "topic"));
+
+            repository.checkout("topic");
+            write(repository, "f.txt", "1\n2\n3\n4\nfive\n");
+            repository.commit("again");
+            write(repository, "g.txt", "g\n");
+            repository.commit("other");
+            repository.checkout("target");
+            write(repository, "f.txt", "ONE\n2\n3\n4\nV\n");
+            ObjectId tip = repository.commit("clash");
+            assertEquals("CONFLICT (content): f.txt\n@@@ -5 +5 +5 @@@\n"
+                    + "Automatic merge failed; nothing committed.\n",
+                    repository.run("merge-tree", "target", "topic"));
+            assertEquals(tip, repository.log().next().getHashID());
+        }
+    }
+
+    /** Returns the merge of the space-separated lines OURS and THEIRS
+     *  from BASE, which must not conflict. */
+    private static String merge(String base, String ours, String theirs) {
+        List<TreeMerge.Hunk> hunks = new ArrayList<>();
+        String result = TreeMerge.merge(words(base), words(ours),
+                words(theirs), hunks);
+        assertTrue(hunks.isEmpty());
+        return result;
+    }
+
+    /** Returns the space-separated words of TEXT. */
+    private static String[] words(String text) {
+        return text.split(" ");
+    }
+
+    /** Returns the tree mapping each path of PATHSANDTEXTS, which
+     *  alternates paths and contents, to the ID of its contents, which
+     *  read can then return. */
+    private Map<String, ObjectId> tree(String... pathsAndTexts) {
+        Map<String, ObjectId> result = new HashMap<>();
+        for (int i = 0; i < pathsAndTexts.length; i += 2) {
+            result.put(pathsAndTexts[i], write(pathsAndTexts[i + 1]));
+        }
+        return result;
+    }
+
+    /** Returns the contents of the blob ID, counting the read. */
+    private String read(ObjectId id) {
+        _reads += 1;
+        return _blobs.get(id);
+    }
+
+    /** Stores TEXT as a blob, returning its ID. */
+    private ObjectId write(String text) {
+        _blobs.put(id(text), text);
+        return id(text);
+    }
+
+    /** Returns the ID of a blob holding TEXT. */
+    private static ObjectId id(String text) {
+        return Utils.sha1Id(text);
+    }
+
+    /** Writes TEXT to the working file NAME of REPOSITORY and adds it. */
+    private void write(Repository repository, String name, String text) {
+        Utils.writeContents(new File(_dir, name), text);
+        repository.add(name);
+    }
+
+    /** Contents of the blobs made by tree and write, by ID. */
+    private Map<ObjectId, String> _blobs;
+
+    /** Number of blobs read by merges. */
+    private int _reads;
+}
@@ -12,7 +12,31 @@ public class UnitTest {
     /** Run the JUnit tests in the loa package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        System.exit(textui.runClasses(UnitTest.class));
+        System.exit(textui.runClasses(UnitTest.class, FetchTest.class,
+                                       BenchTest.class,
+                                       RepoGeneratorTest.class,
+                                       TraceTest.class,
+                                       ObjectIdTest.class,
+                                       BlobTransferTest.class,
+                                       CheckoutModeTest.class,
+                                       SparseTest.class,
+                                       DurableTest.class,
+                                       MainTest.class,
+                                       RefStoreTest.class,
+                                       LogTest.class,
+                                       MetaStoreTest.class,
+                                       BlameTest.class,
+                                       RenameTest.class,
+                                       DiffTest.class,
+                                       ChunkStoreTest.class,
+                                       IndexTest.class,
+                                       ReplayTest.class,
+                                       TreeMergeTest.class,
+                                       FsckTest.class,
+                                       BundleTest.class,
+                                       MaintenanceTest.class,
+                                       ObjectStoreTest.class,
+                                       RepositoryTest.class));
     }
 
     /** A dummy test to avoid complaint. */
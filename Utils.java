@@ -1,6 +1,6 @@
 package gitlet;
 
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -9,13 +9,17 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -32,27 +36,74 @@ class Utils {
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
+        return sha1Id(vals).name();
+    }
+
+    /** Returns the SHA-1 hash of the concatenation of VALS, which may
+     *  be any mixture of byte arrays and Strings, as an ObjectId. The
+     *  digest goes straight from a per-thread buffer into the ID. */
+    static ObjectId sha1Id(Object... vals) {
+        MessageDigest md = DIGEST.get();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else if (val instanceof String) {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+        }
+        byte[] raw = DIGEST_OUT.get();
+        try {
+            md.digest(raw, 0, raw.length);
+        } catch (DigestException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return ObjectId.fromRaw(raw, 0);
+    }
+
+    /** Returns the SHA-1 hash of the contents of FILE, which is read
+     *  through a reusable per-thread direct buffer rather than into the
+     *  heap.  Throws IllegalArgumentException in case of problems. */
+    static ObjectId sha1File(File file) {
+        MessageDigest md = DIGEST.get();
+        ByteBuffer buffer = HASH_BUFFER.get();
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                 StandardOpenOption.READ)) {
+            buffer.clear();
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                buffer.flip();
+                md.update(buffer);
+                buffer.clear();
             }
-            return result.toString();
-        } catch (NoSuchAlgorithmException excp) {
-            throw new IllegalArgumentException("System does not support SHA-1");
+            byte[] raw = DIGEST_OUT.get();
+            md.digest(raw, 0, raw.length);
+            return ObjectId.fromRaw(raw, 0);
+        } catch (IOException | DigestException excp) {
+            md.reset();
+            throw new IllegalArgumentException(excp.getMessage());
         }
     }
 
+    /** Per-thread buffers through which files are hashed. */
+    private static final ThreadLocal<ByteBuffer> HASH_BUFFER =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(1 << 16));
+
+    /** Per-thread SHA-1 digesters, reset after each use by digest. */
+    private static final ThreadLocal<MessageDigest> DIGEST =
+        ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException(
+                    "System does not support SHA-1");
+            }
+        });
+
+    /** Per-thread buffers receiving SHA-1 digests. */
+    private static final ThreadLocal<byte[]> DIGEST_OUT =
+        ThreadLocal.withInitial(() -> new byte[ObjectId.RAW_LENGTH]);
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
@@ -109,16 +160,23 @@ class Utils {
 
     /** Write the result of concatenating the bytes in CONTENTS to FILE,
      *  creating or overwriting it as needed.  Each object in CONTENTS may be
-     *  either a String or a byte array.  Throws IllegalArgumentException
-     *  in case of problems. */
+     *  either a String or a byte array.  The bytes go to a temporary file
+     *  that then replaces FILE atomically, so FILE is never left partly
+     *  written, and a hard-linked FILE never alters the other links.
+     *  Throws IllegalArgumentException in case of problems. */
     static void writeContents(File file, Object... contents) {
+        Durable.replace(file, concat(file, contents));
+    }
+
+    /** Return the bytes of CONTENTS, destined for FILE, concatenated as
+     *  for writeContents. */
+    static byte[] concat(File file, Object... contents) {
         try {
             if (file.isDirectory()) {
                 throw
                     new IllegalArgumentException("cannot overwrite directory");
             }
-            BufferedOutputStream str =
-                new BufferedOutputStream(Files.newOutputStream(file.toPath()));
+            ByteArrayOutputStream str = new ByteArrayOutputStream();
             for (Object obj : contents) {
                 if (obj instanceof byte[]) {
                     str.write((byte[]) obj);
@@ -126,12 +184,54 @@ class Utils {
                     str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
                 }
             }
-            str.close();
+            return str.toByteArray();
         } catch (IOException | ClassCastException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
     }
 
+    /** Copy the contents of FROM to TO, creating or overwriting TO as
+     *  needed, by transferring directly between file channels so that
+     *  the data need not be copied through the Java heap.  As with
+     *  writeContents, TO is replaced atomically.  Returns the number of
+     *  bytes copied.  Throws IllegalArgumentException in case of
+     *  problems. */
+    static long copyFile(File from, File to) {
+        return Durable.replaceByCopy(from, to);
+    }
+
+    /** Make copy-on-write clones of the files FROM, under the same
+     *  names, in the directory DIR.  Returns false if the file system
+     *  cannot clone them, in which case some clones may have been made.
+     *  Java has no portable clone call, so this runs one cp --reflink
+     *  for every REFLINK_BATCH files. */
+    static boolean reflinkFiles(List<File> from, File dir) {
+        try {
+            for (int i = 0; i < from.size(); i += REFLINK_BATCH) {
+                List<String> command = new ArrayList<>(Arrays.asList(
+                        "cp", "--reflink=always", "--"));
+                for (File file
+                         : from.subList(i, Math.min(from.size(),
+                                                    i + REFLINK_BATCH))) {
+                    command.add(file.getPath());
+                }
+                command.add(dir.getPath() + File.separator);
+                Process cp = new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+                if (cp.waitFor() != 0) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException | InterruptedException excp) {
+            return false;
+        }
+    }
+
+    /** Number of files cloned by each cp process of reflinkFiles. */
+    private static final int REFLINK_BATCH = 512;
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
@@ -216,6 +316,20 @@ class Utils {
         }
     }
 
+    /** Return an object of type T read from the serialized contents
+     *  DATA, casting it to EXPECTEDCLASS.  Throws IllegalArgumentException
+     *  in case of problems. */
+    static <T extends Serializable> T deserialize(byte[] data,
+                                                  Class<T> expectedClass) {
+        try (ObjectInputStream in =
+                 new ObjectInputStream(new ByteArrayInputStream(data))) {
+            return expectedClass.cast(in.readObject());
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
 
 
     /* MESSAGES AND ERROR REPORTING */